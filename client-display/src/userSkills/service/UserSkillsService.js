@@ -58,16 +58,19 @@ export default {
     return response;
   },
 
+  // the config carries the current hash of the style sheets, hashed urls never change and are cached by the browser
   getCustomIconCss() {
+    const hash = store.getters.config ? store.getters.config.customIconCssHash : null;
     let response = null;
-    response = axios.get(`${store.state.serviceUrl}${this.getServicePath()}/${encodeURIComponent(store.state.projectId)}/customIconCss`, {
+    response = axios.get(`${store.state.serviceUrl}${this.getServicePath()}/${encodeURIComponent(store.state.projectId)}/customIconCss${hash ? `/${hash}` : ''}`, {
     }).then((result) => result.data);
     return response;
   },
 
   getCustomGlobalIconCss() {
+    const hash = store.getters.config ? store.getters.config.globalCustomIconCssHash : null;
     let response = null;
-    response = axios.get(`${store.state.serviceUrl}/api/icons/customIconCss`, {
+    response = axios.get(`${store.state.serviceUrl}/api/icons/customIconCss${hash ? `/${hash}` : ''}`, {
     }).then((result) => result.data);
     return response;
   },
@@ -87,9 +87,26 @@ export default {
       .then(() => this.getProject(project.projectId));
   },
   copyProject(oringinalProjectId, newProject) {
-    return axios.post(`/admin/projects/${encodeURIComponent(oringinalProjectId)}/copy`, newProject)
+    // the copy runs in the background, resolves once it completes
+    return axios.post(`/admin/projects/${encodeURIComponent(oringinalProjectId)}/copy/async`, newProject)
+      .then((res) => this.waitForProjectCopy(oringinalProjectId, res.data));
+  },
+  getProjectCopyInfo(oringinalProjectId, jobId) {
+    return axios.get(`/admin/projects/${encodeURIComponent(oringinalProjectId)}/copy/${jobId}/info`)
       .then((res) => res.data);
   },
+  waitForProjectCopy(oringinalProjectId, copyInfo, pollIntervalMs = 1000) {
+    if (copyInfo.state === 'COMPLETED') {
+      return Promise.resolve(copyInfo);
+    }
+    if (copyInfo.state === 'FAILED') {
+      const reason = copyInfo.errorMessage ? `: ${copyInfo.errorMessage}` : '';
+      return Promise.reject(new Error(`Failed to copy project [${oringinalProjectId}] to [${copyInfo.toProjectId}]${reason}`));
+    }
+    return new Promise((resolve) => setTimeout(resolve, pollIntervalMs))
+      .then(() => this.getProjectCopyInfo(oringinalProjectId, copyInfo.jobId))
+      .then((info) => this.waitForProjectCopy(oringinalProjectId, info, pollIntervalMs));
+  },
   deleteProject(projectId) {
     return axios.delete(`/admin/projects/${encodeURIComponent(projectId)}`);
   },
@@ -217,8 +217,14 @@ describe('Client Display Features Tests', () => {
         cy.createSkill(1, 1, 1);
         cy.assignSkillToBadge(1, 1, 1);
         cy.enableBadge(1, 1, { iconClass: 'proj1-validiconpng' });
+        cy.intercept('GET', '/api/projects/proj1/customIconCss/*')
+            .as('getProjectIconCss');
+        cy.intercept('GET', '/api/icons/customIconCss/*')
+            .as('getGlobalIconCss');
 
         cy.cdVisit('/');
+        cy.wait('@getProjectIconCss');
+        cy.wait('@getGlobalIconCss');
         cy.cdClickBadges();
         cy.get('[data-cy="badge_badge1"] .proj1-validiconpng');
 
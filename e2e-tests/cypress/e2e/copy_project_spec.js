@@ -226,7 +226,7 @@ describe('Copy Project Tests', () => {
 
     it('pressing enter when enable skill id help icon is selected does not prevent saving of copied project', () => {
         cy.createProject(3);
-        cy.intercept('POST', '/admin/projects/proj3/copy').as('copyProject');
+        cy.intercept('POST', '/admin/projects/proj3/copy/async').as('copyProject');
         cy.intercept('GET', '/app/projects').as('loadProjects');
         cy.visit('/administrator/');
         cy.get('[data-cy="copyProjBtn"]').eq(1)
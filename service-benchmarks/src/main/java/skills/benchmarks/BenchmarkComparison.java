@@ -0,0 +1,111 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JMH json results against a baseline produced by a previous run and exits with a non-zero status when
+ * any benchmark regressed by more than the allowed fraction (beyond the error margin of both runs); benchmarks
+ * that are not part of the baseline are reported but never fail the comparison. Only primary metrics are compared.
+ * Usage: java -cp target/benchmarks.jar skills.benchmarks.BenchmarkComparison baseline.json result.json [maxRegression]
+ */
+public class BenchmarkComparison {
+
+    static final double DEFAULT_MAX_REGRESSION = 0.1;
+
+    static class Score {
+        String mode;
+        double score;
+        double error;
+        String unit;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <result.json> [maxRegression]");
+            System.exit(2);
+        }
+        double maxRegression = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_MAX_REGRESSION;
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> current = read(new File(args[1]));
+
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14.3f %s (no baseline)%n", entry.getKey(), now.score, now.unit);
+                continue;
+            }
+            double change = before.score == 0 ? 0 : (now.score - before.score) / before.score;
+            System.out.printf("%-90s %14.3f -> %14.3f %s (%+.1f%%)%n", entry.getKey(), before.score, now.score, now.unit, change * 100);
+            if (isRegression(before, now, maxRegression)) {
+                regressions.add(entry.getKey());
+            }
+        }
+
+        if (!regressions.isEmpty()) {
+            System.err.printf("%d benchmark(s) regressed by more than %.0f%%:%n", regressions.size(), maxRegression * 100);
+            regressions.forEach(it -> System.err.println("  " + it));
+            System.exit(1);
+        }
+    }
+
+    static boolean isRegression(Score before, Score now, double maxRegression) {
+        double error = safe(before.error) + safe(now.error);
+        // throughput is better when higher, all of the other modes measure time
+        if ("thrpt".equals(now.mode)) {
+            return now.score + error < before.score * (1 - maxRegression);
+        }
+        return now.score - error > before.score * (1 + maxRegression);
+    }
+
+    private static double safe(double error) {
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> res = new LinkedHashMap<>();
+        for (JsonNode benchmark : new ObjectMapper().readTree(file)) {
+            Map<String, String> params = new TreeMap<>();
+            JsonNode paramsNode = benchmark.path("params");
+            for (Iterator<Map.Entry<String, JsonNode>> it = paramsNode.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> param = it.next();
+                params.put(param.getKey(), param.getValue().asText());
+            }
+            Score score = new Score();
+            score.mode = benchmark.path("mode").asText();
+            JsonNode primaryMetric = benchmark.path("primaryMetric");
+            score.score = primaryMetric.path("score").asDouble();
+            score.error = primaryMetric.path("scoreError").asDouble(Double.NaN);
+            score.unit = primaryMetric.path("scoreUnit").asText();
+            String key = benchmark.path("benchmark").asText() + (params.isEmpty() ? "" : params.toString()) + " " + score.mode;
+            res.put(key, score);
+        }
+        return res;
+    }
+}
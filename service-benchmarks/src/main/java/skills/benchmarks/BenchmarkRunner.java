@@ -0,0 +1,75 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs all of the benchmarks in this module with throughput and allocation (gc profiler) measurements and
+ * writes the results as json so they can be compared against the previously published baseline (see {@link BenchmarkComparison}).
+ * Any of the standard JMH command line options take precedence over these defaults, for example:
+ * java -jar target/benchmarks.jar LevelCalculationBenchmark -f 2 -rff target/level.json
+ */
+public class BenchmarkRunner {
+
+    static final String DEFAULT_RESULT_FILE = "target/benchmarks/jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+
+        if (cmdOptions.getIncludes().isEmpty()) {
+            // benchmarks of package-private methods live in the package of the code under test
+            builder.include("skills\\..*Benchmark");
+        }
+        if (cmdOptions.getBenchModes().isEmpty()) {
+            builder.mode(Mode.Throughput);
+        }
+        if (!cmdOptions.getTimeUnit().hasValue()) {
+            builder.timeUnit(TimeUnit.MILLISECONDS);
+        }
+        if (!cmdOptions.getForkCount().hasValue()) {
+            builder.forks(1);
+        }
+        if (!cmdOptions.getWarmupIterations().hasValue()) {
+            builder.warmupIterations(3);
+        }
+        if (!cmdOptions.getMeasurementIterations().hasValue()) {
+            builder.measurementIterations(5);
+        }
+        if (cmdOptions.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        if (!cmdOptions.getResult().hasValue()) {
+            new File(DEFAULT_RESULT_FILE).getParentFile().mkdirs();
+            builder.result(DEFAULT_RESULT_FILE);
+        }
+        if (!cmdOptions.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import skills.icons.CssGenerator;
+import skills.storage.model.CustomIcon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Custom icon css generated whenever a project's or the global icon css is requested.
+ */
+@State(Scope.Benchmark)
+public class CssGeneratorBenchmark {
+
+    @Param({"10", "100"})
+    int numIcons;
+
+    // base64 encoded size of a typical icon
+    @Param({"4096"})
+    int dataUriLength;
+
+    private final CssGenerator cssGenerator = new CssGenerator();
+    private List<CustomIcon> customIcons;
+
+    @Setup
+    public void setup() {
+        char[] data = new char[dataUriLength];
+        Arrays.fill(data, 'A');
+        String dataUri = "data:image/png;base64," + new String(data);
+
+        customIcons = new ArrayList<>(numIcons);
+        for (int i = 0; i < numIcons; i++) {
+            CustomIcon icon = new CustomIcon();
+            icon.setProjectId("proj" + (i % 3));
+            icon.setFilename("icon" + i + ".png");
+            icon.setDataUri(dataUri);
+            icon.setWidth(48);
+            icon.setHeight(48);
+            customIcons.add(icon);
+        }
+    }
+
+    @Benchmark
+    public String cssify() {
+        return cssGenerator.cssify(customIcons);
+    }
+}
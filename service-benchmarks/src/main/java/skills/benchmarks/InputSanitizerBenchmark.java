@@ -0,0 +1,47 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import skills.utils.InputSanitizer;
+
+/**
+ * Sanitization applied to every user provided name, description and url.
+ */
+@State(Scope.Benchmark)
+public class InputSanitizerBenchmark {
+
+    private final String name = "Very Important Skill & Friends";
+    private final String markdown = "# Overview\n\nThis **skill** covers <b>the basics</b> of _everything_ you need to know, " +
+            "see [docs](https://docs.example.com/some path/page?x=1&y=2) for more details.\n\n" +
+            "* first item\n* second item <script>alert('xss')</script>\n\n> quoted text with a < b and a > c\n";
+    private final String url = "https://docs.example.com/some path/page?x=1&y=2#section";
+
+    @Benchmark
+    public String sanitizeName() {
+        return InputSanitizer.unsanitizeName(InputSanitizer.sanitize(name));
+    }
+
+    @Benchmark
+    public String sanitizeDescription() {
+        return InputSanitizer.unsanitizeForMarkdown(InputSanitizer.sanitize(markdown));
+    }
+
+    @Benchmark
+    public String sanitizeUrl() {
+        return InputSanitizer.sanitizeUrl(url);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import skills.services.events.SkillDate;
+import skills.tasks.JsonSerializer;
+import skills.tasks.data.ImportedSkillAchievement;
+
+import java.util.Date;
+
+/**
+ * (De)serialization of the db-scheduled task data, imported skill achievements are scheduled for every
+ * event reported against a skill that was exported to the catalog.
+ */
+@State(Scope.Benchmark)
+public class JsonSerializerBenchmark {
+
+    private final JsonSerializer jsonSerializer = new JsonSerializer();
+    private ImportedSkillAchievement task;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() {
+        SkillDate skillDate = new SkillDate();
+        skillDate.setDate(new Date());
+        skillDate.setIsProvided(true);
+
+        task = new ImportedSkillAchievement();
+        task.setUuid("2c3e7a8e-5a0e-4c0e-9a5e-3f2a1b0c9d8e");
+        task.setUserId("user1");
+        task.setRawSkillId(1234);
+        task.setIncomingSkillDate(skillDate);
+        task.setThisRequestCompletedOriginalSkill(true);
+
+        serialized = jsonSerializer.serialize(task);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return jsonSerializer.serialize(task);
+    }
+
+    @Benchmark
+    public ImportedSkillAchievement deserialize() {
+        return jsonSerializer.deserialize(ImportedSkillAchievement.class, serialized);
+    }
+}
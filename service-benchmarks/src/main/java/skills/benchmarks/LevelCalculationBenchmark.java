@@ -0,0 +1,68 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import skills.controller.result.model.SettingsResult;
+import skills.services.LevelDefinitionStorageService;
+import skills.services.settings.SettingsService;
+import skills.storage.model.LevelDef;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Level calculation performed for every reported skill event and every client display load.
+ */
+@State(Scope.Benchmark)
+public class LevelCalculationBenchmark {
+
+    @Param({"5", "25"})
+    int numLevels;
+
+    @Param({"0", "4321", "10000"})
+    int currentScore;
+
+    private final int totalPoints = 10000;
+
+    private LevelDefinitionStorageService levelDefinitionStorageService;
+    private List<LevelDef> levelDefs;
+
+    @Setup
+    public void setup() {
+        levelDefinitionStorageService = new LevelDefinitionStorageService();
+        levelDefinitionStorageService.setSettingsService(new SettingsService() {
+            @Override
+            public SettingsResult getProjectSetting(String projectId, String setting) {
+                // percentage based levels
+                return null;
+            }
+        });
+
+        levelDefs = new ArrayList<>(numLevels);
+        for (int i = 1; i <= numLevels; i++) {
+            LevelDef levelDef = new LevelDef();
+            levelDef.setLevel(i);
+            levelDef.setPercent(Math.max(1, (int) (92.0 * i / numLevels)));
+            levelDefs.add(levelDef);
+        }
+    }
+
+    @Benchmark
+    public LevelDefinitionStorageService.LevelInfo getLevelInfo() {
+        return levelDefinitionStorageService.getLevelInfo("proj", levelDefs, totalPoints, currentScore);
+    }
+}
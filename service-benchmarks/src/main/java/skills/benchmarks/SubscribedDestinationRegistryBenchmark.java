@@ -0,0 +1,77 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import skills.websocket.SubscribedDestinationRegistry;
+
+import java.util.List;
+
+/**
+ * Destination lookups performed for every published skill update that is not bound to a single project,
+ * along with the subscribe/disconnect bookkeeping, under concurrent access.
+ */
+@State(Scope.Benchmark)
+public class SubscribedDestinationRegistryBenchmark {
+
+    @Param({"1000"})
+    int numUsers;
+
+    @Param({"4"})
+    int destinationsPerUser;
+
+    private SubscribedDestinationRegistry registry;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        registry = new SubscribedDestinationRegistry();
+        for (int user = 0; user < numUsers; user++) {
+            for (int destination = 0; destination < destinationsPerUser; destination++) {
+                registry.add(userId(user), sessionId(user), "/user/queue/proj" + destination + "-skill-updates");
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<String> getDestinationsForUser(ThreadState threadState) {
+        return registry.getDestinationsForUser(userId(threadState.next++ % numUsers));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void subscribeAndDisconnect(ThreadState threadState, Blackhole blackhole) {
+        // use users outside of the pre-populated range so that lookups are not affected
+        int user = numUsers + (threadState.next++ % numUsers);
+        registry.add(userId(user), sessionId(user), "/user/queue/proj-skill-updates");
+        blackhole.consume(registry.getDestinationsForUser(userId(user)));
+        registry.remove(userId(user), sessionId(user));
+    }
+
+    private static String userId(int user) {
+        return "user" + user;
+    }
+
+    private static String sessionId(int user) {
+        return "session" + user;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services;
+
+import org.openjdk.jmh.annotations.*;
+import skills.storage.model.DayCount;
+import skills.storage.model.DayCountItem;
+import skills.storage.model.EventType;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of the aggregated user event query results into zero filled series used by the metrics charts.
+ * Lives in the service's package as the conversion is only reachable through the repository backed metric methods.
+ */
+@State(Scope.Benchmark)
+public class UserEventMetricsBenchmark {
+
+    @Param({"30", "365"})
+    int numDays;
+
+    // every n-th day has no events and has to be zero filled
+    @Param({"3"})
+    int gapEvery;
+
+    private UserEventService userEventService;
+    private List<DayCountItem> dailyCounts;
+    private Date startOfQueryRange;
+    private Date newest;
+    private Date oldest;
+
+    @Setup
+    public void setup() {
+        userEventService = new UserEventService();
+
+        Date today = StartDateUtil.computeStartDate(new Date(), EventType.DAILY);
+        dailyCounts = new ArrayList<>(numDays);
+        // query results are ordered newest first
+        for (int i = 0; i < numDays; i++) {
+            if (i % gapEvery != 0) {
+                dailyCounts.add(new DayCount(new Date(today.getTime() - TimeUnit.DAYS.toMillis(i)), (long) i));
+            }
+        }
+        startOfQueryRange = new Date(today.getTime() - TimeUnit.DAYS.toMillis(numDays));
+        newest = today;
+        oldest = startOfQueryRange;
+    }
+
+    @Benchmark
+    public List<DayCountItem> convertDailyResults() {
+        return userEventService.convertResults(dailyCounts.stream(), EventType.DAILY, startOfQueryRange);
+    }
+
+    @Benchmark
+    public List<DayCountItem> zeroFillDailyGaps() {
+        return ZeroFillDayCountItemUtil.zeroFillDailyGaps(newest, oldest, true);
+    }
+
+    @Benchmark
+    public List<DayCountItem> zeroFillWeeklyGaps() {
+        return ZeroFillDayCountItemUtil.zeroFillWeeklyGaps(newest, oldest, true);
+    }
+}
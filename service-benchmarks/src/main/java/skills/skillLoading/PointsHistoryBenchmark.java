@@ -0,0 +1,63 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.skillLoading;
+
+import org.openjdk.jmh.annotations.*;
+import skills.skillLoading.model.SkillHistoryPoints;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point history built for the client display point history chart.
+ * Lives in the builder's package as the history is only reachable through the repository backed buildHistory.
+ */
+@State(Scope.Benchmark)
+public class PointsHistoryBenchmark {
+
+    @Param({"30", "365", "1825"})
+    int numDaysWithPoints;
+
+    @Param({"1825"})
+    int showHistoryForNumDays;
+
+    private PointsHistoryBuilder pointsHistoryBuilder;
+    private Map<Date, Long> pointsByDay;
+
+    @Setup
+    public void setup() {
+        pointsHistoryBuilder = new PointsHistoryBuilder();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long today = calendar.getTimeInMillis();
+
+        pointsByDay = new LinkedHashMap<>();
+        // only every other day has points, the rest is filled in by the builder
+        for (int i = 0; i < numDaysWithPoints; i++) {
+            pointsByDay.put(new Date(today - TimeUnit.DAYS.toMillis(i * 2L)), 10L);
+        }
+    }
+
+    @Benchmark
+    public List<SkillHistoryPoints> buildHistory() {
+        // the builder mutates the provided map so every invocation needs its own copy
+        return pointsHistoryBuilder.doBuildHistory(new LinkedHashMap<>(pointsByDay), numDaysWithPoints, showHistoryForNumDays);
+    }
+}
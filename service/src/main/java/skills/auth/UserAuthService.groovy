@@ -59,6 +59,9 @@ class UserAuthService {
     @Autowired
     UserAttrsRepo userAttrsRepo
 
+    @Autowired
+    UserRecordsCache userRecordsCache
+
     @Autowired
     AccessSettingsStorageService accessSettingsStorageService
 
@@ -83,7 +86,7 @@ class UserAuthService {
 
     @Transactional(readOnly = true)
     Collection<GrantedAuthority> loadAuthorities(String userId) {
-        List<UserRole> userRoles = userRoleRepo.findAllByUserId(userId?.toLowerCase())
+        List<UserRole> userRoles = userRecordsCache.get(userId).roles
         return convertRoles(userRoles)
     }
 
@@ -91,10 +94,9 @@ class UserAuthService {
     @Profile
     UserInfo loadByUserId(String userId) {
         UserInfo userInfo
-        User user = userRepository.findByUserId(userId?.toLowerCase())
-        if (user) {
-            UserAttrs userAttrs = userAttrsRepo.findByUserId(userId?.toLowerCase())
-            userInfo = createUserInfo(user, userAttrs)
+        UserRecordsCache.Entry userRecords = userRecordsCache.get(userId)
+        if (userRecords.user) {
+            userInfo = createUserInfo(userRecords.user, userRecords.userAttrs, userRecords.roles)
             if (verifyEmailAddresses) {
                 userInfo.accountNonLocked = userInfo.emailVerified
             }
@@ -103,7 +105,10 @@ class UserAuthService {
     }
 
     private UserInfo createUserInfo(User user, UserAttrs userAttrs) {
-        List<UserRole> userRoles = userRoleRepo.findAllByUserId(user.userId.toLowerCase())
+        return createUserInfo(user, userAttrs, userRecordsCache.get(user.userId).roles)
+    }
+
+    private UserInfo createUserInfo(User user, UserAttrs userAttrs, List<UserRole> userRoles) {
         return new UserInfo (
                 username: user.userId,
                 password: user.password,
@@ -144,6 +144,17 @@ class UserInfoService {
         return userNameRes?.toLowerCase()
     }
 
+    /**
+     * Resolves many user DNs at once (PKI mode only) so that subsequent {@link #getUserName} calls for
+     * these users are served from the lookup cache
+     */
+    @Profile
+    void prefetchUsers(Collection<String> userIdParams, String idType = DN_IDTYPE) {
+        if (authMode == AuthMode.PKI && ID_IDTYPE != idType?.toUpperCase() && userIdParams) {
+            pkiUserLookup.lookupUserDns(userIdParams)
+        }
+    }
+
     /**
      * @param userKey - this will be the user's DN in PKI authMode, or the actual userId in FORM authMode
      * @return return the correct userKey based on authMode,
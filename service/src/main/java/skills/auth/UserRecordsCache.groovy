@@ -0,0 +1,149 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.auth
+
+import callStack.profiler.Profile
+import com.github.benmanes.caffeine.cache.Caffeine
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.GenerationGuardedCache
+import skills.storage.model.UserAttrs
+import skills.storage.model.auth.User
+import skills.storage.model.auth.UserRole
+import skills.storage.repos.UserAttrsRepo
+import skills.storage.repos.UserRepo
+import skills.storage.repos.UserRoleRepo
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+
+/**
+ * Near-cache of the users, user_attrs and user_roles records of a user so that authentication and user bookkeeping
+ * do not query all three tables on every request.
+ *
+ * Entries hold detached copies of the records and must not be modified. Every save or removal of these records is
+ * distributed cluster-wide through {@link CacheInvalidationService} by {@link UserRecordsChangeListener}; roles are
+ * not converted to authorities here as that depends on the current request (see {@link UserAuthService}).
+ */
+@Component
+@Slf4j
+@CompileStatic
+class UserRecordsCache extends GenerationGuardedCache<String, Entry> {
+
+    static final String CACHE_NAME = 'userRecords'
+
+    @Value('#{"${skills.config.userRecordsCache.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.userRecordsCache.maxNumEntries:50000}"}')
+    Integer maxNumEntries
+
+    @Value('#{"${skills.config.userRecordsCache.expireAfterWrite:PT10M}"}')
+    String expireAfterWrite
+
+    @Autowired
+    UserRepo userRepo
+
+    @Autowired
+    UserAttrsRepo userAttrsRepo
+
+    @Autowired
+    UserRoleRepo userRoleRepo
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    static class Entry {
+        // null if the user does not exist
+        final User user
+        final UserAttrs userAttrs
+        final List<UserRole> roles
+
+        Entry(User user, UserAttrs userAttrs, List<UserRole> roles) {
+            this.user = user
+            this.userAttrs = userAttrs
+            this.roles = roles
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        entries = Caffeine.newBuilder()
+                .maximumSize(maxNumEntries)
+                .expireAfterWrite(Duration.parse(expireAfterWrite))
+                .build()
+        cacheInvalidationService.register(this)
+        log.info("User records cache: enabled=[{}], maxNumEntries=[{}], expireAfterWrite=[{}]", enabled, maxNumEntries, expireAfterWrite)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    @Override
+    protected boolean isCachingEnabled() {
+        return enabled
+    }
+
+    @Profile
+    Entry get(String userId) {
+        String key = userId?.toLowerCase()
+        return getOrLoad(key) { load(key) }
+    }
+
+    /**
+     * Invalidates the user's entry on all nodes, null invalidates all of the users
+     */
+    void userChanged(String userId) {
+        cacheInvalidationService.invalidate(CACHE_NAME, userId?.toLowerCase())
+    }
+
+    private Entry load(String userId) {
+        User user = userRepo.findByUserId(userId)
+        UserAttrs userAttrs = userAttrsRepo.findByUserId(userId)
+        List<UserRole> roles = user ? userRoleRepo.findAllByUserId(userId) : []
+        return new Entry(copy(user), copy(userAttrs), Collections.unmodifiableList(roles.collect { copy(it) }))
+    }
+
+    private static User copy(User user) {
+        return user ? new User(id: user.id, userId: user.userId, password: user.password) : null
+    }
+
+    private static UserAttrs copy(UserAttrs userAttrs) {
+        return userAttrs ? new UserAttrs(
+                id: userAttrs.id,
+                userId: userAttrs.userId,
+                firstName: userAttrs.firstName,
+                lastName: userAttrs.lastName,
+                email: userAttrs.email,
+                dn: userAttrs.dn,
+                nickname: userAttrs.nickname,
+                userIdForDisplay: userAttrs.userIdForDisplay,
+                created: userAttrs.created,
+                userTagsLastUpdated: userAttrs.userTagsLastUpdated,
+                emailVerified: userAttrs.emailVerified,
+        ) : null
+    }
+
+    private static UserRole copy(UserRole userRole) {
+        return new UserRole(id: userRole.id, userRefId: userRole.userRefId, userId: userRole.userId, projectId: userRole.projectId, roleName: userRole.roleName)
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.auth
+
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.context.annotation.Lazy
+import skills.storage.model.ProjDefParent
+import skills.storage.model.UserAttrs
+import skills.storage.model.auth.User
+import skills.storage.model.auth.UserRole
+
+import javax.persistence.PostPersist
+import javax.persistence.PostRemove
+import javax.persistence.PostUpdate
+
+/**
+ * JPA entity listener that invalidates {@link UserRecordsCache} whenever a user's records are saved or removed;
+ * removing a project cascades to the roles of its users so all of the users are invalidated.
+ * Instantiated by Hibernate through Spring's bean container.
+ */
+@CompileStatic
+class UserRecordsChangeListener {
+
+    @Lazy
+    @Autowired
+    UserRecordsCache userRecordsCache
+
+    @PostPersist
+    @PostUpdate
+    void userRecordSaved(Object entity) {
+        if (entity instanceof User) {
+            userRecordsCache.userChanged(((User) entity).userId)
+        } else if (entity instanceof UserAttrs) {
+            userRecordsCache.userChanged(((UserAttrs) entity).userId)
+        } else if (entity instanceof UserRole) {
+            userRecordsCache.userChanged(((UserRole) entity).userId)
+        }
+    }
+
+    @PostRemove
+    void userRecordRemoved(Object entity) {
+        if (entity instanceof ProjDefParent) {
+            userRecordsCache.userChanged(null)
+        } else {
+            userRecordSaved(entity)
+        }
+    }
+}
@@ -20,7 +20,6 @@ import org.apache.http.client.HttpClient
 import org.apache.http.client.config.RequestConfig
 import org.apache.http.config.RegistryBuilder
 import org.apache.http.conn.socket.PlainConnectionSocketFactory
-import org.apache.http.conn.ssl.NoopHostnameVerifier
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory
 import org.apache.http.impl.client.CloseableHttpClient
 import org.apache.http.impl.client.HttpClients
@@ -36,12 +35,11 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory
 import org.springframework.web.client.RestTemplate
 import skills.auth.SecurityMode
 
-import javax.net.ssl.HostnameVerifier
 import javax.net.ssl.SSLContext
 
 /**
- * This Configuration exposes a RestTemplate the uses a apache HttpClient 4.5.  This RestTemplate can be @Autowrired
- * if you need an of the HttpClient customization, but is not currently being used.
+ * This Configuration exposes a RestTemplate the uses a apache HttpClient 4.5 with pooled connections; it is used by
+ * {@link PkiUserLookup} to talk to the user-info-service.
  */
 @Slf4j
 @Configuration
@@ -66,13 +64,11 @@ class HttpClientRestTemplateConfig {
 
     @Bean
     PoolingHttpClientConnectionManager poolingHttpClientConnectionManager() {
+        // JVM default protocols and cipher suites, and the user-info-service certificate must match its host name
         SSLContext sslContext = SSLContexts.createSystemDefault()
-        HostnameVerifier allowAllHosts = new NoopHostnameVerifier();
         SSLConnectionSocketFactory sslConnectionSocketFactory = new SSLConnectionSocketFactory(
                 sslContext,
-                ['TLSv1.2'] as String[],
-                null,
-                allowAllHosts);
+                SSLConnectionSocketFactory.getDefaultHostnameVerifier())
 
         PoolingHttpClientConnectionManager result =
                 new PoolingHttpClientConnectionManager(RegistryBuilder.create()
@@ -97,7 +93,7 @@ class HttpClientRestTemplateConfig {
     @Bean
     CloseableHttpClient httpClient(PoolingHttpClientConnectionManager poolingHttpClientConnectionManager, RequestConfig requestConfig) {
         CloseableHttpClient result = HttpClients.custom()
-                .setSSLHostnameVerifier(new NoopHostnameVerifier())
+                .setSSLHostnameVerifier(SSLConnectionSocketFactory.getDefaultHostnameVerifier())
                 .useSystemProperties()
                 .setConnectionManager(poolingHttpClientConnectionManager)
                 .setDefaultRequestConfig(requestConfig)
@@ -16,17 +16,25 @@
 package skills.auth.pki
 
 import callStack.profiler.Profile
-import com.google.common.cache.CacheBuilder
-import com.google.common.cache.CacheLoader
-import com.google.common.cache.CacheStats
-import com.google.common.cache.LoadingCache
+import com.github.benmanes.caffeine.cache.CacheLoader
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.Expiry
+import com.github.benmanes.caffeine.cache.LoadingCache
+import com.github.benmanes.caffeine.cache.Ticker
 import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics
+import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.context.annotation.Conditional
 import org.springframework.core.ParameterizedTypeReference
+import org.springframework.http.HttpEntity
 import org.springframework.http.HttpMethod
 import org.springframework.http.ResponseEntity
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
 import org.springframework.stereotype.Component
+import org.springframework.web.client.HttpClientErrorException
 import org.springframework.web.client.RestTemplate
 import skills.auth.SecurityMode
 import skills.auth.UserInfo
@@ -34,19 +42,49 @@ import skills.controller.exceptions.SkillException
 
 import javax.annotation.PostConstruct
 import javax.annotation.PreDestroy
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import java.util.concurrent.TimeUnit
 
+/**
+ * Resolves user DNs via the user-info-service.
+ *
+ * Lookups are cached; entries are refreshed in the background before they expire so that the request that
+ * happens to arrive after the expiration does not pay for the remote call, and DNs unknown to the service are
+ * remembered for a short period of time. Many DNs can be resolved at once via {@link #lookupUserDns}, which uses
+ * the bulk endpoint when one is configured and parallel lookups on pooled connections otherwise.
+ */
 @Component
 @Conditional(SecurityMode.PkiAuth)
 @Slf4j
 class PkiUserLookup {
 
-//    use @Autowired if you want to utilize apache HttpClient (see HttpClientRestTemplateConfig)
-    RestTemplate restTemplate = new RestTemplate()
+    static final String CACHE_NAME = 'userInfo'
+
+    // pooled apache HttpClient, see HttpClientRestTemplateConfig
+    @Autowired
+    RestTemplate restTemplate
+
+    @Autowired
+    MeterRegistry meterRegistry
 
     @Value('${skills.authorization.userInfoUri}')
     String userInfoUri
 
+    // optional; POST of a json array of DNs which must respond with a json array of the found users
+    @Value('${skills.authorization.userInfoBulkUri:}')
+    String userInfoBulkUri
+
+    @Value('#{"${skills.authorization.userInfoBulkBatchSize:100}"}')
+    Integer bulkBatchSize
+
+    // threads used for background refreshes and for parallel lookups when the bulk endpoint is not configured
+    @Value('#{"${skills.authorization.userInfoLookupThreads:8}"}')
+    Integer lookupThreads
+
     @Value('${skills.authorization.userQueryUri}')
     String userQueryUri
 
@@ -59,52 +97,180 @@ class PkiUserLookup {
     @Value('#{"${skills.authorization.userInfoCache.expiration.hours:24}"}')
     Long cacheExpirationHours
 
+    // percent of the expiration after which an accessed entry is refreshed in the background, 0 disables
+    @Value('#{"${skills.authorization.userInfoCache.refreshAheadPercent:80}"}')
+    Integer refreshAheadPercent
+
+    @Value('#{"${skills.authorization.userInfoCache.negative.expiration.seconds:60}"}')
+    Long negativeCacheExpirationSeconds
+
     @Value('#{"${skills.authorization.userInfoCache.maxSize:10000}"}')
     Long cacheMaxSize
 
-    LoadingCache userInfoCache
+    Ticker ticker = Ticker.systemTicker()
+
+    LoadingCache<String, CachedUserInfo> userInfoCache
+
+    private ExecutorService lookupPool
+    private Timer singleLookupTimer
+    private Timer bulkLookupTimer
 
-    private Timer timer
+    /**
+     * Either the found user or the error of a lookup for a DN that the user-info-service does not know about
+     */
+    static class CachedUserInfo {
+        UserInfo userInfo
+        RuntimeException notFound
+    }
 
     @PostConstruct
     void configureCache() {
-        userInfoCache = CacheBuilder.newBuilder().expireAfterWrite(cacheExpirationHours, TimeUnit.HOURS).maximumSize(cacheMaxSize).recordStats().build(new CacheLoader<String, UserInfo>() {
+        lookupPool = Executors.newFixedThreadPool(lookupThreads, new CustomizableThreadFactory('user-info-lookup-'))
+        singleLookupTimer = Timer.builder('skills.userInfo.lookup').tag('type', 'single').register(meterRegistry)
+        bulkLookupTimer = Timer.builder('skills.userInfo.lookup').tag('type', 'bulk').register(meterRegistry)
+
+        long expirationNanos = TimeUnit.HOURS.toNanos(cacheExpirationHours)
+        long negativeExpirationNanos = TimeUnit.SECONDS.toNanos(negativeCacheExpirationSeconds)
+        Caffeine<String, CachedUserInfo> builder = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<String, CachedUserInfo>() {
+                    @Override
+                    long expireAfterCreate(String dn, CachedUserInfo value, long currentTime) {
+                        return value.userInfo ? expirationNanos : negativeExpirationNanos
+                    }
+
+                    @Override
+                    long expireAfterUpdate(String dn, CachedUserInfo value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(dn, value, currentTime)
+                    }
+
+                    @Override
+                    long expireAfterRead(String dn, CachedUserInfo value, long currentTime, long currentDuration) {
+                        return currentDuration
+                    }
+                })
+                .executor(lookupPool)
+                .ticker(ticker)
+                .recordStats()
+        if (refreshAheadPercent > 0) {
+            builder.refreshAfterWrite((long) (expirationNanos * refreshAheadPercent / 100), TimeUnit.NANOSECONDS)
+        }
+        userInfoCache = builder.build(new CacheLoader<String, CachedUserInfo>() {
             @Override
-            UserInfo load(String dn) throws Exception {
-                UserInfo userInfo = restTemplate.getForObject(userInfoUri, UserInfo, dn)
-                validate(userInfo, dn)
-                return userInfo
+            CachedUserInfo load(String dn) throws Exception {
+                return loadSingle(dn)
+            }
+
+            @Override
+            Map<String, CachedUserInfo> loadAll(Set<? extends String> dns) throws Exception {
+                return PkiUserLookup.this.loadAll(dns)
             }
         })
+        CaffeineCacheMetrics.monitor(meterRegistry, userInfoCache, CACHE_NAME)
 
-        if (log.isDebugEnabled()) {
-            timer = new Timer()
-            timer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                void run() {
-                    printCacheStats()
-                }
-            }, TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(5))
-        }
+        log.info("User info cache: expiration=[{}h], refreshAheadPercent=[{}], negativeExpiration=[{}s], maxSize=[{}], bulkUri=[{}], lookupThreads=[{}]",
+                cacheExpirationHours, refreshAheadPercent, negativeCacheExpirationSeconds, cacheMaxSize, userInfoBulkUri, lookupThreads)
     }
 
     @PreDestroy
     void destroy(){
-        if (timer != null) {
-            timer.cancel();
-            timer.purge();
-        }
+        lookupPool?.shutdownNow()
     }
 
     @Profile
     UserInfo lookupUserDn(String dn) {
-        UserInfo userInfo = userInfoCache.getUnchecked(dn)
-        return userInfo
+        CachedUserInfo cached = userInfoCache.get(dn)
+        if (cached.notFound) {
+            throw cached.notFound
+        }
+        return cached.userInfo
+    }
+
+    /**
+     * @return users keyed by DN; DNs that are unknown or failed to load are not present in the result
+     */
+    @Profile
+    Map<String, UserInfo> lookupUserDns(Collection<String> dns) {
+        Map<String, UserInfo> res = [:]
+        userInfoCache.getAll(dns.unique(false)).each { String dn, CachedUserInfo cached ->
+            if (cached.userInfo) {
+                res.put(dn, cached.userInfo)
+            }
+        }
+        return res
     }
 
-    void printCacheStats() {
-        CacheStats stats = userInfoCache.stats()
-        log.debug("\n\nCacheStats: \n${stats}\n\n")
+    private CachedUserInfo loadSingle(String dn) {
+        long start = System.nanoTime()
+        try {
+            UserInfo userInfo = restTemplate.getForObject(userInfoUri, UserInfo, dn)
+            validate(userInfo, dn)
+            return new CachedUserInfo(userInfo: userInfo)
+        } catch (SkillException e) {
+            // user-info-service does not know about this DN
+            return new CachedUserInfo(notFound: e)
+        } catch (HttpClientErrorException.NotFound e) {
+            return new CachedUserInfo(notFound: e)
+        } finally {
+            singleLookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+        }
+    }
+
+    private Map<String, CachedUserInfo> loadAll(Set<? extends String> dns) {
+        Map<String, CachedUserInfo> res = [:]
+        if (userInfoBulkUri) {
+            dns.collate(bulkBatchSize).each { List<String> batch ->
+                res.putAll(loadBatch(batch))
+            }
+        } else {
+            Map<String, Future<CachedUserInfo>> futures = dns.collectEntries { String dn ->
+                [(dn): lookupPool.submit({ loadSingle(dn) } as Callable<CachedUserInfo>)]
+            }
+            futures.each { String dn, Future<CachedUserInfo> future ->
+                try {
+                    res.put(dn, future.get())
+                } catch (ExecutionException e) {
+                    // not cached, the next lookup of this DN will try again
+                    log.warn("user-info-service lookup failed for [{}]: {}", dn, e.cause?.message)
+                }
+            }
+        }
+        return res
+    }
+
+    private Map<String, CachedUserInfo> loadBatch(List<String> dns) {
+        long start = System.nanoTime()
+        List<UserInfo> found
+        try {
+            ResponseEntity<List<UserInfo>> response = restTemplate.exchange(
+                    userInfoBulkUri,
+                    HttpMethod.POST,
+                    new HttpEntity<List<String>>(dns),
+                    new ParameterizedTypeReference<List<UserInfo>>() {})
+            found = response.getBody() ?: []
+        } catch (Exception e) {
+            // not cached, the next lookup of these DNs will try again
+            log.warn("user-info-service bulk lookup of [{}] DNs failed: {}", dns.size(), e.message)
+            return [:]
+        } finally {
+            bulkLookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+        }
+
+        Map<String, UserInfo> foundByDn = [:]
+        found.each { UserInfo userInfo ->
+            if (userInfo?.userDn) {
+                foundByDn.put(userInfo.userDn.toLowerCase(), userInfo)
+            }
+        }
+        return dns.collectEntries { String dn ->
+            UserInfo userInfo = foundByDn.get(dn.toLowerCase())
+            try {
+                validate(userInfo, dn)
+                return [(dn): new CachedUserInfo(userInfo: userInfo)]
+            } catch (SkillException e) {
+                return [(dn): new CachedUserInfo(notFound: e)]
+            }
+        }
     }
 
     @Profile
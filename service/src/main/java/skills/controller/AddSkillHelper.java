@@ -21,7 +21,9 @@ import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import skills.PublicProps;
 import skills.auth.UserInfoService;
@@ -29,12 +31,17 @@ import skills.controller.exceptions.ErrorCode;
 import skills.controller.exceptions.SkillException;
 import skills.controller.exceptions.SkillsValidator;
 import skills.controller.request.model.SkillEventRequest;
+import skills.controller.request.model.SkillEventsRequest;
 import skills.services.ProjectErrorService;
+import skills.services.events.AcceptedSkillEvent;
 import skills.services.events.SkillEventResult;
+import skills.services.events.SkillEventsIngestionQueue;
 import skills.services.events.SkillEventsService;
 import skills.utils.RetryUtil;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 @Component
@@ -50,6 +57,10 @@ public class AddSkillHelper {
     SkillEventsService skillsManagementFacade;
     @Autowired
     ProjectErrorService projectErrorService;
+    @Autowired
+    SkillEventsIngestionQueue skillEventsIngestionQueue;
+    @Value("${skills.config.maxSkillEventsPerRequest:500}")
+    Integer maxSkillEventsPerRequest;
 
     public SkillEventResult addSkill(String projectId, String skillId, SkillEventRequest skillEventRequest) {
         String requestedUserId = skillEventRequest != null ? skillEventRequest.getUserId() : null;
@@ -78,6 +89,10 @@ public class AddSkillHelper {
                     new String[]{projectId, skillId, userInfoService.getCurrentUserId(), requestedUserId, toDateString(requestedTimestamp), isRetry.toString()});
         }
 
+        if (skillEventRequest != null && Boolean.TRUE.equals(skillEventRequest.getAsync())) {
+            return acceptForAsyncIngestion(projectId, skillId, userId, incomingDate, skillEventRequest);
+        }
+
         String prof = "retry-reportSkill";
         CProf.start(prof);
         try {
@@ -102,6 +117,77 @@ public class AddSkillHelper {
         return result;
     }
 
+    public List<SkillEventResult> addSkills(String projectId, SkillEventsRequest skillEventsRequest) {
+        List<SkillEventsRequest.Event> events = skillEventsRequest.getEvents();
+        SkillsValidator.isNotEmpty(events, "events", projectId);
+        SkillsValidator.isTrue(events.size() <= maxSkillEventsPerRequest, String.format("number of events cannot exceed %d", maxSkillEventsPerRequest), projectId);
+
+        String userId = userInfoService.getUserName(skillEventsRequest.getUserId(), false, skillEventsRequest.getIdType());
+        List<AcceptedSkillEvent> acceptedEvents = new ArrayList<>(events.size());
+        for (SkillEventsRequest.Event event : events) {
+            SkillsValidator.isNotBlank(event.getSkillId(), "skillId", projectId);
+            Date incomingDate = null;
+            if (event.getTimestamp() != null && event.getTimestamp() > 0) {
+                //let's account for some possible clock drift
+                SkillsValidator.isTrue(event.getTimestamp() <= (System.currentTimeMillis() + 30000), "Skill Events may not be in the future", projectId, event.getSkillId());
+                incomingDate = new Date(event.getTimestamp());
+            }
+            AcceptedSkillEvent acceptedEvent = new AcceptedSkillEvent();
+            acceptedEvent.setProjectId(projectId);
+            acceptedEvent.setSkillId(event.getSkillId());
+            acceptedEvent.setUserId(userId);
+            acceptedEvent.setIncomingSkillDate(incomingDate);
+            acceptedEvents.add(acceptedEvent);
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("ReportSkills (ProjectId=[{}], NumEvents=[{}], CurrentUser=[{}], RequestUser=[{}], IsRetry=[{}])",
+                    new String[]{projectId, String.valueOf(events.size()), userInfoService.getCurrentUserId(), skillEventsRequest.getUserId(), String.valueOf(skillEventsRequest.getIsRetry())});
+        }
+
+        String prof = "retry-reportSkills";
+        CProf.start(prof);
+        try {
+            Closure<List<SkillEventResult>> closure = new Closure<List<SkillEventResult>>(null) {
+                @Override
+                public List<SkillEventResult> call() {
+                    return skillsManagementFacade.reportSkillsForUser(projectId, userId, skillEventsRequest.getNotifyIfSkillNotApplied(), acceptedEvents);
+                }
+            };
+            return (List<SkillEventResult>) RetryUtil.withRetry(3, false, closure);
+        } catch(SkillException ske) {
+            if (ske.getErrorCode() == ErrorCode.SkillNotFound && StringUtils.isNotBlank(ske.getSkillId())) {
+                projectErrorService.invalidSkillReported(projectId, ske.getSkillId());
+            }
+            throw ske;
+        } finally {
+            CProf.stop(prof);
+        }
+    }
+
+    private SkillEventResult acceptForAsyncIngestion(String projectId, String skillId, String userId, Date incomingDate, SkillEventRequest skillEventRequest) {
+        SkillsValidator.isTrue(skillEventsIngestionQueue.isEnabled(), "Asynchronous skill event reporting is not enabled", projectId, skillId);
+
+        AcceptedSkillEvent event = new AcceptedSkillEvent();
+        event.setProjectId(projectId);
+        event.setSkillId(skillId);
+        event.setUserId(userId);
+        event.setIncomingSkillDate(incomingDate);
+        if (skillEventRequest.getApprovalRequestedMsg() != null) {
+            event.setSkillApprovalParams(new SkillEventsService.SkillApprovalParams(skillEventRequest.getApprovalRequestedMsg()));
+        }
+        String receiptId = skillEventsIngestionQueue.accept(event);
+
+        SkillEventResult result = new SkillEventResult();
+        result.setProjectId(projectId);
+        result.setSkillId(skillId);
+        result.setSkillApplied(false);
+        result.setReceiptId(receiptId);
+        result.setDurable(false);
+        result.setExplanation("Skill event was queued in memory for asynchronous processing, it is not yet persisted; the result will be published under the provided receipt id");
+        return result;
+    }
+
     private String toDateString(Long timestamp) {
         if (timestamp != null) {
             return DTF.print(timestamp);
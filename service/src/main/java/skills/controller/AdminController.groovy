@@ -174,6 +174,20 @@ class AdminController {
         return new RequestResult(success: true)
     }
 
+    @RequestMapping(value = "/projects/{id}/copy/async", method = [RequestMethod.PUT, RequestMethod.POST], produces = "application/json")
+    @ResponseBody
+    ProjectCopyInfoResult copyProjectAsync(@PathVariable("id") String projectId, @RequestBody ProjectRequest projectRequest) {
+        projectRequest = controllerPropsValidatorAndSanitizer.validateAndSanitizeProjectRequest(projectRequest)
+        projectId = controllerPropsValidatorAndSanitizer.validateAndSanitizeProjectId(projectId)
+        return projectCopyService.startCopy(projectId, projectRequest)
+    }
+
+    @RequestMapping(value = "/projects/{id}/copy/{jobId}/info", method = [RequestMethod.GET], produces = "application/json")
+    ProjectCopyInfoResult getProjectCopyInfo(@PathVariable("id") String projectId, @PathVariable("jobId") Integer jobId) {
+        SkillsValidator.isNotBlank(projectId, "Project Id")
+        return projectCopyService.getCopyInfo(projectId, jobId)
+    }
+
     @RequestMapping(value = "/projects/{id}/invite", method = [RequestMethod.PUT, RequestMethod.POST], produces = "application/json")
     @ResponseBody
     InviteUsersResult generateInvite(@PathVariable("id") String projectId, @RequestBody ProjectInviteRequest inviteRequest) {
@@ -23,6 +23,7 @@ import org.springframework.web.bind.annotation.*
 import skills.HealthChecker
 import skills.UIConfigProperties
 import skills.auth.AuthMode
+import skills.icons.CustomIconFacade
 import skills.controller.result.model.SettingsResult
 import skills.profile.EnableCallStackProf
 import skills.services.AccessSettingsStorageService
@@ -70,6 +71,9 @@ class PublicConfigController {
     @Autowired
     private ClientRegistrationRepository clientRegistrationRepository;
 
+    @Autowired
+    CustomIconFacade customIconFacade
+
     @RequestMapping(value = "/config", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
     Map<String,Object> getConfig(){
@@ -113,7 +117,10 @@ class PublicConfigController {
         if (Boolean.valueOf(uiConfigProperties.dbUpgradeInProgress)) {
             res["dbUpgradeInProgress"] = uiConfigProperties.dbUpgradeInProgress
         }
+        // versions of the immutable custom icon style sheet urls (/customIconCss/{hash})
+        res["globalCustomIconCssHash"] = customIconFacade.getGlobalCss().hash
         if (projectId) {
+            res["customIconCssHash"] = customIconFacade.getCss(projectId).hash
             Map<String, String> projectSettings = settingsService.getProjectSettings(projectId, [
                     'project.displayName',
                     'subject.displayName',
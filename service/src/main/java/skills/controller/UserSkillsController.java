@@ -23,15 +23,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import skills.PublicProps;
 import skills.auth.UserInfoService;
 import skills.auth.aop.AdminOrApproverGetRequestUsersOnlyWhenUserIdSupplied;
 import skills.controller.request.model.PageVisitRequest;
 import skills.controller.request.model.SkillEventRequest;
+import skills.controller.request.model.SkillEventsRequest;
 import skills.controller.request.model.SkillsClientVersionRequest;
 import skills.controller.result.model.RequestResult;
 import skills.dbupgrade.DBUpgradeSafe;
+import skills.icons.CustomIconCssCache;
 import skills.icons.CustomIconFacade;
 import skills.services.SelfReportingService;
 import skills.services.VersionService;
@@ -39,14 +47,18 @@ import skills.services.events.SkillEventResult;
 import skills.services.events.SkillEventsService;
 import skills.skillLoading.RankingLoader;
 import skills.skillLoading.SkillsLoader;
+import skills.skillLoading.UserProjectSummaryLoader;
 import skills.skillLoading.model.*;
 import skills.utils.MetricsLogger;
 
 import javax.servlet.http.HttpServletRequest;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 @CrossOrigin(allowCredentials = "true", originPatterns = {"*"})
 @RestController
@@ -58,6 +70,8 @@ class UserSkillsController {
 
     static final DateTimeFormatter DTF = ISODateTimeFormat.dateTimeNoMillis().withLocale(Locale.ENGLISH).withZoneUTC();
 
+    private static final MediaType TEXT_CSS = new MediaType("text", "css", StandardCharsets.UTF_8);
+
     @Autowired
     private SkillEventsService skillsManagementFacade;
 
@@ -91,6 +105,9 @@ class UserSkillsController {
     @Autowired
     VersionService versionService;
 
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader;
+
     private int getProvidedVersionOrReturnDefault(Integer versionParam) {
         if (versionParam != null) {
             return versionParam;
@@ -99,6 +116,39 @@ class UserSkillsController {
         return publicProps.getInt(PublicProps.UiProp.maxSkillVersion);
     }
 
+    /**
+     * Client display keeps polling its read endpoints; responses are tagged with an ETag derived from the request and
+     * the user's data version within the project so that unchanged data is answered with 304 without loading it.
+     * The data version must be obtained before the response is loaded.
+     */
+    private boolean isNotModified(ServletWebRequest webRequest, String projectId, String userId) {
+        String dataVersion = userProjectSummaryLoader.getDataVersion(projectId, userId);
+        if (dataVersion == null) {
+            return false;
+        }
+        HttpServletRequest request = webRequest.getRequest();
+        return isNotModified(webRequest, request.getRequestURI(), request.getQueryString(), userId, dataVersion, versionService.getCurrentVersion());
+    }
+
+    /**
+     * Point history runs up to the current day so the day is part of its ETag.
+     */
+    private boolean isHistoryNotModified(ServletWebRequest webRequest, String projectId, String userId) {
+        String dataVersion = userProjectSummaryLoader.getDataVersion(projectId, userId);
+        if (dataVersion == null) {
+            return false;
+        }
+        HttpServletRequest request = webRequest.getRequest();
+        return isNotModified(webRequest, request.getRequestURI(), request.getQueryString(), userId, dataVersion, LocalDate.now().toString(), versionService.getCurrentVersion());
+    }
+
+    private boolean isNotModified(ServletWebRequest webRequest, String... etagSource) {
+        String etag = DigestUtils.md5DigestAsHex(String.join("|", etagSource).getBytes(StandardCharsets.UTF_8));
+        // browsers must re-validate every time but may keep the response
+        webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        return webRequest.checkNotModified("W/\"" + etag + "\"");
+    }
+
     @DBUpgradeSafe
     @RequestMapping(value = "/projects/{projectId}/skillsClientVersion", method = {RequestMethod.PUT, RequestMethod.POST}, produces = "application/json")
     @ResponseBody
@@ -129,7 +179,7 @@ class UserSkillsController {
     @RequestMapping(value = "/projects/{projectId}/summary", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
     @Profile
-    public OverallSkillSummary getSkillsSummary(HttpServletRequest request,
+    public OverallSkillSummary getSkillsSummary(ServletWebRequest webRequest,
                                                 @PathVariable("projectId") String projectId,
                                                 @RequestParam(name = "userId", required = false) String userIdParam,
                                                 @RequestParam(name = "version", required = false) Integer version,
@@ -137,6 +187,9 @@ class UserSkillsController {
         String userId = userInfoService.getUserName(userIdParam, true, idType);
 
         log.debug("userId is {} and userIdParam is {}", userId, userIdParam);
+        if (isNotModified(webRequest, projectId, userId)) {
+            return null;
+        }
         return skillsLoader.loadOverallSummary(projectId, userId, getProvidedVersionOrReturnDefault(version));
     }
 
@@ -149,13 +202,17 @@ class UserSkillsController {
 
     @RequestMapping(value = "/projects/{projectId}/subjects/{subjectId}/summary", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
-    public SkillSubjectSummary getSubjectSummary(@PathVariable("projectId") String projectId,
+    public SkillSubjectSummary getSubjectSummary(ServletWebRequest webRequest,
+                                                 @PathVariable("projectId") String projectId,
                                                  @PathVariable("subjectId") String subjectId,
                                                  @RequestParam(name = "userId", required = false) String userIdParam,
                                                  @RequestParam(name = "version", required = false) Integer version,
                                                  @RequestParam(name = "idType", required = false) String idType,
                                                  @RequestParam(name = "includeSkills", required = false, defaultValue = "true") String includeSkills) {
         String userId = userInfoService.getUserName(userIdParam, true, idType);
+        if (isNotModified(webRequest, projectId, userId)) {
+            return null;
+        }
         return skillsLoader.loadSubject(projectId, userId, subjectId, getProvidedVersionOrReturnDefault(version), Boolean.valueOf(includeSkills));
     }
 
@@ -231,11 +288,15 @@ class UserSkillsController {
 
     @RequestMapping(value = "/projects/{projectId}/badges/summary", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
-    public List<SkillBadgeSummary> getAllBadgesSummary(@PathVariable("projectId") String projectId,
+    public List<SkillBadgeSummary> getAllBadgesSummary(ServletWebRequest webRequest,
+                                                       @PathVariable("projectId") String projectId,
                                                        @RequestParam(name = "userId", required = false) String userIdParam,
                                                        @RequestParam(name = "version", required = false) Integer version,
                                                        @RequestParam(name = "idType", required = false) String idType) {
         String userId = userInfoService.getUserName(userIdParam, true, idType);
+        if (isNotModified(webRequest, projectId, userId)) {
+            return null;
+        }
         List<SkillBadgeSummary> badgeSummaries = skillsLoader.loadBadgeSummaries(projectId, userId, getProvidedVersionOrReturnDefault(version));
 
         // add any global badges as well
@@ -260,7 +321,8 @@ class UserSkillsController {
 
     @RequestMapping(value = "/projects/{projectId}/badges/{badgeId}/summary", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
-    public SkillBadgeSummary getBadgeSummary(@PathVariable("projectId") String projectId,
+    public SkillBadgeSummary getBadgeSummary(ServletWebRequest webRequest,
+                                             @PathVariable("projectId") String projectId,
                                              @PathVariable("badgeId") String badgeId,
                                              @RequestParam(name = "userId", required = false) String userIdParam,
                                              @RequestParam(name = "version", required = false) Integer version,
@@ -268,6 +330,9 @@ class UserSkillsController {
                                              @RequestParam(name = "idType", required = false) String idType,
                                              @RequestParam(name = "includeSkills", required = false, defaultValue = "true") String includeSkills) {
         String userId = userInfoService.getUserName(userIdParam, true, idType);
+        if (isNotModified(webRequest, projectId, userId)) {
+            return null;
+        }
         if (isGlobal != null && isGlobal) {
             return skillsLoader.loadGlobalBadge(userId, projectId, badgeId, getProvidedVersionOrReturnDefault(version), Boolean.valueOf(includeSkills));
         } else {
@@ -277,23 +342,31 @@ class UserSkillsController {
 
     @RequestMapping(value = "/projects/{projectId}/pointHistory", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
-    public UserPointHistorySummary getProjectsPointHistory(@PathVariable("projectId") String projectId,
+    public UserPointHistorySummary getProjectsPointHistory(ServletWebRequest webRequest,
+                                                           @PathVariable("projectId") String projectId,
                                                            @RequestParam(name = "userId", required = false) String userIdParam,
                                                            @RequestParam(name = "version", required = false) Integer version,
                                                            @RequestParam(name = "idType", required = false) String idType
                                                            ) {
         String userId = userInfoService.getUserName(userIdParam, true, idType);
+        if (isHistoryNotModified(webRequest, projectId, userId)) {
+            return null;
+        }
         return skillsLoader.loadPointHistorySummary(projectId, userId, maxDaysBack, null, getProvidedVersionOrReturnDefault(version));
     }
 
     @RequestMapping(value = "/projects/{projectId}/subjects/{subjectId}/pointHistory", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
-    public UserPointHistorySummary getSubjectsPointHistory(@PathVariable("projectId") String projectId,
+    public UserPointHistorySummary getSubjectsPointHistory(ServletWebRequest webRequest,
+                                                           @PathVariable("projectId") String projectId,
                                                            @PathVariable("subjectId") String subjectId,
                                                            @RequestParam(name = "userId", required = false) String userIdParam,
                                                            @RequestParam(name = "version", required = false) Integer version,
                                                            @RequestParam(name = "idType", required = false) String idType) {
         String userId = userInfoService.getUserName(userIdParam, true, idType);
+        if (isHistoryNotModified(webRequest, projectId, userId)) {
+            return null;
+        }
         return skillsLoader.loadPointHistorySummary(projectId, userId, maxDaysBack, subjectId, getProvidedVersionOrReturnDefault(version));
     }
 
@@ -316,6 +389,14 @@ class UserSkillsController {
         return addSkillHelper.addSkill(projectId, skillId, skillEventRequest);
     }
 
+    @RequestMapping(value = "/projects/{projectId}/skillEvents", method = {RequestMethod.PUT, RequestMethod.POST}, produces = "application/json")
+    @ResponseBody
+    @Profile
+    public List<SkillEventResult> addSkills(@PathVariable("projectId") String projectId,
+                                            @RequestBody SkillEventsRequest skillEventsRequest) {
+        return addSkillHelper.addSkills(projectId, skillEventsRequest);
+    }
+
     @RequestMapping(value = "/projects/{projectId}/rank", method = RequestMethod.GET, produces = "application/json")
     @ResponseBody
     public SkillsRanking getRanking(@PathVariable("projectId") String projectId,
@@ -369,14 +450,54 @@ class UserSkillsController {
 
     @RequestMapping(value = "/projects/{id}/customIconCss", method = RequestMethod.GET, produces = "text/css")
     @ResponseBody
-    public String getCustomIconCss(@PathVariable("id") String projectId) {
-        return customIconFacade.generateCss(projectId);
+    public ResponseEntity<byte[]> getCustomIconCss(@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                   @PathVariable("id") String projectId) {
+        return toIconCssResponse(customIconFacade.getCss(projectId), null, acceptEncoding);
+    }
+
+    @RequestMapping(value = "/projects/{id}/customIconCss/{hash}", method = RequestMethod.GET, produces = "text/css")
+    @ResponseBody
+    public ResponseEntity<byte[]> getCustomIconCss(@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                   @PathVariable("id") String projectId,
+                                                   @PathVariable("hash") String hash) {
+        return toIconCssResponse(customIconFacade.getCss(projectId), hash, acceptEncoding);
     }
 
     @RequestMapping(value = "/icons/customIconCss", method = RequestMethod.GET, produces = "text/css")
     @ResponseBody
-    public String getCustomGlogbalIconCss() {
-        return customIconFacade.generateGlobalCss();
+    public ResponseEntity<byte[]> getCustomGlogbalIconCss(@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return toIconCssResponse(customIconFacade.getGlobalCss(), null, acceptEncoding);
+    }
+
+    @RequestMapping(value = "/icons/customIconCss/{hash}", method = RequestMethod.GET, produces = "text/css")
+    @ResponseBody
+    public ResponseEntity<byte[]> getCustomGlogbalIconCss(@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                          @PathVariable("hash") String hash) {
+        return toIconCssResponse(customIconFacade.getGlobalCss(), hash, acceptEncoding);
+    }
+
+    /**
+     * Icon style sheets are served pre-gzipped with a strong ETag of their content hash and encoding (the gzipped
+     * and identity representations are different bytes so they must not share a strong ETag); the url that carries
+     * the current hash ({@code .../customIconCss/{hash}}, the hash being published as part of the client display config)
+     * never changes content so it may be cached indefinitely, other urls must be re-validated and are answered with 304
+     * by the ETag.
+     */
+    private ResponseEntity<byte[]> toIconCssResponse(CustomIconCssCache.IconCss css, String requestedHash, String acceptEncoding) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(TEXT_CSS)
+                .eTag("\"" + css.getHash() + (gzip ? "-gzip" : "") + "\"")
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (css.getHash().equals(requestedHash)) {
+            builder.header(HttpHeaders.CACHE_CONTROL, CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().getHeaderValue() + ", immutable");
+        } else {
+            builder.cacheControl(CacheControl.noCache().cachePrivate());
+        }
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(css.getGzipped());
+        }
+        return builder.body(css.getCss());
     }
 
     private String toDateString(Long timestamp) {
@@ -49,5 +49,6 @@ enum ErrorCode {
     UserRoleAlreadyAssigned,
     NotYourInvitationCode,
     ExpiredProjectInvite,
-    ProjectInviteAlreadyExists
+    ProjectInviteAlreadyExists,
+    EventQueueFull
 }
@@ -22,6 +22,10 @@ class SkillEventRequest {
     Boolean notifyIfSkillNotApplied = false
     Boolean isRetry = false
 
+    // when true the event is queued and applied asynchronously, the result is published
+    // over websocket and can be correlated using SkillEventResult.receiptId
+    Boolean async = false
+
     // this is an optional approval message
     // Note: only applicable in case of self reporting with approval
     String approvalRequestedMsg
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.controller.request.model
+
+class SkillEventsRequest {
+    String userId
+    String idType
+    Boolean notifyIfSkillNotApplied = false
+    Boolean isRetry = false
+
+    // applied in the provided order
+    List<Event> events
+
+    static class Event {
+        String skillId
+        Long timestamp
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.controller.result.model
+
+import groovy.transform.Canonical
+
+@Canonical
+class ProjectCopyInfoResult {
+
+    Integer jobId
+
+    String fromProjectId
+    String toProjectId
+
+    // RUNNING, COMPLETED or FAILED
+    String state
+    String currentStep
+
+    Integer completedSteps
+    Integer totalSteps
+
+    // only set once the copy FAILED
+    String errorMessage
+
+}
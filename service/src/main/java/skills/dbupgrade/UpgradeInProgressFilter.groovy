@@ -34,6 +34,7 @@ import org.springframework.web.filter.OncePerRequestFilter
 import skills.auth.UserInfo
 import skills.controller.exceptions.ErrorCode
 import skills.controller.request.model.SkillEventRequest
+import skills.controller.request.model.SkillEventsRequest
 import skills.services.events.SkillEventResult
 
 import javax.servlet.FilterChain
@@ -99,8 +100,28 @@ class UpgradeInProgressFilter extends OncePerRequestFilter {
         }
 
         QueuedSkillEvent queuedSkillEvent = safeUrlDecider.isSkillEventReport(uri, method)
+        String multipleEventsProjectId = queuedSkillEvent ? null : safeUrlDecider.isSkillEventsReport(uri, method)
         ServletServerHttpRequest serverHttpRequest = new ServletServerHttpRequest(request)
-        if (queuedSkillEvent) {
+        if (multipleEventsProjectId) {
+            SkillEventsRequest skillEventsRequest = (SkillEventsRequest) readRequest(serverHttpRequest, SkillEventsRequest)
+            List<SkillEventResult> eventResults = skillEventsRequest?.events?.collect { SkillEventsRequest.Event event ->
+                QueuedSkillEvent queuedEvent = new QueuedSkillEvent(projectId: multipleEventsProjectId, skillId: event.skillId, requestTime: new Date())
+                queuedEvent.skillEventRequest = new SkillEventRequest(
+                        userId: skillEventsRequest.userId,
+                        idType: skillEventsRequest.idType,
+                        timestamp: event.timestamp,
+                        notifyIfSkillNotApplied: skillEventsRequest.notifyIfSkillNotApplied,
+                        isRetry: skillEventsRequest.isRetry)
+                queuedEvent.userId = userInfo?.userDn ?: userInfo?.username
+                skillEventQueue.queueEvent(queuedEvent)
+                return new SkillEventResult(projectId: multipleEventsProjectId, skillId: event.skillId, skillApplied: false,
+                        explanation: "A database upgrade is currently in progress. This Skill Event Request has been queued for future application.")
+            } ?: []
+            boolean success = writeResponse(response, serverHttpRequest, List.class, eventResults)
+            if (!success) {
+                log.error("unable to write response to client request for [{}] with accept headers of [{}]", uri, serverHttpRequest.getHeaders().getAccept())
+            }
+        } else if (queuedSkillEvent) {
             SkillEventRequest skillEventRequest = readEventRequest(serverHttpRequest)
             queuedSkillEvent.skillEventRequest = skillEventRequest
             queuedSkillEvent.userId = userInfo?.username
@@ -133,12 +154,15 @@ class UpgradeInProgressFilter extends OncePerRequestFilter {
     }
 
     private SkillEventRequest readEventRequest(ServletServerHttpRequest serverHttpRequest) {
+        return (SkillEventRequest) readRequest(serverHttpRequest, SkillEventRequest)
+    }
+
+    private Object readRequest(ServletServerHttpRequest serverHttpRequest, Class clazz) {
         MediaType mediaType = serverHttpRequest.getHeaders().getContentType()
 
         for (HttpMessageConverter messageConverter : configuredMessageConverters) {
-            if (messageConverter.canRead(SkillEventRequest, mediaType)) {
-                SkillEventRequest skillEventRequest = (SkillEventRequest)messageConverter.read(SkillEventRequest, serverHttpRequest)
-                return skillEventRequest
+            if (messageConverter.canRead(clazz, mediaType)) {
+                return messageConverter.read(clazz, serverHttpRequest)
             }
         }
     }
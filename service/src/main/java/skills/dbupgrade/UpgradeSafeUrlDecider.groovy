@@ -55,6 +55,8 @@ class UpgradeSafeUrlDecider {
 
     Pattern skillEventUrl
 
+    Pattern skillEventsUrl
+
     @PostConstruct
     public void init() {
         List<String> allowedUrls = []
@@ -103,6 +105,13 @@ class UpgradeSafeUrlDecider {
         }
 
         skillEventUrl = Pattern.compile(skillEventRequest)
+
+        String skillEventsRequest = "/api/projects/([^/]+)/skillEvents"
+        if (contextPath) {
+            skillEventsRequest = slashAwareJoin(contextPath, skillEventsRequest)
+        }
+
+        skillEventsUrl = Pattern.compile(skillEventsRequest)
     }
 
     public QueuedSkillEvent isSkillEventReport(String path, HttpMethod method) {
@@ -118,6 +127,20 @@ class UpgradeSafeUrlDecider {
         }
     }
 
+    /**
+     * @return projectId if the request reports multiple skill events at once, null otherwise
+     */
+    public String isSkillEventsReport(String path, HttpMethod method) {
+        Matcher matcher = skillEventsUrl.matcher(path)
+        if ((method == HttpMethod.POST || method == HttpMethod.PUT) && matcher.find()) {
+            String projectId = matcher.group(1)
+            log.debug("request is reporting multiple skill events for [{}]", projectId)
+            return projectId
+        } else {
+            return null
+        }
+    }
+
     public boolean isUrlAllowed(String path, HttpMethod method) {
         log.info("checking if http ${method} against [${path}] is allowed")
         if (HttpMethod.PUT == method || HttpMethod.POST == method || HttpMethod.DELETE == method) {
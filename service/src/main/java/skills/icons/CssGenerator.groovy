@@ -28,22 +28,24 @@ import java.util.concurrent.TimeUnit
 @CompileStatic
 class CssGenerator {
     String cssify(Collection<CustomIcon> customIcons) {
-        String css = ""
+        StringBuilder css = new StringBuilder()
+        writeCss(customIcons, css)
+        return css.toString()
+    }
 
-        customIcons?.each{
-            String cssClassName = IconCssNameUtil.getCssClass(it.projectId, it.filename)
-            List<String> lines = []
-            String cssClass = ".${cssClassName} {"
-            lines.add(cssClass)
-            lines.add("\tbackground-image: url(\"${it.dataUri}\");".toString())
-            lines.add("\tbackground-repeat: no-repeat;")
-            lines.add("\twidth: ${it.width}px;".toString())
-            lines.add("\theight: ${it.height}px;".toString())
-            lines.add("\tdisplay: inline-block;")
-            lines.add("}".toString())
-            css += "${lines.join('')}"
+    /**
+     * Appends the css class of every icon directly to the provided output so that large data uris are not copied
+     * into intermediate strings
+     */
+    void writeCss(Collection<CustomIcon> customIcons, Appendable out) {
+        customIcons?.each { CustomIcon it ->
+            out.append('.').append(IconCssNameUtil.getCssClass(it.projectId, it.filename)).append(' {')
+            out.append('\tbackground-image: url("').append(it.dataUri).append('");')
+            out.append('\tbackground-repeat: no-repeat;')
+            out.append('\twidth: ').append(String.valueOf(it.width)).append('px;')
+            out.append('\theight: ').append(String.valueOf(it.height)).append('px;')
+            out.append('\tdisplay: inline-block;')
+            out.append('}')
         }
-
-        return css
     }
 }
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.icons
+
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.context.annotation.Lazy
+import skills.storage.model.CustomIcon
+import skills.storage.model.ProjDefParent
+
+import javax.persistence.PostPersist
+import javax.persistence.PostRemove
+import javax.persistence.PostUpdate
+
+/**
+ * JPA entity listener that invalidates {@link CustomIconCssCache} whenever an icon is saved or removed; removing a
+ * project cascades to its icons. Instantiated by Hibernate through Spring's bean container.
+ */
+@CompileStatic
+class CustomIconChangeListener {
+
+    @Lazy
+    @Autowired
+    CustomIconCssCache customIconCssCache
+
+    @PostPersist
+    @PostUpdate
+    void iconSaved(Object entity) {
+        if (entity instanceof CustomIcon) {
+            customIconCssCache.iconsChanged(((CustomIcon) entity).projectId)
+        }
+    }
+
+    @PostRemove
+    void iconRemoved(Object entity) {
+        if (entity instanceof ProjDefParent) {
+            customIconCssCache.iconsChanged(((ProjDefParent) entity).projectId)
+        } else {
+            iconSaved(entity)
+        }
+    }
+}
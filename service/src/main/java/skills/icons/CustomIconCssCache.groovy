@@ -0,0 +1,138 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.icons
+
+import callStack.profiler.Profile
+import com.github.benmanes.caffeine.cache.Caffeine
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.GenerationGuardedCache
+import skills.storage.model.CustomIcon
+import skills.storage.repos.CustomIconRepo
+
+import javax.annotation.PostConstruct
+import java.nio.charset.StandardCharsets
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Custom icon style sheets of projects (and of the global icons) generated once per icon change and kept gzipped
+ * along with the hash of their content; the hash is used as a strong ETag and as the version of immutable urls.
+ *
+ * Icon saves and removals are distributed cluster-wide through {@link CacheInvalidationService} by
+ * {@link CustomIconChangeListener}.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class CustomIconCssCache extends GenerationGuardedCache<String, IconCss> {
+
+    static final String CACHE_NAME = 'customIconCss'
+
+    // project keys are always prefixed so that no project id can collide with the global icons key
+    private static final String PROJECT_KEY_PREFIX = 'project:'
+    private static final String GLOBAL_KEY = 'global:'
+
+    @Value('#{"${skills.config.customIconCssCache.maxNumEntries:1000}"}')
+    Integer maxNumEntries
+
+    @Autowired
+    CustomIconRepo customIconRepo
+
+    @Autowired
+    CssGenerator cssGenerator
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    static class IconCss {
+        final String hash
+        final byte[] gzipped
+        // decompressed on first use, only clients that don't accept gzip need it
+        private volatile byte[] css
+
+        IconCss(String hash, byte[] gzipped) {
+            this.hash = hash
+            this.gzipped = gzipped
+        }
+
+        byte[] getCss() {
+            byte[] res = css
+            if (res == null) {
+                res = new GZIPInputStream(new ByteArrayInputStream(gzipped)).withCloseable { it.readAllBytes() }
+                css = res
+            }
+            return res
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        entries = Caffeine.newBuilder()
+                .maximumSize(maxNumEntries)
+                .build()
+        cacheInvalidationService.register(this)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    @Profile
+    IconCss getProjectCss(String projectId) {
+        return get(projectKey(projectId), projectId)
+    }
+
+    @Profile
+    IconCss getGlobalCss() {
+        return get(GLOBAL_KEY, null)
+    }
+
+    /**
+     * Invalidates the project's style sheet on all nodes, null projectId invalidates the global icons style sheet
+     */
+    void iconsChanged(String projectId) {
+        cacheInvalidationService.invalidate(CACHE_NAME, projectId ? projectKey(projectId) : GLOBAL_KEY)
+    }
+
+    private static String projectKey(String projectId) {
+        return PROJECT_KEY_PREFIX + projectId
+    }
+
+    private IconCss get(String key, String projectId) {
+        return getOrLoad(key) {
+            List<CustomIcon> icons = projectId ? customIconRepo.findAllByProjectId(projectId) : customIconRepo.findAllByProjectIdIsNull()
+            return generate(icons)
+        }
+    }
+
+    private IconCss generate(List<CustomIcon> icons) {
+        MessageDigest digest = MessageDigest.getInstance('MD5')
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream()
+        // the digest is computed over the uncompressed css while it is being compressed
+        new OutputStreamWriter(new DigestOutputStream(new GZIPOutputStream(gzipped), digest), StandardCharsets.UTF_8).withCloseable { Writer writer ->
+            cssGenerator.writeCss(icons, writer)
+        }
+        return new IconCss(digest.digest().encodeHex().toString(), gzipped.toByteArray())
+    }
+}
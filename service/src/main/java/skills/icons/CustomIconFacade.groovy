@@ -44,29 +44,27 @@ class CustomIconFacade {
     @Autowired
     CssGenerator cssGenerator
 
+    @Autowired
+    CustomIconCssCache customIconCssCache
+
     /**
-     * Generates a css style sheet containing all the custom icons fore the specified project id
+     * Style sheet containing all the custom icons for the specified project id; generated once per icon change
      *
      * @param projectId
-     * @return css or an empty string if no custom icons are found
+     * @return css, empty if no custom icons are found
      */
-    @Transactional(readOnly = true)
-    String generateCss(String projectId){
+    CustomIconCssCache.IconCss getCss(String projectId){
         Validate.notNull(projectId, "projectId is required")
-        Collection<CustomIcon> icons = iconService.getIconsForProject(projectId)
-        return cssGenerator.cssify(icons)
+        return customIconCssCache.getProjectCss(projectId)
     }
 
     /**
-     * Generates a css style sheet containing all the custom icons fore the specified project id
+     * Style sheet containing all the global custom icons; generated once per icon change
      *
-     * @param projectId
-     * @return css or an empty string if no custom icons are found
+     * @return css, empty if no custom icons are found
      */
-    @Transactional(readOnly = true)
-    String generateGlobalCss(){
-        Collection<CustomIcon> icons = iconService.getGlobalIcons()
-        return cssGenerator.cssify(icons)
+    CustomIconCssCache.IconCss getGlobalCss(){
+        return customIconCssCache.getGlobalCss()
     }
 
     /**
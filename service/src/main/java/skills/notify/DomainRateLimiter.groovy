@@ -0,0 +1,80 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.notify
+
+import groovy.transform.CompileStatic
+import groovy.transform.PackageScope
+
+/**
+ * Limits the number of emails sent to each recipient domain within a fixed one minute window;
+ * a non-positive limit disables rate limiting.
+ */
+@CompileStatic
+@PackageScope
+class DomainRateLimiter {
+
+    private static final long WINDOW_MILLIS = 60 * 1000
+
+    private final int maxPerMinute
+    private final Map<String, Window> windows = [:]
+
+    private static class Window {
+        long start
+        int count
+    }
+
+    DomainRateLimiter(int maxPerMinute) {
+        this.maxPerMinute = maxPerMinute
+    }
+
+    /**
+     * Acquires a permit for each of the emails only if every one of their domains has capacity left in the current window
+     */
+    synchronized boolean tryAcquire(Collection<String> emails, long now = System.currentTimeMillis()) {
+        if (maxPerMinute <= 0) {
+            return true
+        }
+        Map<String, Integer> numByDomain = [:]
+        emails.each { String email ->
+            String domain = getDomain(email)
+            numByDomain.put(domain, (numByDomain.get(domain) ?: 0) + 1)
+        }
+
+        for (Map.Entry<String, Integer> entry : numByDomain.entrySet()) {
+            if (getWindow(entry.key, now).count + entry.value > maxPerMinute) {
+                return false
+            }
+        }
+        numByDomain.each { String domain, Integer num ->
+            windows.get(domain).count += num
+        }
+        return true
+    }
+
+    private Window getWindow(String domain, long now) {
+        Window window = windows.get(domain)
+        if (window == null || now - window.start >= WINDOW_MILLIS) {
+            window = new Window(start: now, count: 0)
+            windows.put(domain, window)
+        }
+        return window
+    }
+
+    private static String getDomain(String email) {
+        int at = email.lastIndexOf('@')
+        return (at >= 0 ? email.substring(at + 1) : email).toLowerCase()
+    }
+}
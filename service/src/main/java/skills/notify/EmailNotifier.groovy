@@ -21,19 +21,28 @@ import groovy.json.JsonOutput
 import groovy.json.JsonSlurper
 import groovy.time.TimeCategory
 import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
 import org.apache.commons.lang3.time.StopWatch
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Value
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.domain.Pageable
 import org.springframework.mail.javamail.JavaMailSender
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
 import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
 import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.support.TransactionCallback
+import org.springframework.transaction.support.TransactionTemplate
 import skills.controller.result.model.SettingsResult
 import skills.notify.builders.Formatting
 import skills.notify.builders.NotificationEmailBuilder
 import skills.notify.builders.NotificationEmailBuilderManager
 import skills.services.EmailSendingService
 import skills.services.FeatureService
-import skills.services.LockingService
 import skills.services.SystemSettingsService
 import skills.services.settings.SettingsService
 import skills.settings.EmailSettingsService
@@ -42,8 +51,14 @@ import skills.storage.repos.NotificationsRepo
 import skills.storage.repos.UserAttrsRepo
 import skills.utils.PatternsUtil
 
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+import javax.mail.internet.MimeMessage
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
-import java.util.stream.Stream
+import java.util.concurrent.atomic.AtomicLong
 
 @Component
 @Slf4j
@@ -55,6 +70,19 @@ class EmailNotifier implements Notifier {
     @Value('#{"${skills.config.notifications.maxRecipients:50}"}')
     int maxRecipients = 50
 
+    @Value('#{"${skills.config.notifications.dispatchBatchSize:100}"}')
+    int dispatchBatchSize = 100
+
+    @Value('#{"${skills.config.notifications.claimTimeoutInSeconds:600}"}')
+    int claimTimeoutInSeconds = 600
+
+    @Value('#{"${skills.config.notifications.renderThreads:4}"}')
+    int renderThreads = 4
+
+    // less than or equal to 0 disables the limit
+    @Value('#{"${skills.config.notifications.maxEmailsPerDomainPerMinute:0}"}')
+    int maxEmailsPerDomainPerMinute = 0
+
     @Autowired
     EmailSendingService sendingService
 
@@ -67,9 +95,6 @@ class EmailNotifier implements Notifier {
     @Autowired
     NotificationsRepo notificationsRepo
 
-    @Autowired
-    LockingService lockingService
-
     @Autowired
     FeatureService featureService
 
@@ -82,6 +107,48 @@ class EmailNotifier implements Notifier {
     @Autowired
     SystemSettingsService systemSettingsService
 
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    private TransactionTemplate transactionTemplate
+    private ExecutorService renderPool
+    private DomainRateLimiter domainRateLimiter
+
+    private Counter sentCounter
+    private Counter failedCounter
+    private Counter deferredCounter
+    private Timer batchTimer
+    private final AtomicLong newBacklog = new AtomicLong()
+    private final AtomicLong failedBacklog = new AtomicLong()
+
+    @PostConstruct
+    void init() {
+        assert dispatchBatchSize > 0
+        assert renderThreads > 0
+        transactionTemplate = new TransactionTemplate(transactionManager)
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("email-render-")
+        threadFactory.setDaemon(true)
+        renderPool = Executors.newFixedThreadPool(renderThreads, threadFactory)
+        domainRateLimiter = new DomainRateLimiter(maxEmailsPerDomainPerMinute)
+
+        sentCounter = meterRegistry.counter('skills.email.notifications', 'outcome', 'sent')
+        failedCounter = meterRegistry.counter('skills.email.notifications', 'outcome', 'failed')
+        deferredCounter = meterRegistry.counter('skills.email.notifications', 'outcome', 'deferred')
+        batchTimer = Timer.builder('skills.email.notifications.batch')
+                .description('Time to render, send and record the outcome of a batch of claimed notifications')
+                .register(meterRegistry)
+        meterRegistry.gauge('skills.email.notifications.backlog', Tags.of('state', 'new'), newBacklog)
+        meterRegistry.gauge('skills.email.notifications.backlog', Tags.of('state', 'failed'), failedBacklog)
+    }
+
+    @PreDestroy
+    void shutdown() {
+        renderPool?.shutdownNow()
+    }
+
     @Transactional
     @Profile
     void sendNotification(Notifier.NotificationRequest notificationRequest) {
@@ -127,16 +194,18 @@ class EmailNotifier implements Notifier {
 
     }
 
-    @Transactional
     void dispatchNotifications() {
         log.debug("Checking notifications to dispatch.")
-        doDispatchNotifications { notificationsRepo.streamNewNotifications() }
+        doDispatchNotifications { Integer afterId, Date now, Pageable pageable ->
+            notificationsRepo.findNewNotificationIdsToClaim(afterId, now, pageable)
+        }
     }
 
-    @Transactional
     void attemptToDispatchErroredNotifications() {
         log.debug("Checking for errored notifications.")
-        doDispatchNotifications("Retry: ") { notificationsRepo.streamFailedNotifications() }
+        doDispatchNotifications("Retry: ") { Integer afterId, Date now, Pageable pageable ->
+            notificationsRepo.findFailedNotificationIdsToClaim(afterId, now, pageable)
+        }
     }
 
     private SettingsInit getEmailConfig() {
@@ -154,111 +223,191 @@ class EmailNotifier implements Notifier {
         return new SettingsInit(formatting: formatting, fromEmail: fromEmail, mailSender: senderForBatch)
     }
 
-    private void doDispatchNotifications(String prependToLogs = "", Closure<Stream<Notification>> streamCreator) {
-        lockingService.lockForNotifying()
-
+    /**
+     * Notifications are claimed in batches (ordered by id) so that multiple nodes can dispatch at the same time;
+     * a claim expires after claimTimeoutInSeconds so notifications claimed by a node that went away are picked up again.
+     * Each notification is considered at most once per run.
+     */
+    private void doDispatchNotifications(String prependToLogs = "", Closure<List<Integer>> idsToClaim) {
         StopWatch stopWatch = new StopWatch()
         stopWatch.start()
 
         DispatchState dispatchState = new DispatchState(prepend: prependToLogs, wrappedLog: log)
+        SettingsInit init = null
+        Integer afterId = 0
+        while (true) {
+            Date now = new Date()
+            List<Integer> ids = idsToClaim.call(afterId, now, PageRequest.of(0, dispatchBatchSize))
+            if (!ids) {
+                break
+            }
+            afterId = ids.last()
 
-        streamCreator.call().withCloseable { Stream<Notification> notifications ->
+            List<Notification> claimed = claim(ids, now)
+            if (claimed) {
+                if (!init) {
+                    init = getEmailConfig()
+                }
+                Timer.Sample sample = Timer.start(meterRegistry)
+                dispatchBatch(claimed, init, dispatchState)
+                sample.stop(batchTimer)
+            }
+        }
+        updateBacklog()
 
-            JavaMailSender senderForBatch = null
-            String fromEmail = null
-            Formatting formatting = null
-            JsonSlurper slurper = new JsonSlurper()
+        stopWatch.stop()
+        if (dispatchState.count > 0 || dispatchState.errCount > 0) {
+            int seconds = stopWatch.getTime(TimeUnit.SECONDS)
+            log.info("${prependToLogs}Dispatched [${dispatchState.count}] notification(s) with [${dispatchState.errCount}] error(s) in [${seconds}] seconds")
+        }
+    }
 
-            notifications.forEach({ Notification notification ->
-                if (!senderForBatch) {
-                    SettingsInit init = getEmailConfig()
-                    senderForBatch = init.mailSender
-                    fromEmail = init.fromEmail
-                    formatting = init.formatting
-                }
+    private List<Notification> claim(List<Integer> ids, Date now) {
+        String claimedBy = UUID.randomUUID().toString()
+        Date claimedUntil = new Date(now.time + TimeUnit.SECONDS.toMillis(claimTimeoutInSeconds))
+        return transactionTemplate.execute({
+            int numClaimed = notificationsRepo.claim(ids, claimedBy, claimedUntil, now)
+            return numClaimed > 0 ? notificationsRepo.findAllByClaimedBy(claimedBy) : []
+        } as TransactionCallback<List<Notification>>)
+    }
+
+    private void dispatchBatch(List<Notification> notifications, SettingsInit init, DispatchState dispatchState) {
+        JsonSlurper slurper = new JsonSlurper()
+        List<PendingNotification> pendingNotifications = notifications.collect { Notification notification ->
+            assert notification.userId?.size() > 0
+            def userIds = null
+            try {
+                userIds = slurper.parseText(notification.userId)
+            } catch (JsonException ex) {
+                log.warn("user id field [${notification.userId}] was not in the expected json format, this is expected for any notifications that existed prior to 1.6")
+                userIds = [notification.userId]
+            }
+            new PendingNotification(notification: notification, userIds: userIds)
+        }
+        Map<String, String> emailsByUserId = getEmails(pendingNotifications.collectMany { it.userIds }.unique())
 
-                def userIds = null
-                try {
-                    userIds = slurper.parseText(notification.userId)
-                } catch (JsonException ex) {
-                    log.warn("user id field [${notification.userId}] was not in the expected json format, this is expected for any notifications that existed prior to 1.6")
-                    userIds = [notification.userId]
+        // rendering templates and building the messages is cpu bound and independent for each notification
+        List<CompletableFuture<Void>> rendered = pendingNotifications.collect { PendingNotification pending ->
+            CompletableFuture.runAsync({ prepareEmails(pending, init, emailsByUserId) } as Runnable, renderPool)
+        }
+        CompletableFuture.allOf(rendered.toArray(new CompletableFuture[rendered.size()])).join()
+
+        List<PendingEmail> toSend = []
+        pendingNotifications.each { PendingNotification pending ->
+            if (pending.renderFailure) {
+                dispatchState.failed(pending.notification, pending.renderFailure)
+                failedCounter.increment()
+                pending.failedUserIds.addAll(pending.userIds)
+            }
+            pending.emails.each { PendingEmail email ->
+                if (domainRateLimiter.tryAcquire(email.recipients)) {
+                    toSend.add(email)
+                } else {
+                    deferredCounter.increment()
+                    pending.deferredUserIds.addAll(email.userIds)
                 }
+            }
+        }
 
-                NotificationEmailBuilder.Res emailRes = notificationEmailBuilderManager.build(notification, formatting)
-                assert notification.userId?.size() > 0
+        // one connection to the mail server for the whole batch
+        Map<MimeMessage, Exception> failures = sendingService.sendEmails(init.mailSender, toSend.collect { it.message })
+        toSend.each { PendingEmail email ->
+            Exception failure = failures.get(email.message)
+            if (failure) {
+                dispatchState.failed(email.pending.notification, failure)
+                failedCounter.increment()
+                email.pending.failedUserIds.addAll(email.userIds)
+            } else {
+                dispatchState.succeeded()
+                sentCounter.increment()
+            }
+        }
 
-                if (PatternsUtil.isValidEmail(emailRes.replyToEmail)) {
-                    fromEmail = emailRes.replyToEmail
-                } else if (emailRes.replyToEmail) {
-                    log.warn("NotificationBuilder produced a replyTo email that is not a valid email address [{}], using the default configured value of [{}]", emailRes.replyToEmail, fromEmail)
-                }
+        transactionTemplate.executeWithoutResult({ recordOutcome(pendingNotifications) })
+    }
 
-                log.debug("sending notification [{}] to [{}]", emailRes.html, userIds)
-                List<String> failedUserIds = []
-
-                if (!emailRes.singleEmailToAllRecipients) {
-                    userIds.each {
-                        String email = getEmail(it)
-                        if (email) {
-                            boolean failed = !dispatchState.doWithErrHandling(notification, {
-                                sendingService.sendEmail(emailRes.subject, email, emailRes.html, emailRes.plainText, notification.requestedOn, senderForBatch, fromEmail, emailRes.ccRecipients)
-                            })
-                            if (failed) {
-                                failedUserIds.add(it)
-                            }
-                        }
-                    }
-                } else {
-                    List<String> emails = getEmails(userIds)
-                    if (emails) {
-                        boolean failed = !dispatchState.doWithErrHandling(notification, {
-                            sendingService.sendEmail(emailRes.subject, emails, emailRes.html, emailRes.plainText, notification.requestedOn, senderForBatch, fromEmail, emailRes.ccRecipients)
-                        })
-                        if (failed) {
-                            failedUserIds = userIds
-                        }
+    private void prepareEmails(PendingNotification pending, SettingsInit init, Map<String, String> emailsByUserId) {
+        Notification notification = pending.notification
+        try {
+            NotificationEmailBuilder.Res emailRes = notificationEmailBuilderManager.build(notification, init.formatting)
+
+            String fromEmail = init.fromEmail
+            if (PatternsUtil.isValidEmail(emailRes.replyToEmail)) {
+                fromEmail = emailRes.replyToEmail
+            } else if (emailRes.replyToEmail) {
+                log.warn("NotificationBuilder produced a replyTo email that is not a valid email address [{}], using the default configured value of [{}]", emailRes.replyToEmail, fromEmail)
+            }
+
+            log.debug("sending notification [{}] to [{}]", emailRes.html, pending.userIds)
+            Closure<PendingEmail> createEmail = { List<String> userIds, List<String> recipients ->
+                MimeMessage message = sendingService.createMessage(init.mailSender, emailRes.subject, recipients, emailRes.html, emailRes.plainText, notification.requestedOn, fromEmail, emailRes.ccRecipients)
+                new PendingEmail(pending: pending, userIds: userIds, recipients: recipients, message: message)
+            }
+            if (!emailRes.singleEmailToAllRecipients) {
+                pending.userIds.each { String userId ->
+                    String email = emailsByUserId.get(userId)
+                    if (email) {
+                        pending.emails.add(createEmail([userId], [email]))
                     }
                 }
+            } else {
+                List<String> emails = pending.userIds.collect { emailsByUserId.get(it) }.findAll()
+                if (emails) {
+                    pending.emails.add(createEmail(pending.userIds, emails))
+                }
+            }
+        } catch (Throwable t) {
+            pending.emails.clear()
+            pending.renderFailure = t
+        }
+    }
 
-                if (!failedUserIds) {
-                    removeNotificationImmediately(notification.id)
-                } else {
+    private void recordOutcome(List<PendingNotification> pendingNotifications) {
+        List<Integer> completed = []
+        pendingNotifications.each { PendingNotification pending ->
+            Notification notification = pending.notification
+            if (!pending.failedUserIds && !pending.deferredUserIds) {
+                completed.add(notification.id)
+            } else {
+                // only some failed or were deferred. Update the notification to only include those ids
+                notification.userId = JsonOutput.toJson(pending.failedUserIds + pending.deferredUserIds)
+                notification.claimedBy = null
+                notification.claimedUntil = null
+                boolean removed = false
+                if (pending.failedUserIds) {
                     notification.failedCount = notification.failedCount + 1
-                    //only some failed. Update the notification to only include the failed ids
-                    notification.userId = JsonOutput.toJson(failedUserIds)
-                    boolean removed = removeIfOlderThanConfiguredRetainPeriod(notification)
-                    if (!removed) {
-                        notificationsRepo.save(notification)
-                    }
+                    removed = removeIfOlderThanConfiguredRetainPeriod(notification)
+                }
+                if (!removed) {
+                    notificationsRepo.save(notification)
                 }
-            })
+            }
         }
-
-        stopWatch.stop()
-        if (dispatchState.count > 0 || dispatchState.errCount > 0) {
-            int seconds = stopWatch.getTime(TimeUnit.SECONDS)
-            log.info("${prependToLogs}Dispatched [${dispatchState.count}] notification(s) with [${dispatchState.errCount}] error(s) in [${seconds}] seconds")
+        if (completed) {
+            notificationsRepo.deleteAllByIdInBatch(completed)
         }
     }
 
-    private String getEmail(String userId) {
-        String email = userAttrs.findEmailByUserId(userId)
-        if (!email) {
-            log.warn("unable to send notification to recipient [${userId}], no email address found")
-        }
-        return email
+    private void updateBacklog() {
+        newBacklog.set(notificationsRepo.countNewNotifications())
+        failedBacklog.set(notificationsRepo.countFailedNotifications())
     }
 
-    private List<String> getEmails(List<String> userIds) {
-        List<String> emails = []
-        userIds?.each {
-            String email = getEmail(it)
-            if (email) {
-                emails.add(email)
+    private Map<String, String> getEmails(List<String> userIds) {
+        Map<String, String> res = [:]
+        userIds.collate(maxRecipients * 10).each { List<String> chunk ->
+            userAttrs.findEmailsByUserIdIn(chunk).each { UserAttrsRepo.UserIdAndEmail userIdAndEmail ->
+                if (userIdAndEmail.email) {
+                    res.put(userIdAndEmail.userId, userIdAndEmail.email)
+                }
+            }
+        }
+        userIds.each {
+            if (!res.containsKey(it)) {
+                log.warn("unable to send notification to recipient [${it}], no email address found")
             }
         }
-        return emails
+        return res
     }
 
     private boolean removeIfOlderThanConfiguredRetainPeriod(Notification notification) {
@@ -287,5 +436,21 @@ class EmailNotifier implements Notifier {
         JavaMailSender mailSender
     }
 
+    private static class PendingNotification {
+        Notification notification
+        List<String> userIds
+        List<PendingEmail> emails = []
+        Throwable renderFailure
+        List<String> failedUserIds = []
+        List<String> deferredUserIds = []
+    }
+
+    private static class PendingEmail {
+        PendingNotification pending
+        List<String> userIds
+        List<String> recipients
+        MimeMessage message
+    }
+
 
 }
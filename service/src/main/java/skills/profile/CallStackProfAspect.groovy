@@ -23,6 +23,7 @@ import org.aspectj.lang.annotation.Around
 import org.aspectj.lang.annotation.Aspect
 import org.aspectj.lang.reflect.CodeSignature
 import org.aspectj.lang.reflect.MethodSignature
+import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.context.properties.ConfigurationProperties
 import org.springframework.stereotype.Component
@@ -50,9 +51,13 @@ class CallStackProfAspect {
     // override default minMillisToPrint value for specific endpoints
     Map<String,Integer> endpoints = [:]
 
+    @Autowired
+    ProfileMetricsRecorder profileMetricsRecorder
+
     @Around("@within(EnableCallStackProf) || @annotation(EnableCallStackProf)")
     Object profile(ProceedingJoinPoint joinPoint) {
-        if (!enabled) {
+        boolean sampled = profileMetricsRecorder.shouldSample()
+        if (!enabled && !sampled) {
             return joinPoint.proceed()
         }
 
@@ -66,12 +71,19 @@ class CallStackProfAspect {
             CProf.stop(profileName)
         }
 
-        if (CProf.rootEvent.getRuntimeInMillis() > getMinMillisToPrintValue(joinPoint)) {
+        if (enabled && CProf.rootEvent.getRuntimeInMillis() > getMinMillisToPrintValue(joinPoint)) {
             log.info("\nProfiling Endpoint: {}\n{}", getServletRequestPath(), CProf.prettyPrint())
         }
+        if (sampled) {
+            profileMetricsRecorder.record(getEndpointName(joinPoint), CProf.rootEvent)
+        }
         return retVal
     }
 
+    private static String getEndpointName(ProceedingJoinPoint joinPoint) {
+        return "${joinPoint.signature.declaringType.simpleName}.${joinPoint.signature.name}".toString()
+    }
+
     private String getServletRequestPath() {
         HttpServletRequest httpServletRequest
         try {
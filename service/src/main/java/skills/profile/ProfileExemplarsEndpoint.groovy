@@ -0,0 +1,40 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.profile
+
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation
+import org.springframework.stereotype.Component
+
+/**
+ * Exposes the CProf tree of the most recent slow request per endpoint on the management port,
+ * must be included in management.endpoints.web.exposure.include to be reachable over http
+ */
+@Component
+@CompileStatic
+@Endpoint(id = 'profexemplars')
+class ProfileExemplarsEndpoint {
+
+    @Autowired
+    ProfileMetricsRecorder profileMetricsRecorder
+
+    @ReadOperation
+    Map<String, ProfileMetricsRecorder.Exemplar> exemplars() {
+        return profileMetricsRecorder.getExemplars()
+    }
+}
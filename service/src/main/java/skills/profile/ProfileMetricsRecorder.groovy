@@ -0,0 +1,139 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.profile
+
+import callStack.profiler.ProfileEvent
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.config.MeterFilter
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+
+import javax.annotation.PostConstruct
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records a sample of the CProf trees produced by @EnableCallStackProf endpoints as micrometer timers, one timer
+ * per @Profile method tagged with the endpoint it was invoked from. A method timer records the method's total runtime
+ * within a request once, the number of invocations is counted separately. The full tree of the most recent slow
+ * request of each endpoint is kept as an exemplar, see {@link ProfileExemplarsEndpoint}.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class ProfileMetricsRecorder {
+
+    static final String ENDPOINT_TIMER = 'skills.prof.endpoint'
+    static final String METHOD_TIMER = 'skills.prof.method'
+    static final String METHOD_INVOCATIONS_COUNTER = 'skills.prof.method.invocations'
+    static final String SLOW_COUNTER = 'skills.prof.slow'
+
+    @Value('#{"${skills.prof.metrics.enabled:false}"}')
+    boolean enabled
+
+    // fraction of requests to record, 1 records every request
+    @Value('#{"${skills.prof.metrics.sampleRate:0.1}"}')
+    double sampleRate
+
+    @Value('#{"${skills.prof.metrics.slowThresholdMillis:1000}"}')
+    long slowThresholdMillis
+
+    // guards against an unbounded number of timers when profile names are built dynamically
+    @Value('#{"${skills.prof.metrics.maxMethods:2000}"}')
+    int maxMethods
+
+    @Value('#{"${skills.prof.metrics.maxEndpoints:200}"}')
+    int maxEndpoints
+
+    // percentile histograms are only published for endpoints, per method they would multiply the number of series
+    @Value('#{"${skills.prof.metrics.endpointHistograms:true}"}')
+    boolean endpointHistograms
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    static class Exemplar {
+        String endpoint
+        long runtimeInMillis
+        Date captured
+        String callStack
+    }
+
+    private final ConcurrentMap<String, Exemplar> exemplars = new ConcurrentHashMap<>()
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            meterRegistry.config()
+                    .meterFilter(MeterFilter.maximumAllowableTags('skills.prof', 'endpoint', maxEndpoints, MeterFilter.deny()))
+                    .meterFilter(MeterFilter.maximumAllowableTags(METHOD_TIMER, 'method', maxMethods, MeterFilter.deny()))
+            log.info("Recording @Profile metrics for [{}] of requests, slow request threshold is [{}] ms", sampleRate, slowThresholdMillis)
+        }
+    }
+
+    boolean shouldSample() {
+        return enabled && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate)
+    }
+
+    void record(String endpoint, ProfileEvent rootEvent) {
+        try {
+            Timer.builder(ENDPOINT_TIMER)
+                    .description('Sampled runtime of profiled endpoints')
+                    .tag('endpoint', endpoint)
+                    .publishPercentileHistogram(endpointHistograms)
+                    .register(meterRegistry)
+                    .record(rootEvent.runtimeInMillis, TimeUnit.MILLISECONDS)
+            rootEvent.children?.each { ProfileEvent child -> recordMethod(endpoint, child) }
+
+            if (rootEvent.runtimeInMillis >= slowThresholdMillis) {
+                meterRegistry.counter(SLOW_COUNTER, 'endpoint', endpoint).increment()
+                exemplars.put(endpoint, new Exemplar(endpoint: endpoint, runtimeInMillis: rootEvent.runtimeInMillis,
+                        captured: new Date(), callStack: rootEvent.prettyPrint()))
+            }
+        } catch (Throwable t) {
+            // metrics must never fail the request
+            log.warn("Failed to record profile metrics for endpoint [${endpoint}]", t)
+        }
+    }
+
+    Map<String, Exemplar> getExemplars() {
+        return Collections.unmodifiableMap(exemplars)
+    }
+
+    private void recordMethod(String endpoint, ProfileEvent event) {
+        Timer.builder(METHOD_TIMER)
+                .description('Sampled total runtime of @Profile methods per request')
+                .tag('endpoint', endpoint)
+                .tag('method', event.name)
+                .register(meterRegistry)
+                .record(event.runtimeInMillis, TimeUnit.MILLISECONDS)
+        // invocations of the same method under the same parent are merged into a single event by CProf
+        Counter.builder(METHOD_INVOCATIONS_COUNTER)
+                .description('Sampled number of invocations of @Profile methods')
+                .tag('endpoint', endpoint)
+                .tag('method', event.name)
+                .register(meterRegistry)
+                .increment(Math.max(1, event.numOfInvocations))
+        event.children?.each { ProfileEvent child -> recordMethod(endpoint, child) }
+    }
+}
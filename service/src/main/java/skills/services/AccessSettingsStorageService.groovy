@@ -27,6 +27,7 @@ import org.springframework.stereotype.Service
 import org.springframework.transaction.annotation.Transactional
 import skills.auth.UserInfo
 import skills.auth.UserInfoService
+import skills.auth.UserRecordsCache
 import skills.auth.pki.PkiUserLookup
 import skills.controller.UserInfoController
 import skills.controller.exceptions.ErrorCode
@@ -82,6 +83,9 @@ class AccessSettingsStorageService {
     @Autowired
     UserAttrsService userAttrsService
 
+    @Autowired
+    UserRecordsCache userRecordsCache
+
     @Value('#{"${skills.config.ui.defaultLandingPage:admin}"}')
     String defaultLandingPage
 
@@ -295,7 +299,8 @@ class AccessSettingsStorageService {
         String userId = userInfo.username?.toLowerCase()
         UserAttrs userAttrs = userAttrsService.saveUserAttrs(userId, userInfo)
 
-        User user = loadUserFromLocalDb(userId)
+        // only an existing user is trusted from the cache, creation always checks the database
+        User user = userRecordsCache.get(userId).user ?: loadUserFromLocalDb(userId)
         if (!createOrUpdate) {
             if (user) {
                 SkillException exception = new SkillException("User [${userInfo.username?.toLowerCase()}] already exists.")
@@ -307,7 +312,7 @@ class AccessSettingsStorageService {
         if (user) {
             // updating an existing user
             log.debug("Updating existing app user for ID [{}], DN [{}]", userInfo.username, userInfo.userDn)
-            updateUser(userInfo, user)
+            user = updateUser(userInfo, user)
         } else {
             // create new user with APP_USER role
             log.debug("Creating new app user for ID [{}], DN [{}]", userInfo.username, userInfo.userDn)
@@ -419,14 +424,17 @@ class AccessSettingsStorageService {
     }
 
     @Profile
-    private void updateUser(UserInfo userInfo, User user) {
+    private User updateUser(UserInfo userInfo, User user) {
         if ( !user.userId?.equalsIgnoreCase(userInfo.username) ||
                 (!(user.password == null && userInfo?.password == null) && !user.password?.equalsIgnoreCase(userInfo?.password))) {
+            // provided user may be a cached copy
+            user = loadUserFromLocalDb(user.userId)
             user.userId = userInfo.username?.toLowerCase()
             //don't overwrite an existing password with blank
             user.password = StringUtils.defaultIfBlank(userInfo.password, user.password)
             userRepository.save(user)
         }
+        return user
     }
 
     private List<UserRole> getRoles(UserInfo userInfo) {
@@ -18,6 +18,8 @@ package skills.services
 
 import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.mail.MailException
+import org.springframework.mail.MailSendException
 import org.springframework.mail.javamail.JavaMailSender
 import org.springframework.mail.javamail.MimeMessageHelper
 import org.springframework.stereotype.Component
@@ -47,7 +49,21 @@ class EmailSendingService {
     }
 
     void sendEmail(String subject, List<String> to, String htmlBody, String plainTextBody = null, Date sentDate = null, JavaMailSender sender = null, String sendFrom = null, List<String> ccRecipients) {
+        JavaMailSender mailSender = sender
+        if (!mailSender) {
+            mailSender = emailSettings.mailSender
+        }
+
+        MimeMessage message = createMessage(mailSender, subject, to, htmlBody, plainTextBody, sentDate, sendFrom, ccRecipients)
+        try {
+            mailSender.send(message)
+        } catch (Throwable t) {
+            log.error("Failed to email ${to}", t)
+            throw t
+        }
+    }
 
+    MimeMessage createMessage(JavaMailSender mailSender, String subject, List<String> to, String htmlBody, String plainTextBody = null, Date sentDate = null, String sendFrom = null, List<String> ccRecipients = null) {
         if (!sendFrom) {
             sendFrom = systemSettingsService.get()?.fromEmail
         }
@@ -58,11 +74,6 @@ class EmailSendingService {
             fromEmail = FROM
         }
 
-        JavaMailSender mailSender = sender
-        if (!mailSender) {
-            mailSender = emailSettings.mailSender
-        }
-
         MimeMessage message = mailSender.createMimeMessage()
         MimeMessageHelper helper = plainTextBody ?
                 new MimeMessageHelper(message, true) :
@@ -83,11 +94,33 @@ class EmailSendingService {
         } else {
             helper.setText(htmlBody, true)
         }
+        return message
+    }
+
+    /**
+     * Sends all of the messages using a single connection to the mail server
+     *
+     * @return messages that failed to send mapped to the cause of the failure; empty if all of the messages were sent
+     */
+    Map<MimeMessage, Exception> sendEmails(JavaMailSender mailSender, List<MimeMessage> messages) {
+        if (!messages) {
+            return [:]
+        }
         try {
-            mailSender.send(message)
-        } catch (Throwable t) {
-            log.error("Failed to email ${toArr}", t)
-            throw t
+            mailSender.send(messages.toArray(new MimeMessage[messages.size()]))
+            return [:]
+        } catch (MailSendException sendException) {
+            Map<MimeMessage, Exception> failed = [:]
+            sendException.failedMessages.each { Object message, Exception e ->
+                failed.put((MimeMessage) message, e)
+            }
+            if (!failed) {
+                messages.each { failed.put(it, sendException) }
+            }
+            return failed
+        } catch (MailException e) {
+            // ex. authentication failure, none of the messages were sent
+            return messages.collectEntries { [it, e] }
         }
     }
 
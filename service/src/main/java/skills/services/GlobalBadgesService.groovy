@@ -37,8 +37,10 @@ import skills.services.admin.DisplayOrderService
 import skills.services.admin.SkillsAdminService
 import skills.services.admin.SkillsDepsService
 import skills.services.admin.skillReuse.SkillReuseIdUtil
+import skills.services.events.GlobalBadgeRequirementsIndex
 import skills.services.inception.InceptionProjectService
 import skills.services.settings.SettingsService
+import skills.skillLoading.UserProjectSummaryLoader
 import skills.storage.accessors.SkillDefAccessor
 import skills.storage.model.*
 import skills.storage.model.SkillRelDef.RelationshipType
@@ -109,9 +111,16 @@ class GlobalBadgesService {
     @Autowired
     SkillDefAccessor skillDefAccessor
 
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @Autowired
+    GlobalBadgeRequirementsIndex globalBadgeRequirementsIndex
+
     @Transactional()
     void saveBadge(String originalBadgeId, BadgeRequest badgeRequest) {
         badgeAdminService.saveBadge(null, originalBadgeId, badgeRequest, SkillDef.ContainerType.GlobalBadge)
+        globalBadgeRequirementsIndex.globalBadgesChanged()
     }
     @Transactional(readOnly = true)
     boolean existsByBadgeName(String subjectName) {
@@ -130,6 +139,7 @@ class GlobalBadgesService {
         SkillsValidator.isTrue(!skillDef.readOnly, "Imported Skills may not be added as Global Badge Dependencies", projectId, skillId)
 
         assignGraphRelationship(badgeId, SkillDef.ContainerType.GlobalBadge, projectId, skillId, RelationshipType.BadgeRequirement)
+        globalBadgeRequirementsIndex.globalBadgesChanged()
     }
 
     @Transactional()
@@ -158,6 +168,8 @@ class GlobalBadgesService {
         DataIntegrityExceptionHandlers.dataIntegrityViolationExceptionHandler.handle(null) {
             globalBadgeLevelDefRepo.save(globalBadgeLevelDef)
         }
+        userProjectSummaryLoader.projectChanged(null)
+        globalBadgeRequirementsIndex.globalBadgesChanged()
     }
 
     @Transactional()
@@ -186,6 +198,8 @@ class GlobalBadgesService {
             globalBadgeLevelDefRepo.save(existing)
             badgeAdminService.awardBadgeToUsersMeetingRequirements(badgeSkillDef)
         }
+        userProjectSummaryLoader.projectChanged(null)
+        globalBadgeRequirementsIndex.globalBadgesChanged()
     }
 
 
@@ -200,6 +214,8 @@ class GlobalBadgesService {
 
         SkillDef badgeSkillDef = skillDefRepo.findGlobalBadgeByBadgeId(badgeId)
         badgeAdminService.awardBadgeToUsersMeetingRequirements(badgeSkillDef)
+        userProjectSummaryLoader.projectChanged(null)
+        globalBadgeRequirementsIndex.globalBadgesChanged()
     }
 
     @Transactional(readOnly = true)
@@ -219,6 +235,8 @@ class GlobalBadgesService {
 
         SkillDef badgeSkillDef = skillDefRepo.findGlobalBadgeByBadgeId(badgeId)
         badgeAdminService.awardBadgeToUsersMeetingRequirements(badgeSkillDef)
+        userProjectSummaryLoader.projectChanged(null)
+        globalBadgeRequirementsIndex.globalBadgesChanged()
     }
 
     @Transactional
@@ -236,6 +254,7 @@ class GlobalBadgesService {
     @Transactional
     void deleteBadge(String badgeId) {
         badgeAdminService.deleteBadge(null, badgeId, SkillDef.ContainerType.GlobalBadge)
+        globalBadgeRequirementsIndex.globalBadgesChanged()
     }
 
     @Transactional(readOnly = true)
@@ -30,6 +30,7 @@ import skills.controller.request.model.EditLevelRequest
 import skills.controller.request.model.NextLevelRequest
 import skills.controller.result.model.LevelDefinitionRes
 import skills.controller.result.model.SettingsResult
+import skills.services.events.SkillDefinitionSnapshotCache
 import skills.services.settings.Settings
 import skills.services.settings.SettingsService
 import skills.storage.model.*
@@ -63,6 +64,9 @@ class LevelDefinitionStorageService {
     @Autowired
     GlobalBadgesService globalBadgesService
 
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
 
     // this could also come from DB.. eventually
     Map<String,Integer> defaultPercentages = ["White Belt":10, "Blue Belt":25, "Purple Belt":45, "Brown Belt":67, "Black Belt":92]
@@ -317,6 +321,7 @@ class LevelDefinitionStorageService {
                 alter.pointsTo = null
                 levelDefinitionRepository.save(alter)
             }
+            skillDefinitionSnapshotCache.projectDefinitionChanged(projectId)
         }
 
         return removed
@@ -373,6 +378,7 @@ class LevelDefinitionStorageService {
         toEdit.name = editLevelRequest.name
         toEdit.iconClass = editLevelRequest.iconClass
         toEdit = levelDefinitionRepository.save(toEdit)
+        skillDefinitionSnapshotCache.projectDefinitionChanged(projectId)
 
         return toEdit
     }
@@ -435,6 +441,7 @@ class LevelDefinitionStorageService {
             )
 
             created = levelDefinitionRepository.save(created)
+            skillDefinitionSnapshotCache.projectDefinitionChanged(projectId)
             log.debug("Added new level [{}]", created)
         }
 
@@ -466,7 +473,9 @@ class LevelDefinitionStorageService {
             new LevelUtils().convertToPoints(res, LevelUtils.defaultTotalPointsGuess)
         }
 
-        levelDefinitionRepository.saveAll(res)
+        List<LevelDef> saved = levelDefinitionRepository.saveAll(res)?.toList()
+        skillDefinitionSnapshotCache.projectDefinitionChanged(projectId)
+        return saved
     }
 
     int maxProjectLevel(ProjDef projDef) {
@@ -18,8 +18,12 @@ package skills.services
 import callStack.profiler.Profile
 import groovy.transform.CompileStatic
 import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
+import org.springframework.transaction.annotation.Propagation
 import org.springframework.transaction.annotation.Transactional
 import skills.controller.exceptions.SkillException
 import skills.storage.model.ProjDef
@@ -27,6 +31,9 @@ import skills.storage.model.SkillsDBLock
 import skills.storage.repos.SkillsDBLockRepo
 import skills.storage.repos.nativeSql.NativeQueriesRepo
 
+import javax.annotation.PostConstruct
+import java.util.concurrent.TimeUnit
+
 @Slf4j
 @Service
 @CompileStatic
@@ -38,6 +45,27 @@ class LockingService {
     @Autowired
     NativeQueriesRepo nativeQueriesRepo
 
+    @Autowired
+    StripedTransactionLocks stripedTransactionLocks
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    static enum SkillReportingLockStrategy {
+        // transaction scoped advisory lock (Postgres), no rows are written; H2 falls back to the row lock
+        advisory,
+        // inserts (or selects) a row in skills_db_locks and holds a pessimistic write lock on it
+        dbRow
+    }
+
+    @Value('#{"${skills.config.locks.skillReporting.strategy:advisory}"}')
+    SkillReportingLockStrategy skillReportingLockStrategy
+
+    @PostConstruct
+    void init() {
+        log.info("Skill reporting lock strategy [{}], in-JVM locks enabled [{}]", skillReportingLockStrategy, stripedTransactionLocks.enabled)
+    }
+
     SkillsDBLock lockGlobalSettings() {
         SkillsDBLock res = skillsDBLockRepo.findByLock("global_settings_lock")
         assert res
@@ -62,10 +90,31 @@ class LockingService {
         return res
     }
 
-    SkillsDBLock lockForNotifying() {
-        SkillsDBLock res = skillsDBLockRepo.findByLock("notifier_lock")
-        assert res
-        return res
+    /**
+     * Claims event compaction in its own short transaction so that a compaction run does not hold event_compaction_lock
+     * (and a database transaction) for its whole duration; waits for a user event roll up that holds the lock.
+     * The claim expires so that a run on a node that went away does not block the next runs.
+     *
+     * @return false if another run holds an unexpired claim
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    boolean claimEventCompaction(long claimTimeoutInMillis) {
+        Date now = new Date()
+        return skillsDBLockRepo.claimUntil("event_compaction_lock", now, new Date(now.time + claimTimeoutInMillis)) > 0
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    void renewEventCompactionClaim(long claimTimeoutInMillis) {
+        skillsDBLockRepo.updateClaim("event_compaction_lock", new Date(System.currentTimeMillis() + claimTimeoutInMillis))
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    void releaseEventCompactionClaim() {
+        skillsDBLockRepo.updateClaim("event_compaction_lock", new Date())
+    }
+
+    boolean isEventCompactionClaimed() {
+        return skillsDBLockRepo.countClaimedAfter("event_compaction_lock", new Date()) > 0
     }
 
     SkillsDBLock lockForUpdatingCatalogSkills() {
@@ -106,10 +155,57 @@ class LockingService {
         return res
     }
 
-    SkillsDBLock lockForSkillReporting(String userId, String projectId) {
-        String key = "reportSkill_" + userId + projectId
-        SkillsDBLock lock = nativeQueriesRepo.insertLockOrSelectExisting(key)
-        return lock
+    /**
+     * Must be called within a transaction, the lock is released when the transaction completes
+     */
+    void lockForSkillReporting(String userId, String projectId) {
+        String key = getSkillReportingKey(userId, projectId)
+
+        long start = System.nanoTime()
+        StripedTransactionLocks.Result jvmRes = stripedTransactionLocks.lock(key)
+        if (jvmRes != StripedTransactionLocks.Result.Disabled) {
+            recordLockMetrics('jvm', start, jvmRes != StripedTransactionLocks.Result.Acquired && jvmRes != StripedTransactionLocks.Result.AlreadyHeld)
+        }
+        lockForSkillReportingInDb(key)
+    }
+
+    /**
+     * Locks many users of the same project, must be called within a transaction and the locks are released when the
+     * transaction completes. Only the database locks are taken, always in the same order, so that concurrent batches
+     * cannot deadlock; in-JVM locks are skipped for the rest of the transaction as a batch would otherwise hold a large
+     * share of the stripes and stall unrelated reports that hash onto them.
+     */
+    void lockForSkillReporting(Collection<String> userIds, String projectId) {
+        stripedTransactionLocks.skipForCurrentTransaction()
+        userIds.collect { String userId -> getSkillReportingKey(userId, projectId) }.toSorted().each { String key ->
+            lockForSkillReportingInDb(key)
+        }
+    }
+
+    private static String getSkillReportingKey(String userId, String projectId) {
+        return "reportSkill_" + userId + projectId
+    }
+
+    private void lockForSkillReportingInDb(String key) {
+        long start = System.nanoTime()
+        boolean contended = false
+        if (skillReportingLockStrategy == SkillReportingLockStrategy.advisory) {
+            contended = nativeQueriesRepo.acquireTransactionScopedLock(key)
+        } else {
+            nativeQueriesRepo.insertLockOrSelectExisting(key)
+        }
+        recordLockMetrics(skillReportingLockStrategy.toString(), start, contended)
+    }
+
+    private void recordLockMetrics(String type, long startNanos, boolean contended) {
+        Timer.builder('skills.locks.wait')
+                .description('Time spent acquiring skill reporting locks')
+                .tag('type', type)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS)
+        if (contended) {
+            meterRegistry.counter('skills.locks.contended', 'type', type).increment()
+        }
     }
 
     @Transactional
@@ -27,10 +27,19 @@ class ScheduledEventCompaction {
     @Autowired
     UserEventService eventService
 
+    @Autowired
+    UserEventRollupService userEventRollupService
+
     @Scheduled(cron='#{"${skills.config.eventCompactionSchedule:* 2 0 * * *}"}')
     public void runCompactDailyEvents(){
         log.info("running scheduled compaction of daily user events")
         eventService.compactDailyEvents()
     }
 
+    @Scheduled(cron='#{"${skills.config.userEventRollupSchedule:0 15 * * * *}"}')
+    public void runUserEventRollup(){
+        log.info("running scheduled roll up of user events")
+        userEventRollupService.rollUp()
+    }
+
 }
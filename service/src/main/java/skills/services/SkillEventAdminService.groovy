@@ -29,6 +29,9 @@ import skills.controller.exceptions.SkillException
 import skills.controller.result.model.RequestResult
 import skills.services.admin.SkillCatalogService
 import skills.services.events.*
+import skills.services.ranking.RankIndexService
+import skills.skillLoading.PointsHistoryLedger
+import skills.skillLoading.UserProjectSummaryLoader
 import skills.storage.accessors.ProjDefAccessor
 import skills.storage.model.*
 import skills.storage.repos.*
@@ -47,6 +50,15 @@ class SkillEventAdminService {
     @Autowired
     UserPointsRepo userPointsRepo
 
+    @Autowired
+    RankIndexService rankIndexService
+
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @Autowired
+    PointsHistoryLedger pointsHistoryLedger
+
     @Autowired
     SkillEventsSupportRepo skillEventsSupportRepo
 
@@ -86,12 +98,18 @@ class SkillEventAdminService {
     @Autowired
     SkillDefRepo skillDefRepo
 
+    @Autowired
+    RecentPerformedOnCache recentPerformedOnCache
+
     @Value('#{"${skills.bulkUserLookup.minNumOfThreads:1}"}')
     Integer minNumOfThreads
 
     @Value('#{"${skills.bulkUserLookup.maxNumOfThreads:10}"}')
     Integer maxNumOfThreads
 
+    @Value('#{"${skills.config.bulkReport.chunkSize:500}"}')
+    Integer bulkReportChunkSize
+
     private CachedThreadPool pool
 
     @PostConstruct
@@ -113,7 +131,7 @@ class SkillEventAdminService {
             )
         }
 
-        // report all skills as a single transaction
+        // report skills in chunks, each chunk is committed as a single transaction
         Map<String, SkillEventResult> results = bulkReportSkillsInternal(projectId, skillId, res.requestedUserIds, incomingSkillDate)
         if (!results) {
             log.warn("No skills were report for projectId [${projectId}], skillId [${skillId}], userIds [${userIds}]")
@@ -143,6 +161,8 @@ class SkillEventAdminService {
     @Profile
     BulkUserLookupResult bulkLookupUserNames(List<String> userIds, String projectId, String skillId) {
         BulkUserLookupResult res = new BulkUserLookupResult()
+        // resolves the users with as few user-info-service calls as possible, the lookups below then hit the cache
+        userInfoService.prefetchUsers(userIds)
         List<Callable<String>> listToSubmit = userIds.collect { final requestedUserId ->
             ThreadPoolUtils.callable {
                 String userId
@@ -160,13 +180,14 @@ class SkillEventAdminService {
         return res
     }
 
+    /**
+     * Users are reported in chunks of bulkReportChunkSize; each chunk is evaluated set-based and committed in its own transaction
+     */
     @Profile
-    @Transactional
     Map<String, SkillEventResult> bulkReportSkillsInternal(String projectId, String skillId, List<String> userIds, Date incomingSkillDate) {
         Map<String, SkillEventResult> results = [:]
-        for (String userId : userIds) {
-            SkillEventResult result = skillEventsTransactionalService.reportSkillInternal(projectId, skillId, userId, incomingSkillDate)
-            results.put(userId, result)
+        for (List<String> chunk : userIds.collate(bulkReportChunkSize)) {
+            results.putAll(skillEventsTransactionalService.reportSkillForUsersInternal(projectId, skillId, chunk, incomingSkillDate))
         }
         return results
     }
@@ -184,6 +205,7 @@ class SkillEventAdminService {
         // may have more than 1 event with the same exact timestamp, this happens when multiple events may fall
         // within configured time window and client send the same timestamp (example UI calendar control)
         UserPerformedSkill performedSkill = performedSkills.first()
+        userProjectSummaryLoader.userChanged(userId)
         log.debug("Deleting skill [{}] for user [{}]", performedSkill, userId)
 
         SkillDefMin skillDefinitionMin = getSkillDef(projectId, skillId)
@@ -195,7 +217,7 @@ class SkillEventAdminService {
         if (related) {
             log.info("Propagating event deletion to the catalog skills - [{}] copies imported", related?.size())
             related?.each {
-                updateUserPointsAndAchievementsWhenPerformedSkillRemoved(userId, it, numExistingSkills)
+                updateUserPointsAndAchievementsWhenPerformedSkillRemoved(userId, it, numExistingSkills, performedSkill.performedOn)
             }
         }
 
@@ -209,20 +231,22 @@ class SkillEventAdminService {
             return res
         }
 
-        SkillEventResult skillEventResult = updateUserPointsAndAchievementsWhenPerformedSkillRemoved(userId, skillDefinitionMin, numExistingSkills)
+        SkillEventResult skillEventResult = updateUserPointsAndAchievementsWhenPerformedSkillRemoved(userId, skillDefinitionMin, numExistingSkills, performedSkill.performedOn)
         res.success = skillEventResult.skillApplied
         res.explanation = skillEventResult.explanation
 
         performedSkillRepository.delete(performedSkill)
+        recentPerformedOnCache.performedSkillRemoved(performedSkill.projectId, performedSkill.userId, performedSkill.skillRefId, performedSkill.performedOn)
         userEventService.removeEvent(performedSkill.performedOn, performedSkill.userId, performedSkill.skillRefId)
 
         return res
     }
 
-    private SkillEventResult updateUserPointsAndAchievementsWhenPerformedSkillRemoved(String userId, SkillDefMin skillDefinitionMin, Long numExistingPerformedSkills) {
+    private SkillEventResult updateUserPointsAndAchievementsWhenPerformedSkillRemoved(String userId, SkillDefMin skillDefinitionMin, Long numExistingPerformedSkills, Date performedOn) {
         log.info("Updating points and achievements after skill was removed for userId=[{}], projectId=[{}], skillId=[{}], numExistingPerformedSkills=[{}]",
                 userId, skillDefinitionMin.projectId, skillDefinitionMin.skillId, numExistingPerformedSkills)
         updateUserPoints(userId, skillDefinitionMin, skillDefinitionMin.skillId)
+        pointsHistoryLedger.pointsRemoved(userId, skillDefinitionMin, performedOn)
         boolean requestedSkillCompleted = hasReachedMaxPoints(numExistingPerformedSkills, skillDefinitionMin)
         if (requestedSkillCompleted) {
             checkForBadgesAchieved(userId, skillDefinitionMin)
@@ -308,6 +332,7 @@ class SkillEventAdminService {
         } else {
             userPointsRepo.save(userPoints)
         }
+        rankIndexService.pointsChanged(userPoints.userId, requestedSkill.projectId, [(skillId): userPoints.points > 0 ? userPoints.points : null] as Map<String, Integer>)
 
         return userPoints
     }
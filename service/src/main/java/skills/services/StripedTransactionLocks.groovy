@@ -0,0 +1,124 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services
+
+import com.google.common.util.concurrent.Striped
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+
+import javax.annotation.PostConstruct
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.Lock
+
+/**
+ * In-JVM locks that are held until the current transaction completes. Used in front of the database lock so that
+ * contention between threads of the same node is resolved without going to the database; it is not a replacement
+ * for the database lock which is still required across nodes.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class StripedTransactionLocks {
+
+    private static final String HELD_LOCKS_KEY = StripedTransactionLocks.class.name + '.held'
+    private static final String SKIPPED_KEY = StripedTransactionLocks.class.name + '.skipped'
+
+    @Value('#{"${skills.config.locks.inJvm.numStripes:1024}"}')
+    Integer numStripes
+
+    @Value('#{"${skills.config.locks.inJvm.waitTimeoutInMillis:10000}"}')
+    Long waitTimeoutInMillis
+
+    private Striped<Lock> stripes
+
+    @PostConstruct
+    void init() {
+        if (numStripes > 0) {
+            stripes = Striped.lazyWeakLock(numStripes)
+        }
+    }
+
+    boolean isEnabled() {
+        return stripes != null
+    }
+
+    static enum Result { Disabled, Acquired, AcquiredAfterWait, AlreadyHeld, TimedOut }
+
+    /**
+     * A timeout is not an error: the caller proceeds and relies on the database lock alone. This prevents
+     * two transactions that hash onto each other's stripes from deadlocking within the JVM.
+     */
+    Result lock(String key) {
+        if (!enabled || !TransactionSynchronizationManager.isSynchronizationActive() || TransactionSynchronizationManager.hasResource(SKIPPED_KEY)) {
+            return Result.Disabled
+        }
+        Lock lock = stripes.get(key)
+        Set<Lock> held = getHeldLocksForCurrentTransaction()
+        if (held.contains(lock)) {
+            return Result.AlreadyHeld
+        }
+
+        Result res = Result.Acquired
+        if (!lock.tryLock()) {
+            res = lock.tryLock(waitTimeoutInMillis, TimeUnit.MILLISECONDS) ? Result.AcquiredAfterWait : Result.TimedOut
+        }
+        if (res == Result.TimedOut) {
+            log.warn("Timed out after [{}] ms waiting for in-JVM lock [{}], relying on the database lock only", waitTimeoutInMillis, key)
+        } else {
+            held.add(lock)
+        }
+        return res
+    }
+
+    /**
+     * Subsequent {@link #lock} calls of the current transaction return {@link Result#Disabled}; used by transactions
+     * that lock many keys and rely on the ordered database locks alone.
+     */
+    void skipForCurrentTransaction() {
+        if (!enabled || !TransactionSynchronizationManager.isSynchronizationActive() || TransactionSynchronizationManager.hasResource(SKIPPED_KEY)) {
+            return
+        }
+        TransactionSynchronizationManager.bindResource(SKIPPED_KEY, Boolean.TRUE)
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(SKIPPED_KEY)
+            }
+        })
+    }
+
+    private Set<Lock> getHeldLocksForCurrentTransaction() {
+        Set<Lock> held = (Set<Lock>) TransactionSynchronizationManager.getResource(HELD_LOCKS_KEY)
+        if (held == null) {
+            held = new LinkedHashSet<Lock>()
+            TransactionSynchronizationManager.bindResource(HELD_LOCKS_KEY, held)
+            final Set<Lock> toRelease = held
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(HELD_LOCKS_KEY)
+                    toRelease.each { it.unlock() }
+                    toRelease.clear()
+                }
+            })
+        }
+        return held
+    }
+}
@@ -22,6 +22,7 @@ import org.springframework.stereotype.Service
 import org.springframework.transaction.annotation.Transactional
 import skills.controller.exceptions.SkillsValidator
 import skills.controller.result.model.LevelDefinitionRes
+import skills.services.ranking.RankIndexService
 import skills.services.settings.SettingsService
 import skills.storage.model.SkillDef
 import skills.storage.repos.*
@@ -58,6 +59,9 @@ class UserAchievementsAndPointsManagement {
     @Autowired
     LevelDefinitionStorageService levelDefinitionStorageService
 
+    @Autowired
+    RankIndexService rankIndexService
+
     @Transactional
     void handleSkillRemoval(SkillDef skillDef, SkillDef subject) {
         assert subject.type == SkillDef.ContainerType.Subject
@@ -71,6 +75,7 @@ class UserAchievementsAndPointsManagement {
         userAchievedLevelRepo.deleteByProjectIdAndSkillId(skillDef.projectId, skillDef.skillId)
         //don't leave any achievements if a user no longer has any entries in user_points
         userAchievedLevelRepo.deleteAchievementsWithNoPoints(skillDef.projectId)
+        rankIndexService.projectPointsChanged(skillDef.projectId)
     }
 
     @Transactional
@@ -78,6 +83,7 @@ class UserAchievementsAndPointsManagement {
         nativeQueriesRepo.updateOverallScoresBySummingUpAllChildSubjects(subject.projectId, SkillDef.ContainerType.Subject)
         userPointsRepo.removeOrphanedProjectPoints(subject.projectId)
         userAchievedLevelRepo.deleteAchievementsWithNoPoints(subject.projectId)
+        rankIndexService.projectPointsChanged(subject.projectId)
     }
 
     @Profile
@@ -91,6 +97,7 @@ class UserAchievementsAndPointsManagement {
 
         log.info("Updating project's UserPoints for [{}]", skill.projectId)
         nativeQueriesRepo.updateUserPointsForProject(skill.projectId)
+        rankIndexService.projectPointsChanged(skill.projectId)
     }
 
     @Transactional
@@ -112,6 +119,7 @@ class UserAchievementsAndPointsManagement {
             log.debug("Updating existing UserPoints. projectId=[${projectId}], subjectId=[${subjectId}], skillId=[${skillId}], incrementDelta=[${incrementDelta}], ")
         }
         nativeQueriesRepo.updatePointTotalsForSkill(projectId, subjectId, skillId, incrementDelta)
+        rankIndexService.projectPointsChanged(projectId)
     }
 
     @Transactional
@@ -120,6 +128,7 @@ class UserAchievementsAndPointsManagement {
             log.debug("Update points as occurrences were decreased. projectId=[${projectId}], subjectId=[${subjectId}], skillId=[${skillId}], pointIncrement=[${pointIncrement}], newOccurrences=[$numOccurrences], previousOccurrences=[${previousOccurrences}]")
         }
         nativeQueriesRepo.updatePointTotalWhenOccurrencesAreDecreased(projectId, subjectId, skillId, pointIncrement, newOccurrences, previousOccurrences)
+        rankIndexService.projectPointsChanged(projectId)
     }
 
     @Profile
@@ -21,9 +21,13 @@ import groovy.util.logging.Slf4j
 import org.apache.commons.lang3.StringUtils
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.annotation.Scheduled
 import org.springframework.stereotype.Service
+import org.springframework.transaction.PlatformTransactionManager
 import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.support.TransactionTemplate
 import skills.auth.UserInfo
+import skills.auth.UserRecordsCache
 import skills.controller.exceptions.ErrorCode
 import skills.controller.exceptions.SkillException
 import skills.storage.model.UserAttrs
@@ -31,6 +35,9 @@ import skills.storage.model.UserTag
 import skills.storage.repos.UserAttrsRepo
 import skills.storage.repos.UserTagRepo
 
+import javax.annotation.PostConstruct
+import java.util.concurrent.ConcurrentHashMap
+
 import static skills.controller.exceptions.SkillException.NA
 
 @Service
@@ -49,11 +56,34 @@ class UserAttrsService {
     @Value('#{"${skills.config.attrsAndUserTagsUpdateIntervalDays:7}"}')
     private int attrsAndUserTagsUpdateIntervalDays
 
+    @Autowired
+    UserRecordsCache userRecordsCache
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    private TransactionTemplate transactionTemplate
+    private final Map<String, UserInfo> pendingUserTagsRefreshes = new ConcurrentHashMap<>()
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager)
+    }
+
     @Transactional
     @Profile
     UserAttrs saveUserAttrs(String userId, UserInfo userInfo) {
         validateUserId(userId)
 
+        // an unchanged user causes no writes or locks; a due tags refresh is applied in the background
+        UserAttrs cachedUserAttrs = userRecordsCache.get(userId).userAttrs
+        if (cachedUserAttrs && !shouldUpdateUserAttrs(userInfo, cachedUserAttrs)) {
+            if (shouldUpdateUserTags(cachedUserAttrs)) {
+                scheduleUserTagsRefresh(userId, userInfo)
+            }
+            return cachedUserAttrs
+        }
+
         UserAttrs userAttrs = loadUserAttrsFromLocalDb(userId)
         boolean updateUserAttrs = false
         boolean updateUserTags = false
@@ -91,7 +121,7 @@ class UserAttrsService {
     UserAttrs getOrCreate(String userId, UserInfo userInfo) {
         validateUserId(userId)
 
-        UserAttrs userAttrs = loadUserAttrsFromLocalDb(userId)
+        UserAttrs userAttrs = userRecordsCache.get(userId).userAttrs ?: loadUserAttrsFromLocalDb(userId)
 
         if (!userAttrs) {
             // no userAttrs existed, creating for the first time
@@ -99,7 +129,7 @@ class UserAttrsService {
             return updateIfNecessary(false, true, userId, userAttrs, userInfo)
         }
 
-        return loadUserAttrsFromLocalDb(userId)
+        return userAttrs
     }
 
     @Transactional(readOnly = true)
@@ -107,10 +137,39 @@ class UserAttrsService {
     UserAttrs get(String userId, UserInfo userInfo) {
         validateUserId(userId)
 
-        UserAttrs userAttrs = loadUserAttrsFromLocalDb(userId)
+        UserAttrs userAttrs = userRecordsCache.get(userId).userAttrs
         return userAttrs
     }
 
+    /**
+     * Tag refreshes are write-behind: requests only record the latest user info (coalesced per user) and
+     * the pending refreshes are applied periodically, each in its own transaction
+     */
+    private void scheduleUserTagsRefresh(String userId, UserInfo userInfo) {
+        pendingUserTagsRefreshes.put(userId.toLowerCase(), userInfo)
+    }
+
+    @Scheduled(fixedDelayString = '#{"${skills.config.userTagsRefresh.flushIntervalInMillis:1000}"}')
+    void flushPendingUserTagsRefreshes() {
+        for (String userId : new ArrayList<String>(pendingUserTagsRefreshes.keySet())) {
+            UserInfo userInfo = pendingUserTagsRefreshes.remove(userId)
+            if (userInfo == null) {
+                continue
+            }
+            try {
+                transactionTemplate.executeWithoutResult {
+                    UserAttrs userAttrs = loadUserAttrsFromLocalDb(userId)
+                    if (userAttrs && shouldUpdateUserTags(userAttrs)) {
+                        updateIfNecessary(true, false, userId, userAttrs, userInfo)
+                    }
+                }
+            } catch (Throwable t) {
+                // the refresh is scheduled again by the next request of this user
+                log.error("Failed to refresh user tags for [${userId}]", t)
+            }
+        }
+    }
+
     @Profile
     private UserAttrs updateIfNecessary(boolean updateUserTags, boolean updateUserAttrs, String userId, UserAttrs userAttrs, UserInfo userInfo) {
         if (updateUserTags || updateUserAttrs) {
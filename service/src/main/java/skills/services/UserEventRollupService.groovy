@@ -0,0 +1,468 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services
+
+import groovy.transform.Canonical
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.commons.lang3.time.StopWatch
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.lang.Nullable
+import org.springframework.stereotype.Service
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import org.springframework.transaction.support.TransactionTemplate
+import skills.controller.exceptions.SkillException
+import skills.storage.model.*
+import skills.storage.repos.UserEventRollupRepo
+import skills.storage.repos.UserEventRollupStateRepo
+import skills.storage.repos.UserEventsRepo
+import skills.storage.repos.nativeSql.NativeQueriesRepo
+import skills.utils.DistinctCountSketch
+
+import javax.annotation.PostConstruct
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.util.stream.Stream
+
+/**
+ * Maintains {@link UserEventRollup}s - per skill, per event time and type pre-aggregations of {@link UserEvent}s - and
+ * answers event metrics from them so that metric queries don't have to scan and count distinct users over raw events.
+ *
+ * Rollups mirror the raw events exactly: each rollup holds the summed count and a distinct user sketch of all the
+ * raw events sharing its skill, event type and event time. Project and subject metrics are composed at read time by
+ * summing counts and merging sketches of their skills; weekly metrics merge the daily and weekly rollups of each week.
+ *
+ * There are deliberately no project or subject rollups. A skill's rollups are attributed to the subject and project the
+ * skill belongs to when the metric is read, so moving, importing, enabling or disabling skills needs no rollup
+ * maintenance. The cost of a project or subject metric is proportional to its number of skills times the number of
+ * days (or weeks) in the requested range rather than to the number of raw events, so it stays flat as user_events grows.
+ *
+ * Raw events older than user_event_rollup_state.rolled_up_before are guaranteed to be rolled up:
+ * <ul>
+ *  <li>the scheduled {@link #rollUp()} rolls up completed days (once they are settleTimeInMinutes old) and advances rolled_up_before</li>
+ *  <li>events recorded or removed for a day that already ended are merged into (or recomputed for) the rollup when their transaction commits</li>
+ *  <li>event compaction merges daily rollups into weekly rollups alongside the raw events</li>
+ * </ul>
+ * Reads use the rollups before rolled_up_before and raw events after it, which is at most a day or so of raw events.
+ * Both writers lock the rollup row before reading raw events, so they can't overwrite each other's changes.
+ */
+@Service
+@Slf4j
+@CompileStatic
+class UserEventRollupService {
+
+    @Value('#{"${skills.config.userEventRollups.enabled:true}"}')
+    boolean enabled = true
+
+    // completed days are only rolled up after this many minutes, giving in-flight transactions time to commit
+    @Value('#{"${skills.config.userEventRollups.settleTimeInMinutes:10}"}')
+    int settleTimeInMinutes = 10
+
+    @Autowired
+    UserEventRollupRepo userEventRollupRepo
+
+    @Autowired
+    UserEventRollupStateRepo userEventRollupStateRepo
+
+    @Autowired
+    UserEventsRepo userEventsRepo
+
+    @Autowired
+    NativeQueriesRepo nativeQueriesRepo
+
+    @Autowired
+    LockingService lockingService
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    @PersistenceContext
+    EntityManager entityManager
+
+    private static final String PENDING_CHANGES_KEY = UserEventRollupService.class.name + '.pendingChanges'
+    private static final int MAX_ATTEMPTS = 3
+
+    private TransactionTemplate newTransactionTemplate
+
+    @PostConstruct
+    void init() {
+        newTransactionTemplate = new TransactionTemplate(transactionManager)
+        newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW)
+        log.info("User event rollups enabled [{}], settle time [{}] minutes", enabled, settleTimeInMinutes)
+    }
+
+    /**
+     * Registers a recorded raw event; it is merged into its rollup when the current transaction commits, unless the
+     * event belongs to the current day, which is rolled up by {@link #rollUp()} once the day is over.
+     */
+    void eventRecorded(String projectId, Integer skillRefId, String userId, Date eventTime, Integer weekNumber, EventType type, Integer count) {
+        if (!enabled) {
+            return
+        }
+        PendingChange change = getPendingChange(new RollupKey(skillRefId, type, eventTime), projectId, weekNumber)
+        change.count += count
+        change.users.add(userId)
+    }
+
+    /**
+     * Registers a removed (or decremented) raw event; its rollup is recomputed when the current transaction commits
+     */
+    void eventRemoved(String projectId, Integer skillRefId, Date eventTime, Integer weekNumber, EventType type) {
+        if (!enabled) {
+            return
+        }
+        getPendingChange(new RollupKey(skillRefId, type, eventTime), projectId, weekNumber).recompute = true
+    }
+
+    /**
+     * Rolls up all raw events of completed days that haven't been rolled up yet, initially (or after the rollups
+     * were re-enabled) that is all of the existing raw events. Each event time is rolled up in its own transaction.
+     */
+    @Transactional
+    void rollUp() {
+        lockingService.lockEventCompaction()
+        if (lockingService.isEventCompactionClaimed()) {
+            log.info("event compaction is running, it rolls up the user events before compacting them")
+            return
+        }
+        doRollUp()
+    }
+
+    /**
+     * Called by event compaction while it holds the compaction claim, see {@link UserEventService#compactDailyEvents()}
+     */
+    @Transactional
+    void rollUpForCompaction() {
+        lockingService.lockEventCompaction()
+        doRollUp()
+    }
+
+    private void doRollUp() {
+        UserEventRollupState state = getState()
+        if (!enabled) {
+            if (state.rolledUpBefore) {
+                // rollups are not maintained while disabled, they are rebuilt when re-enabled
+                log.info("user event rollups are disabled, clearing rolled up time [{}]", state.rolledUpBefore)
+                state.rolledUpBefore = null
+                userEventRollupStateRepo.save(state)
+            }
+            return
+        }
+
+        Date target = LocalDateTime.now().minusMinutes(settleTimeInMinutes).toLocalDate().atStartOfDay().toDate()
+        Date from = state.rolledUpBefore ?: new Date(0)
+        if (!from.before(target)) {
+            return
+        }
+
+        StopWatch sw = new StopWatch()
+        sw.start()
+        TreeSet<Date> eventTimes = new TreeSet<>(userEventsRepo.findDistinctEventTimes(from, target))
+        eventTimes.addAll(userEventRollupRepo.findDistinctEventTimes(from, target))
+        log.info("rolling up user events of [{}] event times between [{}] and [{}]", eventTimes.size(), from, target)
+        eventTimes.each { Date eventTime ->
+            newTransactionTemplate.executeWithoutResult({ rollUpEventTime(eventTime) })
+        }
+        state.rolledUpBefore = target
+        userEventRollupStateRepo.save(state)
+        sw.stop()
+        log.info("rolled up user events before [{}] in [{}] ms", target, sw.getTime())
+    }
+
+    /**
+     * Merges the project's daily rollups of the week that are older than the provided date into weekly rollups, must
+     * be called by event compaction (after {@link #rollUp()}) as it compacts the corresponding raw events.
+     */
+    @Transactional
+    void compactDailyRollups(String projectId, Integer weekNumber, Date before) {
+        if (!enabled) {
+            return
+        }
+        Map<RollupKey, PendingChange> weekly = new TreeMap<>()
+        userEventRollupRepo.findAllByProjectIdAndWeekNumberAndEventTypeAndEventTimeLessThan(projectId, weekNumber, EventType.DAILY, before).withCloseable { Stream<UserEventRollup> stream ->
+            stream.forEach({ UserEventRollup daily ->
+                Date startOfWeek = StartDateUtil.computeStartDate(daily.eventTime, EventType.WEEKLY)
+                RollupKey key = new RollupKey(daily.skillRefId, EventType.WEEKLY, startOfWeek)
+                PendingChange change = weekly.get(key)
+                if (!change) {
+                    change = new PendingChange(projectId: daily.projectId, weekNumber: daily.weekNumber)
+                    weekly.put(key, change)
+                }
+                change.count += daily.count
+                change.users.merge(DistinctCountSketch.fromBytes(daily.usersSketch))
+                entityManager.detach(daily)
+            })
+        }
+        weekly.each { RollupKey key, PendingChange change -> merge(key, change) }
+        userEventRollupRepo.deleteByProjectIdAndWeekNumberAndEventTypeAndEventTimeLessThan(projectId, weekNumber, EventType.DAILY, before)
+    }
+
+    /**
+     * @return the time before which the rollups can be used or null if the provided start of a query range is not covered by the rollups
+     */
+    @Nullable
+    Date getRolledUpBefore(Date start) {
+        if (!enabled) {
+            return null
+        }
+        Date rolledUpBefore = getState().rolledUpBefore
+        return (rolledUpBefore && start.before(rolledUpBefore)) ? rolledUpBefore : null
+    }
+
+    /**
+     * Daily event counts (or distinct user counts) of the provided skills since start, ordered by day descending.
+     *
+     * @param projectId reported for every day, or null to report the lowest project id of the events of that day
+     */
+    List<DayCountItem> getDailyCounts(List<Integer> skillRefIds, @Nullable String projectId, Date start, Date rolledUpBefore, boolean distinct) {
+        Map<Date, Aggregate> aggregates = new TreeMap<>(Collections.reverseOrder())
+        if (skillRefIds) {
+            if (distinct) {
+                userEventRollupRepo.findAllBySkillRefIdsAndEventTypes(skillRefIds, [EventType.DAILY], start, rolledUpBefore).withCloseable { Stream<UserEventRollup> stream ->
+                    stream.forEach({ UserEventRollup rollup ->
+                        aggregates.computeIfAbsent(rollup.eventTime, { new Aggregate() }).addUsers(rollup.projectId, rollup.usersSketch)
+                        entityManager.detach(rollup)
+                    })
+                }
+                // days after rolledUpBefore are not rolled up, so they are counted from the raw events instead
+                addCounts(aggregates, userEventsRepo.getDistinctUserCountBySkillRefIds(skillRefIds, EventType.DAILY, rolledUpBefore))
+            } else {
+                addCounts(aggregates, userEventRollupRepo.getEventCountBySkillRefIds(skillRefIds, EventType.DAILY, start, rolledUpBefore))
+                addCounts(aggregates, userEventsRepo.getEventCountBySkillRefIds(skillRefIds, EventType.DAILY, rolledUpBefore))
+            }
+        }
+        return aggregates.collect { Date day, Aggregate aggregate ->
+            (DayCountItem) new DayCount(projectId ?: aggregate.projectId, day, aggregate.getTotal())
+        }
+    }
+
+    /**
+     * Weekly event counts (or distinct user counts) of the provided skills since start, ordered by week descending.
+     *
+     * @param projectId reported for every week, or null to report the lowest project id of the events of that week
+     */
+    List<WeekCountItem> getWeeklyCounts(List<Integer> skillRefIds, @Nullable String projectId, Date start, Date rolledUpBefore, boolean distinct) {
+        Map<Integer, Aggregate> aggregates = new TreeMap<>(Collections.reverseOrder())
+        if (skillRefIds) {
+            if (distinct) {
+                userEventRollupRepo.findAllBySkillRefIdsAndEventTypes(skillRefIds, [EventType.DAILY, EventType.WEEKLY], start, rolledUpBefore).withCloseable { Stream<UserEventRollup> stream ->
+                    stream.forEach({ UserEventRollup rollup ->
+                        aggregates.computeIfAbsent(rollup.weekNumber, { new Aggregate() }).addUsers(rollup.projectId, rollup.usersSketch)
+                        entityManager.detach(rollup)
+                    })
+                }
+                // the week that is in progress at rolledUpBefore has to merge its rolled up users with the raw users
+                userEventsRepo.findAllBySkillRefIdInAndEventTimeGreaterThanEqual(skillRefIds, rolledUpBefore).withCloseable { Stream<UserEvent> stream ->
+                    stream.forEach({ UserEvent event ->
+                        aggregates.computeIfAbsent(event.weekNumber, { new Aggregate() }).addUser(event.projectId, event.userId)
+                        entityManager.detach(event)
+                    })
+                }
+            } else {
+                addCounts(aggregates, userEventRollupRepo.getEventCountBySkillRefIdsGroupedByWeek(skillRefIds, start, rolledUpBefore))
+                addCounts(aggregates, userEventsRepo.getEventCountBySkillRefIdsGroupedByWeek(skillRefIds, rolledUpBefore))
+            }
+        }
+        return aggregates.collect { Integer weekNumber, Aggregate aggregate ->
+            (WeekCountItem) new WeekCount(projectId ?: aggregate.projectId, weekNumber, aggregate.getTotal())
+        }
+    }
+
+    private void rollUpEventTime(Date eventTime) {
+        nativeQueriesRepo.insertMissingUserEventRollups(eventTime)
+        // lock first so that changes committed after the raw events are read are merged on top of this rollup
+        List<UserEventRollup> rollups = userEventRollupRepo.findAllByEventTime(eventTime)
+
+        Map<RollupKey, PendingChange> computed = [:]
+        userEventsRepo.findAllByEventTime(eventTime).withCloseable { Stream<UserEvent> stream ->
+            stream.forEach({ UserEvent event ->
+                RollupKey key = new RollupKey(event.skillRefId, event.eventType, eventTime)
+                PendingChange change = computed.computeIfAbsent(key, { new PendingChange() })
+                change.count += event.count
+                change.users.add(event.userId)
+                entityManager.detach(event)
+            })
+        }
+        rollups.each { UserEventRollup rollup ->
+            replace(rollup, computed.get(new RollupKey(rollup.skillRefId, rollup.eventType, eventTime)))
+        }
+    }
+
+    private void apply(RollupKey key, PendingChange change) {
+        if (change.recompute) {
+            recompute(key, change)
+        } else {
+            merge(key, change)
+        }
+    }
+
+    private void merge(RollupKey key, PendingChange change) {
+        UserEventRollup rollup = lockRollup(key, change)
+        rollup.count += change.count
+        rollup.usersSketch = DistinctCountSketch.fromBytes(rollup.usersSketch).merge(change.users).toBytes()
+        userEventRollupRepo.save(rollup)
+    }
+
+    private void recompute(RollupKey key, PendingChange change) {
+        UserEventRollup rollup = lockRollup(key, change)
+        PendingChange computed = new PendingChange()
+        userEventsRepo.findAllBySkillRefIdAndEventTypeAndEventTime(key.skillRefId, key.eventType, key.eventTime).each { UserEvent event ->
+            computed.count += event.count
+            computed.users.add(event.userId)
+        }
+        replace(rollup, computed)
+    }
+
+    private void replace(UserEventRollup rollup, @Nullable PendingChange computed) {
+        if (computed && computed.count > 0) {
+            rollup.count = computed.count
+            rollup.usersSketch = computed.users.toBytes()
+            userEventRollupRepo.save(rollup)
+        } else {
+            userEventRollupRepo.delete(rollup)
+        }
+    }
+
+    private UserEventRollup lockRollup(RollupKey key, PendingChange change) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            nativeQueriesRepo.insertUserEventRollupIfMissing(change.projectId, key.skillRefId, key.eventType.toString(), key.eventTime, change.weekNumber)
+            UserEventRollup rollup = userEventRollupRepo.findBySkillRefIdAndEventTypeAndEventTime(key.skillRefId, key.eventType, key.eventTime)
+            if (rollup) {
+                return rollup
+            }
+            // removed by a concurrent transaction between the insert and the lock
+        }
+        throw new SkillException("Failed to lock user event rollup for [${key}]")
+    }
+
+    private UserEventRollupState getState() {
+        return userEventRollupStateRepo.findById(UserEventRollupState.ID).orElseGet({ new UserEventRollupState(id: UserEventRollupState.ID) })
+    }
+
+    private static <T> void addCounts(Map<T, Aggregate> aggregates, Stream items) {
+        items.withCloseable { Stream stream ->
+            stream.forEach({ Object item ->
+                T key = (T) (item instanceof DayCountItem ? ((DayCountItem) item).day : ((WeekCountItem) item).weekNumber)
+                Long count = item instanceof DayCountItem ? ((DayCountItem) item).count : ((WeekCountItem) item).count
+                String projectId = item instanceof DayCountItem ? ((DayCountItem) item).projectId : ((WeekCountItem) item).projectId
+                aggregates.computeIfAbsent(key, { new Aggregate() }).addCount(projectId, count)
+            })
+        }
+    }
+
+    private PendingChange getPendingChange(RollupKey key, String projectId, Integer weekNumber) {
+        Map<RollupKey, PendingChange> pending = getPendingChangesForCurrentTransaction()
+        PendingChange change = pending.get(key)
+        if (!change) {
+            change = new PendingChange(projectId: projectId, weekNumber: weekNumber)
+            pending.put(key, change)
+        }
+        return change
+    }
+
+    private Map<RollupKey, PendingChange> getPendingChangesForCurrentTransaction() {
+        Map<RollupKey, PendingChange> pending = (Map<RollupKey, PendingChange>) TransactionSynchronizationManager.getResource(PENDING_CHANGES_KEY)
+        if (pending == null) {
+            // sorted so that concurrent transactions lock rollups in the same order
+            pending = new TreeMap<RollupKey, PendingChange>()
+            TransactionSynchronizationManager.bindResource(PENDING_CHANGES_KEY, pending)
+            final Map<RollupKey, PendingChange> toApply = pending
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                void beforeCommit(boolean readOnly) {
+                    // evaluated at commit time: days that ended by now may already be rolled up
+                    Date startOfToday = LocalDate.now().atStartOfDay().toDate()
+                    toApply.each { RollupKey key, PendingChange change ->
+                        if (key.eventTime.before(startOfToday)) {
+                            apply(key, change)
+                        }
+                    }
+                }
+
+                @Override
+                void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_CHANGES_KEY)
+                }
+            })
+        }
+        return pending
+    }
+
+    @Canonical
+    private static class RollupKey implements Comparable<RollupKey> {
+        Integer skillRefId
+        EventType eventType
+        Date eventTime
+
+        @Override
+        int compareTo(RollupKey other) {
+            return skillRefId <=> other.skillRefId ?: eventType <=> other.eventType ?: eventTime <=> other.eventTime
+        }
+    }
+
+    private static class PendingChange {
+        String projectId
+        Integer weekNumber
+        long count
+        boolean recompute
+        DistinctCountSketch users = new DistinctCountSketch()
+    }
+
+    private static class Aggregate {
+        String projectId
+        long count
+        DistinctCountSketch users
+
+        void addCount(String projectId, Long count) {
+            addProjectId(projectId)
+            this.count += count ?: 0
+        }
+
+        void addUsers(String projectId, byte[] usersSketch) {
+            addProjectId(projectId)
+            getUsers().merge(DistinctCountSketch.fromBytes(usersSketch))
+        }
+
+        void addUser(String projectId, String userId) {
+            addProjectId(projectId)
+            getUsers().add(userId)
+        }
+
+        long getTotal() {
+            return users != null ? count + users.estimate() : count
+        }
+
+        private DistinctCountSketch getUsers() {
+            if (users == null) {
+                users = new DistinctCountSketch()
+            }
+            return users
+        }
+
+        private void addProjectId(String projectId) {
+            if (projectId != null && (this.projectId == null || projectId < this.projectId)) {
+                this.projectId = projectId
+            }
+        }
+    }
+}
@@ -16,13 +16,21 @@
 package skills.services
 
 import groovy.transform.CompileStatic
+import groovy.transform.PackageScope
 import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
 import org.apache.commons.lang3.Validate
 import org.apache.commons.lang3.time.StopWatch
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
 import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
 import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.support.TransactionCallback
+import org.springframework.transaction.support.TransactionTemplate
 import skills.controller.exceptions.ErrorCode
 import skills.controller.exceptions.SkillException
 import skills.storage.model.*
@@ -30,13 +38,19 @@ import skills.storage.repos.SkillDefRepo
 import skills.storage.repos.UserEventsRepo
 import skills.storage.repos.nativeSql.NativeQueriesRepo
 
-import javax.persistence.EntityManager
-import javax.persistence.PersistenceContext
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
 import java.time.DayOfWeek
 import java.time.Duration
 import java.time.LocalDate
 import java.time.LocalDateTime
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
 import java.util.stream.Stream
 
 @Component
@@ -49,9 +63,6 @@ class UserEventService {
     @Autowired
     UserEventsRepo userEventsRepo
 
-    @PersistenceContext
-    EntityManager entityManager;
-
     // Changing this to a larger value once events have been compacted (so in this case after there are events that
     // are 30 days old that have been compacted into weekly events) will cause weekly events that are now newer than
     // compactDailyEventsOlderThan to no longer be visible in the system.
@@ -66,8 +77,45 @@ class UserEventService {
     @Autowired
     LockingService lockingService
 
+    @Autowired
+    UserEventRollupService userEventRollupService
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    @Value('#{"${skills.config.eventCompaction.parallelism:4}"}')
+    int compactionParallelism = 4
+
+    // renewed after every compacted chunk, so it only needs to exceed the time it takes to compact one
+    @Value('#{"${skills.config.eventCompaction.claimTimeoutInMinutes:30}"}')
+    int compactionClaimTimeoutInMinutes = 30
+
+    private TransactionTemplate compactionTransactionTemplate
+    private ExecutorService compactionPool
+
     private static final List<SkillDef.ContainerType> ALLOWABLE_CONTAINER_TYPES = [SkillDef.ContainerType.Skill, SkillDef.ContainerType.Subject]
 
+    @PostConstruct
+    void init() {
+        compactionTransactionTemplate = new TransactionTemplate(transactionManager)
+        compactionTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW)
+        compactionPool = Executors.newFixedThreadPool(Math.max(1, compactionParallelism), new CustomizableThreadFactory('event-compaction-'))
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // a project week that is interrupted is rolled back and compacted by the next run; project weeks that did not
+        // start are cancelled so that a run in progress stops waiting for them
+        compactionPool.shutdownNow().each { Runnable notStarted ->
+            if (notStarted instanceof Future) {
+                ((Future) notStarted).cancel(false)
+            }
+        }
+    }
+
     /**
      * Returns the daily user interaction counts for a skill or subject whether the skill was applied or not.
      *
@@ -93,9 +141,12 @@ class UserEventService {
         //TODO: fix all these
         List<DayCountItem> results
         Integer rawId = skillDef.id
+        Date rolledUpBefore = userEventRollupService.getRolledUpBefore(EventType.DAILY == eventType ? start : StartDateUtil.computeStartDate(start, EventType.WEEKLY))
         if (EventType.DAILY == eventType) {
             Stream<DayCountItem> stream
-            if (SkillDef.ContainerType.Skill == skillDef.type) {
+            if (rolledUpBefore) {
+                stream = userEventRollupService.getDailyCounts(getEventSkillRefIds(skillDef, false), skillDef.projectId, start, rolledUpBefore, false).stream()
+            } else if (SkillDef.ContainerType.Skill == skillDef.type) {
                 stream = userEventsRepo.getEventCountForSkill(rawId, start, eventType)
             } else {
                 stream = userEventsRepo.getEventCountForSubject(rawId, start, eventType)
@@ -104,7 +155,9 @@ class UserEventService {
         } else {
             start = StartDateUtil.computeStartDate(start, EventType.WEEKLY)
             Stream<WeekCountItem> stream
-            if (SkillDef.ContainerType.Skill == skillDef.type) {
+            if (rolledUpBefore) {
+                stream = userEventRollupService.getWeeklyCounts(getEventSkillRefIds(skillDef, false), skillDef.projectId, start, rolledUpBefore, false).stream()
+            } else if (SkillDef.ContainerType.Skill == skillDef.type) {
                 stream = userEventsRepo.getEventCountForSkillGroupedByWeek(rawId, start)
             } else {
                 stream = userEventsRepo.getEventCountForSubjectGroupedByWeek(rawId, start)
@@ -139,10 +192,15 @@ class UserEventService {
         List<DayCountItem> results
         //only applicable to skills
         Integer rawId = skillDef.id
+        Date rolledUpBefore = userEventRollupService.getRolledUpBefore(EventType.DAILY == eventType ? start : StartDateUtil.computeStartDate(start, EventType.WEEKLY))
 
         if (EventType.DAILY == eventType) {
             Stream<DayCountItem> stream
-            if (SkillDef.ContainerType.Skill == skillDef.type) {
+            if (rolledUpBefore) {
+                // subject distinct counts exclude events at the start of the range
+                Date rollupStart = SkillDef.ContainerType.Skill == skillDef.type ? start : new Date(start.time + 1)
+                stream = userEventRollupService.getDailyCounts(getEventSkillRefIds(skillDef, true), getEventProjectId(skillDef), rollupStart, rolledUpBefore, true).stream()
+            } else if (SkillDef.ContainerType.Skill == skillDef.type) {
                 stream = userEventsRepo.getDistinctUserCountForSkill(rawId, start, eventType)
             } else {
                 stream = userEventsRepo.getDistinctUserCountForSubject(rawId, start, eventType)
@@ -151,7 +209,9 @@ class UserEventService {
         } else {
             start = StartDateUtil.computeStartDate(start, EventType.WEEKLY)
             Stream<WeekCountItem> stream
-            if (SkillDef.ContainerType.Skill == skillDef.type) {
+            if (rolledUpBefore) {
+                stream = userEventRollupService.getWeeklyCounts(getEventSkillRefIds(skillDef, true), getEventProjectId(skillDef), start, rolledUpBefore, true).stream()
+            } else if (SkillDef.ContainerType.Skill == skillDef.type) {
                 stream = userEventsRepo.getDistinctUserCountForSkillGroupedByWeek(rawId, start)
             } else {
                 stream = userEventsRepo.getDistinctUserCountForSubjectGroupedByWeek(rawId, start)
@@ -179,11 +239,17 @@ class UserEventService {
 
         List<DayCountItem> results
         if (EventType.DAILY == eventType) {
-            Stream<DayCountItem> stream = userEventsRepo.getEventCountForProject(projectId, start, eventType)
+            Date rolledUpBefore = userEventRollupService.getRolledUpBefore(start)
+            Stream<DayCountItem> stream = rolledUpBefore ?
+                    userEventRollupService.getDailyCounts(skillDefRepo.findEventSkillRefIdsByProjectId(projectId), projectId, start, rolledUpBefore, false).stream() :
+                    userEventsRepo.getEventCountForProject(projectId, start, eventType)
             results = convertResults(stream, eventType, start, [projectId])
         } else {
             start = StartDateUtil.computeStartDate(start, EventType.WEEKLY)
-            Stream<WeekCountItem> stream = userEventsRepo.getEventCountForProjectGroupedByWeek(projectId, start)
+            Date rolledUpBefore = userEventRollupService.getRolledUpBefore(start)
+            Stream<WeekCountItem> stream = rolledUpBefore ?
+                    userEventRollupService.getWeeklyCounts(skillDefRepo.findEventSkillRefIdsByProjectId(projectId), projectId, start, rolledUpBefore, false).stream() :
+                    userEventsRepo.getEventCountForProjectGroupedByWeek(projectId, start)
             results = convertResults(stream, start)
         }
 
@@ -237,11 +303,18 @@ class UserEventService {
         EventType eventType = determineAppropriateEventType(start)
         List<DayCountItem> results
         if (EventType.DAILY == eventType) {
-            Stream<DayCountItem> stream = userEventsRepo.getDistinctUserCountForProject(projectId, start, eventType)
+            Date rolledUpBefore = userEventRollupService.getRolledUpBefore(start)
+            Stream<DayCountItem> stream = rolledUpBefore ?
+                    userEventRollupService.getDailyCounts(skillDefRepo.findEventSkillRefIdsByProjectId(projectId), projectId, start, rolledUpBefore, true).stream() :
+                    userEventsRepo.getDistinctUserCountForProject(projectId, start, eventType)
             results = convertResults(stream, eventType, start, [projectId])
         } else {
             start = StartDateUtil.computeStartDate(start, EventType.WEEKLY)
-            Stream<WeekCountItem> stream = userEventsRepo.getDistinctUserCountForProjectGroupedByWeek(projectId, start)
+            Date rolledUpBefore = userEventRollupService.getRolledUpBefore(start)
+            // weekly distinct counts report the project of the events, see NOTE above
+            Stream<WeekCountItem> stream = rolledUpBefore ?
+                    userEventRollupService.getWeeklyCounts(skillDefRepo.findEventSkillRefIdsByProjectId(projectId), null, start, rolledUpBefore, true).stream() :
+                    userEventsRepo.getDistinctUserCountForProjectGroupedByWeek(projectId, start)
 
             results = convertResults(stream, start)
         }
@@ -263,43 +336,88 @@ class UserEventService {
         Date start = StartDateUtil.computeStartDate(date, type)
         Integer weekNumber = WeekNumberUtil.getWeekNumber(start)
         nativeQueriesRepo.createOrUpdateUserEvent(projectId, skillRefId, userId, start, type.toString(), eventCount,  weekNumber)
+        userEventRollupService.eventRecorded(projectId, skillRefId, userId, start, weekNumber, type, eventCount)
     }
 
     /**
      * Compacts daily events older than compactDailyEventsOlderThan into weekly events.
+     *
+     * Events are compacted in chunks of one project and week, each chunk in its own transaction and up to
+     * skills.config.eventCompaction.parallelism chunks at a time. The daily events of a chunk are deleted in the same
+     * transaction that writes its weekly events, so a run that is interrupted resumes with the remaining chunks.
+     *
+     * Runs are serialized with a claim on event_compaction_lock (see {@link LockingService#claimEventCompaction})
+     * rather than by holding the lock in a transaction that spans the whole run.
      */
     @CompileStatic
-    @Transactional
     public void compactDailyEvents() {
-        lockingService.lockEventCompaction()
+        long claimTimeoutInMillis = TimeUnit.MINUTES.toMillis(compactionClaimTimeoutInMinutes)
+        if (!lockingService.claimEventCompaction(claimTimeoutInMillis)) {
+            log.warn("event compaction is already running, skipping this run")
+            return
+        }
+        try {
+            // daily rollups can only be compacted once all of the compacted days are rolled up
+            userEventRollupService.rollUpForCompaction()
+            compactProjectWeeks(claimTimeoutInMillis)
+        } finally {
+            lockingService.releaseEventCompactionClaim()
+        }
+    }
 
-        LocalDateTime dateTime = LocalDateTime.now().minusDays(maxDailyDays)
-        log.info("beginning compaction of daily events older than [${dateTime}] into weekly events")
+    @CompileStatic
+    private void compactProjectWeeks(long claimTimeoutInMillis) {
+        Date before = LocalDateTime.now().minusDays(maxDailyDays).toDate()
+        List<ProjectWeekItem> chunks = userEventsRepo.findDistinctProjectWeeksByEventTypeAndEventTimeLessThan(EventType.DAILY, before)
+        log.info("beginning compaction of daily events older than [${before}] into weekly events, [${chunks.size()}] project weeks to compact")
+        if (!chunks) {
+            return
+        }
 
-        int totalProcessed = 0
         StopWatch sw = new StopWatch()
         sw.start()
-
-        userEventsRepo.findAllByEventTypeAndEventTimeLessThan(EventType.DAILY, dateTime.toDate()).withCloseable { Stream<UserEvent> stream ->
-            stream.forEach({ UserEvent userEvent ->
-                totalProcessed++
-                recordEvent(userEvent.projectId, userEvent.skillRefId, userEvent.userId, userEvent.eventTime, userEvent.count, EventType.WEEKLY)
-                entityManager.detach(userEvent)
-                if (totalProcessed % 50000 == 0) {
-                    log.info("compacted $totalProcessed daily user events so far")
-                }
-            })
+        int totalProcessed = 0
+        int numFailed = 0
+        List<Future<Integer>> results = chunks.collect { ProjectWeekItem chunk ->
+            compactionPool.submit({ compactProjectWeek(chunk.projectId, chunk.weekNumber, before) } as Callable<Integer>)
+        }
+        results.eachWithIndex { Future<Integer> result, int i ->
+            try {
+                totalProcessed += result.get()
+            } catch (ExecutionException e) {
+                numFailed++
+                log.error("failed to compact daily events of project [${chunks[i].projectId}] and week [${chunks[i].weekNumber}]", e.cause)
+            }
+            lockingService.renewEventCompactionClaim(claimTimeoutInMillis)
         }
         sw.stop()
         Duration duration = Duration.of(sw.getTime(), ChronoUnit.MILLIS)
+        log.info("Compacted [${totalProcessed}] daily events of [${chunks.size() - numFailed}] project weeks in [${duration}]")
+        if (numFailed > 0) {
+            throw new SkillException("Failed to compact daily events of [${numFailed}] out of [${chunks.size()}] project weeks, they will be compacted by the next run")
+        }
+    }
 
-        log.info("Compacted [${totalProcessed}] rows in [${duration}], deleting input events now")
-        sw.reset()
-        sw.start()
-        userEventsRepo.deleteByEventTypeAndEventTimeLessThan(EventType.DAILY, dateTime.toDate())
-        sw.stop()
-        duration = Duration.of(sw.getTime(), ChronoUnit.MILLIS)
-        log.info("Deleted compacted input events in [${duration}]")
+    @CompileStatic
+    private int compactProjectWeek(String projectId, Integer weekNumber, Date before) {
+        Timer.Sample sample = Timer.start(meterRegistry)
+        String outcome = 'failure'
+        try {
+            Integer numCompacted = compactionTransactionTemplate.execute({
+                Date startOfWeek = WeekNumberUtil.getStartOfWeekFromWeekNumber(weekNumber).atStartOfDay().toDate()
+                nativeQueriesRepo.compactDailyUserEvents(projectId, weekNumber, startOfWeek, before)
+                userEventRollupService.compactDailyRollups(projectId, weekNumber, before)
+                return userEventsRepo.deleteByProjectIdAndWeekNumberAndEventTypeAndEventTimeLessThan(projectId, weekNumber, EventType.DAILY, before)
+            } as TransactionCallback<Integer>)
+            meterRegistry.counter('skills.events.compaction.compactedEvents').increment(numCompacted)
+            outcome = 'success'
+            return numCompacted
+        } finally {
+            sample.stop(Timer.builder('skills.events.compaction.chunk')
+                    .description('Time spent compacting the daily user events of a single project and week')
+                    .tag('outcome', outcome)
+                    .register(meterRegistry))
+        }
     }
 
     /**
@@ -334,10 +452,36 @@ class UserEventService {
         } else {
             userEventsRepo.save(event)
         }
+        userEventRollupService.eventRemoved(event.projectId, event.skillRefId, event.eventTime, event.weekNumber, event.eventType)
+    }
+
+    private List<Integer> getEventSkillRefIds(SkillDef skillDef, boolean includeImported) {
+        if (SkillDef.ContainerType.Subject == skillDef.type) {
+            return skillDefRepo.findEventSkillRefIdsBySubjectRefId(skillDef.id)
+        }
+        return getEnabledSkillDefs(skillDef, includeImported).collect { it.copiedFrom ?: it.id }.unique()
+    }
+
+    // distinct counts of a skill include the projects that imported it and are reported under the lowest project id
+    private String getEventProjectId(SkillDef skillDef) {
+        if (SkillDef.ContainerType.Subject == skillDef.type) {
+            return skillDef.projectId
+        }
+        return getEnabledSkillDefs(skillDef, true).collect { it.projectId }.min() ?: skillDef.projectId
+    }
+
+    private List<SkillDef> getEnabledSkillDefs(SkillDef skillDef, boolean includeImported) {
+        List<SkillDef> skillDefs = [skillDef]
+        if (includeImported) {
+            skillDefs.addAll(skillDefRepo.findSkillsCopiedFrom(skillDef.id) ?: [])
+        }
+        return skillDefs.findAll { it.enabled == Boolean.TRUE.toString() }
     }
 
+    // package-private so that it can be benchmarked without the repository
+    @PackageScope
     @CompileStatic
-    private List<DayCountItem> convertResults(Stream<DayCountItem> stream, EventType eventType, Date startOfQueryRange, List<String> projectIds=[]) {
+    List<DayCountItem> convertResults(Stream<DayCountItem> stream, EventType eventType, Date startOfQueryRange, List<String> projectIds=[]) {
         // initialize counts for all passed in project id's so there will be zero counts added for projects with no events yet
         Map<String, PerProjectCounts> perProjectCounts = projectIds.collectEntries {projectId ->
             [projectId, new PerProjectCounts(lastDate: StartDateUtil.computeStartDate(new Date(), eventType))]
@@ -21,6 +21,8 @@ import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
 import skills.services.RuleSetDefinitionScoreUpdater
 import skills.services.UserAchievementsAndPointsManagement
+import skills.services.events.SkillDefinitionSnapshotCache
+import skills.services.ranking.RankIndexService
 import skills.storage.model.SkillDef
 import skills.storage.repos.SkillDefRepo
 import skills.storage.repos.UserAchievedLevelRepo
@@ -54,6 +56,12 @@ class BatchOperationsTransactionalAccessor {
     @Autowired
     SkillsGroupAdminService skillsGroupAdminService
 
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
+    @Autowired
+    RankIndexService rankIndexService
+
     @Transactional
     @Profile
     void enableSkills(List<SkillDef> disabledImportedSkills) {
@@ -80,12 +88,15 @@ class BatchOperationsTransactionalAccessor {
     @Profile
     void updateProjectsTotalPoints(String projectId) {
         skillDefRepo.updateProjectsTotalPoints(projectId, false)
+        // native update bypasses the entity listeners
+        skillDefinitionSnapshotCache.projectDefinitionChanged(projectId)
     }
 
     @Transactional
     @Profile
     void copySkillUserPointsToTheImportedProjects(String toProjectId, List<Integer> fromSkillRefIds) {
         userPointsRepo.copySkillUserPointsToTheImportedProjects(toProjectId, fromSkillRefIds)
+        rankIndexService.projectPointsChanged(toProjectId)
     }
 
     @Transactional
@@ -98,12 +109,14 @@ class BatchOperationsTransactionalAccessor {
     @Profile
     void createSubjectUserPointsForTheNewUsers(String toProjectId, String toSubjectId) {
         userPointsRepo.createSubjectUserPointsForTheNewUsers(toProjectId, toSubjectId)
+        rankIndexService.projectPointsChanged(toProjectId)
     }
 
     @Transactional
     @Profile
     void updateUserPointsForSubject(String projectId, String skillId) {
         nativeQueriesRepo.updateUserPointsForSubject(projectId, skillId, false)
+        rankIndexService.projectPointsChanged(projectId)
     }
 
     @Transactional
@@ -132,12 +145,14 @@ class BatchOperationsTransactionalAccessor {
     @Profile
     void createProjectUserPointsForTheNewUsers(String toProjectId) {
         userPointsRepo.createProjectUserPointsForTheNewUsers(toProjectId)
+        rankIndexService.projectPointsChanged(toProjectId)
     }
 
     @Transactional
     @Profile
     void updateUserPointsForProject(String projectId) {
         nativeQueriesRepo.updateUserPointsForProject(projectId)
+        rankIndexService.projectPointsChanged(projectId)
     }
 
     @Transactional
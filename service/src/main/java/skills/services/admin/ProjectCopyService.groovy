@@ -16,378 +16,237 @@
 package skills.services.admin
 
 import callStack.profiler.Profile
-import groovy.json.JsonOutput
 import groovy.util.logging.Slf4j
 import org.apache.commons.lang3.StringUtils
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
 import org.springframework.transaction.annotation.Transactional
-import skills.auth.UserInfo
-import skills.auth.UserInfoService
-import skills.auth.UserSkillsGrantedAuthority
 import skills.controller.exceptions.ErrorCode
 import skills.controller.exceptions.SkillException
-import skills.controller.request.model.BadgeRequest
-import skills.controller.request.model.EditLevelRequest
-import skills.controller.request.model.NextLevelRequest
 import skills.controller.request.model.ProjectRequest
-import skills.controller.request.model.ProjectSettingsRequest
-import skills.controller.request.model.SkillRequest
 import skills.controller.request.model.SkillsActionRequest
-import skills.controller.request.model.SubjectRequest
-import skills.controller.result.model.LevelDefinitionRes
-import skills.controller.result.model.SettingsResult
-import skills.controller.result.model.SkillDefPartialRes
-import skills.services.AccessSettingsStorageService
-import skills.services.CreatedResourceLimitsValidator
-import skills.services.CustomValidationResult
-import skills.services.CustomValidator
-import skills.services.LevelDefinitionStorageService
-import skills.services.LockingService
+import skills.controller.result.model.ProjectCopyInfoResult
+import skills.services.RuleSetDefGraphService
 import skills.services.admin.skillReuse.SkillReuseService
-import skills.services.settings.Settings
-import skills.services.settings.SettingsDataAccessor
-import skills.services.settings.SettingsService
-import skills.storage.model.ProjDef
-import skills.storage.model.Setting
+import skills.storage.model.ProjectCopyJob
 import skills.storage.model.SkillDef
-import skills.storage.model.SkillDefWithExtra
-import skills.storage.model.SkillRelDef
-import skills.storage.model.auth.RoleName
 import skills.storage.repos.ProjDefRepo
-import skills.storage.repos.SkillDefWithExtraRepo
-import skills.storage.repos.SkillRelDefRepo
-import skills.utils.ClientSecretGenerator
-import skills.utils.Props
+import skills.storage.repos.ProjectCopyJobRepo
+import skills.storage.repos.SkillDefRepo
+import skills.tasks.TaskSchedulerService
 
+/**
+ * Copies a project as a sequence of bounded steps, each committed in its own transaction by
+ * {@link ProjectCopyTransactionalAccessor}: settings, skill definitions and relationships (in chunks of
+ * skills.config.projectCopy.chunkSize definitions), levels, display order, points and finally the reused skills.
+ *
+ * Definitions are copied with set-based INSERT ... SELECT statements under the same skill ids, so relationships
+ * and levels are remapped onto the new project by skill id. Progress is tracked in a {@link ProjectCopyJob};
+ * if any step fails the partially copied project is removed and the job is marked as failed.
+ */
 @Service
 @Slf4j
 class ProjectCopyService {
 
-    @Autowired
-    CustomValidator customValidator
-
-    @Autowired
-    LockingService lockingService
+    static enum Step { Settings, SkillDefinitions, Relationships, Levels, DisplayOrder, Points, ReusedSkills }
 
-    @Autowired
-    ServiceValidatorHelper serviceValidatorHelper
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 2000
 
-    @Autowired
-    ProjDefRepo projDefRepo
+    @Value('#{"${skills.config.projectCopy.chunkSize:500}"}')
+    int chunkSize
 
-    @Autowired
-    CreatedResourceLimitsValidator createdResourceLimitsValidator
+    @Value('#{"${skills.config.projectCopy.inlineMaxSkills:100}"}')
+    int inlineMaxSkills
 
     @Autowired
-    UserInfoService userInfoService
+    ProjectCopyTransactionalAccessor projectCopyTransactionalAccessor
 
     @Autowired
-    SubjAdminService subjAdminService
+    ProjectCopyJobRepo projectCopyJobRepo
 
     @Autowired
-    SkillDefWithExtraRepo skillDefWithExtraRepo
-
-    @Autowired
-    SkillsAdminService skillsAdminService
-
-    @Autowired
-    SkillRelDefRepo skillRelDefRepo
-
-    @Autowired
-    AccessSettingsStorageService accessSettingsStorageService
+    ProjDefRepo projDefRepo
 
     @Autowired
-    BadgeAdminService badgeAdminService
+    SkillDefRepo skillDefRepo
 
     @Autowired
-    SkillsDepsService skillsDepsService
+    RuleSetDefGraphService ruleSetDefGraphService
 
     @Autowired
     SkillReuseService skillReuseService
 
     @Autowired
-    ProjAdminService projAdminService
-
-    @Autowired
-    LevelDefinitionStorageService levelDefinitionStorageService
+    TaskSchedulerService taskSchedulerService
 
-    @Autowired
-    SettingsService settingsService
-
-    @Transactional
+    /**
+     * Copies the project within the request; throws if any of the steps fail
+     */
     @Profile
     void copyProject(String originalProjectId, ProjectRequest projectRequest) {
-        lockingService.lockProjects()
-
-        ProjDef fromProject = loadProject(originalProjectId)
-        validate(projectRequest)
-
-        ProjDef toProj = saveToProject(projectRequest)
-        saveProjectSettings(fromProject, toProj)
-
-        pinProjectForRootUser(toProj)
-
-        List<SkillInfo> allCollectedSkills = []
-        saveSubjectsAndSkills(projectRequest, fromProject, toProj, allCollectedSkills)
-        updateProjectAndSubjectLevels(fromProject, toProj)
-
-        saveBadgesAndTheirSkills(fromProject, toProj)
-        saveDependencies(fromProject, toProj)
-        saveReusedSkills(allCollectedSkills, fromProject, toProj)
+        ProjectCopyJob job = projectCopyTransactionalAccessor.startCopy(originalProjectId, projectRequest)
+        runCopy(job.id)
     }
 
+    /**
+     * Creates the new project and copies the rest of it right away when it has no more than
+     * skills.config.projectCopy.inlineMaxSkills skill definitions, otherwise schedules the copy as a background task;
+     * progress is reported by {@link #getCopyInfo}
+     */
     @Profile
-    private void pinProjectForRootUser(ProjDef toProj) {
-        UserInfo userInfo = userInfoService.getCurrentUser()
-        boolean isRoot = userInfo.authorities?.find() {
-            it instanceof UserSkillsGrantedAuthority && RoleName.ROLE_SUPER_DUPER_USER == it.role?.roleName
+    ProjectCopyInfoResult startCopy(String originalProjectId, ProjectRequest projectRequest) {
+        ProjectCopyJob job = projectCopyTransactionalAccessor.startCopy(originalProjectId, projectRequest)
+        if (skillDefRepo.getSkillRefIdsToCopy(originalProjectId).size() <= inlineMaxSkills) {
+            // failures are reported to the caller, the job is marked as FAILED and the partial copy removed by runCopy
+            runCopy(job.id)
+            return convert(projectCopyJobRepo.findById(job.id).get())
         }
-        if (isRoot) {
-            projAdminService.pinProjectForRootUser(toProj.projectId)
+        try {
+            taskSchedulerService.scheduleProjectCopy(job.id)
+        } catch (Throwable t) {
+            failCopy(job, t)
+            throw t
         }
+        return convert(job)
     }
 
-    @Profile
-    private void saveProjectSettings(ProjDef fromProject, toProj) {
-        List<SettingsResult> settings = settingsService.loadSettingsForProject(fromProject.projectId)
-        settings.each { SettingsResult fromSetting ->
-            // copied projects should not be discoverable by default therefore should not carry this setting forward
-            boolean discoverableProject = fromSetting.setting == Settings.PRODUCTION_MODE.settingName && fromSetting.value == Boolean.TRUE.toString()
-            boolean isLevelsAsPtsSetting = fromSetting.setting == Settings.LEVEL_AS_POINTS.settingName && fromSetting.value == Boolean.TRUE.toString()
-            boolean isProjectRoleSetting = fromSetting.setting == Settings.USER_PROJECT_ROLE.settingName;
-            if (!discoverableProject && !isLevelsAsPtsSetting && !isProjectRoleSetting) {
-                ProjectSettingsRequest projectSettingsRequest = new ProjectSettingsRequest(
-                        projectId: toProj.projectId,
-                        settingGroup: fromSetting.settingGroup,
-                        setting: fromSetting.setting,
-                        value: fromSetting.value,
-                )
-                settingsService.saveSetting(projectSettingsRequest)
-            }
+    @Transactional(readOnly = true)
+    ProjectCopyInfoResult getCopyInfo(String originalProjectId, Integer jobId) {
+        ProjectCopyJob job = projectCopyJobRepo.findByIdAndFromProjectId(jobId, originalProjectId)
+        if (!job) {
+            throw new SkillException("Project copy job [${jobId}] does not exist", originalProjectId, null, ErrorCode.BadParam)
         }
+        return convert(job)
     }
 
+    /**
+     * The job is claimed with a conditional update before anything is copied, so only one run (for example of a
+     * re-delivered task) ever copies it; a job that was already started is refused and left untouched since it may
+     * still be running on another node
+     */
     @Profile
-    private void updateProjectAndSubjectLevels(ProjDef fromProject, ProjDef toProj) {
-        SettingsResult levelAsPointsSetting = settingsService.loadSettingsForProject(fromProject.projectId).find {
-            it.setting == Settings.LEVEL_AS_POINTS.settingName && it.value == Boolean.TRUE.toString()
+    void runCopy(Integer jobId) {
+        ProjectCopyJob job = projectCopyJobRepo.findById(jobId).orElseThrow({
+            new SkillException("Project copy job [${jobId}] does not exist", null, null, ErrorCode.BadParam)
+        })
+        String fromProjectId = job.fromProjectId
+        String toProjectId = job.toProjectId
+        if (job.state != ProjectCopyJob.State.RUNNING) {
+            log.warn("PROJ COPY: [{}]=[{}] - job [{}] is already [{}], not running it again", fromProjectId, toProjectId, jobId, job.state)
+            return
         }
-        if (levelAsPointsSetting) {
-            ProjectSettingsRequest projectSettingsRequest = new ProjectSettingsRequest(
-                    projectId: toProj.projectId,
-                    settingGroup: levelAsPointsSetting.settingGroup,
-                    setting: levelAsPointsSetting.setting,
-                    value: levelAsPointsSetting.value,
-            )
-            settingsService.saveSetting(projectSettingsRequest)
+        if (projectCopyJobRepo.claim(jobId, Step.Settings.toString(), ProjectCopyJob.State.RUNNING) == 0) {
+            throw new SkillException("Project copy job [${jobId}] was already started", fromProjectId, null, ErrorCode.BadParam)
         }
-        updateLevels(fromProject, toProj)
-
-        List<SkillDefWithExtra> fromSubjects = skillDefWithExtraRepo.findAllByProjectIdAndType(fromProject.projectId, SkillDef.ContainerType.Subject)
-        fromSubjects?.findAll { it.enabled }
-                .each { SkillDefWithExtra fromSubj ->
-                    updateLevels(fromProject, toProj, fromSubj.skillId)
-                }
-    }
-
-    @Profile
-    private void updateLevels(ProjDef fromProject, ProjDef toProj, String subjectId = null) {
-        List<LevelDefinitionRes> fromLevels = levelDefinitionStorageService.getLevels(fromProject.projectId, subjectId).sort({ it.level })
-        List<LevelDefinitionRes> existingLevels = levelDefinitionStorageService.getLevels(toProj.projectId, subjectId).sort({ it.level })
-
-        // remove all the levels but the first one - this will resolve any weird issue with updates where points cannot overlap between levels
-        int levelsToKeep = 1
-        int levelsToRemove = existingLevels.size() - levelsToKeep
-
-        if (levelsToRemove > 0) {
-            (levelsToRemove).times {
-                try {
-                    levelDefinitionStorageService.deleteLastLevel(toProj.projectId, subjectId)
-                    log.debug("PROJ COPY: [{}]=[{}] subj[{}] - removed last level", fromProject.projectId, toProj.projectId, subjectId)
-                } catch (Throwable t) {
-                    throw new IllegalStateException("Failed to remove last level for proj=[${toProj.projectId}] and subjectId=[${subjectId}]", t)
-                }
+        job = projectCopyJobRepo.findById(jobId).get()
+        try {
+            if (!projDefRepo.existsByProjectIdIgnoreCase(fromProjectId)) {
+                throw new SkillException("Project with id [${fromProjectId}] does not exist", fromProjectId, null, ErrorCode.BadParam)
             }
-        }
-        List<LevelDefinitionRes> levelsToUpdate = fromLevels.findAll { it.level <= levelsToKeep }.sort({ it.level }).reverse()
-        List<LevelDefinitionRes> levelsToCreate = fromLevels.findAll { it.level > levelsToKeep }.sort({ it.level })
-        levelsToUpdate.eachWithIndex { LevelDefinitionRes fromLevel, int index ->
-            EditLevelRequest editLevelRequest = new EditLevelRequest(
-                    percent: fromLevel.percent,
-                    name: fromLevel.name,
-                    iconClass: fromLevel.iconClass,
-                    level: fromLevel.level,
-                    pointsFrom: fromLevel.pointsFrom,
-                    pointsTo: (index > 0) ? fromLevel.pointsTo : null, // levels are reversed and the highest level must always have pointTo=null
-            )
-            levelDefinitionStorageService.editLevel(toProj.projectId, editLevelRequest, fromLevel.level, subjectId)
-            log.debug("PROJ COPY: [{}]=[{}] subj[{}] - edited level to [{}]", fromProject.projectId, toProj.projectId, subjectId, JsonOutput.toJson(editLevelRequest))
-        }
-        levelsToCreate.each { LevelDefinitionRes fromlevel ->
-            NextLevelRequest nextLevelRequest = new NextLevelRequest(
-                    percent: fromlevel.percent,
-                    points: fromlevel.pointsFrom,
-                    name: fromlevel.name,
-                    iconClass: fromlevel.iconClass,
-            )
-
-            levelDefinitionStorageService.addNextLevel(toProj.projectId, nextLevelRequest, subjectId)
-            log.debug("PROJ COPY: [{}]=[{}] subj[{}] - new level [{}]", fromProject.projectId, toProj.projectId, subjectId, JsonOutput.toJson(nextLevelRequest))
-        }
-    }
-
-
-    private static class SkillInfo {
-        SkillDefWithExtra skillDef
-        String subjectId
-        String groupId
-    }
-
-    private static class ReuseOperation {
-        SkillInfo from
-        SkillInfo to
-    }
-
-    @Profile
-    private void saveReusedSkills(List<SkillInfo> allCollectedSkills, ProjDef fromProj, ProjDef toProj) {
-        List<SkillInfo> reusedSkills = allCollectedSkills.findAll { it.skillDef.copiedFrom && it.skillDef.copiedFromProjectId == fromProj.projectId }
-        if (reusedSkills) {
-            Map<Integer, List<SkillInfo>> bySkillRefId = allCollectedSkills.groupBy { it.skillDef.id }
-            List<ReuseOperation> reuseOperations = []
-            reusedSkills.each { SkillInfo toReuse ->
-                SkillInfo fromReuse = bySkillRefId[toReuse.skillDef.copiedFrom].first()
-                reuseOperations.add(new ReuseOperation(from: fromReuse, to: toReuse))
+            List<List<Integer>> chunks = skillDefRepo.getSkillRefIdsToCopy(fromProjectId).collate(chunkSize)
+            List<ReuseOperation> reuseOperations = collectReuseOperations(fromProjectId)
+            job.totalSteps = 4 + (chunks.size() * 2) + reuseOperations.size()
+            job = projectCopyJobRepo.save(job)
+
+            job = runStep(job, Step.Settings) { projectCopyTransactionalAccessor.copySettings(fromProjectId, toProjectId) }
+            chunks.each { List<Integer> chunk ->
+                job = runStep(job, Step.SkillDefinitions) { projectCopyTransactionalAccessor.copySkillDefs(toProjectId, chunk) }
             }
-
-            Map<String, List<ReuseOperation>> reuseOperationsByParent = reuseOperations.groupBy {
-                String fromParentId = it.from.groupId ?: it.from.subjectId
-                String toParentId = it.to.groupId ?: it.to.subjectId
-                return "${fromParentId}->${toParentId}"
+            // all of the definitions must exist before relationships can be remapped onto them
+            chunks.each { List<Integer> chunk ->
+                job = runStep(job, Step.Relationships) { projectCopyTransactionalAccessor.copyRelationships(fromProjectId, toProjectId, chunk) }
             }
-            reuseOperationsByParent.each {
-                skillReuseService.reuseSkill(toProj.projectId,
-                        new SkillsActionRequest(
-                                skillIds: it.value.collect { it.from.skillDef.skillId },
-                                subjectId: it.value[0].to.subjectId,
-                                groupId: it.value[0].to.groupId,
-                        ))
+            job = runStep(job, Step.Levels) { projectCopyTransactionalAccessor.copyLevels(fromProjectId, toProjectId) }
+            job = runStep(job, Step.DisplayOrder) { projectCopyTransactionalAccessor.updateDisplayOrder(toProjectId) }
+            job = runStep(job, Step.Points) { projectCopyTransactionalAccessor.updatePointsAndBadges(fromProjectId, toProjectId) }
+            reuseOperations.each { ReuseOperation reuseOperation ->
+                job = runStep(job, Step.ReusedSkills) {
+                    skillReuseService.reuseSkill(toProjectId, new SkillsActionRequest(
+                            skillIds: reuseOperation.skillIds,
+                            subjectId: reuseOperation.toSubjectId,
+                            groupId: reuseOperation.toGroupId,
+                    ))
+                }
             }
-        }
-    }
 
-    @Profile
-    private void saveDependencies(ProjDef fromProject, toProj) {
-        List<SkillsDepsService.GraphSkillDefEdge> edges = skillsDepsService.loadGraphEdges(fromProject.projectId, SkillRelDef.RelationshipType.Dependence)
-        List<SkillsDepsService.GraphSkillDefEdge> localOnlyEdges = edges.findAll { SkillsDepsService.GraphSkillDefEdge graphSkillDefEdge ->
-            graphSkillDefEdge.to.projectId == fromProject.projectId && graphSkillDefEdge.from.projectId == fromProject.projectId
-        }
-        localOnlyEdges.each {
-            skillsDepsService.assignSkillDependency(toProj.projectId, it.from.skillId, it.to.skillId)
+            job.state = ProjectCopyJob.State.COMPLETED
+            job.currentStep = null
+            projectCopyJobRepo.save(job)
+            log.info("PROJ COPY: [{}]=[{}] - copied in [{}] steps", fromProjectId, toProjectId, job.totalSteps)
+        } catch (Throwable t) {
+            failCopy(job, t)
+            throw t
         }
     }
 
-    @Profile
-    private void saveBadgesAndTheirSkills(ProjDef fromProject, ProjDef toProj) {
-        List<SkillDefWithExtra> badges = skillDefWithExtraRepo.findAllByProjectIdAndType(fromProject.projectId, SkillDef.ContainerType.Badge)
-        badges.sort { it.displayOrder }.each { SkillDefWithExtra fromBadge ->
-            BadgeRequest badgeRequest = new BadgeRequest()
-            Props.copy(fromBadge, badgeRequest)
-            badgeRequest.badgeId = fromBadge.skillId
-            badgeRequest.enabled = Boolean.FALSE.toString()
-            badgeAdminService.saveBadge(toProj.projectId, fromBadge.skillId, badgeRequest)
-            List<SkillDefPartialRes> badgeSkills = skillsAdminService.getSkillsForBadge(fromProject.projectId, fromBadge.skillId)
-            badgeSkills.each { SkillDefPartialRes fromBadgeSkill ->
-                badgeAdminService.addSkillToBadge(toProj.projectId, badgeRequest.badgeId, fromBadgeSkill.skillId)
-            }
-            // must enable it after the skills were added
-            if (fromBadge.enabled == Boolean.TRUE.toString() && badgeSkills) {
-                badgeRequest.enabled = fromBadge.enabled
-                badgeAdminService.saveBadge(toProj.projectId, fromBadge.skillId, badgeRequest)
-            }
+    private void failCopy(ProjectCopyJob job, Throwable t) {
+        String fromProjectId = job.fromProjectId
+        String toProjectId = job.toProjectId
+        log.error("PROJ COPY: [${fromProjectId}]=[${toProjectId}] - failed at step [${job.currentStep}], removing partially copied project", t)
+        job.state = ProjectCopyJob.State.FAILED
+        job.errorMessage = StringUtils.abbreviate(t.message ?: t.class.simpleName, MAX_ERROR_MESSAGE_LENGTH)
+        projectCopyJobRepo.save(job)
+        try {
+            projectCopyTransactionalAccessor.deleteCopiedProject(toProjectId)
+        } catch (Throwable deleteFailure) {
+            log.error("PROJ COPY: [${fromProjectId}]=[${toProjectId}] - failed to remove partially copied project", deleteFailure)
         }
     }
 
-    @Profile
-    private void saveSubjectsAndSkills(ProjectRequest projectRequest, ProjDef fromProject, ProjDef toProj, List<SkillInfo> allCollectedSkills) {
-        List<SkillDefWithExtra> fromSubjects = skillDefWithExtraRepo.findAllByProjectIdAndType(fromProject.projectId, SkillDef.ContainerType.Subject)
-        fromSubjects?.findAll { it.enabled }
-                .sort { it.displayOrder }
-                .each { SkillDefWithExtra fromSubj ->
-                    SubjectRequest toSubj = new SubjectRequest()
-                    Props.copy(fromSubj, toSubj)
-                    toSubj.subjectId = fromSubj.skillId
-                    subjAdminService.saveSubject(projectRequest.projectId, fromSubj.skillId, toSubj)
-                    log.info("PROJ COPY: [{}]=[{}] subj[{}] - created new subject")
-                    createSkills(fromProject.projectId, toProj.projectId, toSubj.subjectId, allCollectedSkills)
-                }
-    }
-
-    @Profile
-    private void createSkills(String originalProjectId, String desProjectId, String subjectId, List<SkillInfo> allCollectedSkills, String groupId = null) {
-        String parentId = groupId ?: subjectId
-        List<SkillDefWithExtra> skillDefs = skillRelDefRepo.getChildrenWithExtraAttrs(originalProjectId, parentId,
-                [SkillRelDef.RelationshipType.RuleSetDefinition, SkillRelDef.RelationshipType.SkillsGroupRequirement])
-
-        allCollectedSkills.addAll(skillDefs.collect { new SkillInfo(skillDef: it, subjectId: subjectId, groupId: groupId) })
-        skillDefs?.findAll { it.enabled == "true" && (!it.copiedFrom) }
-                .sort { it.displayOrder }
-                .each { SkillDefWithExtra fromSkill ->
-                    SkillRequest skillRequest = new SkillRequest()
-                    Props.copy(fromSkill, skillRequest)
-                    skillRequest.projectId = desProjectId
-                    skillRequest.subjectId = subjectId
-                    skillRequest.type = fromSkill.type?.toString()
-                    skillRequest.version = 0
-                    skillRequest.selfReportingType = fromSkill.selfReportingType?.toString()
-                    if (fromSkill.type != SkillDef.ContainerType.SkillsGroup) {
-                        skillRequest.numPerformToCompletion = fromSkill.totalPoints / fromSkill.pointIncrement
-                    }
-
-                    // group partial requirement must be set after skills are added
-                    Integer groupNumSkillsRequired = -1
-                    if (fromSkill.type == SkillDef.ContainerType.SkillsGroup) {
-                        groupNumSkillsRequired = fromSkill.numSkillsRequired
-                        skillRequest.numSkillsRequired = -1
-                    }
-                    skillsAdminService.saveSkill(fromSkill.skillId, skillRequest, true, groupId)
-                    if (fromSkill.type == SkillDef.ContainerType.SkillsGroup) {
-                        createSkills(originalProjectId, desProjectId, subjectId, allCollectedSkills, fromSkill.skillId)
-                    }
-                    if (groupNumSkillsRequired > 0) {
-                        skillRequest.numSkillsRequired = groupNumSkillsRequired
-                        skillsAdminService.saveSkill(fromSkill.skillId, skillRequest, true, groupId)
-                    }
-                }
-    }
-
-    @Profile
-    private ProjDef saveToProject(ProjectRequest projectRequest) {
-        projAdminService.saveProject(null, projectRequest)
-        ProjDef toProj = projDefRepo.findByProjectId(projectRequest.projectId)
-        return toProj
+    private ProjectCopyJob runStep(ProjectCopyJob job, Step step, Closure stepClosure) {
+        job.currentStep = step.toString()
+        job = projectCopyJobRepo.save(job)
+        stepClosure.call()
+        job.completedSteps++
+        log.debug("PROJ COPY: [{}]=[{}] - completed step [{}] ({}/{})", job.fromProjectId, job.toProjectId, step, job.completedSteps, job.totalSteps)
+        return projectCopyJobRepo.save(job)
     }
 
-    @Profile
-    private ProjDef loadProject(String projectId) {
-        ProjDef res = projDefRepo.findByProjectIdIgnoreCase(projectId)
-        if (!res) {
-            throw new SkillException("Project with id [${projectId}] does not exist", projectId, null, ErrorCode.BadParam)
-        }
-        return res
+    private static class ReuseOperation {
+        List<String> skillIds = []
+        String toSubjectId
+        String toGroupId
     }
 
+    /**
+     * Reused skills are re-created with the reuse workflow once their originals have been copied; skills are grouped
+     * by their original parent and their destination parent, one reuse operation per group
+     */
     @Profile
-    private void validate(ProjectRequest projectRequest) {
-        CustomValidationResult customValidationResult = customValidator.validate(projectRequest)
-        if (!customValidationResult.valid) {
-            throw new SkillException(customValidationResult.msg)
+    private List<ReuseOperation> collectReuseOperations(String fromProjectId) {
+        List<SkillDef> reusedSkills = skillDefRepo.findAllByProjectIdAndCopiedFromProjectId(fromProjectId, fromProjectId)
+        if (!reusedSkills) {
+            return []
         }
-        if (!userInfoService.isCurrentUserASuperDuperUser()){
-            createdResourceLimitsValidator.validateNumProjectsCreated(userInfoService.getCurrentUserId())
+        Set<Integer> copiedSkillRefIds = skillDefRepo.getSkillRefIdsToCopy(fromProjectId).toSet()
+        Map<String, ReuseOperation> byParent = [:]
+        reusedSkills.sort { it.id }.each { SkillDef reused ->
+            if (!copiedSkillRefIds.contains(reused.copiedFrom)) {
+                return
+            }
+            SkillDef original = skillDefRepo.findById(reused.copiedFrom).get()
+            String fromParentId = original.groupId ?: ruleSetDefGraphService.getMySubjectParent(original.id).skillId
+            String toSubjectId = ruleSetDefGraphService.getMySubjectParent(reused.id).skillId
+            String toParentId = reused.groupId ?: toSubjectId
+            ReuseOperation reuseOperation = byParent.computeIfAbsent("${fromParentId}->${toParentId}".toString(), {
+                new ReuseOperation(toSubjectId: toSubjectId, toGroupId: reused.groupId)
+            })
+            reuseOperation.skillIds.add(original.skillId)
         }
-        serviceValidatorHelper.validateProjectIdDoesNotExist(projectRequest.projectId)
-        serviceValidatorHelper.validateProjectNameDoesNotExist(projectRequest.name, projectRequest.projectId)
+        return byParent.values().toList()
     }
 
+    private static ProjectCopyInfoResult convert(ProjectCopyJob job) {
+        return new ProjectCopyInfoResult(
+                jobId: job.id,
+                fromProjectId: job.fromProjectId,
+                toProjectId: job.toProjectId,
+                state: job.state.toString(),
+                currentStep: job.currentStep,
+                completedSteps: job.completedSteps,
+                totalSteps: job.totalSteps,
+                errorMessage: job.errorMessage,
+        )
+    }
 }
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.admin
+
+import callStack.profiler.Profile
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Service
+import org.springframework.transaction.annotation.Transactional
+import skills.auth.UserInfo
+import skills.auth.UserInfoService
+import skills.auth.UserSkillsGrantedAuthority
+import skills.controller.exceptions.ErrorCode
+import skills.controller.exceptions.SkillException
+import skills.controller.request.model.ProjectRequest
+import skills.services.CreatedResourceLimitsValidator
+import skills.services.CustomValidationResult
+import skills.services.CustomValidator
+import skills.services.LockingService
+import skills.services.RuleSetDefinitionScoreUpdater
+import skills.services.events.SkillDefinitionSnapshotCache
+import skills.services.settings.Settings
+import skills.services.settings.SettingsCache
+import skills.storage.model.ProjDef
+import skills.storage.model.ProjectCopyJob
+import skills.storage.model.SkillDef
+import skills.storage.model.auth.RoleName
+import skills.storage.repos.LevelDefRepo
+import skills.storage.repos.ProjDefRepo
+import skills.storage.repos.ProjectCopyJobRepo
+import skills.storage.repos.SettingRepo
+import skills.storage.repos.SkillDefRepo
+import skills.storage.repos.SkillRelDefRepo
+
+/**
+ * Units of work of {@link ProjectCopyService}; each method runs and commits in its own transaction.
+ *
+ * Copied rows are written with set-based INSERT ... SELECT statements which bypass the entity listeners, so every
+ * method invalidates the definition and settings caches of the destination project itself.
+ */
+@Service
+@Slf4j
+class ProjectCopyTransactionalAccessor {
+
+    @Autowired
+    CustomValidator customValidator
+
+    @Autowired
+    LockingService lockingService
+
+    @Autowired
+    ServiceValidatorHelper serviceValidatorHelper
+
+    @Autowired
+    CreatedResourceLimitsValidator createdResourceLimitsValidator
+
+    @Autowired
+    UserInfoService userInfoService
+
+    @Autowired
+    ProjAdminService projAdminService
+
+    @Autowired
+    ProjDefRepo projDefRepo
+
+    @Autowired
+    SkillDefRepo skillDefRepo
+
+    @Autowired
+    SkillRelDefRepo skillRelDefRepo
+
+    @Autowired
+    LevelDefRepo levelDefRepo
+
+    @Autowired
+    SettingRepo settingRepo
+
+    @Autowired
+    ProjectCopyJobRepo projectCopyJobRepo
+
+    @Autowired
+    RuleSetDefinitionScoreUpdater ruleSetDefinitionScoreUpdater
+
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
+    @Autowired
+    SettingsCache settingsCache
+
+    /**
+     * Validates the request and creates the destination project (pinned for root users) along with the job that
+     * tracks the rest of the copy
+     */
+    @Transactional
+    @Profile
+    ProjectCopyJob startCopy(String originalProjectId, ProjectRequest projectRequest) {
+        lockingService.lockProjects()
+
+        ProjDef fromProject = loadProject(originalProjectId)
+        validate(projectRequest)
+
+        projAdminService.saveProject(null, projectRequest)
+        pinProjectForRootUser(projectRequest.projectId)
+
+        ProjectCopyJob job = new ProjectCopyJob(
+                fromProjectId: fromProject.projectId,
+                toProjectId: projectRequest.projectId,
+                state: ProjectCopyJob.State.RUNNING,
+        )
+        return projectCopyJobRepo.save(job)
+    }
+
+    @Transactional
+    @Profile
+    void copySettings(String fromProjectId, String toProjectId) {
+        // copied projects should not be discoverable by default therefore production mode is not carried forward when enabled;
+        // the project role was already created for the destination project
+        settingRepo.copyProjectSettings(fromProjectId, toProjectId, [Settings.USER_PROJECT_ROLE.settingName], Settings.PRODUCTION_MODE.settingName)
+        settingsCache.projectSettingsChanged(toProjectId)
+    }
+
+    @Transactional
+    @Profile
+    void copySkillDefs(String toProjectId, List<Integer> fromSkillRefIds) {
+        ProjDef toProj = projDefRepo.findByProjectId(toProjectId)
+        skillDefRepo.copySkillDefs(toProjectId, toProj.id, fromSkillRefIds)
+        skillDefinitionSnapshotCache.projectDefinitionChanged(toProjectId)
+    }
+
+    @Transactional
+    @Profile
+    void copyRelationships(String fromProjectId, String toProjectId, List<Integer> fromChildRefIds) {
+        skillRelDefRepo.copyRelationships(fromProjectId, toProjectId, fromChildRefIds)
+        skillDefinitionSnapshotCache.projectDefinitionChanged(toProjectId)
+    }
+
+    /**
+     * Replaces the default levels of the destination project with the levels of the original project and its subjects
+     */
+    @Transactional
+    @Profile
+    void copyLevels(String fromProjectId, String toProjectId) {
+        ProjDef fromProj = projDefRepo.findByProjectId(fromProjectId)
+        ProjDef toProj = projDefRepo.findByProjectId(toProjectId)
+        levelDefRepo.deleteAllByProjectRefId(toProj.id)
+        levelDefRepo.copyProjectLevels(fromProj.id, toProj.id)
+        levelDefRepo.copySubjectLevels(fromProjectId, toProjectId)
+        skillDefinitionSnapshotCache.projectDefinitionChanged(toProjectId)
+    }
+
+    /**
+     * Display order is renumbered from 1 within each parent, as if the definitions were created one by one
+     */
+    @Transactional
+    @Profile
+    void updateDisplayOrder(String toProjectId) {
+        skillDefRepo.normalizeSubjectAndBadgeDisplayOrder(toProjectId)
+        skillDefRepo.normalizeSkillDisplayOrder(toProjectId)
+        skillDefinitionSnapshotCache.projectDefinitionChanged(toProjectId)
+    }
+
+    /**
+     * Total points of groups, subjects and the project only account for the skills that were copied;
+     * enabled badges are enabled once they have skills
+     */
+    @Transactional
+    @Profile
+    void updatePointsAndBadges(String fromProjectId, String toProjectId) {
+        skillDefRepo.findAllByProjectIdAndType(toProjectId, SkillDef.ContainerType.SkillsGroup).each {
+            ruleSetDefinitionScoreUpdater.updateGroupTotalPoints(toProjectId, it.skillId)
+        }
+        skillDefRepo.findAllByProjectIdAndType(toProjectId, SkillDef.ContainerType.Subject).each {
+            ruleSetDefinitionScoreUpdater.updateSubjectTotalPoints(toProjectId, it.skillId)
+        }
+        ruleSetDefinitionScoreUpdater.updateProjDef(toProjectId)
+        skillDefRepo.enableCopiedBadges(fromProjectId, toProjectId)
+        skillDefinitionSnapshotCache.projectDefinitionChanged(toProjectId)
+    }
+
+    @Transactional
+    @Profile
+    void deleteCopiedProject(String toProjectId) {
+        if (projAdminService.existsByProjectId(toProjectId)) {
+            projAdminService.deleteProject(toProjectId)
+        }
+    }
+
+    @Profile
+    private void pinProjectForRootUser(String toProjectId) {
+        UserInfo userInfo = userInfoService.getCurrentUser()
+        boolean isRoot = userInfo.authorities?.find() {
+            it instanceof UserSkillsGrantedAuthority && RoleName.ROLE_SUPER_DUPER_USER == it.role?.roleName
+        }
+        if (isRoot) {
+            projAdminService.pinProjectForRootUser(toProjectId)
+        }
+    }
+
+    @Profile
+    private ProjDef loadProject(String projectId) {
+        ProjDef res = projDefRepo.findByProjectIdIgnoreCase(projectId)
+        if (!res) {
+            throw new SkillException("Project with id [${projectId}] does not exist", projectId, null, ErrorCode.BadParam)
+        }
+        return res
+    }
+
+    @Profile
+    private void validate(ProjectRequest projectRequest) {
+        CustomValidationResult customValidationResult = customValidator.validate(projectRequest)
+        if (!customValidationResult.valid) {
+            throw new SkillException(customValidationResult.msg)
+        }
+        if (!userInfoService.isCurrentUserASuperDuperUser()){
+            createdResourceLimitsValidator.validateNumProjectsCreated(userInfoService.getCurrentUserId())
+        }
+        serviceValidatorHelper.validateProjectIdDoesNotExist(projectRequest.projectId)
+        serviceValidatorHelper.validateProjectNameDoesNotExist(projectRequest.name, projectRequest.projectId)
+    }
+}
@@ -34,6 +34,7 @@ import skills.controller.request.model.SkillRequest
 import skills.controller.result.model.*
 import skills.services.RuleSetDefGraphService
 import skills.services.admin.skillReuse.SkillReuseIdUtil
+import skills.services.events.ImportedSkillIdsCache
 import skills.services.events.pointsAndAchievements.InsufficientPointsForFinalizationValidator
 import skills.services.events.pointsAndAchievements.InsufficientPointsValidator
 import skills.storage.accessors.ProjDefAccessor
@@ -102,6 +103,9 @@ class SkillCatalogService {
     @Autowired
     NativeQueriesRepo nativeQueriesRepo
 
+    @Autowired
+    ImportedSkillIdsCache importedSkillIdsCache
+
     @Transactional(readOnly = true)
     TotalCountAwareResult<ProjectNameAwareSkillDefRes> getSkillsAvailableInCatalog(String projectId, String projectNameSearch, String subjectNameSearch, String skillNameSearch, PageRequest pageable) {
         pageable = convertForCatalogSkills(pageable)
@@ -218,6 +222,7 @@ class SkillCatalogService {
 
         ExportedSkill exportedSkill = new ExportedSkill(projectId: skillDef.projectId, skill: skillDef)
         exportedSkillRepo.save(exportedSkill)
+        importedSkillIdsCache.catalogSharingChanged(skillDef.id)
     }
 
     private Long countDependencies(String projectId, String skillId) {
@@ -238,6 +243,7 @@ class SkillCatalogService {
             skillsAdminService.deleteSkill(it.projectId, subject.skillId, it.skillId)
         }
         exportedSkillRepo.delete(es)
+        importedSkillIdsCache.catalogSharingChanged(es.skill.id)
     }
 
     @Transactional
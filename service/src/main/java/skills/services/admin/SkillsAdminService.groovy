@@ -37,6 +37,7 @@ import skills.controller.result.model.SkillDefRes
 import skills.controller.result.model.SkillDefSkinnyRes
 import skills.services.*
 import skills.services.admin.skillReuse.SkillReuseIdUtil
+import skills.services.events.SkillDefinitionSnapshotCache
 import skills.storage.accessors.SkillDefAccessor
 import skills.storage.model.SkillDef
 import skills.storage.model.SkillDef.SelfReportingType
@@ -115,6 +116,9 @@ class SkillsAdminService {
     @Autowired
     ProjDefRepo projDefRepo
 
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
     protected static class SaveSkillTmpRes {
         // because of the skill re-use it could be imported but NOT available in the catalog
         boolean isImportedByOtherProjects = false
@@ -454,7 +458,12 @@ class SkillsAdminService {
         //identify any badges that this skill belonged to and award the badge if any users now qualify for this badge
         List<SkillDef> badges = findAllBadgesSkillBelongsTo(skillDefinition.skillId)
 
+        // Dependence rows are removed by the database cascade which JPA listeners never see, so the snapshots
+        // of the projects that depend on this skill (or on a child of this group) must be invalidated here
+        Set<String> dependentProjectIds = findDependentProjectIds(skillDefinition)
+
         ruleSetDefGraphService.deleteSkillWithItsDescendants(skillDefinition)
+        dependentProjectIds.each { skillDefinitionSnapshotCache.projectDefinitionChanged(it) }
         log.debug("Deleted skill [{}]", skillDefinition.skillId)
 
         // this MUST happen after the skill was removed as sql relies on the skill to be gone
@@ -488,6 +497,20 @@ class SkillsAdminService {
         displayOrderService.resetDisplayOrder(siblings)
     }
 
+    private Set<String> findDependentProjectIds(SkillDef skillDefinition) {
+        List<SkillDef> skills = [skillDefinition]
+        if (skillDefinition.type == SkillDef.ContainerType.SkillsGroup) {
+            skills.addAll(ruleSetDefGraphService.getChildrenSkills(skillDefinition, [SkillRelDef.RelationshipType.SkillsGroupRequirement]))
+        }
+        Set<String> projectIds = new HashSet<>()
+        skills.each { SkillDef skill ->
+            skillRelDefRepo.findParentByChildIdAndTypes(skill.id, [SkillRelDef.RelationshipType.Dependence])?.each {
+                projectIds.add(it.projectId)
+            }
+        }
+        return projectIds
+    }
+
     @Profile
     void removeCatalogImportedSkills(SkillDef skillDefinition) {
         List<SkillDefWithExtra> related = skillDefWithExtraRepo.findSkillsCopiedFrom(skillDefinition.id)
@@ -28,6 +28,7 @@ import skills.services.UserAchievementsAndPointsManagement
 import skills.services.admin.DisplayOrderService
 import skills.services.admin.SkillCatalogFinalizationService
 import skills.services.admin.BatchOperationsTransactionalAccessor
+import skills.services.ranking.RankIndexService
 import skills.storage.accessors.SkillDefAccessor
 import skills.storage.model.SkillDef
 import skills.storage.model.SkillRelDef
@@ -70,6 +71,9 @@ class SkillsMoveService {
     @Autowired
     DisplayOrderService displayOrderService
 
+    @Autowired
+    RankIndexService rankIndexService
+
     @Transactional
     @Profile
     void moveSkills(String projectId, SkillsActionRequest skillReuseRequest) {
@@ -141,6 +145,7 @@ class SkillsMoveService {
     @Profile
     private removeSubjectUserPointsForNonExistentSkillDef(String projectId, SkillDef origSubj) {
         userPointsRepo.removeSubjectUserPointsForNonExistentSkillDef(projectId, origSubj.skillId)
+        rankIndexService.projectPointsChanged(projectId)
     }
 
     @Profile
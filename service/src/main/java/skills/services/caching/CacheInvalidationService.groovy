@@ -0,0 +1,202 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.caching
+
+import groovy.transform.CompileStatic
+import groovy.transform.EqualsAndHashCode
+import groovy.transform.ToString
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Service
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import org.springframework.transaction.support.TransactionTemplate
+import skills.storage.model.CacheInvalidation
+import skills.storage.repos.CacheInvalidationRepo
+
+import javax.annotation.PostConstruct
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Coordinates invalidation of node-local caches:
+ *  - the local cache is invalidated right away and once again after the current transaction commits so that
+ *    an entry re-loaded by a concurrent reader before the commit does not survive
+ *  - the invalidation is then recorded in the cache_invalidation table (in its own transaction, after the
+ *    originating transaction commits) and every other node polls that table to invalidate its own copy; the
+ *    publishing node skips its own rows as its caches were already invalidated
+ *  - versioned caches (see {@link #registerVersioned}) keep the latest invalidation of every key past the retention
+ *    period so that the id of that row can be used as a cluster-wide version of the key
+ */
+@Service
+@Slf4j
+@CompileStatic
+class CacheInvalidationService {
+
+    private static final String PENDING_KEY = CacheInvalidationService.class.name + '.pending'
+
+    @Value('#{"${skills.config.caching.invalidationRetentionHours:24}"}')
+    Integer invalidationRetentionHours
+
+    @Autowired
+    CacheInvalidationRepo cacheInvalidationRepo
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    private final Map<String, InvalidatableCache> caches = new ConcurrentHashMap<>()
+    private final Map<String, List<InvalidatableCache>> dependents = new ConcurrentHashMap<>()
+    private final Set<String> versioned = ConcurrentHashMap.newKeySet()
+    private volatile Long lastSeenId
+    // ids of invalidations published by this node that the poll has not reached yet
+    private final Set<Long> publishedLocally = ConcurrentHashMap.newKeySet()
+    private TransactionTemplate newTransactionTemplate
+
+    @PostConstruct
+    void init() {
+        newTransactionTemplate = new TransactionTemplate(transactionManager)
+        newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW)
+        lastSeenId = cacheInvalidationRepo.findMaxId() ?: 0L
+    }
+
+    void register(InvalidatableCache cache) {
+        log.info("Registering cache [{}] for cluster wide invalidation", cache.cacheName)
+        caches.put(cache.cacheName, cache)
+    }
+
+    /**
+     * Registers a cache whose entries are derived from the entries of another cache so that every invalidation
+     * of cacheName (local or cluster-wide) is also applied to the dependent cache with the same key
+     */
+    void registerDependent(String cacheName, InvalidatableCache dependent) {
+        log.info("Registering cache [{}] as dependent of [{}]", dependent.cacheName, cacheName)
+        dependents.computeIfAbsent(cacheName, { new CopyOnWriteArrayList<InvalidatableCache>() }).add(dependent)
+    }
+
+    /**
+     * Retains the latest invalidation of every key of the provided caches, see {@link #getVersion}
+     */
+    void registerVersioned(Collection<String> cacheNames) {
+        log.info("Registering caches {} as versioned", cacheNames)
+        versioned.addAll(cacheNames)
+    }
+
+    /**
+     * Version of the key that changes whenever the key (or all keys) of any of the provided (versioned) caches is
+     * invalidated; the same on every node once the invalidation is published
+     */
+    long getVersion(Collection<String> cacheNames, String key) {
+        Long latestId = cacheInvalidationRepo.findMaxIdByCacheNameInForKeyOrAll(cacheNames, key)
+        return latestId ?: 0L
+    }
+
+    /**
+     * @param key null to invalidate all entries of the cache
+     */
+    void invalidate(String cacheName, String key) {
+        invalidateLocally(cacheName, key)
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            getPendingForCurrentTransaction().add(new Pending(cacheName: cacheName, key: key))
+        } else {
+            publish([new Pending(cacheName: cacheName, key: key)] as Set<Pending>)
+        }
+    }
+
+    @Scheduled(fixedDelayString = '#{"${skills.config.caching.invalidationPollIntervalInMillis:2000}"}')
+    void pollForInvalidations() {
+        if (!caches || lastSeenId == null) {
+            return
+        }
+        List<CacheInvalidation> invalidations = cacheInvalidationRepo.findAllByIdGreaterThanOrderByIdAsc(lastSeenId)
+        invalidations.each { CacheInvalidation invalidation ->
+            if (!publishedLocally.remove(invalidation.id)) {
+                invalidateLocally(invalidation.cacheName, invalidation.cacheKey)
+            }
+            lastSeenId = invalidation.id
+        }
+        if (invalidations) {
+            log.debug("Applied [{}] cache invalidations", invalidations.size())
+        }
+    }
+
+    @Scheduled(cron = '#{"${skills.config.caching.invalidationCleanupSchedule:0 30 * * * *}"}')
+    void cleanupInvalidations() {
+        Date cleanupDate = new Date(System.currentTimeMillis() - invalidationRetentionHours * 60L * 60L * 1000L)
+        List<String> versionedCacheNames = versioned.toList()
+        newTransactionTemplate.executeWithoutResult({
+            if (versionedCacheNames) {
+                cacheInvalidationRepo.deleteByCreatedBeforeAndCacheNameNotIn(cleanupDate, versionedCacheNames)
+                cacheInvalidationRepo.deleteSupersededByCreatedBeforeAndCacheNameIn(cleanupDate, versionedCacheNames)
+            } else {
+                cacheInvalidationRepo.deleteByCreatedBefore(cleanupDate)
+            }
+        })
+    }
+
+    private void invalidateLocally(String cacheName, String key) {
+        InvalidatableCache cache = caches.get(cacheName)
+        if (cache) {
+            cache.invalidateLocally(key)
+        }
+        dependents.get(cacheName)?.each { it.invalidateLocally(key) }
+    }
+
+    private Set<Pending> getPendingForCurrentTransaction() {
+        Set<Pending> pending = (Set<Pending>) TransactionSynchronizationManager.getResource(PENDING_KEY)
+        if (pending == null) {
+            pending = new LinkedHashSet<Pending>()
+            TransactionSynchronizationManager.bindResource(PENDING_KEY, pending)
+            final Set<Pending> toPublish = pending
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                void afterCommit() {
+                    toPublish.each { invalidateLocally(it.cacheName, it.key) }
+                    publish(toPublish)
+                }
+
+                @Override
+                void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_KEY)
+                }
+            })
+        }
+        return pending
+    }
+
+    private void publish(Set<Pending> pending) {
+        try {
+            newTransactionTemplate.executeWithoutResult({
+                cacheInvalidationRepo.saveAll(pending.collect { new CacheInvalidation(cacheName: it.cacheName, cacheKey: it.key) }).each {
+                    publishedLocally.add(it.id)
+                }
+            })
+        } catch (Throwable t) {
+            // other nodes will eventually pick up the change once their entries expire
+            log.error("Failed to publish cache invalidations ${pending}", t)
+        }
+    }
+
+    @EqualsAndHashCode
+    @ToString(includeNames = true)
+    private static class Pending {
+        String cacheName
+        String key
+    }
+}
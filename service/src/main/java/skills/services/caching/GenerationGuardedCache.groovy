@@ -0,0 +1,99 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.caching
+
+import com.github.benmanes.caffeine.cache.Cache
+import groovy.transform.CompileStatic
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+
+/**
+ * Base of the read-through {@link InvalidatableCache}s: a loaded value is only cached if no invalidation happened
+ * while it was being loaded, and a value loaded within a read-write transaction is evicted again if that transaction
+ * does not commit as it may contain the transaction's changes.
+ *
+ * Subclasses build {@link #entries} on start up and read through {@link #getOrLoad}.
+ */
+@CompileStatic
+abstract class GenerationGuardedCache<K, V> implements InvalidatableCache {
+
+    protected Cache<K, V> entries
+    // incremented on every invalidation; used to discard loads that raced with an invalidation
+    private long generation = 0
+
+    /**
+     * @return false to always load from the database
+     */
+    protected boolean isCachingEnabled() {
+        return true
+    }
+
+    /**
+     * @return cache key of the key published through {@link CacheInvalidationService}
+     */
+    protected K toKey(String invalidationKey) {
+        return (K) invalidationKey
+    }
+
+    @Override
+    void invalidateLocally(String key) {
+        evict(key == null ? null : toKey(key))
+    }
+
+    protected V getOrLoad(K key, Closure<V> loader) {
+        boolean caching = isCachingEnabled()
+        V value = caching ? entries.getIfPresent(key) : null
+        if (value == null) {
+            long loadGeneration = getGeneration()
+            value = loader.call()
+            if (caching && value != null) {
+                cache(key, value, loadGeneration)
+            }
+        }
+        return value
+    }
+
+    protected synchronized void evict(K key) {
+        generation++
+        if (key == null) {
+            entries.invalidateAll()
+        } else {
+            entries.invalidate(key)
+        }
+    }
+
+    private synchronized long getGeneration() {
+        return generation
+    }
+
+    private synchronized void cache(K key, V value, long loadGeneration) {
+        if (loadGeneration != generation) {
+            return
+        }
+        entries.put(key, value)
+        if (TransactionSynchronizationManager.isSynchronizationActive() && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // the entry may contain changes of the current transaction that are then rolled back
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        evict(key)
+                    }
+                }
+            })
+        }
+    }
+}
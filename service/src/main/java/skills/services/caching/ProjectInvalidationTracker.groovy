@@ -0,0 +1,85 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.caching
+
+import groovy.transform.CompileStatic
+import skills.storage.model.CacheInvalidation
+import skills.storage.repos.CacheInvalidationRepo
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Tracks when each project was last invalidated on this node through a set of caches so that data persisted by
+ * earlier computations (materialized rows) can be recognized as stale.
+ *
+ * Computations are stamped a configurable tolerance before they started (see {@link #stamp}) to tolerate clock
+ * differences between nodes; a computation is current if its stamp is after {@link #getLastInvalidated}.
+ */
+@CompileStatic
+class ProjectInvalidationTracker {
+
+    // time (millis) each project was last invalidated on this node
+    private final Map<String, Long> lastInvalidated = new ConcurrentHashMap<>()
+    private volatile long lastInvalidatedAll = 0
+
+    /**
+     * Registers the cache for cluster-wide invalidation (as a dependent of the provided caches) and seeds the tracked
+     * times from the invalidations published before this node started; invalidations are only retained for a limited
+     * time so anything computed before that is not trusted.
+     *
+     * The cache's {@link InvalidatableCache#invalidateLocally} must call {@link #invalidated(String)}.
+     */
+    void track(InvalidatableCache cache, Collection<String> dependsOn, CacheInvalidationService cacheInvalidationService, CacheInvalidationRepo cacheInvalidationRepo) {
+        cacheInvalidationService.register(cache)
+        dependsOn.each { cacheInvalidationService.registerDependent(it, cache) }
+
+        Date retainedSince = new Date(System.currentTimeMillis() - cacheInvalidationService.invalidationRetentionHours * 60L * 60L * 1000L)
+        lastInvalidatedAll = retainedSince.time
+        List<String> cacheNames = [cache.cacheName] + dependsOn.toList()
+        cacheInvalidationRepo.findAllByCacheNameInAndCreatedAfter(cacheNames, retainedSince).each { CacheInvalidation invalidation ->
+            record(invalidation.cacheKey, invalidation.created.time)
+        }
+    }
+
+    /**
+     * @param projectId null for all projects
+     */
+    void invalidated(String projectId) {
+        record(projectId, System.currentTimeMillis())
+    }
+
+    long getLastInvalidated(String projectId) {
+        Long projectInvalidated = lastInvalidated.get(projectId)
+        return projectInvalidated != null ? Math.max(projectInvalidated, lastInvalidatedAll) : lastInvalidatedAll
+    }
+
+    boolean isCurrent(String projectId, Date stamped) {
+        return stamped != null && stamped.time > getLastInvalidated(projectId)
+    }
+
+    Date stamp(long computationStarted, long clockSkewToleranceInMillis) {
+        return new Date(computationStarted - clockSkewToleranceInMillis)
+    }
+
+    private void record(String projectId, long time) {
+        if (projectId == null) {
+            lastInvalidatedAll = Math.max(lastInvalidatedAll, time)
+            lastInvalidated.clear()
+        } else {
+            lastInvalidated.merge(projectId, time, { Long existing, Long incoming -> Math.max(existing, incoming) })
+        }
+    }
+}
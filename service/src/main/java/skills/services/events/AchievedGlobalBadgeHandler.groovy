@@ -22,7 +22,6 @@ import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
 import skills.controller.result.model.GlobalBadgeLevelRes
 import skills.services.GlobalBadgesService
-import skills.skillLoading.SkillsLoader
 import skills.storage.model.SkillDefMin
 import skills.storage.model.SkillRelDef
 import skills.storage.model.UserAchievement
@@ -47,50 +46,111 @@ class AchievedGlobalBadgeHandler {
     SkillEventsSupportRepo skillEventsSupportRepo
 
     @Autowired
-    GlobalBadgesService globalBadgesService
+    GlobalBadgeRequirementsIndex globalBadgeRequirementsIndex
 
     @Autowired
-    SkillsLoader skillsLoader
+    GlobalBadgesService globalBadgesService
 
 
+    /**
+     * @param skillCompleted this event completed the skill
+     * @param levelAchieved this event achieved a new project level
+     *
+     * When the requirements index is disabled the badges are looked up for every call instead.
+     */
     @Profile
-    void checkForGlobalBadges(SkillEventResult res, String userId, String projectId, SkillDefMin currentSkillDef) {
+    void checkForGlobalBadges(SkillEventResult res, String userId, String projectId, SkillDefMin currentSkillDef, boolean skillCompleted, boolean levelAchieved) {
+        if (!globalBadgeRequirementsIndex.enabled) {
+            checkForGlobalBadgesWithoutIndex(res, userId, projectId, currentSkillDef)
+            return
+        }
+        GlobalBadgeRequirementsIndex.Index index = globalBadgeRequirementsIndex.getIndex()
+        List<GlobalBadgeRequirementsIndex.Badge> globalBadges = index.findAffectedBadges(projectId, currentSkillDef.id, skillCompleted, levelAchieved).findAll {
+            if (it.enabled != null && !Boolean.valueOf(it.enabled)) {
+                log.debug("global badge [{}] isn't enabled yet, cannot be checked for achievement", it.skillId)
+                return false
+            }
+            return true
+        }
+        if (!globalBadges) {
+            return
+        }
+
+        List<String> alreadyAchieved = achievedLevelRepo.findAchievedGlobalBadgeIds(userId, globalBadges.collect { it.skillId })
+        globalBadges = globalBadges.findAll { !alreadyAchieved.contains(it.skillId) }
+        if (!globalBadges) {
+            return
+        }
+
+        Set<String> requiredProjectIds = globalBadges.collectMany { it.requiredLevels.keySet() }.toSet()
+        Map<String, Integer> userProjectLevels = [:]
+        if (requiredProjectIds) {
+            achievedLevelRepo.findMaxLevelsByUserIdAndProjectIdIn(userId, requiredProjectIds).each {
+                userProjectLevels.put(it.projectId, it.level)
+            }
+        }
+        Set<Integer> requiredSkillRefIds = index.getRequiredSkillRefIds(globalBadges)
+        List<Integer> achievedSkillRefIds = requiredSkillRefIds ? achievedLevelRepo.findAchievedSkillRefIds(userId, requiredSkillRefIds) : []
+        BitSet achievedSkills = index.toBits(achievedSkillRefIds)
+
+        for (GlobalBadgeRequirementsIndex.Badge globalBadge : globalBadges) {
+            // first check required project levels
+            boolean levelsAchieved = globalBadge.requiredLevels.every { String requiredProjectId, Integer requiredLevel ->
+                Integer achievedProjectLevel = userProjectLevels.get(requiredProjectId)
+                return achievedProjectLevel != null && achievedProjectLevel >= requiredLevel
+            }
+            if (!levelsAchieved) {
+                continue
+            }
+
+            // all project level requirements met, check required skills
+            BitSet nonAchievedSkills = (BitSet) globalBadge.requiredSkills.clone()
+            nonAchievedSkills.andNot(achievedSkills)
+            if (nonAchievedSkills.isEmpty()) {
+                UserAchievement groupAchievement = new UserAchievement(userId: userId.toLowerCase(),
+                        skillId: globalBadge.skillId, skillRefId: globalBadge.id, achievedOn: new Date())
+                achievedLevelRepo.save(groupAchievement)
+                res.completed.add(new CompletionItem(type: CompletionTypeUtil.getCompletionType(globalBadge.type), id: globalBadge.skillId, name: globalBadge.name))
+            }
+        }
+    }
+
+    @Profile
+    private void checkForGlobalBadgesWithoutIndex(SkillEventResult res, String userId, String projectId, SkillDefMin currentSkillDef) {
         List<SkillDefMin> globalBadges = skillEventsSupportRepo.findGlobalBadgesForProjectIdAndSkillId(projectId, currentSkillDef.skillId)
-        if (globalBadges) {
-
-            List<UserAchievement> achievements = achievedLevelRepo.findAllLevelsByUserId(userId)
-            Map<String, Integer> userProjectLevels = (Map<String, Integer>)achievements?.findAll {!it.skillId}?.groupBy { it.projectId }
-                    ?.collectEntries {String key, List<UserAchievement> val -> [key,val.collect{it.level}.max()]}
-
-            badgeCheckLoop: for (SkillDefMin globalBadge : globalBadges) {
-                if(globalBadge.enabled != null && !Boolean.valueOf(globalBadge.enabled)) {
-                    log.debug("global badge [{}] isn't enabled yet, cannot be checked for achievement", globalBadge.skillId)
-                    continue;
-                }
-                // first check required project levels
-                List<GlobalBadgeLevelRes> requiredLevels = globalBadgesService.getGlobalBadgeLevels(globalBadge.skillId)
-                for (GlobalBadgeLevelRes requiredLevel : requiredLevels) {
-                    if (userProjectLevels.containsKey(requiredLevel.projectId)) {
-                        Integer achievedProjectLevel = userProjectLevels.get(requiredLevel.projectId)
-                        if (!(achievedProjectLevel >= requiredLevel.level)) {
-                            break badgeCheckLoop
-                        }
-                    } else {
-                        break badgeCheckLoop
-                    }
-                }
-
-                // all project level requirements met, check required skills
-                Long nonAchievedChildren = achievedLevelRepo.countNonAchievedGlobalSkills(userId, globalBadge.skillId, SkillRelDef.RelationshipType.BadgeRequirement)
-                if (nonAchievedChildren == 0) {
-                    List<UserAchievement> badges = achievedLevelRepo.findAllByUserIdAndProjectIdAndSkillId(userId, globalBadge.projectId, globalBadge.skillId)
-                    if (!badges) {
-                        UserAchievement groupAchievement = new UserAchievement(userId: userId.toLowerCase(), projectId: globalBadge.projectId,
-                                skillId: globalBadge.skillId, skillRefId: globalBadge?.id, achievedOn: new Date())
-                        achievedLevelRepo.save(groupAchievement)
-                        res.completed.add(new CompletionItem(type: CompletionTypeUtil.getCompletionType(globalBadge.type), id: globalBadge.skillId, name: globalBadge.name))
-                    }
-                }
+        if (!globalBadges) {
+            return
+        }
+
+        Map<String, Integer> userProjectLevels = [:]
+        for (SkillDefMin globalBadge : globalBadges) {
+            if (globalBadge.enabled != null && !Boolean.valueOf(globalBadge.enabled)) {
+                log.debug("global badge [{}] isn't enabled yet, cannot be checked for achievement", globalBadge.skillId)
+                continue
+            }
+            // first check required project levels
+            List<GlobalBadgeLevelRes> requiredLevels = globalBadgesService.getGlobalBadgeLevels(globalBadge.skillId)
+            List<String> missingProjectIds = requiredLevels.collect { it.projectId }.findAll { !userProjectLevels.containsKey(it) }
+            if (missingProjectIds) {
+                Map<String, Integer> loaded = missingProjectIds.collectEntries { [it, null] }
+                achievedLevelRepo.findMaxLevelsByUserIdAndProjectIdIn(userId, missingProjectIds).each { loaded.put(it.projectId, it.level) }
+                userProjectLevels.putAll(loaded)
+            }
+            boolean levelsAchieved = requiredLevels.every { GlobalBadgeLevelRes requiredLevel ->
+                Integer achievedProjectLevel = userProjectLevels.get(requiredLevel.projectId)
+                return achievedProjectLevel != null && achievedProjectLevel >= requiredLevel.level
+            }
+            if (!levelsAchieved) {
+                continue
+            }
+
+            // all project level requirements met, check required skills
+            Long nonAchievedChildren = achievedLevelRepo.countNonAchievedGlobalSkills(userId, globalBadge.skillId, SkillRelDef.RelationshipType.BadgeRequirement)
+            if (nonAchievedChildren == 0 && !achievedLevelRepo.findAchievedGlobalBadgeIds(userId, [globalBadge.skillId])) {
+                UserAchievement groupAchievement = new UserAchievement(userId: userId.toLowerCase(),
+                        skillId: globalBadge.skillId, skillRefId: globalBadge.id, achievedOn: new Date())
+                achievedLevelRepo.save(groupAchievement)
+                res.completed.add(new CompletionItem(type: CompletionTypeUtil.getCompletionType(globalBadge.type), id: globalBadge.skillId, name: globalBadge.name))
             }
         }
     }
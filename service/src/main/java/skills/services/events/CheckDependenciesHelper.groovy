@@ -20,6 +20,7 @@ import groovy.transform.CompileStatic
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
 import skills.storage.model.SkillRelDef
+import skills.storage.repos.SkillEventsSupportRepo.TinySkillRelationship
 import skills.storage.repos.UserAchievedLevelRepo
 
 @Component
@@ -29,6 +30,9 @@ class CheckDependenciesHelper {
     @Autowired
     UserAchievedLevelRepo achievedLevelRepo
 
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
     static class DependencyCheckRes {
         boolean hasNotAchievedDependents = false
         String msg
@@ -36,22 +40,44 @@ class CheckDependenciesHelper {
 
     @Profile
     DependencyCheckRes check(String userId, String projectId, String skillId) {
+        SkillDefinitionSnapshot snapshot = skillDefinitionSnapshotCache.getSnapshot(projectId)
+        if (snapshot) {
+            return checkSnapshotDependencies(userId, snapshot.getDependencies(skillId))
+        }
         List<UserAchievedLevelRepo.ChildWithAchievementsInfo> dependentsAndAchievements = achievedLevelRepo.findChildrenAndTheirAchievements(userId, projectId, skillId, SkillRelDef.RelationshipType.Dependence)
         List<UserAchievedLevelRepo.ChildWithAchievementsInfo> notAchievedDependents = dependentsAndAchievements.findAll({
             !it.childAchievedSkillId
         })
-        DependencyCheckRes res
-        if (notAchievedDependents) {
-            List<UserAchievedLevelRepo.ChildWithAchievementsInfo> sorted = notAchievedDependents.sort({ a, b -> a.childProjectId <=> b.childProjectId ?: a.childSkillId <=> b.childSkillId })
-            res = new DependencyCheckRes(
-                    hasNotAchievedDependents: true,
-                    msg: "Not all dependent skills have been achieved. Missing achievements for ${notAchievedDependents.size()} out of ${dependentsAndAchievements.size()}. " +
-                            "Waiting on completion of ${sorted.collect({ it.childProjectId + ":" + it.childSkillId })}."
-            )
-        } else {
-            res = new DependencyCheckRes()
+        List<UserAchievedLevelRepo.ChildWithAchievementsInfo> sorted = notAchievedDependents.sort({ a, b -> a.childProjectId <=> b.childProjectId ?: a.childSkillId <=> b.childSkillId })
+        return buildRes(sorted.collect({ it.childProjectId + ":" + it.childSkillId }), dependentsAndAchievements.size())
+    }
+
+    /**
+     * dependencies come from the cached snapshot so the only query is for the user's achievements of those dependencies,
+     * and there is no query at all for skills without dependencies
+     */
+    private DependencyCheckRes checkSnapshotDependencies(String userId, List<TinySkillRelationship> dependencies) {
+        if (!dependencies) {
+            return new DependencyCheckRes()
+        }
+        Set<Integer> achievedIds = new HashSet<>(achievedLevelRepo.findAchievedSkillRefIds(userId, dependencies.collect { it.childId }))
+        List<TinySkillRelationship> notAchieved = dependencies.findAll { !achievedIds.contains(it.childId) }
+        List<TinySkillRelationship> sorted = notAchieved.toSorted({ TinySkillRelationship a, TinySkillRelationship b -> a.childProjectId <=> b.childProjectId ?: a.childSkillId <=> b.childSkillId })
+        return buildRes(sorted.collect({ it.childProjectId + ":" + it.childSkillId }), dependencies.size())
+    }
+
+    /**
+     * @param notAchieved sorted 'projectId:skillId' of the dependencies that were not achieved yet
+     */
+    private static DependencyCheckRes buildRes(List<String> notAchieved, int numDependencies) {
+        if (!notAchieved) {
+            return new DependencyCheckRes()
         }
-        return res
+        return new DependencyCheckRes(
+                hasNotAchievedDependents: true,
+                msg: "Not all dependent skills have been achieved. Missing achievements for ${notAchieved.size()} out of ${numDependencies}. " +
+                        "Waiting on completion of ${notAchieved}."
+        )
     }
 
 }
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import callStack.profiler.Profile
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.InvalidatableCache
+import skills.storage.model.GlobalBadgeLevelDef
+import skills.storage.model.SkillDef
+import skills.storage.repos.GlobalBadgeLevelDefRepo
+import skills.storage.repos.SkillEventsSupportRepo
+
+import javax.annotation.PostConstruct
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Maps each skill and project level to the global badges that require it so that a skill event only re-checks the
+ * badges affected by what the event achieved (see {@link AchievedGlobalBadgeHandler}).
+ *
+ * Every required skill is assigned a bit so that a badge's skill requirements are a {@link BitSet} which is checked
+ * against the bits of the skills the user achieved.
+ *
+ * Any change to global badges must call {@link #globalBadgesChanged()}; changes to the required skills and
+ * projects are picked up through {@link SkillDefinitionSnapshotCache} invalidations.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class GlobalBadgeRequirementsIndex implements InvalidatableCache {
+
+    static final String CACHE_NAME = 'globalBadgeRequirements'
+
+    static class Badge {
+        Integer id
+        String skillId
+        String name
+        SkillDef.ContainerType type
+        String enabled
+        BitSet requiredSkills = new BitSet()
+        // project id -> minimum project level
+        Map<String, Integer> requiredLevels = [:]
+    }
+
+    static class Index {
+        long generation
+        // skill ref id -> bit
+        Map<Integer, Integer> bits = [:]
+        Map<Integer, List<Badge>> badgesBySkillRefId = [:]
+        Map<String, List<Badge>> badgesByLevelProjectId = [:]
+        Set<String> projectIds = [] as Set
+
+        int getBit(Integer skillRefId) {
+            Integer bit = bits.get(skillRefId)
+            if (bit == null) {
+                bit = bits.size()
+                bits.put(skillRefId, bit)
+            }
+            return bit
+        }
+
+        /**
+         * @return badges that need to be re-checked when the skill was completed and/or a new project level was achieved
+         */
+        List<Badge> findAffectedBadges(String projectId, Integer skillRefId, boolean skillCompleted, boolean levelAchieved) {
+            Set<Badge> res = new LinkedHashSet<>()
+            if (skillCompleted) {
+                res.addAll(badgesBySkillRefId.get(skillRefId) ?: [])
+            }
+            if (levelAchieved) {
+                res.addAll(badgesByLevelProjectId.get(projectId) ?: [])
+            }
+            return res.toList()
+        }
+
+        /**
+         * @return all of the skills required by the provided badges
+         */
+        Set<Integer> getRequiredSkillRefIds(List<Badge> badges) {
+            BitSet required = new BitSet(bits.size())
+            for (Badge badge : badges) {
+                // groovy's BitSet.or() returns a new set rather than updating this one
+                required = required | badge.requiredSkills
+            }
+            Set<Integer> res = [] as Set
+            bits.each { Integer skillRefId, Integer bit ->
+                if (required.get(bit)) {
+                    res.add(skillRefId)
+                }
+            }
+            return res
+        }
+
+        /**
+         * @return bits of the provided (achieved) skills
+         */
+        BitSet toBits(Collection<Integer> skillRefIds) {
+            BitSet res = new BitSet(bits.size())
+            skillRefIds.each { Integer skillRefId ->
+                Integer bit = bits.get(skillRefId)
+                if (bit != null) {
+                    res.set(bit)
+                }
+            }
+            return res
+        }
+    }
+
+    // when disabled global badges are looked up with a query for every event instead (see AchievedGlobalBadgeHandler)
+    @Value('#{"${skills.config.globalBadgeRequirementsIndex.enabled:true}"}')
+    Boolean enabled
+
+    @Autowired
+    SkillEventsSupportRepo skillEventsSupportRepo
+
+    @Autowired
+    GlobalBadgeLevelDefRepo globalBadgeLevelDefRepo
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    private final AtomicLong generation = new AtomicLong()
+    private volatile long lastInvalidated = 0
+    private volatile Index index
+
+    @PostConstruct
+    void init() {
+        cacheInvalidationService.register(this)
+        cacheInvalidationService.registerDependent(SkillDefinitionSnapshotCache.CACHE_NAME, this)
+        log.info("Global badge requirements index: enabled=[{}]", enabled)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    void globalBadgesChanged() {
+        cacheInvalidationService.invalidate(CACHE_NAME, null)
+    }
+
+    @Override
+    void invalidateLocally(String projectId) {
+        Index current = index
+        // project-level invalidations only matter if the project takes part in a global badge
+        if (projectId == null || current == null || current.projectIds.contains(projectId)) {
+            lastInvalidated = generation.incrementAndGet()
+            index = null
+        }
+    }
+
+    /**
+     * @return current requirements, must be used as a whole since a new instance is loaded after every invalidation
+     */
+    @Profile
+    Index getIndex() {
+        Index current = index
+        if (current == null) {
+            current = load()
+            if (enabled && current.generation > lastInvalidated) {
+                index = current
+            }
+        }
+        return current
+    }
+
+    private Index load() {
+        // generation is captured before the load, so any invalidation that happens while loading discards this index
+        Index res = new Index(generation: generation.incrementAndGet())
+
+        Map<String, Badge> badgesBySkillId = [:]
+        skillEventsSupportRepo.findAllGlobalBadges().each { SkillEventsSupportRepo.TinySkillDef badgeDef ->
+            badgesBySkillId.put(badgeDef.skillId, new Badge(id: badgeDef.id, skillId: badgeDef.skillId, name: badgeDef.name, type: badgeDef.type, enabled: badgeDef.enabled))
+        }
+        skillEventsSupportRepo.findAllGlobalBadgeSkillRequirements().each { SkillEventsSupportRepo.TinyGlobalBadgeRequirement requirement ->
+            Badge badge = badgesBySkillId.get(requirement.badgeId)
+            if (badge) {
+                badge.requiredSkills.set(res.getBit(requirement.skillRefId))
+                res.badgesBySkillRefId.computeIfAbsent(requirement.skillRefId, { [] }).add(badge)
+                res.projectIds.add(requirement.projectId)
+            }
+        }
+        globalBadgeLevelDefRepo.findAll().each { GlobalBadgeLevelDef levelDef ->
+            Badge badge = badgesBySkillId.get(levelDef.badgeId)
+            if (badge) {
+                badge.requiredLevels.put(levelDef.projectId, levelDef.level)
+                res.badgesByLevelProjectId.computeIfAbsent(levelDef.projectId, { [] }).add(badge)
+                res.projectIds.add(levelDef.projectId)
+            }
+        }
+        log.debug("Loaded global badge requirements index: [{}] badges, [{}] required skills, [{}] projects",
+                badgesBySkillId.size(), res.bits.size(), res.projectIds.size())
+        return res
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import com.github.benmanes.caffeine.cache.Caffeine
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.GenerationGuardedCache
+import skills.storage.repos.ExportedSkillRepo
+import skills.storage.repos.SkillDefRepo
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+
+/**
+ * Avoids looking up the skills imported from a reported skill for every event: only skills shared to the catalog can
+ * be imported and most skills are not, so whether a skill is shared is cached per skill (invalidated cluster-wide
+ * when the skill is exported to or removed from the catalog).
+ *
+ * The imported skills of a shared skill are always read from the database; imports are finalized by a task on any
+ * node and events reported after the finalization committed must be applied to the importing project right away
+ * (earlier events are replayed by the finalization itself).
+ */
+@Component
+@Slf4j
+@CompileStatic
+class ImportedSkillIdsCache extends GenerationGuardedCache<Integer, Boolean> {
+
+    static final String CACHE_NAME = 'importedSkillIds'
+
+    @Value('#{"${skills.config.importedSkillIdsCache.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.importedSkillIdsCache.maxNumEntries:10000}"}')
+    Integer maxNumEntries
+
+    @Value('#{"${skills.config.importedSkillIdsCache.expireAfterWrite:PT10M}"}')
+    String expireAfterWrite
+
+    @Autowired
+    SkillDefRepo skillDefRepo
+
+    @Autowired
+    ExportedSkillRepo exportedSkillRepo
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    @PostConstruct
+    void init() {
+        entries = Caffeine.newBuilder()
+                .maximumSize(maxNumEntries)
+                .expireAfterWrite(Duration.parse(expireAfterWrite))
+                .build()
+        cacheInvalidationService.register(this)
+        log.info("Imported skill ids cache: enabled=[{}], maxNumEntries=[{}], expireAfterWrite=[{}]", enabled, maxNumEntries, expireAfterWrite)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    @Override
+    protected boolean isCachingEnabled() {
+        return enabled
+    }
+
+    @Override
+    protected Integer toKey(String skillRefId) {
+        return Integer.valueOf(skillRefId)
+    }
+
+    /**
+     * @return ids of the enabled skills copied from the provided skill
+     */
+    List<Integer> getImportedSkillIds(Integer skillRefId) {
+        if (!isSharedToCatalog(skillRefId)) {
+            return Collections.<Integer>emptyList()
+        }
+        return skillDefRepo.findSkillDefIdsByCopiedFrom(skillRefId)
+    }
+
+    /**
+     * Must be called whenever a skill is exported to or removed from the catalog
+     */
+    void catalogSharingChanged(Integer skillRefId) {
+        cacheInvalidationService.invalidate(CACHE_NAME, skillRefId.toString())
+    }
+
+    private boolean isSharedToCatalog(Integer skillRefId) {
+        return getOrLoad(skillRefId) { exportedSkillRepo.isSkillRefIdExported(skillRefId) != null }
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import callStack.profiler.Profile
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import groovy.transform.CompileStatic
+import groovy.transform.EqualsAndHashCode
+import groovy.transform.ToString
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.InvalidatableCache
+import skills.services.ranking.RankIndexService
+import skills.storage.repos.UserPerformedSkillRepo
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.regex.Pattern
+
+/**
+ * Caches the recent performed-on timestamps of a user's skill (sorted) so that {@link TimeWindowHelper} can count
+ * the events within a skill's time window with a binary search instead of a query.
+ *
+ * The cache may only ever under-count:
+ *  - events reported on other nodes are not visible until the entry is re-loaded, so a window that is not full
+ *    must be confirmed with the database under the user lock (see {@link TimeWindowHelper#checkTimeWindow})
+ *  - a new event is added to the entry once its transaction commits on this node; a timestamp that is already present
+ *    is not added again as a concurrent load may have read the event already
+ *  - a removed event is taken out of the entry on all nodes (through {@link CacheInvalidationService}) and loads
+ *    that raced with the removal are discarded; bulk removals, skill definition and bulk point changes drop the
+ *    project's entries
+ */
+@Component
+@Slf4j
+@CompileStatic
+class RecentPerformedOnCache implements InvalidatableCache {
+
+    static final String CACHE_NAME = 'recentPerformedOn'
+
+    @Value('#{"${skills.config.recentPerformedOnCache.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.recentPerformedOnCache.maxNumEntries:50000}"}')
+    Integer maxNumEntries
+
+    // entries with more events than this within the horizon are not cached
+    @Value('#{"${skills.config.recentPerformedOnCache.maxEventsPerEntry:500}"}')
+    Integer maxEventsPerEntry
+
+    // how far back an entry holds events; windows starting before that are counted by the database
+    @Value('#{"${skills.config.recentPerformedOnCache.horizonInMinutes:2880}"}')
+    Integer horizonInMinutes
+
+    @Value('#{"${skills.config.recentPerformedOnCache.expireAfterWrite:PT10M}"}')
+    String expireAfterWrite
+
+    @Autowired
+    UserPerformedSkillRepo performedSkillRepository
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    @EqualsAndHashCode
+    @ToString(includeNames = true)
+    static class Key {
+        String projectId
+        String userId
+        Integer skillRefId
+    }
+
+    static class Entry {
+        final long generation
+        // events performed before this time may be missing
+        final long horizonStart
+        final long[] performedOn
+
+        Entry(long generation, long horizonStart, long[] performedOn) {
+            this.generation = generation
+            this.horizonStart = horizonStart
+            this.performedOn = performedOn
+        }
+
+        /**
+         * @return number of events performed after start and before end (both exclusive)
+         */
+        int countBetween(long start, long end) {
+            return Math.max(0, firstIndexAfter(end - 1) - firstIndexAfter(start))
+        }
+
+        boolean contains(long value) {
+            return Arrays.binarySearch(performedOn, value) >= 0
+        }
+
+        Entry with(long value) {
+            int index = firstIndexAfter(value)
+            long[] updated = new long[performedOn.length + 1]
+            System.arraycopy(performedOn, 0, updated, 0, index)
+            updated[index] = value
+            System.arraycopy(performedOn, index, updated, index + 1, performedOn.length - index)
+            return new Entry(generation, horizonStart, updated)
+        }
+
+        Entry without(long value) {
+            int index = Arrays.binarySearch(performedOn, value)
+            if (index < 0) {
+                return this
+            }
+            long[] updated = new long[performedOn.length - 1]
+            System.arraycopy(performedOn, 0, updated, 0, index)
+            System.arraycopy(performedOn, index + 1, updated, index, performedOn.length - index - 1)
+            return new Entry(generation, horizonStart, updated)
+        }
+
+        private int firstIndexAfter(long value) {
+            int low = 0
+            int high = performedOn.length
+            while (low < high) {
+                int mid = (low + high) >>> 1
+                if (performedOn[mid] <= value) {
+                    low = mid + 1
+                } else {
+                    high = mid
+                }
+            }
+            return low
+        }
+    }
+
+    @EqualsAndHashCode
+    @ToString(includeNames = true)
+    private static class Added {
+        Key key
+        long performedOn
+    }
+
+    private static final String PENDING_KEY = RecentPerformedOnCache.class.name + '.pending'
+    // published key of a single removed event, projectId|skillRefId|performedOn|userId
+    private static final String REMOVED_EVENT_SEPARATOR = '|'
+
+    private Cache<Key, Entry> entries
+    private final AtomicLong generation = new AtomicLong()
+    // generation at which each project was last invalidated; used to discard loads that raced with an invalidation
+    private final Map<String, Long> lastInvalidated = new ConcurrentHashMap<>()
+    private volatile long lastInvalidatedAll = 0
+
+    @PostConstruct
+    void init() {
+        entries = Caffeine.newBuilder()
+                .maximumSize(maxNumEntries)
+                .expireAfterWrite(Duration.parse(expireAfterWrite))
+                .build()
+        cacheInvalidationService.register(this)
+        cacheInvalidationService.registerDependent(SkillDefinitionSnapshotCache.CACHE_NAME, this)
+        cacheInvalidationService.registerDependent(RankIndexService.CACHE_NAME, this)
+        log.info("Recent performed-on cache: enabled=[{}], maxNumEntries=[{}], horizonInMinutes=[{}], expireAfterWrite=[{}]",
+                enabled, maxNumEntries, horizonInMinutes, expireAfterWrite)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    /**
+     * @return number of the user's events of the skill performed after start and before end (both exclusive) that are known
+     * to this node or null if the cache can not answer (disabled or the window starts before the cached horizon)
+     */
+    @Profile
+    Long countPerformedBetween(String projectId, String userId, Integer skillRefId, Date start, Date end) {
+        if (!enabled) {
+            return null
+        }
+        Key key = new Key(projectId: projectId, userId: userId, skillRefId: skillRefId)
+        Entry entry = entries.getIfPresent(key)
+        if (entry == null || start.time < entry.horizonStart) {
+            // a fresh entry would not cover the window either
+            if (start.time < getHorizonStart()) {
+                return null
+            }
+            entry = load(key)
+            if (entry == null || start.time < entry.horizonStart) {
+                return null
+            }
+        }
+        return (long) entry.countBetween(start.time, end.time)
+    }
+
+    /**
+     * Must be called whenever an event is saved; the event is added to the entry once the current transaction commits
+     */
+    void performedSkillAdded(String projectId, String userId, Integer skillRefId, Date performedOn) {
+        if (!enabled) {
+            return
+        }
+        Added added = new Added(key: new Key(projectId: projectId, userId: userId, skillRefId: skillRefId), performedOn: performedOn.time)
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            getPendingForCurrentTransaction().add(added)
+        } else {
+            add(added)
+        }
+    }
+
+    /**
+     * Must be called whenever a single event is removed, takes the event out of the entry on all nodes
+     */
+    void performedSkillRemoved(String projectId, String userId, Integer skillRefId, Date performedOn) {
+        String removedKey = [projectId, skillRefId, performedOn.time, userId].join(REMOVED_EVENT_SEPARATOR)
+        // published keys are limited to 255 characters
+        cacheInvalidationService.invalidate(CACHE_NAME, removedKey.length() <= 255 ? removedKey : projectId)
+    }
+
+    /**
+     * @param key project id, null for all projects, or a single removed event (see {@link #performedSkillRemoved})
+     */
+    @Override
+    void invalidateLocally(String key) {
+        long gen = generation.incrementAndGet()
+        if (key == null) {
+            lastInvalidatedAll = gen
+            lastInvalidated.clear()
+            entries.invalidateAll()
+        } else if (key.contains(REMOVED_EVENT_SEPARATOR)) {
+            // project ids never contain the separator, user ids may
+            String[] parts = key.split(Pattern.quote(REMOVED_EVENT_SEPARATOR), 4)
+            String projectId = parts[0]
+            // loads that may have read the removed event before it was committed are discarded
+            lastInvalidated.put(projectId, gen)
+            Key entryKey = new Key(projectId: projectId, userId: parts[3], skillRefId: Integer.valueOf(parts[1]))
+            long performedOn = Long.parseLong(parts[2])
+            entries.asMap().computeIfPresent(entryKey, { Key k, Entry entry -> entry.without(performedOn) })
+        } else {
+            lastInvalidated.put(key, gen)
+            entries.asMap().keySet().removeIf({ Key entryKey -> entryKey.projectId == key })
+        }
+    }
+
+    private void add(Added added) {
+        entries.asMap().computeIfPresent(added.key, { Key k, Entry entry ->
+            if (added.performedOn < entry.horizonStart || entry.contains(added.performedOn)) {
+                return entry
+            }
+            Entry updated = entry.with(added.performedOn)
+            return updated.performedOn.length <= maxEventsPerEntry ? updated : null
+        })
+    }
+
+    private long getHorizonStart() {
+        return System.currentTimeMillis() - horizonInMinutes * 60L * 1000L
+    }
+
+    private Entry load(Key key) {
+        // generation is captured before the load, so a removal that happens while loading discards this entry
+        long loadGeneration = generation.incrementAndGet()
+        long horizonStart = getHorizonStart()
+        List<Date> performedOn = performedSkillRepository.findPerformedOnByUserIdAndSkillRefIdAndPerformedOnGreaterThanEqual(key.userId, key.skillRefId, new Date(horizonStart))
+        long[] sorted = new long[performedOn.size()]
+        performedOn.eachWithIndex { Date date, int i -> sorted[i] = date.time }
+        Arrays.sort(sorted)
+        Entry entry = new Entry(loadGeneration, horizonStart, sorted)
+
+        Long invalidatedAt = lastInvalidated.get(key.projectId)
+        boolean stale = loadGeneration < lastInvalidatedAll || (invalidatedAt != null && loadGeneration < invalidatedAt)
+        if (!stale && sorted.length <= maxEventsPerEntry) {
+            entries.put(key, entry)
+        }
+        return stale ? null : entry
+    }
+
+    private Set<Added> getPendingForCurrentTransaction() {
+        Set<Added> pending = (Set<Added>) TransactionSynchronizationManager.getResource(PENDING_KEY)
+        if (pending == null) {
+            pending = new LinkedHashSet<Added>()
+            TransactionSynchronizationManager.bindResource(PENDING_KEY, pending)
+            final Set<Added> toAdd = pending
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                void afterCommit() {
+                    toAdd.each { add(it) }
+                }
+
+                @Override
+                void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_KEY)
+                }
+            })
+        }
+        return pending
+    }
+}
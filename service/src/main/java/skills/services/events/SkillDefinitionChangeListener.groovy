@@ -0,0 +1,80 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.context.annotation.Lazy
+import skills.services.ranking.RankIndexService
+import skills.skillLoading.UserProjectSummaryLoader
+import skills.storage.model.ProjDefParent
+import skills.storage.model.SkillDefParent
+import skills.storage.model.SkillRelDef
+
+import javax.persistence.PostPersist
+import javax.persistence.PostRemove
+import javax.persistence.PostUpdate
+
+/**
+ * JPA entity listener that invalidates {@link SkillDefinitionSnapshotCache} whenever project, skill or
+ * relationship definitions are saved or removed (and {@link RankIndexService} when a project is removed);
+ * global badges do not belong to a project so all of the {@link UserProjectSummaryLoader} summaries are invalidated.
+ * Instantiated by Hibernate through Spring's bean container.
+ */
+@CompileStatic
+class SkillDefinitionChangeListener {
+
+    @Lazy
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
+    @Lazy
+    @Autowired
+    RankIndexService rankIndexService
+
+    @Lazy
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @PostPersist
+    @PostUpdate
+    void definitionChanged(Object entity) {
+        if (entity instanceof SkillDefParent) {
+            String projectId = ((SkillDefParent) entity).projectId
+            if (projectId) {
+                skillDefinitionSnapshotCache.projectDefinitionChanged(projectId)
+            } else {
+                userProjectSummaryLoader.projectChanged(null)
+            }
+        } else if (entity instanceof SkillRelDef) {
+            SkillRelDef relDef = (SkillRelDef) entity
+            skillDefinitionSnapshotCache.projectDefinitionChanged(relDef.parent?.projectId)
+            if (relDef.child?.projectId != relDef.parent?.projectId) {
+                skillDefinitionSnapshotCache.projectDefinitionChanged(relDef.child?.projectId)
+            }
+        } else if (entity instanceof ProjDefParent) {
+            skillDefinitionSnapshotCache.projectDefinitionChanged(((ProjDefParent) entity).projectId)
+        }
+    }
+
+    @PostRemove
+    void definitionRemoved(Object entity) {
+        definitionChanged(entity)
+        if (entity instanceof ProjDefParent) {
+            rankIndexService.projectPointsChanged(((ProjDefParent) entity).projectId)
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import groovy.transform.CompileStatic
+import skills.storage.model.LevelDefInterface
+import skills.storage.model.SkillDef
+import skills.storage.model.SkillDefMin
+import skills.storage.repos.SkillEventsSupportRepo.TinyProjectDef
+import skills.storage.repos.SkillEventsSupportRepo.TinySkillDef
+import skills.storage.repos.SkillEventsSupportRepo.TinySkillDefParent
+import skills.storage.repos.SkillEventsSupportRepo.TinySkillRelationship
+
+/**
+ * Immutable view of a project's definitions that are needed to apply a skill event:
+ * skills, skill groups, their parents, levels and the direct dependencies of each skill.
+ */
+@CompileStatic
+class SkillDefinitionSnapshot {
+
+    final String projectId
+    final long generation
+    final TinyProjectDef projectDef
+
+    private final Map<String, SkillDefMin> skillsByKey
+    private final Map<Integer, SkillDefMin> skillsById
+    private final Map<Integer, List<TinySkillDef>> parentsByChildId
+    private final List<LevelDefInterface> levels
+    private final Map<String, List<TinySkillRelationship>> dependenciesBySkillId
+
+    SkillDefinitionSnapshot(String projectId,
+                            long generation,
+                            TinyProjectDef projectDef,
+                            List<SkillDefMin> skills,
+                            List<TinySkillDefParent> parents,
+                            List<LevelDefInterface> levels,
+                            List<TinySkillRelationship> dependencies) {
+        this.projectId = projectId
+        this.generation = generation
+        this.projectDef = projectDef
+
+        Map<String, SkillDefMin> byKey = [:]
+        Map<Integer, SkillDefMin> byId = [:]
+        skills.each { SkillDefMin skill ->
+            byKey.put(key(skill.skillId, skill.type), skill)
+            byId.put(skill.id, skill)
+        }
+        this.skillsByKey = Collections.unmodifiableMap(byKey)
+        this.skillsById = Collections.unmodifiableMap(byId)
+
+        Map<Integer, List<TinySkillDef>> byChildId = [:]
+        parents.each { TinySkillDefParent parent ->
+            byChildId.computeIfAbsent(parent.childId, { Integer childId -> new ArrayList<TinySkillDef>() }).add(parent)
+        }
+        this.parentsByChildId = Collections.unmodifiableMap(byChildId)
+        this.levels = Collections.unmodifiableList(new ArrayList<LevelDefInterface>(levels))
+
+        Map<String, List<TinySkillRelationship>> bySkillId = [:]
+        dependencies.each { TinySkillRelationship dependency ->
+            bySkillId.computeIfAbsent(dependency.skillId, { String skillId -> new ArrayList<TinySkillRelationship>() }).add(dependency)
+        }
+        this.dependenciesBySkillId = Collections.unmodifiableMap(bySkillId)
+    }
+
+    SkillDefMin getSkill(String skillId, SkillDef.ContainerType type) {
+        return skillsByKey.get(key(skillId, type))
+    }
+
+    SkillDefMin getSkillById(Integer id) {
+        return skillsById.get(id)
+    }
+
+    /**
+     * @return a new (mutable) list of direct parents of the provided child
+     */
+    List<TinySkillDef> getParents(Integer childId) {
+        List<TinySkillDef> parents = parentsByChildId.get(childId)
+        return parents ? new ArrayList<TinySkillDef>(parents) : new ArrayList<TinySkillDef>()
+    }
+
+    List<LevelDefInterface> getLevels(List<Integer> skillRefIds, Integer projectRefId) {
+        Set<Integer> skillRefIdsSet = new HashSet<>(skillRefIds)
+        return levels.findAll { LevelDefInterface level ->
+            (level.skillRefId != null && skillRefIdsSet.contains(level.skillRefId)) ||
+                    (projectRefId != null && level.projectRefId == projectRefId)
+        }
+    }
+
+    boolean hasDependencies(String skillId) {
+        return dependenciesBySkillId.containsKey(skillId)
+    }
+
+    /**
+     * @return direct dependencies of the provided skill, possibly from other projects; empty if there are none
+     */
+    List<TinySkillRelationship> getDependencies(String skillId) {
+        List<TinySkillRelationship> dependencies = dependenciesBySkillId.get(skillId)
+        return dependencies ? Collections.unmodifiableList(dependencies) : Collections.<TinySkillRelationship>emptyList()
+    }
+
+    private static String key(String skillId, SkillDef.ContainerType type) {
+        return "${type}|${skillId}".toString()
+    }
+}
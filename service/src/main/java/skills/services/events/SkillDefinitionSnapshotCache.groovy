@@ -0,0 +1,149 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import callStack.profiler.Profile
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.InvalidatableCache
+import skills.storage.model.LevelDefInterface
+import skills.storage.model.SkillDef
+import skills.storage.model.SkillDefMin
+import skills.storage.model.SkillRelDef
+import skills.storage.repos.SkillEventsSupportRepo
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Caches {@link SkillDefinitionSnapshot} per project so that reporting a skill event does not have to
+ * re-load the same definitions (skill, parents, project and levels) on every request.
+ *
+ * Any change to skills, relationships, levels or projects must call {@link #projectDefinitionChanged(String)};
+ * JPA saves and deletes are handled by {@link SkillDefinitionChangeListener}.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class SkillDefinitionSnapshotCache implements InvalidatableCache {
+
+    static final String CACHE_NAME = 'skillDefinitionSnapshot'
+
+    @Value('#{"${skills.config.skillDefinitionSnapshot.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.skillDefinitionSnapshot.maxNumProjects:2000}"}')
+    Integer maxNumProjects
+
+    @Value('#{"${skills.config.skillDefinitionSnapshot.expireAfterWrite:PT30M}"}')
+    String expireAfterWrite
+
+    @Autowired
+    SkillEventsSupportRepo skillEventsSupportRepo
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    private Cache<String, SkillDefinitionSnapshot> snapshots
+    private final AtomicLong generation = new AtomicLong()
+    // generation at which each project was last invalidated; used to discard loads that raced with an invalidation
+    private final Map<String, Long> lastInvalidated = new ConcurrentHashMap<>()
+    private volatile long lastInvalidatedAll = 0
+
+    @PostConstruct
+    void init() {
+        snapshots = Caffeine.newBuilder()
+                .maximumSize(maxNumProjects)
+                .expireAfterWrite(Duration.parse(expireAfterWrite))
+                .build()
+        cacheInvalidationService.register(this)
+        log.info("Skill definition snapshot cache: enabled=[{}], maxNumProjects=[{}], expireAfterWrite=[{}]", enabled, maxNumProjects, expireAfterWrite)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    /**
+     * @return snapshot of the project's definitions or null if the cache is disabled
+     */
+    @Profile
+    SkillDefinitionSnapshot getSnapshot(String projectId) {
+        if (!enabled) {
+            return null
+        }
+        SkillDefinitionSnapshot snapshot = snapshots.getIfPresent(projectId)
+        if (snapshot == null) {
+            snapshot = load(projectId)
+            if (!isStale(snapshot)) {
+                snapshots.asMap().merge(projectId, snapshot, { SkillDefinitionSnapshot existing, SkillDefinitionSnapshot loaded ->
+                    existing.generation >= loaded.generation ? existing : loaded
+                })
+            }
+        }
+        return snapshot
+    }
+
+    void projectDefinitionChanged(String projectId) {
+        if (projectId) {
+            cacheInvalidationService.invalidate(CACHE_NAME, projectId)
+        }
+    }
+
+    @Override
+    void invalidateLocally(String projectId) {
+        long gen = generation.incrementAndGet()
+        if (projectId == null) {
+            lastInvalidatedAll = gen
+            lastInvalidated.clear()
+            snapshots.invalidateAll()
+        } else {
+            lastInvalidated.put(projectId, gen)
+            snapshots.invalidate(projectId)
+        }
+    }
+
+    private boolean isStale(SkillDefinitionSnapshot snapshot) {
+        Long invalidatedAt = lastInvalidated.get(snapshot.projectId)
+        return snapshot.generation < lastInvalidatedAll || (invalidatedAt != null && snapshot.generation < invalidatedAt)
+    }
+
+    private SkillDefinitionSnapshot load(String projectId) {
+        // generation is captured before the load, so any invalidation that happens while loading marks this snapshot as stale
+        long loadGeneration = generation.incrementAndGet()
+
+        SkillEventsSupportRepo.TinyProjectDef projectDef = skillEventsSupportRepo.getTinyProjectDef(projectId)
+        List<SkillDefMin> skills = skillEventsSupportRepo.findAllByProjectIdAndTypeIn(projectId, [SkillDef.ContainerType.Skill, SkillDef.ContainerType.SkillsGroup])
+        List<SkillEventsSupportRepo.TinySkillDefParent> parents = skillEventsSupportRepo.findTinySkillDefParentsByProjectIdAndTypeIn(projectId,
+                [SkillRelDef.RelationshipType.RuleSetDefinition, SkillRelDef.RelationshipType.SkillsGroupRequirement])
+        List<LevelDefInterface> levels = skillEventsSupportRepo.findAllLevelsByProjectRefIdOrProjectSkills(projectDef?.id, projectId)
+        // dependencies may point to skills in other projects; the listener invalidates both sides of such relationships
+        List<SkillEventsSupportRepo.TinySkillRelationship> dependencies = skillEventsSupportRepo.findTinySkillRelationshipsByProjectIdAndType(projectId, SkillRelDef.RelationshipType.Dependence)
+
+        log.debug("Loaded definition snapshot for project [{}]: [{}] skills, [{}] parent relationships, [{}] levels, [{}] dependencies",
+                projectId, skills.size(), parents.size(), levels.size(), dependencies.size())
+        return new SkillDefinitionSnapshot(projectId, loadGeneration, projectDef, skills, parents, levels, dependencies)
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import groovy.transform.CompileStatic
+import groovy.transform.EqualsAndHashCode
+import groovy.transform.ToString
+import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.messaging.simp.SimpMessagingTemplate
+import org.springframework.stereotype.Component
+
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.function.BiFunction
+
+/**
+ * Sends skill event results to the websocket destinations off of the request thread. Results queued for the same
+ * user, destination and skill within the coalescing window are merged and sent as a single message; results with
+ * a receipt id (asynchronous ingestion) are always sent individually.
+ *
+ * When the queue is full (or the dispatcher is disabled) results are sent right away on the calling thread.
+ *
+ * Metrics:
+ *  - skills.notifications.queued - number of messages waiting to be sent
+ *  - skills.notifications{stage=submitted|sent|failed} - the coalescing ratio is sent / submitted
+ *  - skills.notifications.coalesced - number of results merged into each sent message
+ *  - skills.notifications.latency - time from the first result being queued to its message being sent
+ */
+@Component
+@CompileStatic
+@Slf4j
+class SkillEventNotificationDispatcher {
+
+    @Value('#{"${skills.config.notifications.dispatcher.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.notifications.dispatcher.coalesceWindowInMillis:50}"}')
+    Long coalesceWindowInMillis
+
+    @Value('#{"${skills.config.notifications.dispatcher.maxQueueSize:10000}"}')
+    Integer maxQueueSize
+
+    @Value('#{"${skills.config.notifications.dispatcher.shutdownWaitInSeconds:10}"}')
+    Long shutdownWaitInSeconds
+
+    @Autowired
+    SimpMessagingTemplate messagingTemplate
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    @EqualsAndHashCode
+    @ToString(includeNames = true)
+    static class Key {
+        String userId
+        String destination
+        String projectId
+        String skillId
+        String receiptId
+    }
+
+    private static class Pending {
+        final SkillEventResult result
+        final long queuedAt
+        final int numResults
+
+        Pending(SkillEventResult result, long queuedAt, int numResults) {
+            this.result = result
+            this.queuedAt = queuedAt
+            this.numResults = numResults
+        }
+    }
+
+    private final ConcurrentHashMap<Key, Pending> pending = new ConcurrentHashMap<>()
+    // keys in the order their first result was queued
+    private final ConcurrentLinkedQueue<Key> order = new ConcurrentLinkedQueue<>()
+    private ScheduledExecutorService flusher
+
+    private Counter submitted
+    private Counter sent
+    private Counter failed
+    private DistributionSummary coalesced
+    private Timer latency
+
+    @PostConstruct
+    void init() {
+        submitted = meterRegistry.counter('skills.notifications', 'stage', 'submitted')
+        sent = meterRegistry.counter('skills.notifications', 'stage', 'sent')
+        failed = meterRegistry.counter('skills.notifications', 'stage', 'failed')
+        coalesced = DistributionSummary.builder('skills.notifications.coalesced')
+                .description('Number of skill event results merged into a single websocket message')
+                .register(meterRegistry)
+        latency = Timer.builder('skills.notifications.latency')
+                .description('Time from queueing a skill event result to sending its websocket message')
+                .register(meterRegistry)
+        meterRegistry.gaugeMapSize('skills.notifications.queued', Tags.empty(), pending)
+
+        if (enabled) {
+            assert coalesceWindowInMillis > 0
+            log.info("Dispatching skill event notifications every [{}] ms with max queue size of [{}]", coalesceWindowInMillis, maxQueueSize)
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, 'skill-event-notifications')
+                    thread.setDaemon(true)
+                    return thread
+                }
+            })
+            flusher.scheduleWithFixedDelay({ flush() } as Runnable, coalesceWindowInMillis, coalesceWindowInMillis, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * @param destination user destination without the '/user' prefix
+     */
+    void dispatch(String userId, String destination, SkillEventResult result) {
+        submitted.increment()
+        long now = System.nanoTime()
+        if (flusher == null || pending.size() >= maxQueueSize) {
+            send(userId, destination, new Pending(result, now, 1))
+            return
+        }
+
+        Key key = new Key(userId: userId, destination: destination, projectId: result.projectId, skillId: result.skillId, receiptId: result.receiptId)
+        boolean[] created = [false] as boolean[]
+        pending.compute(key, new BiFunction<Key, Pending, Pending>() {
+            @Override
+            Pending apply(Key k, Pending existing) {
+                if (existing == null) {
+                    created[0] = true
+                    return new Pending(result, now, 1)
+                }
+                return new Pending(merge(existing.result, result), existing.queuedAt, existing.numResults + 1)
+            }
+        })
+        if (created[0]) {
+            order.add(key)
+        }
+    }
+
+    /**
+     * Sends all of the queued messages; called periodically by the dispatcher thread
+     */
+    void flush() {
+        Key key
+        while ((key = order.poll()) != null) {
+            Pending toSend = pending.remove(key)
+            if (toSend != null) {
+                send(key.userId, key.destination, toSend)
+            }
+        }
+    }
+
+    private void send(String userId, String destination, Pending toSend) {
+        try {
+            messagingTemplate.convertAndSendToUser(userId, destination, toSend.result)
+            sent.increment()
+            coalesced.record(toSend.numResults)
+            latency.record(System.nanoTime() - toSend.queuedAt, TimeUnit.NANOSECONDS)
+        } catch (Throwable t) {
+            failed.increment()
+            log.error("Failed to send skill update to user [${userId}], destination [${destination}], result [${toSend.result}]", t)
+        }
+    }
+
+    /**
+     * results are also returned to the reporting clients so a new result is created instead of modifying either one
+     */
+    static SkillEventResult merge(SkillEventResult earlier, SkillEventResult later) {
+        boolean skillApplied = earlier.skillApplied || later.skillApplied
+        List<CompletionItem> completed = new ArrayList<>()
+        if (earlier.completed) {
+            completed.addAll(earlier.completed)
+        }
+        if (later.completed) {
+            completed.addAll(later.completed)
+        }
+        return new SkillEventResult(
+                success: earlier.success && later.success,
+                projectId: later.projectId,
+                skillId: later.skillId,
+                name: later.name,
+                pointsEarned: earlier.pointsEarned + later.pointsEarned,
+                skillApplied: skillApplied,
+                // keep the explanation of the latest applied event
+                explanation: (!skillApplied || later.skillApplied) ? later.explanation : earlier.explanation,
+                completed: completed,
+                selfReportType: later.selfReportType,
+                receiptId: later.receiptId,
+        )
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flusher) {
+            flusher.shutdown()
+            if (!flusher.awaitTermination(shutdownWaitInSeconds, TimeUnit.SECONDS)) {
+                flusher.shutdownNow()
+            }
+            // anything queued after the last scheduled flush
+            flush()
+        }
+    }
+}
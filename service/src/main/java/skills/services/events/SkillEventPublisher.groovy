@@ -19,7 +19,6 @@ import callStack.profiler.Profile
 import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.context.event.EventListener
-import org.springframework.messaging.simp.SimpMessagingTemplate
 import org.springframework.messaging.simp.broker.BrokerAvailabilityEvent
 import org.springframework.stereotype.Component
 import skills.websocket.SubscribedDestinationRegistry
@@ -34,23 +33,21 @@ class SkillEventPublisher {
     SubscribedDestinationRegistry destinationRegistry
 
     @Autowired
-    SimpMessagingTemplate messagingTemplate;
+    SkillEventNotificationDispatcher notificationDispatcher
 
     @Profile
     void publishSkillUpdate(SkillEventResult result, String userId) {
         log.debug("Reporting user skill for user [{}}], result [{}}]", userId, result)
         if (brokerAvailable) {
             if (result.projectId) {
-                messagingTemplate.convertAndSendToUser(userId, "/queue/${result.projectId}-skill-updates", result)
+                notificationDispatcher.dispatch(userId, "/queue/${result.projectId}-skill-updates".toString(), result)
             } else {
-                List<String> destinations = destinationRegistry.getAllDestinationsForUser(userId)
+                List<String> destinations = destinationRegistry.getDestinationsForUser(userId)
                 if (log.isDebugEnabled()) {
-                    log.debug("got [${destinations?.size()}] subscribed destinations for user [$userId]")
+                    log.debug("got [${destinations.size()}] subscribed destinations for user [$userId]")
                 }
-                destinations = destinations?.unique()
-                destinations?.each {
-                    it = it.replace("/user", "")
-                    messagingTemplate.convertAndSendToUser(userId, it, result)
+                destinations.each {
+                    notificationDispatcher.dispatch(userId, it, result)
                 }
             }
         } else {
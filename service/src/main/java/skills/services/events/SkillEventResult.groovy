@@ -33,4 +33,9 @@ class SkillEventResult {
     String explanation = "Skill event was applied"
     List<CompletionItem> completed = []
     String selfReportType
+    // only populated for events accepted through asynchronous ingestion
+    String receiptId
+    // only populated for events accepted through asynchronous ingestion, always false as queued events are held in
+    // memory until applied and are lost if the node stops before then
+    Boolean durable
 }
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
+import org.springframework.stereotype.Component
+import skills.controller.exceptions.ErrorCode
+import skills.controller.exceptions.SkillExceptionBuilder
+import skills.controller.exceptions.SkillException
+
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Opt-in asynchronous ingestion of skill events. Accepted events are placed onto a bounded in-memory queue and
+ * applied by background workers in micro-batches; each batch is grouped by (user, project) and every group is
+ * applied within a single transaction.
+ *
+ * Events are routed to a worker based on their (user, project) so events for the same user and project are always
+ * applied in the order they were accepted. When a worker's queue is full the event is rejected with
+ * {@link ErrorCode#EventQueueFull} which is reported to the client as HTTP 429.
+ *
+ * Queued events are held in memory only: events that were acknowledged but not yet applied are lost if the node
+ * stops without draining its queue (for example on a crash or when shutdownWaitInSeconds is exceeded). Clients are
+ * told so through {@link SkillEventResult#durable}, which is false for every accepted event; on shutdown the workers
+ * stop accepting events and drain their queues before the node stops.
+ */
+@Component
+@CompileStatic
+@Slf4j
+class SkillEventsIngestionQueue {
+
+    @Value('#{"${skills.config.asyncEventIngestion.enabled:false}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.asyncEventIngestion.queueCapacity:10000}"}')
+    Integer queueCapacity
+
+    @Value('#{"${skills.config.asyncEventIngestion.numOfThreads:2}"}')
+    Integer numOfThreads
+
+    @Value('#{"${skills.config.asyncEventIngestion.maxBatchSize:200}"}')
+    Integer maxBatchSize
+
+    @Value('#{"${skills.config.asyncEventIngestion.batchWaitInMillis:50}"}')
+    Long batchWaitInMillis
+
+    @Value('#{"${skills.config.asyncEventIngestion.shutdownWaitInSeconds:30}"}')
+    Long shutdownWaitInSeconds
+
+    @Autowired
+    SkillEventsService skillEventsService
+
+    private List<BlockingQueue<AcceptedSkillEvent>> queues
+    private ExecutorService workers
+    private volatile boolean running = false
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            assert numOfThreads > 0
+            assert maxBatchSize > 0
+            int perWorkerCapacity = Math.max(1, (int) (queueCapacity / numOfThreads))
+            log.info("Enabling asynchronous event ingestion with [{}] workers, queue capacity of [{}] per worker and max batch size of [{}]",
+                    numOfThreads, perWorkerCapacity, maxBatchSize)
+            queues = (0..<numOfThreads).collect { new ArrayBlockingQueue<AcceptedSkillEvent>(perWorkerCapacity) as BlockingQueue<AcceptedSkillEvent> }
+            workers = Executors.newFixedThreadPool(numOfThreads, new CustomizableThreadFactory('skill-events-ingestion-'))
+            running = true
+            queues.each { BlockingQueue<AcceptedSkillEvent> queue ->
+                workers.submit({ runWorker(queue) } as Runnable)
+            }
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled
+    }
+
+    /**
+     * @return receipt id that will be set on the published {@link SkillEventResult}
+     */
+    String accept(AcceptedSkillEvent event) {
+        if (!running) {
+            throw new SkillException("Asynchronous event ingestion is not enabled", event.projectId, event.skillId, ErrorCode.BadParam)
+        }
+        event.receiptId = UUID.randomUUID().toString()
+        BlockingQueue<AcceptedSkillEvent> queue = queues.get(Math.floorMod(groupKey(event).hashCode(), queues.size()))
+        if (!queue.offer(event)) {
+            throw new SkillExceptionBuilder()
+                    .msg("Too many skill events are currently queued, please retry later")
+                    .logLevel(SkillException.SkillExceptionLogLevel.WARN)
+                    .printStackTrace(false)
+                    .errorCode(ErrorCode.EventQueueFull)
+                    .projectId(event.projectId).skillId(event.skillId).userId(event.userId).build()
+        }
+        return event.receiptId
+    }
+
+    int getQueuedCount() {
+        return queues ? (int) queues.sum { BlockingQueue queue -> queue.size() } : 0
+    }
+
+    private void runWorker(BlockingQueue<AcceptedSkillEvent> queue) {
+        while (running || !queue.isEmpty()) {
+            try {
+                AcceptedSkillEvent first = queue.poll(batchWaitInMillis, TimeUnit.MILLISECONDS)
+                if (first == null) {
+                    continue
+                }
+                List<AcceptedSkillEvent> batch = [first]
+                queue.drainTo(batch, maxBatchSize - 1)
+                applyBatch(batch)
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt()
+                break
+            } catch (Throwable t) {
+                log.error("Unexpected failure while applying queued skill events", t)
+            }
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Worker stopped with [{}] queued skill events that were not applied", queue.size())
+        }
+    }
+
+    private void applyBatch(List<AcceptedSkillEvent> batch) {
+        Map<String, List<AcceptedSkillEvent>> byUserAndProject = new LinkedHashMap<>()
+        batch.each { AcceptedSkillEvent event ->
+            byUserAndProject.computeIfAbsent(groupKey(event), { String k -> new ArrayList<AcceptedSkillEvent>() }).add(event)
+        }
+        log.debug("Applying [{}] queued events in [{}] user-project groups", batch.size(), byUserAndProject.size())
+        byUserAndProject.values().each { List<AcceptedSkillEvent> group ->
+            skillEventsService.reportSkills(group)
+        }
+    }
+
+    private static String groupKey(AcceptedSkillEvent event) {
+        return "${event.userId}|${event.projectId}".toString()
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (workers) {
+            running = false
+            workers.shutdown()
+            log.info("Draining [{}] queued skill events", getQueuedCount())
+            if (!workers.awaitTermination(shutdownWaitInSeconds, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for queued skill events to be applied, [{}] events are lost", getQueuedCount())
+                workers.shutdownNow()
+            }
+        }
+    }
+}
@@ -22,6 +22,9 @@ import org.apache.commons.lang3.StringUtils
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.scheduling.annotation.Async
 import org.springframework.stereotype.Service
+import skills.controller.exceptions.ErrorCode
+import skills.controller.exceptions.SkillException
+import skills.services.ProjectErrorService
 import skills.utils.MetricsLogger
 
 @Service
@@ -38,6 +41,9 @@ class SkillEventsService {
     @Autowired
     SkillEventsTransactionalService skillEventsTransactionalService
 
+    @Autowired
+    ProjectErrorService projectErrorService
+
     static class AppliedCheckRes {
         boolean skillApplied = true
         String explanation
@@ -65,6 +71,85 @@ class SkillEventsService {
         return result
     }
 
+    /**
+     * Used by asynchronous ingestion; events must belong to a single user and project. The whole group is applied
+     * in one transaction, if that fails then each event is re-applied in its own transaction so that a single
+     * bad event does not prevent the rest of the group from being recorded.
+     */
+    @Profile
+    List<SkillEventResult> reportSkills(List<AcceptedSkillEvent> events) {
+        List<SkillEventResult> results
+        try {
+            results = skillEventsTransactionalService.reportSkillsInternal(events)
+        } catch (Throwable t) {
+            log.warn("Failed to apply [${events.size()}] events as a group for user [${events.first().userId}] and project [${events.first().projectId}], applying individually. Error: ${t.message}")
+            results = events.collect { reportSkillIndividually(it) }
+        }
+
+        results.eachWithIndex { SkillEventResult result, int i ->
+            AcceptedSkillEvent event = events.get(i)
+            // always notify when the event was accepted asynchronously as it is the only way to deliver the result
+            skillEventPublisher.publishSkillUpdate(result, event.userId)
+            if (result.success) {
+                metricsLogger.logSkillReported(event.userId, result)
+            }
+        }
+        return results
+    }
+
+    /**
+     * Used by clients that sync a backlog of events for a single user and project; events are applied in order
+     * within a single transaction and one aggregated notification is published per reported skill.
+     */
+    @Profile
+    List<SkillEventResult> reportSkillsForUser(String projectId, String userId, Boolean notifyIfNotApplied, List<AcceptedSkillEvent> events) {
+        List<SkillEventResult> results = skillEventsTransactionalService.reportSkillsInternal(events)
+        results.each { SkillEventResult result ->
+            metricsLogger.logSkillReported(userId, result)
+        }
+
+        results.groupBy { SkillEventResult result -> result.skillId }.each { String skillId, List<SkillEventResult> skillResults ->
+            SkillEventResult aggregated = aggregate(skillResults)
+            if (notifyIfNotApplied || aggregated.skillApplied) {
+                skillEventPublisher.publishSkillUpdate(aggregated, userId)
+            }
+        }
+        return results
+    }
+
+    private static SkillEventResult aggregate(List<SkillEventResult> results) {
+        SkillEventResult first = results.first()
+        List<SkillEventResult> applied = results.findAll { it.skillApplied }
+        SkillEventResult res = new SkillEventResult(
+                projectId: first.projectId,
+                skillId: first.skillId,
+                name: first.name,
+                skillApplied: !applied.isEmpty(),
+                pointsEarned: (int) applied.sum(0) { SkillEventResult it -> it.pointsEarned },
+                explanation: "Applied ${applied.size()} out of ${results.size()} skill events".toString(),
+        )
+        results.each { res.completed.addAll(it.completed) }
+        return res
+    }
+
+    private SkillEventResult reportSkillIndividually(AcceptedSkillEvent event) {
+        SkillEventResult result
+        try {
+            result = skillEventsTransactionalService.reportSkillInternal(event.projectId, event.skillId, event.userId, event.incomingSkillDate, event.skillApprovalParams)
+        } catch (SkillException ske) {
+            log.warn("Failed to apply accepted event ${event}: ${ske.message}")
+            if (ske.errorCode == ErrorCode.SkillNotFound) {
+                projectErrorService.invalidSkillReported(event.projectId, event.skillId)
+            }
+            result = new SkillEventResult(success: false, skillApplied: false, projectId: event.projectId, skillId: event.skillId, explanation: ske.message)
+        } catch (Throwable t) {
+            log.error("Failed to apply accepted event ${event}", t)
+            result = new SkillEventResult(success: false, skillApplied: false, projectId: event.projectId, skillId: event.skillId, explanation: "Failed to apply skill event")
+        }
+        result.receiptId = event.receiptId
+        return result
+    }
+
     @Async
     void identifyPendingNotifications(String userId) {
         skillEventsTransactionalService.notifyUserOfAchievements(userId)
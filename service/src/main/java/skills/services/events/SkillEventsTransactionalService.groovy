@@ -30,6 +30,7 @@ import skills.services.UserEventService
 import skills.services.admin.SkillCatalogService
 import skills.services.admin.SkillsGroupAdminService
 import skills.services.events.pointsAndAchievements.PointsAndAchievementsHandler
+import skills.skillLoading.UserProjectSummaryLoader
 import skills.storage.model.SkillDef
 import skills.storage.model.SkillDefMin
 import skills.storage.model.UserAchievement
@@ -41,6 +42,7 @@ import skills.storage.repos.SkillEventsSupportRepo
 import skills.storage.repos.UserAchievedLevelRepo
 import skills.storage.repos.UserPerformedSkillRepo
 import skills.storage.repos.UserPointsRepo
+import skills.storage.repos.nativeSql.SkillEventsBatchRepo
 import skills.tasks.TaskSchedulerService
 import skills.utils.MetricsLogger
 
@@ -62,12 +64,18 @@ class SkillEventsTransactionalService {
     @Autowired
     SkillEventsSupportRepo skillEventsSupportRepo
 
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
     @Autowired
     UserAchievedLevelRepo achievedLevelRepo
 
     @Autowired
     TimeWindowHelper timeWindowHelper
 
+    @Autowired
+    RecentPerformedOnCache recentPerformedOnCache
+
     @Autowired
     CheckDependenciesHelper checkDependenciesHelper
 
@@ -116,6 +124,15 @@ class SkillEventsTransactionalService {
     @Autowired
     TaskSchedulerService taskSchedulerService
 
+    @Autowired
+    ImportedSkillIdsCache importedSkillIdsCache
+
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @Autowired
+    SkillEventsBatchRepo skillEventsBatchRepo
+
 
     @Transactional
     void notifyUserOfAchievements(String userId){
@@ -176,6 +193,13 @@ class SkillEventsTransactionalService {
     @Profile
     @Transactional
     SkillEventResult reportSkillInternal(String projectId, String skillId, String userId, Date incomingSkillDateParam, SkillApprovalParams approvalParams = SkillEventsService.defaultSkillApprovalParams) {
+        return reportSkill(projectId, skillId, userId, incomingSkillDateParam, approvalParams, null)
+    }
+
+    /**
+     * @param lockedProjectId project the user is already locked for within the current transaction, null if not locked
+     */
+    private SkillEventResult reportSkill(String projectId, String skillId, String userId, Date incomingSkillDateParam, SkillApprovalParams approvalParams, String lockedProjectId) {
         assert projectId
         assert skillId
 
@@ -194,7 +218,7 @@ class SkillEventsTransactionalService {
         SkillEventResult res = new SkillEventResult(projectId: projectId, skillId: skillId, name: skillDefinition.name, selfReportType: skillDefinition.getSelfReportingType()?.toString())
 
         long numExistingSkills = getNumExistingSkills(userId, projectId, skillId)
-        AppliedCheckRes checkRes = checkIfSkillApplied(userId, numExistingSkills, skillDate.date, skillDefinition)
+        AppliedCheckRes checkRes = checkIfSkillApplied(userId, numExistingSkills, skillDate.date, skillDefinition, false)
         if (!checkRes.skillApplied) {
             // record event should happen AFTER the lock OR if it does not need the lock;
             // otherwise there is a chance of a deadlock (although unlikely); this can happen because record event
@@ -210,7 +234,9 @@ class SkillEventsTransactionalService {
          * Check if skill needs to be applied, if so then we'll need to db-lock to enforce cross-service lock;
          * once transaction is locked must redo all of the checks
          */
-        lockTransaction(userId, projectId)
+        if (projectId != lockedProjectId) {
+            lockTransaction(userId, projectId)
+        }
 
         final boolean isApprovalRequest = approvalParams && !approvalParams.disableChecks &&
                 skillDefinition.getSelfReportingType() == SkillDef.SelfReportingType.Approval
@@ -222,7 +248,7 @@ class SkillEventsTransactionalService {
             recordEvent(skillDefinition, userId, skillDate)
         }
         numExistingSkills = getNumExistingSkills(userId, projectId, skillId)
-        checkRes = checkIfSkillApplied(userId, numExistingSkills, skillDate.date, skillDefinition)
+        checkRes = checkIfSkillApplied(userId, numExistingSkills, skillDate.date, skillDefinition, true)
         if (!checkRes.skillApplied) {
             res.skillApplied = checkRes.skillApplied
             res.explanation = checkRes.explanation
@@ -263,7 +289,8 @@ class SkillEventsTransactionalService {
         // if requestedSkillCompleted OR overall level achieved, then need to check for global badges
         boolean overallLevelAchieved = res.completed.find { it.level != null && it.type == CompletionItemType.Overall }
         if (requestedSkillCompleted || overallLevelAchieved) {
-            achievedGlobalBadgeHandler.checkForGlobalBadges(res, userId, skillDefinition.projectId, skillDefinition)
+            achievedGlobalBadgeHandler.checkForGlobalBadges(res, userId, skillDefinition.projectId, skillDefinition, requestedSkillCompleted, overallLevelAchieved)
+            globalBadgesChecked(userId, res)
         }
 
         scheduleImportedSkills(skillDefinition, userId, skillDate, requestedSkillCompleted)
@@ -271,13 +298,170 @@ class SkillEventsTransactionalService {
         return res
     }
 
+    /**
+     * Applies all of the provided events within a single transaction; events are expected to belong to the same
+     * user and project so the user-project lock is acquired once and held for the remainder of the group.
+     * Any failure rolls back the entire group, it is the caller's responsibility to re-apply events individually.
+     */
+    @Profile
+    @Transactional
+    List<SkillEventResult> reportSkillsInternal(List<AcceptedSkillEvent> events) {
+        String userId = events.first().userId
+        String projectId = events.first().projectId
+        assert events.every { it.userId == userId && it.projectId == projectId }
+
+        lockTransaction(userId, projectId)
+        List<SkillEventResult> results = []
+        events.each { AcceptedSkillEvent event ->
+            SkillEventResult res = reportSkill(event.projectId, event.skillId, event.userId, event.incomingSkillDate, event.skillApprovalParams, projectId)
+            res.receiptId = event.receiptId
+            results.add(res)
+        }
+        return results
+    }
+
+    /**
+     * Reports the same skill for a batch of users. The users are locked up-front and the max points and time window
+     * checks run once for the entire batch; performed skills, points, levels and skill achievements of the users the
+     * skill is applied to are then computed in memory and written with JDBC batches (see
+     * {@link PointsAndAchievementsHandler#updatePointsAndAchievements(Collection, SkillDefMin, SkillDate)}). Badges,
+     * skills groups and global badges are only checked for users that achieved the skill or an overall level.
+     *
+     * Skills that require approval or have dependencies, as well as repeated userIds, go through {@link #reportSkillInternal}.
+     */
+    @Profile
+    @Transactional
+    Map<String, SkillEventResult> reportSkillForUsersInternal(String projectId, String skillId, List<String> userIds, Date incomingSkillDateParam) {
+        assert projectId
+        assert skillId
+
+        SkillDate skillDate = new SkillDate(date: incomingSkillDateParam ?: new Date(), isProvided: incomingSkillDateParam != null)
+
+        String requestedProjectId = projectId
+        String requestedSkillId = skillId
+        SkillDefMin skillDefinition = getSkillDef(null, projectId, skillId)
+        if (Boolean.valueOf(skillDefinition.readOnly) && !skillDefinition.selfReportingType) {
+            throw new SkillException("Skills imported from the catalog can only be reported if the original skill is configured for Self Reporting", projectId, skillId, ErrorCode.ReadOnlySkill)
+        }
+        if (skillDefinition.selfReportingType && skillDefinition.copiedFromProjectId) {
+            projectId = skillDefinition.copiedFromProjectId
+            skillDefinition = getCopiedFromSkillDef(skillDefinition, skillId)
+            skillId = skillDefinition.skillId
+        }
+
+        Map<String, SkillEventResult> results = [:]
+        List<String> distinctUserIds = userIds.unique(false)
+        // all of the users are locked up-front, in the same order, so that concurrent batches cannot deadlock
+        lockingService.lockForSkillReporting(distinctUserIds, projectId)
+        if (canReportForUsers(skillDefinition)) {
+            distinctUserIds.each { String userId -> recordEvent(skillDefinition, userId, skillDate) }
+
+            Map<String, Long> numExistingSkillsByUser = performedSkillRepository.countByUserIdInAndProjectIdAndSkillIdGroupByUserId(distinctUserIds, projectId, skillId)
+                    .collectEntries { [it.userId, it.count] } as Map<String, Long>
+            Map<String, TimeWindowHelper.TimeWindowRes> fullTimeWindows = timeWindowHelper.findFullTimeWindows(skillDefinition, distinctUserIds, skillDate.date)
+            boolean groupNotEnabled = skillDefinition.groupId && (!Boolean.valueOf(skillDefinition.enabled) || !isParentSkillsGroupEnabled(skillDefinition))
+
+            List<String> toApply = []
+            distinctUserIds.each { String userId ->
+                SkillEventResult res = new SkillEventResult(projectId: projectId, skillId: skillId, name: skillDefinition.name, selfReportType: skillDefinition.getSelfReportingType()?.toString())
+                if (hasReachedMaxPoints(numExistingSkillsByUser.get(userId) ?: 0, skillDefinition)) {
+                    res.skillApplied = false
+                    res.explanation = "This skill reached its maximum points"
+                } else if (fullTimeWindows.containsKey(userId)) {
+                    res.skillApplied = false
+                    res.explanation = fullTimeWindows.get(userId).msg
+                } else if (groupNotEnabled) {
+                    res.skillApplied = false
+                    res.explanation = "This skill belongs to a Skill Group that is not yet enabled"
+                } else {
+                    toApply.add(userId)
+                }
+                results.put(userId, res)
+            }
+            applySkillForUsers(toApply, skillDefinition, skillDate, numExistingSkillsByUser, results)
+        } else {
+            distinctUserIds.each { String userId ->
+                results.put(userId, reportSkillInternal(requestedProjectId, requestedSkillId, userId, incomingSkillDateParam))
+            }
+        }
+
+        // repeated userIds are reported one at a time on top of their first occurrence
+        List<String> repeatedUserIds = new ArrayList<>(userIds)
+        distinctUserIds.each { String userId -> repeatedUserIds.remove(userId) }
+        repeatedUserIds.each { String userId ->
+            results.put(userId, reportSkillInternal(requestedProjectId, requestedSkillId, userId, incomingSkillDateParam))
+        }
+        return results
+    }
+
+    /**
+     * Approval requests and dependency checks are per user so such skills cannot be reported for a batch of users at once
+     */
+    private boolean canReportForUsers(SkillDefMin skillDefinition) {
+        if (skillDefinition.getSelfReportingType() == SkillDef.SelfReportingType.Approval) {
+            return false
+        }
+        SkillDefinitionSnapshot snapshot = skillDefinitionSnapshotCache.getSnapshot(skillDefinition.projectId)
+        return snapshot && !snapshot.getDependencies(skillDefinition.skillId)
+    }
+
+    @Profile
+    private void applySkillForUsers(List<String> userIds, SkillDefMin skillDefinition, SkillDate skillDate, Map<String, Long> numExistingSkillsByUser, Map<String, SkillEventResult> results) {
+        if (!userIds) {
+            return
+        }
+        List<UserPerformedSkill> performedSkills = userIds.collect { String userId ->
+            new UserPerformedSkill(userId: userId, skillId: skillDefinition.skillId, projectId: skillDefinition.projectId,
+                    performedOn: skillDate.date, skillRefId: skillDefinition.id)
+        }
+        skillEventsBatchRepo.insertPerformedSkills(performedSkills)
+        performedSkills.each { UserPerformedSkill performedSkill ->
+            recentPerformedOnCache.performedSkillAdded(performedSkill.projectId, performedSkill.userId, performedSkill.skillRefId, performedSkill.performedOn)
+        }
+
+        Map<String, List<CompletionItem>> achievementsByUser = pointsAndAchievementsHandler.updatePointsAndAchievements(userIds, skillDefinition, skillDate)
+        userIds.each { String userId ->
+            SkillEventResult res = results.get(userId)
+            res.pointsEarned = skillDefinition.pointIncrement
+            List<CompletionItem> achievements = achievementsByUser.get(userId)
+            if (achievements) {
+                res.completed.addAll(achievements)
+            }
+        }
+
+        List<String> completedUserIds = userIds.findAll { String userId -> hasReachedMaxPoints((numExistingSkillsByUser.get(userId) ?: 0) + 1, skillDefinition) }
+        pointsAndAchievementsHandler.documentSkillAchieved(completedUserIds, skillDefinition, results, skillDate)
+
+        Set<String> completed = new HashSet<>(completedUserIds)
+        userIds.each { String userId ->
+            SkillEventResult res = results.get(userId)
+            boolean requestedSkillCompleted = completed.contains(userId)
+            if (requestedSkillCompleted) {
+                achievedBadgeHandler.checkForBadges(res, userId, skillDefinition, skillDate)
+                achievedSkillsGroupHandler.checkForSkillsGroup(res, userId, skillDefinition, skillDate)
+            }
+            boolean overallLevelAchieved = res.completed.find { it.level != null && it.type == CompletionItemType.Overall }
+            if (requestedSkillCompleted || overallLevelAchieved) {
+                achievedGlobalBadgeHandler.checkForGlobalBadges(res, userId, skillDefinition.projectId, skillDefinition, requestedSkillCompleted, overallLevelAchieved)
+                globalBadgesChecked(userId, res)
+            }
+            scheduleImportedSkills(skillDefinition, userId, skillDate, requestedSkillCompleted)
+        }
+    }
+
+    private void globalBadgesChecked(String userId, SkillEventResult res) {
+        if (res.completed.find { it.type == CompletionItemType.GlobalBadge }) {
+            // global badges count towards the summaries of every project they span, not only the reported project's
+            userProjectSummaryLoader.userChanged(userId)
+        }
+    }
+
     @Profile
     private void scheduleImportedSkills(SkillDefMin skillDefinition, String userId, SkillDate skillDate, boolean requestedSkillCompleted) {
-        List<Integer> importedSkillIds = skillDefRepo.findSkillDefIdsByCopiedFrom(skillDefinition.id)
+        List<Integer> importedSkillIds = importedSkillIdsCache.getImportedSkillIds(skillDefinition.id)
         if (importedSkillIds) {
-            importedSkillIds.each { Integer importedSkillId ->
-                taskSchedulerService.scheduleImportedSkillAchievement(userId, importedSkillId, skillDate, requestedSkillCompleted)
-            }
+            // a single task fans out to all of the importing projects
+            taskSchedulerService.scheduleImportedSkillAchievement(userId, skillDefinition.id, importedSkillIds, skillDate, requestedSkillCompleted)
         }
     }
 
@@ -293,7 +477,7 @@ class SkillEventsTransactionalService {
     }
 
     @Profile
-    private AppliedCheckRes checkIfSkillApplied(String userId, long numExistingSkills, Date incomingSkillDate, SkillDefMin skillDefinition) {
+    private AppliedCheckRes checkIfSkillApplied(String userId, long numExistingSkills, Date incomingSkillDate, SkillDefMin skillDefinition, boolean underLock) {
         AppliedCheckRes res = new AppliedCheckRes()
         if (hasReachedMaxPoints(numExistingSkills, skillDefinition)) {
             res.skillApplied = false
@@ -301,7 +485,7 @@ class SkillEventsTransactionalService {
             return res
         }
 
-        TimeWindowHelper.TimeWindowRes timeWindowRes = timeWindowHelper.checkTimeWindow(skillDefinition, userId, incomingSkillDate)
+        TimeWindowHelper.TimeWindowRes timeWindowRes = timeWindowHelper.checkTimeWindow(skillDefinition, userId, incomingSkillDate, underLock)
         if (timeWindowRes.isFull()) {
             res.skillApplied = false
             res.explanation = timeWindowRes.msg
@@ -315,7 +499,7 @@ class SkillEventsTransactionalService {
             return res
         }
 
-        if (skillDefinition.groupId && (!Boolean.valueOf(skillDefinition.enabled) || !skillsGroupAdminService.isParentSkillsGroupEnabled(skillDefinition.projectId, skillDefinition.groupId))) {
+        if (skillDefinition.groupId && (!Boolean.valueOf(skillDefinition.enabled) || !isParentSkillsGroupEnabled(skillDefinition))) {
             res.skillApplied = false
             res.explanation = "This skill belongs to a Skill Group that is not yet enabled"
             return res
@@ -326,6 +510,7 @@ class SkillEventsTransactionalService {
     @Profile
     private void savePerformedSkill(UserPerformedSkill performedSkill) {
         performedSkillRepository.save(performedSkill)
+        recentPerformedOnCache.performedSkillAdded(performedSkill.projectId, performedSkill.userId, performedSkill.skillRefId, performedSkill.performedOn)
         log.debug("Saved skill [{}]", performedSkill)
     }
 
@@ -337,7 +522,15 @@ class SkillEventsTransactionalService {
 
     @Profile
     private SkillDefMin getSkillDef(String userId, String projectId, String skillId) {
-        SkillDefMin skillDefinition = skillEventsSupportRepo.findByProjectIdAndSkillIdAndType(projectId, skillId, SkillDef.ContainerType.Skill)
+        SkillDefinitionSnapshot snapshot = skillDefinitionSnapshotCache.getSnapshot(projectId)
+        SkillDefMin skillDefinition = snapshot?.getSkill(skillId, SkillDef.ContainerType.Skill)
+        if (!skillDefinition) {
+            skillDefinition = skillEventsSupportRepo.findByProjectIdAndSkillIdAndType(projectId, skillId, SkillDef.ContainerType.Skill)
+            if (skillDefinition && snapshot) {
+                // snapshot was taken before this skill was created and the change has not propagated yet
+                skillDefinitionSnapshotCache.invalidateLocally(projectId)
+            }
+        }
         if (!skillDefinition) {
             throw new SkillExceptionBuilder()
                     .msg("Failed to report skill event because skill definition does not exist.")
@@ -352,7 +545,10 @@ class SkillEventsTransactionalService {
 
     @Profile
     private SkillDefMin getCopiedFromSkillDef(SkillDefMin skillDef, String userId) {
-        SkillDefMin res = skillEventsSupportRepo.findBySkillRefId(skillDef.copiedFrom)
+        SkillDefMin res = skillDefinitionSnapshotCache.getSnapshot(skillDef.copiedFromProjectId)?.getSkillById(skillDef.copiedFrom)
+        if (!res) {
+            res = skillEventsSupportRepo.findBySkillRefId(skillDef.copiedFrom)
+        }
         if (!res) {
             throw new SkillExceptionBuilder()
                     .msg("Failed to report skill event because copied from skill definition does not exist.")
@@ -365,6 +561,15 @@ class SkillEventsTransactionalService {
         return res
     }
 
+    @Profile
+    private boolean isParentSkillsGroupEnabled(SkillDefMin skillDefinition) {
+        SkillDefMin group = skillDefinitionSnapshotCache.getSnapshot(skillDefinition.projectId)?.getSkill(skillDefinition.groupId, SkillDef.ContainerType.SkillsGroup)
+        if (group) {
+            return Boolean.valueOf(group.enabled)
+        }
+        return skillsGroupAdminService.isParentSkillsGroupEnabled(skillDefinition.projectId, skillDefinition.groupId)
+    }
+
     private boolean hasReachedMaxPoints(long numSkills, SkillDefMin skillDefinition) {
         return numSkills * skillDefinition.pointIncrement >= skillDefinition.totalPoints
     }
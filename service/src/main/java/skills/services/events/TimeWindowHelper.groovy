@@ -34,6 +34,9 @@ class TimeWindowHelper {
     @Autowired
     UserPerformedSkillRepo performedSkillRepository
 
+    @Autowired
+    RecentPerformedOnCache recentPerformedOnCache
+
     static class TimeWindowRes {
         boolean full
         String msg
@@ -41,9 +44,13 @@ class TimeWindowHelper {
 
     private static TimeWindowRes disabled = new TimeWindowRes(full: false);
 
+    /**
+     * @param underLock the user is locked for reporting so the result is final and a window that the cached events
+     * report as not full must be confirmed with the database (the cache does not see events reported on other nodes)
+     */
     @Profile
     @CompileDynamic
-    TimeWindowRes checkTimeWindow(SkillDefMin skillDefinition, String userId, Date incomingSkillDate) {
+    TimeWindowRes checkTimeWindow(SkillDefMin skillDefinition, String userId, Date incomingSkillDate, boolean underLock = true) {
         // pointIncrementInterval set to 0 disables time windows and skill events should be applied immediately
         boolean timeWindowDisabled = skillDefinition.pointIncrementInterval <= 0
         if (timeWindowDisabled) {
@@ -62,18 +69,66 @@ class TimeWindowHelper {
             log.debug("Looking for [$skillDefinition.skillId] between [$checkStartDate] and [$checkEndDate]")
         }
 
-        Long count = performedSkillRepository.countByUserIdAndProjectIdAndSkillIdAndPerformedOnGreaterThanAndPerformedOnLessThan(
-                userId,
+        Long count = null
+        // events of disabled skills are not counted by the query below
+        if (Boolean.valueOf(skillDefinition.enabled)) {
+            Integer skillRefId = skillDefinition.copiedFrom ?: skillDefinition.id
+            count = recentPerformedOnCache.countPerformedBetween(skillDefinition.projectId, userId, skillRefId, checkStartDate, checkEndDate)
+        }
+        if (count == null || (underLock && !isWindowFull(skillDefinition, count))) {
+            count = performedSkillRepository.countByUserIdAndProjectIdAndSkillIdAndPerformedOnGreaterThanAndPerformedOnLessThan(
+                    userId,
+                    skillDefinition.projectId,
+                    skillDefinition.skillId,
+                    checkStartDate,
+                    checkEndDate
+            )
+        }
+        boolean isFull = isWindowFull(skillDefinition, count)
+        String msg = isFull ? buildMsg(skillDefinition, count) : null
+        new TimeWindowRes(full: isFull, msg: msg)
+    }
+
+    private static boolean isWindowFull(SkillDefMin skillDefinition, Long count) {
+        // a little bit of paranoia to make sure that count is at least 1 before comparing with occurrences
+        // this could only happen of course if numMaxOccurrencesIncrementInterval is miconfigured, but hey, happens
+        return count > 0 && count >= skillDefinition.numMaxOccurrencesIncrementInterval
+    }
+
+    /**
+     * Same check as {@link #checkTimeWindow} evaluated for many users with a single query;
+     * only users whose time window is full are present in the returned map.
+     */
+    @Profile
+    @CompileDynamic
+    Map<String, TimeWindowRes> findFullTimeWindows(SkillDefMin skillDefinition, Collection<String> userIds, Date incomingSkillDate) {
+        boolean timeWindowDisabled = skillDefinition.pointIncrementInterval <= 0
+        if (timeWindowDisabled || !userIds) {
+            return [:]
+        }
+
+        Date checkStartDate
+        Date checkEndDate
+        use(TimeCategory) {
+            checkStartDate = incomingSkillDate - skillDefinition.pointIncrementInterval.minutes
+            checkEndDate = incomingSkillDate + skillDefinition.pointIncrementInterval.minutes
+        }
+
+        List<UserPerformedSkillRepo.UserCount> counts = performedSkillRepository.countByUserIdInAndProjectIdAndSkillIdAndPerformedOnGreaterThanAndPerformedOnLessThanGroupByUserId(
+                userIds,
                 skillDefinition.projectId,
                 skillDefinition.skillId,
                 checkStartDate,
                 checkEndDate
         )
-        // a little bit of paranoia to make sure that count is at least 1 before comparing with occurrences
-        // this could only happen of course if numMaxOccurrencesIncrementInterval is miconfigured, but hey, happens
-        boolean isFull = count > 0 && count >= skillDefinition.numMaxOccurrencesIncrementInterval
-        String msg = isFull ? buildMsg(skillDefinition, count) : null
-        new TimeWindowRes(full: isFull, msg: msg)
+        Map<String, TimeWindowRes> res = [:]
+        counts.each { UserPerformedSkillRepo.UserCount userCount ->
+            Long count = userCount.count
+            if (isWindowFull(skillDefinition, count)) {
+                res.put(userCount.userId, new TimeWindowRes(full: true, msg: buildMsg(skillDefinition, count)))
+            }
+        }
+        return res
     }
 
     private String buildMsg(SkillDefMin skillDef, Long count){
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.context.annotation.Lazy
+import skills.skillLoading.UserProjectSummaryLoader
+import skills.storage.model.ClientPref
+import skills.storage.model.SkillApproval
+
+import javax.persistence.PostPersist
+import javax.persistence.PostRemove
+import javax.persistence.PostUpdate
+
+/**
+ * JPA entity listener for user-specific data shown by the client display (self-report approvals and client
+ * preferences such as the last viewed skill) that is not recorded through skill events; bumps the user's data
+ * version via {@link UserProjectSummaryLoader#userChanged(String)}.
+ * Instantiated by Hibernate through Spring's bean container.
+ */
+@CompileStatic
+class UserDataChangeListener {
+
+    @Lazy
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void userDataChanged(Object entity) {
+        if (entity instanceof SkillApproval) {
+            userProjectSummaryLoader.userChanged(((SkillApproval) entity).userId)
+        } else if (entity instanceof ClientPref) {
+            userProjectSummaryLoader.userChanged(((ClientPref) entity).userId)
+        }
+    }
+}
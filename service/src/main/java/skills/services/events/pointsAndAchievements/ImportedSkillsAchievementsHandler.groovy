@@ -27,6 +27,7 @@ import skills.services.events.AchievedBadgeHandler
 import skills.services.events.AchievedSkillsGroupHandler
 import skills.services.events.SkillDate
 import skills.services.events.SkillEventResult
+import skills.skillLoading.UserProjectSummaryLoader
 import skills.storage.model.SkillDefMin
 import skills.storage.repos.SkillDefRepo
 
@@ -56,6 +57,9 @@ class ImportedSkillsAchievementsHandler {
     @Autowired
     LockingService lockingService
 
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
     void handleAchievementsForImportedSkills(String userId, SkillDefMin skill, SkillDate incomingSkillDate, boolean thisRequestCompletedOriginalSkill) {
         if (log.isDebugEnabled()) {
             log.debug("userId=[${userId}], skill=[${skill.skillId}], incomingSkillDate=[${incomingSkillDate}], thisRequestCompletedOriginalSkill=[${thisRequestCompletedOriginalSkill}]")
@@ -63,6 +67,8 @@ class ImportedSkillsAchievementsHandler {
         lockTransaction(userId, skill.projectId)
         // handle user points and level achievements
         pointsAndAchievementsHandler.updatePointsAndAchievements(userId, skill, incomingSkillDate)
+        // points of the importing project change after the original event was reported
+        userProjectSummaryLoader.userChanged(userId)
 
         if (thisRequestCompletedOriginalSkill) {
             SkillEventResult mockResForBadgeAndGroupCheck = new SkillEventResult()
@@ -72,6 +78,17 @@ class ImportedSkillsAchievementsHandler {
         }
     }
 
+    /**
+     * Handles the skills imported into many projects within a single transaction; projects are locked in a
+     * consistent order so concurrent tasks for the same user cannot deadlock.
+     */
+    void handleAchievementsForImportedSkills(String userId, List<SkillDefMin> skills, SkillDate incomingSkillDate, boolean thisRequestCompletedOriginalSkill) {
+        List<SkillDefMin> sorted = skills.toSorted { SkillDefMin a, SkillDefMin b -> a.projectId <=> b.projectId }
+        sorted.each { SkillDefMin skill ->
+            handleAchievementsForImportedSkills(userId, skill, incomingSkillDate, thisRequestCompletedOriginalSkill)
+        }
+    }
+
     @Profile
     private void lockTransaction(String userId, String project) {
         log.debug("locking user [{}]-[{}]", userId, project)
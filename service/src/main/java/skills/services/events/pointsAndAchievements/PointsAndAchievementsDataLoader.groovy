@@ -21,6 +21,8 @@ import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
 import skills.services.admin.SkillsGroupAdminService
+import skills.services.events.SkillDefinitionSnapshot
+import skills.services.events.SkillDefinitionSnapshotCache
 import skills.storage.model.LevelDefInterface
 import skills.storage.model.SkillDefMin
 import skills.storage.model.SkillDef
@@ -41,9 +43,52 @@ class PointsAndAchievementsDataLoader {
     @Autowired
     SkillsGroupAdminService skillsGroupAdminService
 
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
     @Profile
     LoadedData loadData(String projectId, String userId, SkillDefMin skillDef){
-        List<SkillEventsSupportRepo.TinySkillDef> parentDefs = loadParents(skillDef)
+        LoadedData definitions = loadDefinitions(projectId, skillDef)
+        List<Integer> skillRefIds = getSkillRefIds(definitions)
+        LoadedData res = forUser(definitions, userId, loadPoints(projectId, userId, skillRefIds), loadAchievements(userId, projectId, skillRefIds))
+        validator.validate(res)
+
+        return res
+    }
+
+    /**
+     * Same as {@link #loadData(String, String, SkillDefMin)} for many users: definitions are loaded once and the points
+     * and achievements of all of the users are loaded with a single query each
+     *
+     * @return loaded data by userId, in the order of the provided userIds
+     */
+    @Profile
+    Map<String, LoadedData> loadData(String projectId, Collection<String> userIds, SkillDefMin skillDef){
+        LoadedData definitions = loadDefinitions(projectId, skillDef)
+        List<Integer> skillRefIds = getSkillRefIds(definitions)
+        Map<String, List<SkillEventsSupportRepo.TinyUserPoints>> pointsByUser = skillEventsSupportRepo.findTinyUserPointsProjectIdAndUserIdInAndSkills(projectId, userIds, skillRefIds)
+                .groupBy { it.userId } as Map<String, List<SkillEventsSupportRepo.TinyUserPoints>>
+        Map<String, List<SkillEventsSupportRepo.TinyUserAchievement>> achievementsByUser = skillEventsSupportRepo.findTinyUserAchievementsByUserIdInAndProjectIdAndSkillIds(userIds, projectId, skillRefIds)
+                .groupBy { it.userId } as Map<String, List<SkillEventsSupportRepo.TinyUserAchievement>>
+
+        Map<String, LoadedData> res = new LinkedHashMap<>()
+        userIds.each { String userId ->
+            List<SkillEventsSupportRepo.TinyUserPoints> tinyUserPoints = pointsByUser.get(userId) ?: []
+            List<SkillEventsSupportRepo.TinyUserAchievement> tinyUserAchievements = achievementsByUser.get(userId) ?: []
+            LoadedData loadedData = forUser(definitions, userId, tinyUserPoints, tinyUserAchievements)
+            validator.validate(loadedData)
+            res.put(userId, loadedData)
+        }
+        return res
+    }
+
+    /**
+     * @return user-independent portion of the {@link LoadedData}
+     */
+    private LoadedData loadDefinitions(String projectId, SkillDefMin skillDef) {
+        // user-independent definitions come from a single snapshot so they are consistent with each other
+        SkillDefinitionSnapshot snapshot = skillDef.projectId == projectId ? skillDefinitionSnapshotCache.getSnapshot(projectId) : null
+        List<SkillEventsSupportRepo.TinySkillDef> parentDefs = loadParents(snapshot, skillDef.id)
 
         // handle skills group with less than all skills required
         Integer skillsGroupDefId
@@ -52,7 +97,7 @@ class PointsAndAchievementsDataLoader {
         if (skillDef.groupId) {
             // skills group child, check parent and if numSkillsRequired then need to load siblings to determine which contribute to points
             assert parentDefs && parentDefs.size() == 1 && parentDefs.first().type == SkillDef.ContainerType.SkillsGroup && parentDefs.first().skillId == skillDef.groupId
-            parentDefs.addAll(loadParents(parentDefs.first().id))
+            parentDefs.addAll(loadParents(snapshot, parentDefs.first().id))
             if (parentDefs.first().numSkillsRequired > 0 && Boolean.valueOf(parentDefs.first().enabled)) {
                 skillsGroupDefId = parentDefs.first().id
                 numChildSkillsRequired = parentDefs.first().numSkillsRequired
@@ -65,22 +110,26 @@ class PointsAndAchievementsDataLoader {
         }
         subjectDefId = parentDefs.find { it.type == SkillDef.ContainerType.Subject }?.id
 
-        List<Integer> skillRefIds = [skillDef.id]
-        skillRefIds.addAll(parentDefs.collect { it.id })
-        List<SkillEventsSupportRepo.TinyUserPoints> tinyUserPoints = loadPoints(projectId, userId, skillRefIds)
-
-        SkillEventsSupportRepo.TinyProjectDef tinyProjectDef = loadProject(projectId)
+        SkillEventsSupportRepo.TinyProjectDef tinyProjectDef = snapshot?.projectDef ?: loadProject(projectId)
         List<Integer> parentIds = parentDefs.collect { it.id }
-        List<LevelDefInterface> tinyLevels = loadLevels(parentIds, tinyProjectDef)
+        List<LevelDefInterface> tinyLevels = snapshot ? snapshot.getLevels(parentIds, tinyProjectDef.id) : loadLevels(parentIds, tinyProjectDef)
 
-        List<SkillEventsSupportRepo.TinyUserAchievement> tinyUserAchievements = loadAchievements(userId, projectId, skillRefIds)
-
-        LoadedData res = new LoadedData(userId: userId, projectId: projectId, parentDefs: parentDefs, tinyUserPoints: tinyUserPoints,
-                levels: tinyLevels, tinyUserAchievements: tinyUserAchievements, tinyProjectDef:tinyProjectDef, skillsRefId: skillDef.id,
+        return new LoadedData(projectId: projectId, parentDefs: parentDefs, levels: tinyLevels, tinyProjectDef: tinyProjectDef, skillsRefId: skillDef.id,
                 subjectDefId: subjectDefId, numChildSkillsRequired: numChildSkillsRequired, skillsGroupDefId: skillsGroupDefId)
-        validator.validate(res)
+    }
 
-        return res
+    private static List<Integer> getSkillRefIds(LoadedData definitions) {
+        List<Integer> skillRefIds = [definitions.skillsRefId]
+        skillRefIds.addAll(definitions.parentDefs.collect { it.id })
+        return skillRefIds
+    }
+
+    private static LoadedData forUser(LoadedData definitions, String userId,
+                                      List<SkillEventsSupportRepo.TinyUserPoints> tinyUserPoints,
+                                      List<SkillEventsSupportRepo.TinyUserAchievement> tinyUserAchievements) {
+        return new LoadedData(userId: userId, projectId: definitions.projectId, parentDefs: definitions.parentDefs, tinyUserPoints: tinyUserPoints,
+                levels: definitions.levels, tinyUserAchievements: tinyUserAchievements, tinyProjectDef: definitions.tinyProjectDef, skillsRefId: definitions.skillsRefId,
+                subjectDefId: definitions.subjectDefId, numChildSkillsRequired: definitions.numChildSkillsRequired, skillsGroupDefId: definitions.skillsGroupDefId)
     }
 
     @Profile
@@ -104,8 +153,8 @@ class PointsAndAchievementsDataLoader {
     }
 
     @Profile
-    private List<SkillEventsSupportRepo.TinySkillDef> loadParents(SkillDefMin skillDef) {
-        loadParents(skillDef.id)
+    private List<SkillEventsSupportRepo.TinySkillDef> loadParents(SkillDefinitionSnapshot snapshot, Integer skillRefId) {
+        snapshot ? snapshot.getParents(skillRefId) : loadParents(skillRefId)
     }
 
     @Profile
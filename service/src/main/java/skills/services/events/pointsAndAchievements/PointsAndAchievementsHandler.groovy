@@ -24,13 +24,21 @@ import skills.services.LevelDefinitionStorageService
 import skills.services.events.CompletionItem
 import skills.services.events.SkillDate
 import skills.services.events.SkillEventResult
+import skills.services.ranking.RankIndexService
+import skills.skillLoading.PointsHistoryLedger
+import skills.skillLoading.UserProjectSummaryLoader
+import skills.storage.model.SkillDef
 import skills.storage.model.SkillDefMin
 import skills.storage.model.UserAchievement
+import skills.storage.model.UserPoints
 import skills.storage.repos.SkillEventsSupportRepo
 import skills.storage.repos.SkillRelDefRepo
 import skills.storage.repos.UserAchievedLevelRepo
 import skills.storage.repos.UserPointsRepo
 
+import java.time.LocalDate
+import java.time.ZoneId
+
 @Component
 @Slf4j
 @CompileStatic
@@ -57,13 +65,54 @@ class PointsAndAchievementsHandler {
     @Autowired
     PointsAndAchievementsSaver saver
 
+    @Autowired
+    RankIndexService rankIndexService
+
     @Autowired
     PointsAndAchievementsDataLoader dataLoader
 
+    @Autowired
+    PointsHistoryLedger pointsHistoryLedger
+
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
     @Profile
     List<CompletionItem> updatePointsAndAchievements(String userId, SkillDefMin skillDef, SkillDate incomingSkillDate){
         LoadedData loadedData = dataLoader.loadData(skillDef.projectId, userId, skillDef)
 
+        PointsAndAchievementsBuilder.PointsAndAchievementsResult result = build(userId, skillDef, loadedData, incomingSkillDate)
+        saver.save(result.dataToSave)
+        pointsSaved(userId, skillDef, loadedData, result.dataToSave, incomingSkillDate, true)
+        return result.completionItems
+    }
+
+    /**
+     * Same as {@link #updatePointsAndAchievements(String, SkillDefMin, SkillDate)} for many users (each user at most once):
+     * points and levels are computed in memory from a single load of all of the users' data and then written with
+     * a single JDBC batch per table
+     *
+     * @return completed levels by userId
+     */
+    @Profile
+    Map<String, List<CompletionItem>> updatePointsAndAchievements(Collection<String> userIds, SkillDefMin skillDef, SkillDate incomingSkillDate){
+        Map<String, LoadedData> loadedDataByUser = dataLoader.loadData(skillDef.projectId, userIds, skillDef)
+
+        Map<String, PointsAndAchievementsBuilder.PointsAndAchievementsResult> resultsByUser = [:]
+        loadedDataByUser.each { String userId, LoadedData loadedData ->
+            resultsByUser.put(userId, build(userId, skillDef, loadedData, incomingSkillDate))
+        }
+        saver.save(resultsByUser.values().collect { it.dataToSave })
+
+        Map<String, List<CompletionItem>> res = [:]
+        resultsByUser.each { String userId, PointsAndAchievementsBuilder.PointsAndAchievementsResult result ->
+            pointsSaved(userId, skillDef, loadedDataByUser.get(userId), result.dataToSave, incomingSkillDate, false)
+            res.put(userId, result.completionItems)
+        }
+        return res
+    }
+
+    private PointsAndAchievementsBuilder.PointsAndAchievementsResult build(String userId, SkillDefMin skillDef, LoadedData loadedData, SkillDate incomingSkillDate) {
         PointsAndAchievementsBuilder builder = new PointsAndAchievementsBuilder(
                 userId: userId,
                 projectId: skillDef.projectId,
@@ -75,18 +124,68 @@ class PointsAndAchievementsHandler {
                 levelDefService: levelDefService,
                 skillEventsSupportRepo: skillEventsSupportRepo,
         )
-        PointsAndAchievementsBuilder.PointsAndAchievementsResult result = builder.build()
-        saver.save(result.dataToSave)
-        return result.completionItems
+        return builder.build()
+    }
+
+    /**
+     * @param computeSummariesIfMissing see {@link UserProjectSummaryLoader#pointsChanged}, the summaries of a batch of
+     * users are not computed within the reporting transaction
+     */
+    private void pointsSaved(String userId, SkillDefMin skillDef, LoadedData loadedData, DataToSave dataToSave, SkillDate incomingSkillDate, boolean computeSummariesIfMissing) {
+        Map<String, Integer> rankedPoints = getRankedPoints(loadedData, dataToSave)
+        rankIndexService.pointsChanged(userId.toLowerCase(), skillDef.projectId, rankedPoints)
+        String subjectId = loadedData.parentDefs.find { it.type == SkillDef.ContainerType.Subject }?.skillId
+        pointsHistoryLedger.pointsAdded(userId, skillDef.projectId, subjectId, incomingSkillDate.date, skillDef.pointIncrement)
+        int todaysPoints = toLocalDate(incomingSkillDate.date) == LocalDate.now() ? skillDef.pointIncrement : 0
+        userProjectSummaryLoader.pointsChanged(userId, skillDef.projectId, rankedPoints, todaysPoints, computeSummariesIfMissing)
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate()
+    }
+
+    /**
+     * @return user's updated project (null key) and subject points
+     */
+    private Map<String, Integer> getRankedPoints(LoadedData loadedData, DataToSave dataToSave) {
+        Map<Integer, String> subjectIdsByRefId = [:]
+        loadedData.parentDefs.findAll { it.type == SkillDef.ContainerType.Subject }.each { subjectIdsByRefId.put(it.id, it.skillId) }
+
+        Map<String, Integer> res = [:]
+        dataToSave.toSave.each { UserPoints userPoints ->
+            if (userPoints.skillRefId == null || subjectIdsByRefId.containsKey(userPoints.skillRefId)) {
+                res.put(userPoints.skillId, userPoints.points)
+            }
+        }
+        dataToSave.toAddPointsTo.each { SkillEventsSupportRepo.TinyUserPoints existing ->
+            if (existing.skillRefId == null || subjectIdsByRefId.containsKey(existing.skillRefId)) {
+                res.put(subjectIdsByRefId.get(existing.skillRefId), existing.points + dataToSave.pointIncrement)
+            }
+        }
+        return res
     }
 
     @Profile
     void documentSkillAchieved(String userId, SkillDefMin skillDefinition, SkillEventResult res, SkillDate skillDate) {
+        achievedLevelRepo.save(buildSkillAchieved(userId, skillDefinition, skillDate))
+        res.completed.add(new CompletionItem(type: CompletionItem.CompletionItemType.Skill, id: skillDefinition.skillId, name: skillDefinition.name))
+    }
+
+    /**
+     * Same as {@link #documentSkillAchieved(String, SkillDefMin, SkillEventResult, SkillDate)} for many users, written with a single JDBC batch
+     */
+    @Profile
+    void documentSkillAchieved(Collection<String> userIds, SkillDefMin skillDefinition, Map<String, SkillEventResult> resultsByUser, SkillDate skillDate) {
+        saver.saveSkillAchievements(userIds.collect { String userId -> buildSkillAchieved(userId, skillDefinition, skillDate) })
+        userIds.each { String userId ->
+            resultsByUser.get(userId).completed.add(new CompletionItem(type: CompletionItem.CompletionItemType.Skill, id: skillDefinition.skillId, name: skillDefinition.name))
+        }
+    }
+
+    private UserAchievement buildSkillAchieved(String userId, SkillDefMin skillDefinition, SkillDate skillDate) {
         Date achievedOn = getAchievedOnDate(userId, skillDefinition, skillDate)
-        UserAchievement skillAchieved = new UserAchievement(userId: userId.toLowerCase(), projectId: skillDefinition.projectId, skillId: skillDefinition.skillId, skillRefId: skillDefinition?.id,
+        return new UserAchievement(userId: userId.toLowerCase(), projectId: skillDefinition.projectId, skillId: skillDefinition.skillId, skillRefId: skillDefinition?.id,
                 pointsWhenAchieved: skillDefinition.totalPoints, achievedOn: achievedOn)
-        achievedLevelRepo.save(skillAchieved)
-        res.completed.add(new CompletionItem(type: CompletionItem.CompletionItemType.Skill, id: skillDefinition.skillId, name: skillDefinition.name))
     }
 
     @Profile
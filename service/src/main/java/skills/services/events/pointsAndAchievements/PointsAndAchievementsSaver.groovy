@@ -25,6 +25,7 @@ import skills.storage.model.UserPoints
 import skills.storage.repos.SkillEventsSupportRepo
 import skills.storage.repos.UserAchievedLevelRepo
 import skills.storage.repos.UserPointsRepo
+import skills.storage.repos.nativeSql.SkillEventsBatchRepo
 
 @Component
 @Slf4j
@@ -40,6 +41,9 @@ class PointsAndAchievementsSaver {
     @Autowired
     UserAchievedLevelRepo userAchievedLevelRepo
 
+    @Autowired
+    SkillEventsBatchRepo skillEventsBatchRepo
+
     @Profile
     void save(DataToSave dataToSave) {
         saveNewPoints(dataToSave)
@@ -47,6 +51,29 @@ class PointsAndAchievementsSaver {
         saveAchievements(dataToSave)
     }
 
+    /**
+     * Saves the data of many users with a single JDBC batch per table
+     */
+    @Profile
+    void save(List<DataToSave> dataToSave) {
+        List<UserPoints> toSave = []
+        Map<Integer, Integer> pointsToAddById = [:]
+        List<UserAchievement> userAchievements = []
+        dataToSave.each { DataToSave userData ->
+            toSave.addAll(userData.toSave)
+            userData.toAddPointsTo.each { pointsToAddById.put(it.id, userData.pointIncrement) }
+            userAchievements.addAll(userData.userAchievements)
+        }
+        skillEventsBatchRepo.insertUserPoints(toSave)
+        skillEventsBatchRepo.addUserPoints(pointsToAddById)
+        skillEventsBatchRepo.insertUserAchievements(userAchievements)
+    }
+
+    @Profile
+    void saveSkillAchievements(List<UserAchievement> achievements) {
+        skillEventsBatchRepo.insertUserAchievements(achievements)
+    }
+
     @Profile
     private Iterable<UserAchievement> saveAchievements(DataToSave dataToSave) {
         userAchievedLevelRepo.saveAll(dataToSave.userAchievements)
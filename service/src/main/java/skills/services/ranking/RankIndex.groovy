@@ -0,0 +1,282 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.ranking
+
+import groovy.transform.CompileStatic
+import groovy.transform.ToString
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.locks.ReadWriteLock
+import java.util.concurrent.locks.ReentrantReadWriteLock
+
+/**
+ * Order statistic index of users within a single project or subject: users are ordered by points (descending)
+ * then by the time the user was first seen (ascending) which mirrors the leaderboard sort. Backed by a treap
+ * with subtree sizes so that rank lookups, inserts, removals and positional reads are O(log n).
+ *
+ * Thread-safe; reads may run concurrently while writes are exclusive.
+ */
+@CompileStatic
+class RankIndex {
+
+    @ToString(includeNames = true)
+    static class Entry {
+        final String userId
+        final int points
+        final long firstSeen
+
+        Entry(String userId, int points, long firstSeen) {
+            this.userId = userId
+            this.points = points
+            this.firstSeen = firstSeen
+        }
+    }
+
+    private static class Node {
+        final Entry entry
+        final int priority = ThreadLocalRandom.current().nextInt()
+        Node left
+        Node right
+        int size = 1
+
+        Node(Entry entry) {
+            this.entry = entry
+        }
+    }
+
+    private final Map<String, Entry> entriesByUserId = new HashMap<>()
+    private final ReadWriteLock lock = new ReentrantReadWriteLock()
+    private Node root
+
+    void upsert(String userId, int points, long firstSeen) {
+        lock.writeLock().lock()
+        try {
+            Entry existing = entriesByUserId.get(userId)
+            if (existing != null) {
+                if (existing.points == points && existing.firstSeen == firstSeen) {
+                    return
+                }
+                root = removeNode(root, existing)
+            }
+            Entry entry = new Entry(userId, points, firstSeen)
+            entriesByUserId.put(userId, entry)
+            root = insert(root, new Node(entry))
+        } finally {
+            lock.writeLock().unlock()
+        }
+    }
+
+    void remove(String userId) {
+        lock.writeLock().lock()
+        try {
+            Entry existing = entriesByUserId.remove(userId)
+            if (existing != null) {
+                root = removeNode(root, existing)
+            }
+        } finally {
+            lock.writeLock().unlock()
+        }
+    }
+
+    Entry get(String userId) {
+        lock.readLock().lock()
+        try {
+            return entriesByUserId.get(userId)
+        } finally {
+            lock.readLock().unlock()
+        }
+    }
+
+    int size() {
+        lock.readLock().lock()
+        try {
+            return sizeOf(root)
+        } finally {
+            lock.readLock().unlock()
+        }
+    }
+
+    /**
+     * @return number of users with more points
+     */
+    int countWithMorePoints(int points) {
+        return countBefore(new Entry('', points, Long.MIN_VALUE))
+    }
+
+    /**
+     * @return number of users with more points or with the same points that were first seen earlier
+     */
+    int countAhead(int points, long firstSeen) {
+        return countBefore(new Entry('', points, firstSeen))
+    }
+
+    /**
+     * @return up to num entries starting at the provided (0-based) position
+     */
+    List<Entry> getRange(int fromPosition, int num) {
+        lock.readLock().lock()
+        try {
+            List<Entry> res = []
+            collect(root, Math.max(0, fromPosition), num, res)
+            return res
+        } finally {
+            lock.readLock().unlock()
+        }
+    }
+
+    /**
+     * Visits entries in rank order until the visitor returns false
+     */
+    void eachInRankOrder(Closure<Boolean> visitor) {
+        lock.readLock().lock()
+        try {
+            visit(root, visitor)
+        } finally {
+            lock.readLock().unlock()
+        }
+    }
+
+    private int countBefore(Entry probe) {
+        lock.readLock().lock()
+        try {
+            int count = 0
+            Node node = root
+            while (node != null) {
+                if (compare(node.entry, probe) < 0) {
+                    count += sizeOf(node.left) + 1
+                    node = node.right
+                } else {
+                    node = node.left
+                }
+            }
+            return count
+        } finally {
+            lock.readLock().unlock()
+        }
+    }
+
+    private static int compare(Entry a, Entry b) {
+        int res = Integer.compare(b.points, a.points)
+        if (res == 0) {
+            res = Long.compare(a.firstSeen, b.firstSeen)
+        }
+        if (res == 0) {
+            res = a.userId <=> b.userId
+        }
+        return res
+    }
+
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size
+    }
+
+    private static void update(Node node) {
+        node.size = sizeOf(node.left) + sizeOf(node.right) + 1
+    }
+
+    private static Node insert(Node node, Node toInsert) {
+        if (node == null) {
+            return toInsert
+        }
+        if (compare(toInsert.entry, node.entry) < 0) {
+            node.left = insert(node.left, toInsert)
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node)
+            }
+        } else {
+            node.right = insert(node.right, toInsert)
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node)
+            }
+        }
+        update(node)
+        return node
+    }
+
+    private static Node removeNode(Node node, Entry entry) {
+        if (node == null) {
+            return null
+        }
+        int cmp = compare(entry, node.entry)
+        if (cmp < 0) {
+            node.left = removeNode(node.left, entry)
+        } else if (cmp > 0) {
+            node.right = removeNode(node.right, entry)
+        } else {
+            return merge(node.left, node.right)
+        }
+        update(node)
+        return node
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right
+        }
+        if (right == null) {
+            return left
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right)
+            update(left)
+            return left
+        }
+        right.left = merge(left, right.left)
+        update(right)
+        return right
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left
+        node.left = left.right
+        left.right = node
+        update(node)
+        update(left)
+        return left
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right
+        node.right = right.left
+        right.left = node
+        update(node)
+        update(right)
+        return right
+    }
+
+    private static void collect(Node node, int skip, int num, List<Entry> res) {
+        if (node == null || res.size() >= num) {
+            return
+        }
+        int leftSize = sizeOf(node.left)
+        if (skip < leftSize) {
+            collect(node.left, skip, num, res)
+        }
+        if (res.size() < num && skip <= leftSize) {
+            res.add(node.entry)
+        }
+        if (res.size() < num) {
+            collect(node.right, Math.max(0, skip - leftSize - 1), num, res)
+        }
+    }
+
+    private static boolean visit(Node node, Closure<Boolean> visitor) {
+        if (node == null) {
+            return true
+        }
+        return visit(node.left, visitor) && visitor.call(node.entry) && visit(node.right, visitor)
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.ranking
+
+import callStack.utils.CachedThreadPool
+import callStack.utils.ThreadPoolUtils
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.Expiry
+import com.github.benmanes.caffeine.cache.Weigher
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Service
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.InvalidatableCache
+import skills.storage.model.UserAttrs
+import skills.storage.repos.UserAttrsRepo
+import skills.storage.repos.UserPointsRepo
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+import java.time.LocalDateTime
+import java.time.ZoneOffset
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Maintains in-memory {@link RankIndex}es for projects (overall points) and subjects.
+ *
+ * Indexes are built in the background on first use; until then callers are expected to fall back to the database.
+ * Once built, an index is kept up-to-date by:
+ *   - {@link #pointsChanged} - applied after the reporting transaction commits on this node
+ *   - polling user_points for rows updated on other nodes
+ *   - {@link #projectPointsChanged} - cluster-wide invalidation for bulk point recalculations, the index is then rebuilt
+ */
+@Service
+@Slf4j
+@CompileStatic
+class RankIndexService implements InvalidatableCache {
+
+    static final String CACHE_NAME = 'rankIndex'
+
+    @Value('#{"${skills.config.rankIndex.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.rankIndex.maxNumEntries:5000000}"}')
+    Long maxNumEntries
+
+    @Value('#{"${skills.config.rankIndex.expireAfterWrite:PT30M}"}')
+    String expireAfterWrite
+
+    @Value('#{"${skills.config.rankIndex.numBuildThreads:2}"}')
+    Integer numBuildThreads
+
+    @Value('#{"${skills.config.rankIndex.updatePollOverlapInMillis:10000}"}')
+    Long updatePollOverlapInMillis
+
+    @Autowired
+    UserPointsRepo userPointsRepo
+
+    @Autowired
+    UserAttrsRepo userAttrsRepo
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    private Cache<String, RankIndex> indexes
+    private CachedThreadPool pool
+    private final Set<String> building = ConcurrentHashMap.newKeySet()
+    private final AtomicLong generation = new AtomicLong()
+    private final Map<String, Long> lastInvalidated = new ConcurrentHashMap<>()
+    private volatile long lastInvalidatedAll = 0
+    private volatile Date lastPolled
+
+    @PostConstruct
+    void init() {
+        long expireAfterWriteNanos = Duration.parse(expireAfterWrite).toNanos()
+        indexes = Caffeine.newBuilder()
+                .maximumWeight(maxNumEntries)
+                .weigher({ String key, RankIndex index -> index.size() + 1 } as Weigher<String, RankIndex>)
+                // indexes are re-put when they grow so that they are re-weighed, that must not extend their expiration
+                .expireAfter(new Expiry<String, RankIndex>() {
+                    @Override
+                    long expireAfterCreate(String key, RankIndex index, long currentTime) {
+                        return expireAfterWriteNanos
+                    }
+
+                    @Override
+                    long expireAfterUpdate(String key, RankIndex index, long currentTime, long currentDuration) {
+                        return currentDuration
+                    }
+
+                    @Override
+                    long expireAfterRead(String key, RankIndex index, long currentTime, long currentDuration) {
+                        return currentDuration
+                    }
+                })
+                .build()
+        pool = new CachedThreadPool('rank-index', numBuildThreads, numBuildThreads)
+        cacheInvalidationService.register(this)
+        log.info("Rank index: enabled=[{}], maxNumEntries=[{}], expireAfterWrite=[{}]", enabled, maxNumEntries, expireAfterWrite)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    /**
+     * @param subjectId null for the project's overall points
+     * @return the index or null if it is not available (yet), in which case a build is scheduled
+     */
+    RankIndex getIndex(String projectId, String subjectId) {
+        if (!enabled) {
+            return null
+        }
+        String key = getKey(projectId, subjectId)
+        RankIndex index = indexes.getIfPresent(key)
+        if (index == null) {
+            scheduleBuild(projectId, subjectId)
+        }
+        return index
+    }
+
+    /**
+     * @param pointsBySubjectId user's current points where a null subject id represents the project's overall points
+     * and null points mean that the user no longer has points
+     */
+    void pointsChanged(String userId, String projectId, Map<String, Integer> pointsBySubjectId) {
+        if (!enabled || !pointsBySubjectId) {
+            return
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                void afterCommit() {
+                    applyPoints(userId, projectId, pointsBySubjectId)
+                }
+            })
+        } else {
+            applyPoints(userId, projectId, pointsBySubjectId)
+        }
+    }
+
+    /**
+     * Must be called after user points were recalculated in bulk (or removed) for the project
+     */
+    void projectPointsChanged(String projectId) {
+        if (projectId) {
+            cacheInvalidationService.invalidate(CACHE_NAME, projectId)
+        }
+    }
+
+    @Override
+    void invalidateLocally(String projectId) {
+        long gen = generation.incrementAndGet()
+        if (projectId == null) {
+            lastInvalidatedAll = gen
+            lastInvalidated.clear()
+            indexes.invalidateAll()
+        } else {
+            lastInvalidated.put(projectId, gen)
+            String prefix = getKey(projectId, '')
+            indexes.invalidateAll(indexes.asMap().keySet().findAll { it.startsWith(prefix) })
+        }
+    }
+
+    @Scheduled(fixedDelayString = '#{"${skills.config.rankIndex.updatePollIntervalInMillis:5000}"}')
+    void pollForUpdates() {
+        Date now = new Date()
+        Date since = lastPolled
+        lastPolled = new Date(now.time - updatePollOverlapInMillis)
+        if (!enabled || since == null) {
+            return
+        }
+        Set<String> projectIds = indexes.asMap().keySet().collect { getProjectId(it) } as Set<String>
+        if (!projectIds) {
+            return
+        }
+        List<UserPointsRepo.RankIndexEntry> updated = userPointsRepo.findUpdatedForRankIndex(projectIds, since)
+        updated.each { UserPointsRepo.RankIndexEntry entry ->
+            String key = getKey(entry.projectId, entry.skillId)
+            RankIndex index = indexes.getIfPresent(key)
+            if (index != null) {
+                int sizeBefore = index.size()
+                index.upsert(entry.userId, entry.points, toMillis(entry.userFirstSeenTimestamp))
+                reweighIfResized(key, index, sizeBefore)
+            }
+        }
+    }
+
+    private void scheduleBuild(String projectId, String subjectId) {
+        String key = getKey(projectId, subjectId)
+        if (building.add(key)) {
+            pool.submit([ThreadPoolUtils.callable {
+                try {
+                    build(projectId, subjectId)
+                } catch (Throwable t) {
+                    log.error("Failed to build rank index for [${key}]", t)
+                } finally {
+                    building.remove(key)
+                }
+            }])
+        }
+    }
+
+    private void build(String projectId, String subjectId) {
+        long buildGeneration = generation.incrementAndGet()
+        Date buildStart = new Date(System.currentTimeMillis() - updatePollOverlapInMillis)
+
+        RankIndex index = new RankIndex()
+        List<UserPointsRepo.RankIndexEntry> entries = subjectId ?
+                userPointsRepo.findAllForRankIndex(projectId, subjectId) :
+                userPointsRepo.findAllForRankIndex(projectId)
+        entries.each { index.upsert(it.userId, it.points, toMillis(it.userFirstSeenTimestamp)) }
+
+        // pick up changes committed while the index was being loaded
+        userPointsRepo.findUpdatedForRankIndex([projectId], buildStart).each { UserPointsRepo.RankIndexEntry entry ->
+            if (entry.skillId == subjectId) {
+                index.upsert(entry.userId, entry.points, toMillis(entry.userFirstSeenTimestamp))
+            }
+        }
+
+        Long invalidatedAt = lastInvalidated.get(projectId)
+        if (buildGeneration < lastInvalidatedAll || (invalidatedAt != null && buildGeneration < invalidatedAt)) {
+            log.debug("Discarding rank index for [{}] as it was invalidated while building", getKey(projectId, subjectId))
+            return
+        }
+        indexes.put(getKey(projectId, subjectId), index)
+        log.debug("Built rank index for [{}] with [{}] users", getKey(projectId, subjectId), index.size())
+    }
+
+    private void applyPoints(String userId, String projectId, Map<String, Integer> pointsBySubjectId) {
+        Long firstSeen = null
+        pointsBySubjectId.each { String subjectId, Integer points ->
+            String key = getKey(projectId, subjectId)
+            RankIndex index = indexes.getIfPresent(key)
+            if (index == null) {
+                return
+            }
+            int sizeBefore = index.size()
+            if (points == null) {
+                index.remove(userId)
+            } else {
+                if (firstSeen == null) {
+                    firstSeen = index.get(userId)?.firstSeen ?: loadFirstSeen(userId)
+                }
+                if (firstSeen != null) {
+                    index.upsert(userId, points, firstSeen)
+                }
+            }
+            reweighIfResized(key, index, sizeBefore)
+        }
+    }
+
+    /**
+     * Caffeine only weighs an index when it is put, so an index that gained or lost users in place is re-put (unless it
+     * was invalidated in the meantime) to keep the total weight bounded by maxNumEntries
+     */
+    private void reweighIfResized(String key, RankIndex index, int sizeBefore) {
+        if (index.size() != sizeBefore) {
+            indexes.asMap().replace(key, index, index)
+        }
+    }
+
+    private Long loadFirstSeen(String userId) {
+        UserAttrs userAttrs = userAttrsRepo.findByUserId(userId)
+        return userAttrs?.created ? toMillis(userAttrs.created) : null
+    }
+
+    static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli()
+    }
+
+    private static String getKey(String projectId, String subjectId) {
+        return "${projectId}|${subjectId ?: ''}".toString()
+    }
+
+    private static String getProjectId(String key) {
+        return key.substring(0, key.lastIndexOf('|'))
+    }
+}
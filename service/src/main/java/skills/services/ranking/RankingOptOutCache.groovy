@@ -0,0 +1,117 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.ranking
+
+import callStack.profiler.Profile
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import skills.controller.UserInfoController
+import skills.services.AccessSettingsStorageService
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.InvalidatableCache
+import skills.storage.model.Setting
+import skills.storage.repos.SettingRepo
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Ids of the users that personally opted out of ranking and leaderboards; loaded with a single query and shared by
+ * every rank and leaderboard request.
+ *
+ * Changes to the opt-out preference must call {@link #optOutChanged(Setting)}, which is done for every saved or
+ * removed setting by {@link skills.services.settings.SettingRecordsChangeListener}; the set is also reloaded after
+ * expireAfterWrite in case a change bypassed the entity listeners.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class RankingOptOutCache implements InvalidatableCache {
+
+    static final String CACHE_NAME = 'rankingOptOut'
+
+    @Value('#{"${skills.config.rankingOptOutCache.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.rankingOptOutCache.expireAfterWrite:PT10M}"}')
+    String expireAfterWrite
+
+    @Autowired
+    SettingRepo settingRepo
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    private static class OptedOut {
+        long generation
+        long loadedAt
+        Set<String> userIds
+    }
+
+    private final AtomicLong generation = new AtomicLong()
+    private volatile long lastInvalidated = 0
+    private volatile OptedOut optedOut
+    private long expireAfterWriteInMillis
+
+    @PostConstruct
+    void init() {
+        expireAfterWriteInMillis = Duration.parse(expireAfterWrite).toMillis()
+        cacheInvalidationService.register(this)
+        log.info("Ranking opt-out cache: enabled=[{}], expireAfterWrite=[{}]", enabled, expireAfterWrite)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    /**
+     * Invalidates the opted-out users on all nodes if the provided setting is the ranking opt-out preference
+     */
+    void optOutChanged(Setting setting) {
+        if (setting.type == Setting.SettingType.User && setting.setting == UserInfoController.RANK_AND_LEADERBOARD_OPT_OUT_PREF) {
+            cacheInvalidationService.invalidate(CACHE_NAME, null)
+        }
+    }
+
+    @Override
+    void invalidateLocally(String key) {
+        lastInvalidated = generation.incrementAndGet()
+        optedOut = null
+    }
+
+    /**
+     * @return unmodifiable set of user ids
+     */
+    @Profile
+    Set<String> getOptedOutUserIds() {
+        OptedOut current = optedOut
+        if (current == null || System.currentTimeMillis() - current.loadedAt > expireAfterWriteInMillis) {
+            // generation is captured before the load, so any invalidation that happens while loading discards the result
+            current = new OptedOut(generation: generation.incrementAndGet(), loadedAt: System.currentTimeMillis())
+            current.userIds = Collections.unmodifiableSet(new HashSet<String>(settingRepo.findUserIdsByUserSettingGroupAndSettingAndValue(
+                    AccessSettingsStorageService.USER_PREFS_GROUP, UserInfoController.RANK_AND_LEADERBOARD_OPT_OUT_PREF, Boolean.TRUE.toString())))
+            if (enabled && current.generation > lastInvalidated) {
+                optedOut = current
+            }
+        }
+        return current.userIds
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.settings
+
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.context.annotation.Lazy
+import skills.services.ranking.RankingOptOutCache
+import skills.storage.model.ProjDefParent
+import skills.storage.model.Setting
+
+import javax.persistence.PostPersist
+import javax.persistence.PostRemove
+import javax.persistence.PostUpdate
+
+/**
+ * JPA entity listener that invalidates {@link SettingsCache} (and {@link RankingOptOutCache} for the ranking opt-out
+ * preference) whenever a setting is saved or removed, regardless of
+ * whether the change went through {@link SettingsService}; removing a project cascades to its settings so all of
+ * the scopes are invalidated. Instantiated by Hibernate through Spring's bean container.
+ */
+@CompileStatic
+class SettingRecordsChangeListener {
+
+    @Lazy
+    @Autowired
+    SettingsCache settingsCache
+
+    @Lazy
+    @Autowired
+    RankingOptOutCache rankingOptOutCache
+
+    @PostPersist
+    @PostUpdate
+    void settingRecordSaved(Object entity) {
+        if (entity instanceof Setting) {
+            settingsCache.settingChanged((Setting) entity)
+            rankingOptOutCache.optOutChanged((Setting) entity)
+        }
+    }
+
+    @PostRemove
+    void settingRecordRemoved(Object entity) {
+        if (entity instanceof ProjDefParent) {
+            settingsCache.allSettingsChanged()
+        } else {
+            settingRecordSaved(entity)
+        }
+    }
+}
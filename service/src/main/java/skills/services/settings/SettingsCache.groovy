@@ -0,0 +1,191 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.settings
+
+import callStack.profiler.Profile
+import com.github.benmanes.caffeine.cache.Caffeine
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.GenerationGuardedCache
+import skills.storage.model.Setting
+import skills.storage.model.Setting.SettingType
+import skills.storage.repos.SettingRepo
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+
+/**
+ * Read-through cache of settings keyed by scope (global, project, user and user-project); each scope is loaded with
+ * a single query so all of the settings of a project are prefetched on the first read.
+ *
+ * Entries hold detached copies of the settings and must not be modified. Every save or removal of a setting is
+ * distributed cluster-wide through {@link CacheInvalidationService} by {@link SettingRecordsChangeListener};
+ * RootUser settings are not cached. Hit and miss counts are published under the 'settings' cache name.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class SettingsCache extends GenerationGuardedCache<String, List<Setting>> {
+
+    static final String CACHE_NAME = 'settings'
+
+    static final String GLOBAL_KEY = 'global'
+
+    @Value('#{"${skills.config.settingsCache.enabled:true}"}')
+    Boolean enabled
+
+    @Value('#{"${skills.config.settingsCache.maxNumEntries:20000}"}')
+    Integer maxNumEntries
+
+    @Value('#{"${skills.config.settingsCache.expireAfterWrite:PT10M}"}')
+    String expireAfterWrite
+
+    @Autowired
+    SettingRepo settingRepo
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    @PostConstruct
+    void init() {
+        entries = Caffeine.newBuilder()
+                .maximumSize(maxNumEntries)
+                .expireAfterWrite(Duration.parse(expireAfterWrite))
+                .recordStats()
+                .build()
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, CACHE_NAME)
+        cacheInvalidationService.register(this)
+        log.info("Settings cache: enabled=[{}], maxNumEntries=[{}], expireAfterWrite=[{}]", enabled, maxNumEntries, expireAfterWrite)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    @Override
+    protected boolean isCachingEnabled() {
+        return enabled
+    }
+
+    @Profile
+    List<Setting> getGlobalSettings() {
+        return get(GLOBAL_KEY) { settingRepo.findAllByType(SettingType.Global) }
+    }
+
+    @Profile
+    List<Setting> getProjectSettings(String projectId) {
+        return get(projectKey(projectId)) { settingRepo.findAllByTypeAndProjectId(SettingType.Project, projectId) }
+    }
+
+    @Profile
+    List<Setting> getUserSettings(Integer userRefId) {
+        return get(userKey(userRefId)) { settingRepo.findAllByTypeAndUserRefId(SettingType.User, userRefId) }
+    }
+
+    @Profile
+    List<Setting> getUserProjectSettings(Integer userRefId, String projectId) {
+        return get(userProjectKey(userRefId, projectId)) { settingRepo.findAllByTypeAndUserRefIdAndProjectId(SettingType.UserProject, userRefId, projectId) }
+    }
+
+    /**
+     * Invalidates the scope of the provided setting on all nodes
+     */
+    void settingChanged(Setting setting) {
+        String key = keyOf(setting)
+        if (key) {
+            cacheInvalidationService.invalidate(CACHE_NAME, key)
+        }
+    }
+
+    /**
+     * Invalidates all of the project's settings on all nodes
+     */
+    void projectSettingsChanged(String projectId) {
+        cacheInvalidationService.invalidate(CACHE_NAME, projectKey(projectId))
+    }
+
+    /**
+     * Invalidates all of the global settings on all nodes
+     */
+    void globalSettingsChanged() {
+        cacheInvalidationService.invalidate(CACHE_NAME, GLOBAL_KEY)
+    }
+
+    /**
+     * Invalidates all of the scopes on all nodes
+     */
+    void allSettingsChanged() {
+        cacheInvalidationService.invalidate(CACHE_NAME, null)
+    }
+
+    private List<Setting> get(String key, Closure<List<Setting>> loader) {
+        return getOrLoad(key) {
+            List<Setting> loaded = loader.call() ?: []
+            return Collections.unmodifiableList(loaded.sort(false) { Setting s -> s.id }.collect { copy(it) })
+        }
+    }
+
+    static Setting copy(Setting setting) {
+        return new Setting(
+                id: setting.id,
+                settingGroup: setting.settingGroup,
+                projectId: setting.projectId,
+                setting: setting.setting,
+                value: setting.value,
+                userRefId: setting.userRefId,
+                type: setting.type,
+                created: setting.created,
+                updated: setting.updated,
+        )
+    }
+
+    private static String keyOf(Setting setting) {
+        switch (setting.type) {
+            case SettingType.Global:
+                return GLOBAL_KEY
+            case SettingType.Project:
+                return projectKey(setting.projectId)
+            case SettingType.User:
+                return userKey(setting.userRefId)
+            case SettingType.UserProject:
+                return userProjectKey(setting.userRefId, setting.projectId)
+            default:
+                return null
+        }
+    }
+
+    private static String projectKey(String projectId) {
+        return "project:${projectId}".toString()
+    }
+
+    private static String userKey(Integer userRefId) {
+        return "user:${userRefId}".toString()
+    }
+
+    private static String userProjectKey(Integer userRefId, String projectId) {
+        return "userProject:${userRefId}:${projectId}".toString()
+    }
+}
@@ -19,6 +19,7 @@ import groovy.transform.CompileStatic
 import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import skills.auth.UserRecordsCache
 import skills.controller.exceptions.SkillException
 import skills.controller.request.model.*
 import skills.storage.model.Setting
@@ -29,6 +30,9 @@ import skills.storage.repos.UserRepo
 
 /**
  * Abstract access to settings storage but utilizing Setting.SettingType to reliably differentiate between different setting types
+ *
+ * Global, project, user and user-project settings are read through {@link SettingsCache}; returned settings are
+ * copies and may be modified by the caller. {@link #loadSetting} is used before a save and always reads the database.
  */
 @Component
 @Slf4j
@@ -41,28 +45,36 @@ class SettingsDataAccessor {
     @Autowired
     UserRepo userRepo
 
+    @Autowired
+    SettingsCache settingsCache
+
+    @Autowired
+    UserRecordsCache userRecordsCache
+
     Setting getGlobalSetting(String setting, String settingGroup){
-        settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(Setting.SettingType.Global, null, null, settingGroup, setting)
+        findOne(settingsCache.getGlobalSettings(), null, null, settingGroup, setting)
     }
 
     Setting getGlobalSetting(String setting){
-        settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(Setting.SettingType.Global, null, null, null, setting)
+        findOne(settingsCache.getGlobalSettings(), null, null, null, setting)
     }
 
     Setting getProjectSetting(String projectId, String setting){
-        settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(Setting.SettingType.Project, null, projectId, null, setting)
+        findOne(settingsCache.getProjectSettings(projectId), null, projectId, null, setting)
     }
 
     List<Setting> getProjectSettings(String projectId, List<String> settings) {
-        settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSettingIn(Setting.SettingType.Project, null, projectId, null, settings)
+        settingsCache.getProjectSettings(projectId)
+                .findAll { it.userRefId == null && it.settingGroup == null && settings.contains(it.setting) }
+                .collect { SettingsCache.copy(it) }
     }
 
     Setting getProjectSetting(String projectId, String setting, String settingGroup){
-        settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(Setting.SettingType.Project, null, projectId, settingGroup, setting)
+        findOne(settingsCache.getProjectSettings(projectId), null, projectId, settingGroup, setting)
     }
 
     Setting getUserProjectSetting(Integer userRefId, String projectId, String setting, String settingGroup){
-        settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(Setting.SettingType.UserProject, userRefId, projectId, settingGroup, setting)
+        findOne(settingsCache.getUserProjectSettings(userRefId, projectId), userRefId, projectId, settingGroup, setting)
     }
 
     List<Setting> getUserProjectSettingsForAllProjectsBySettingsGroup(String userId, String settingGroup){
@@ -74,15 +86,17 @@ class SettingsDataAccessor {
     }
 
     Setting getUserSetting(Integer userRefId, String setting, String settingGroup){
-        settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(Setting.SettingType.User, userRefId, null, settingGroup, setting)
+        findOne(settingsCache.getUserSettings(userRefId), userRefId, null, settingGroup, setting)
     }
 
     List<Setting> getUserSettingsForGroup(User user, String settingGroup) {
-        settingRepo.findAllByTypeAndUserRefIdAndSettingGroup(Setting.SettingType.User, user?.id, settingGroup)
+        getUserSettingsForGroup(user?.id, settingGroup)
     }
 
     List<Setting> getUserSettingsForGroup(Integer userRefId, String settingGroup) {
-        settingRepo.findAllByTypeAndUserRefIdAndSettingGroup(Setting.SettingType.User, userRefId, settingGroup)
+        settingsCache.getUserSettings(userRefId)
+                .findAll { it.settingGroup == settingGroup }
+                .collect { SettingsCache.copy(it) }
     }
 
     List<Setting> getUserProjectSettingsForGroup(String userId, String settingGroup) {
@@ -95,11 +109,13 @@ class SettingsDataAccessor {
     }
 
     List<Setting> getProjectSettings(String projectId) {
-        settingRepo.findAllByTypeAndProjectId(Setting.SettingType.Project, projectId)
+        settingsCache.getProjectSettings(projectId).collect { SettingsCache.copy(it) }
     }
 
     List<Setting> getGlobalSettingsByGroup(String settingGroup){
-        settingRepo.findAllByTypeAndSettingGroup(Setting.SettingType.Global, settingGroup)
+        settingsCache.getGlobalSettings()
+                .findAll { it.settingGroup == settingGroup }
+                .collect { SettingsCache.copy(it) }
     }
 
     List<Setting> getRootUserSettingsByGroup(String settingGroup) {
@@ -111,7 +127,11 @@ class SettingsDataAccessor {
     }
 
     String getUserSettingValue(String userId, String setting) {
-        return settingRepo.findUserSettingValueByUserIdAndSettingAndProjectIdIsNull(userId, setting)
+        User user = userId ? userRecordsCache.get(userId).user : null
+        if (user == null || user.userId != userId) {
+            return null
+        }
+        return settingsCache.getUserSettings(user.id).find { it.projectId == null && it.setting == setting }?.value
     }
 
     void save(Setting setting){
@@ -136,6 +156,8 @@ class SettingsDataAccessor {
 
     void deleteGlobalSetting(String setting) {
         settingRepo.deleteGlobalSetting(setting)
+        // bulk delete does not go through the entity listeners
+        settingsCache.globalSettingsChanged()
     }
 
     void deleteRootUserSetting(String setting, String value) {
@@ -144,18 +166,25 @@ class SettingsDataAccessor {
 
     Setting loadSetting(SettingsRequest request, Integer userRefId=null){
         if(request instanceof UserProjectSettingsRequest){
-            return getUserProjectSetting(userRefId, request.projectId, request.setting, request.settingGroup)
+            return settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(SettingType.UserProject, userRefId, request.projectId, request.settingGroup, request.setting)
         } else if (request instanceof UserSettingsRequest) {
-            return getUserSetting(userRefId, request.setting, request.settingGroup)
+            return settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(SettingType.User, userRefId, null, request.settingGroup, request.setting)
         } else if(request instanceof GlobalSettingsRequest){
-            return getGlobalSetting(request.setting, request.settingGroup)
+            return settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(SettingType.Global, null, null, request.settingGroup, request.setting)
         } else if(request instanceof RootUserProjectSettingsRequest) {
             return getRootUserProjectSetting(request.settingGroup, request.setting, request.projectId)
         } else if(request instanceof ProjectSettingsRequest){
-            return getProjectSetting(request.projectId, request.setting, request.settingGroup)
+            return settingRepo.findByTypeAndUserRefIdAndProjectIdAndSettingGroupAndSetting(SettingType.Project, null, request.projectId, request.settingGroup, request.setting)
         } else {
             log.error("unable SettingRequest [${request.getClass()}]")
             throw new SkillException("Unrecognized Setting type")
         }
     }
+
+    private static Setting findOne(List<Setting> settings, Integer userRefId, String projectId, String settingGroup, String setting) {
+        Setting found = settings.find {
+            it.userRefId == userRefId && it.projectId == projectId && it.settingGroup == settingGroup && it.setting == setting
+        }
+        return found ? SettingsCache.copy(found) : null
+    }
 }
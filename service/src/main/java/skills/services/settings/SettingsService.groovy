@@ -181,16 +181,15 @@ class SettingsService {
 
     @Transactional(readOnly = true)
     ValidationRes isValid(SettingsRequest setting) {
-        ValidationRes res = new ValidationRes(isValid: true);
-        listeners?.each {
-            if (it.supports(setting)) {
-                res = it.isValid(setting)
-                if(!res.isValid){
-                    return res;
+        for (SettingChangedListener listener : listeners) {
+            if (listener.supports(setting)) {
+                ValidationRes res = listener.isValid(setting)
+                if (!res.isValid) {
+                    return res
                 }
             }
         }
-        return res
+        return new ValidationRes(isValid: true)
     }
 
     @Transactional(readOnly = true)
@@ -19,6 +19,7 @@ import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
 import skills.services.LevelUtils
+import skills.services.events.SkillDefinitionSnapshotCache
 import skills.services.settings.SettingChangedListener
 import skills.services.settings.Settings
 import skills.storage.model.LevelDef
@@ -46,6 +47,9 @@ class LevelPointsSettingListener implements SettingChangedListener{
     @Autowired
     LevelDefRepo levelDefRepo
 
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
     @Override
     boolean supports(skills.controller.request.model.SettingsRequest setting) {
         return setting.setting == Settings.LEVEL_AS_POINTS.settingName
@@ -95,6 +99,7 @@ class LevelPointsSettingListener implements SettingChangedListener{
                 levelDefRepo.saveAll(subjectLevelDefs)
             }
         }
+        skillDefinitionSnapshotCache.projectDefinitionChanged(setting.projectId)
     }
 
     private String getErrExplanation(ProjDef project) {
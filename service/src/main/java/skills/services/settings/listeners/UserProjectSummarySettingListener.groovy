@@ -0,0 +1,55 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.settings.listeners
+
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Component
+import skills.controller.request.model.ProjectSettingsRequest
+import skills.controller.request.model.SettingsRequest
+import skills.controller.request.model.UserProjectSettingsRequest
+import skills.services.settings.SettingChangedListener
+import skills.skillLoading.UserProjectSummaryLoader
+import skills.storage.model.Setting
+
+/**
+ * Project settings (help url, project description display, etc.) are baked into materialized project summaries
+ */
+@Component
+@CompileStatic
+class UserProjectSummarySettingListener implements SettingChangedListener {
+
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @Override
+    boolean supports(SettingsRequest setting) {
+        return setting instanceof ProjectSettingsRequest && !(setting instanceof UserProjectSettingsRequest)
+    }
+
+    @Override
+    void execute(Setting previousValue, SettingsRequest setting) {
+        String projectId = ((ProjectSettingsRequest) setting).projectId
+        if (projectId) {
+            userProjectSummaryLoader.projectChanged(projectId)
+        }
+    }
+
+    @Override
+    ValidationRes isValid(SettingsRequest setting) {
+        return new ValidationRes(isValid: true)
+    }
+}
@@ -20,9 +20,13 @@ import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
 import org.springframework.transaction.annotation.Transactional
+import skills.services.events.SkillDefinitionSnapshot
+import skills.services.events.SkillDefinitionSnapshotCache
 import skills.skillLoading.model.SkillDependencySummary
 import skills.storage.model.SkillDef
 import skills.storage.model.SkillRelDef
+import skills.storage.repos.SkillEventsSupportRepo
+import skills.storage.repos.UserAchievedLevelRepo
 import skills.storage.repos.UserPointsRepo
 
 @Component
@@ -32,6 +36,12 @@ class DependencySummaryLoader {
     @Autowired
     UserPointsRepo userPointsRepo
 
+    @Autowired
+    UserAchievedLevelRepo achievedLevelRepo
+
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
     private static class SkillWithAchievementIndicator {
         Integer skillDefId
         boolean isAchieved
@@ -50,6 +60,18 @@ class DependencySummaryLoader {
     }
 
     private List<SkillWithAchievementIndicator> loadDependentSkills(String userId, String projectId, String skillId) {
+        SkillDefinitionSnapshot snapshot = skillDefinitionSnapshotCache.getSnapshot(projectId)
+        if (snapshot) {
+            List<SkillEventsSupportRepo.TinySkillRelationship> dependencies = snapshot.getDependencies(skillId)
+            if (!dependencies) {
+                return []
+            }
+            Set<Integer> achievedIds = new HashSet<>(achievedLevelRepo.findAchievedSkillRefIds(userId, dependencies.collect { it.childId }))
+            return dependencies.collect {
+                new SkillWithAchievementIndicator(skillDefId: it.childId, isAchieved: achievedIds.contains(it.childId))
+            }
+        }
+
         // there is no reason to exclude based on version as the system will not allow to dependent skills with later version
         List<Object []> dependentSkillsAndTheirAchievementStatus = userPointsRepo.findChildrenAndTheirAchievements(userId, projectId, skillId, SkillRelDef.RelationshipType.Dependence, Integer.MAX_VALUE)
         return dependentSkillsAndTheirAchievementStatus.collect {
@@ -16,6 +16,7 @@
 package skills.skillLoading
 
 import groovy.transform.CompileStatic
+import groovy.transform.PackageScope
 import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
@@ -39,7 +40,24 @@ class PointsHistoryBuilder {
     @Autowired
     UserAchievedLevelRepo userAchievedRepo
 
+    @Autowired
+    PointsHistoryLedger pointsHistoryLedger
+
     List<SkillHistoryPoints> buildHistory(String projectId, String userId, Integer showHistoryForNumDays, String skillId = null, Integer version = Integer.MAX_VALUE) {
+        if (showHistoryForNumDays != null) {
+            Date startDate = getStartDate(showHistoryForNumDays)
+            PointsHistoryLedger.DailyPoints dailyPoints = pointsHistoryLedger.loadDailyPoints(projectId, userId, skillId, startDate, version)
+            if (dailyPoints != null) {
+                Map<Date, Long> pointsByDay = dailyPoints.pointsByDay
+                int numDaysWithPoints = pointsByDay.size() + dailyPoints.numDaysBefore
+                if (dailyPoints.numDaysBefore > 0) {
+                    // a single day before the window stands in for all of them, it is folded into the window's first day
+                    pointsByDay.put(startDate - 1, dailyPoints.pointsBefore)
+                }
+                return doBuildHistory(pointsByDay, numDaysWithPoints, showHistoryForNumDays)
+            }
+        }
+
         List<DayCountItem> userPoints
         if(skillId) {
             userPoints = userPerformedSkillRepo.calculatePointHistoryForSubject(projectId, userId, skillId, version)
@@ -53,18 +71,24 @@ class PointsHistoryBuilder {
             pointsByDay.put(new Date(it.day.time).clearTime(), it.count)
         }
 
-        return doBuildHistory(pointsByDay, showHistoryForNumDays)
+        return doBuildHistory(pointsByDay, pointsByDay.size(), showHistoryForNumDays)
+    }
+
+    private static Date getStartDate(int showHistoryForNumDays) {
+        Date startDate = new Date() - showHistoryForNumDays
+        return new Date(startDate.time).clearTime()
     }
 
-    private List<SkillHistoryPoints> doBuildHistory(Map<Date, Long> pointsByDay, Integer showHistoryForNumDays) {
-        if (!pointsByDay || pointsByDay.size() < minNumOfDaysBeforeReturningHistory) {
+    // package-private so that it can be benchmarked without the repositories
+    @PackageScope
+    List<SkillHistoryPoints> doBuildHistory(Map<Date, Long> pointsByDay, int numDaysWithPoints, Integer showHistoryForNumDays) {
+        if (!pointsByDay || numDaysWithPoints < minNumOfDaysBeforeReturningHistory) {
             return Collections.EMPTY_LIST
         }
 
         long toAddForFirstDay = 0
         if (showHistoryForNumDays != null) {
-            Date startDate = new Date() - showHistoryForNumDays
-            startDate = new Date(startDate.time).clearTime()
+            Date startDate = getStartDate(showHistoryForNumDays)
             Map<Date, Long> toRemove = pointsByDay.findAll { it.key.before(startDate) }
             if (toRemove) {
                 toAddForFirstDay = (int) toRemove.collect { it.value }.sum()
@@ -0,0 +1,223 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.skillLoading
+
+import callStack.profiler.Profile
+import callStack.utils.CachedThreadPool
+import callStack.utils.ThreadPoolUtils
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.support.TransactionTemplate
+import skills.services.LockingService
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.InvalidatableCache
+import skills.services.caching.ProjectInvalidationTracker
+import skills.services.ranking.RankIndexService
+import skills.storage.model.DayCountItem
+import skills.storage.model.SkillDefMin
+import skills.storage.repos.CacheInvalidationRepo
+import skills.storage.repos.SkillDefRepo
+import skills.storage.repos.UserPointsHistoryRepo
+import skills.storage.repos.nativeSql.NativeQueriesRepo
+
+import javax.annotation.PostConstruct
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Per user, project, subject and day points ledger (user_points_history) backing the point history endpoints so that
+ * a history window is served with a range read instead of aggregating all of the user's performed skills.
+ *
+ * Rows hold daily deltas:
+ *  - reported skill events add the skill's point increment to the day the event was performed on
+ *  - removed skill events subtract it again
+ *  - project-wide point changes (point increments, moved or removed skills) publish a rank index invalidation
+ *    (see {@link RankIndexService#projectPointsChanged}); other definition changes do not affect the rows
+ *  - a user's rows built before the project's last point change are not served, history is then computed from the
+ *    performed skills while the rows are rebuilt in the background
+ *
+ * The ledger always reflects the latest skill definitions, older versions are served by {@link PointsHistoryBuilder}
+ * directly from the performed skills.
+ */
+@Component
+@Slf4j
+@CompileStatic
+class PointsHistoryLedger implements InvalidatableCache {
+
+    static final String CACHE_NAME = 'pointsHistory'
+
+    static class DailyPoints {
+        // days on or after the requested start date with non-zero points
+        Map<Date, Long> pointsByDay
+        // totals of the days with non-zero points before the requested start date
+        int numDaysBefore
+        long pointsBefore
+    }
+
+    @Value('#{"${skills.config.pointsHistory.ledger.enabled:true}"}')
+    Boolean enabled
+
+    // see ProjectInvalidationTracker
+    @Value('#{"${skills.config.pointsHistory.ledger.clockSkewToleranceInMillis:1000}"}')
+    Long clockSkewToleranceInMillis
+
+    @Value('#{"${skills.config.pointsHistory.ledger.numRebuildThreads:2}"}')
+    Integer numRebuildThreads
+
+    @Autowired
+    UserPointsHistoryRepo userPointsHistoryRepo
+
+    @Autowired
+    NativeQueriesRepo nativeQueriesRepo
+
+    @Autowired
+    SkillDefRepo skillDefRepo
+
+    @Autowired
+    LockingService lockingService
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    @Autowired
+    CacheInvalidationRepo cacheInvalidationRepo
+
+    @Autowired
+    PlatformTransactionManager transactionManager
+
+    private TransactionTemplate newTransactionTemplate
+    private ProjectInvalidationTracker invalidationTracker
+    private CachedThreadPool pool
+    private final Set<String> rebuilding = ConcurrentHashMap.newKeySet()
+
+    @PostConstruct
+    void init() {
+        newTransactionTemplate = new TransactionTemplate(transactionManager)
+        newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW)
+        pool = new CachedThreadPool('points-history', numRebuildThreads, numRebuildThreads)
+
+        invalidationTracker = new ProjectInvalidationTracker()
+        invalidationTracker.track(this, [RankIndexService.CACHE_NAME], cacheInvalidationService, cacheInvalidationRepo)
+        log.info("Points history ledger: enabled=[{}]", enabled)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    @Override
+    void invalidateLocally(String projectId) {
+        invalidationTracker.invalidated(projectId)
+    }
+
+    /**
+     * Must be called within the transaction that recorded the performed skill and holds the user's skill reporting lock
+     */
+    @Profile
+    void pointsAdded(String userId, String projectId, String subjectId, Date performedOn, int points) {
+        if (!enabled || !subjectId) {
+            return
+        }
+        nativeQueriesRepo.addUserPointsHistory(projectId, userId, subjectId, new Date(performedOn.time).clearTime(), points)
+    }
+
+    /**
+     * Must be called within the transaction that removes the performed skill
+     */
+    @Profile
+    void pointsRemoved(String userId, SkillDefMin skillDef, Date performedOn) {
+        if (!enabled) {
+            return
+        }
+        String subjectId = userPointsHistoryRepo.findSubjectIdBySkillRefId(skillDef.id)
+        if (subjectId) {
+            lockingService.lockForSkillReporting(userId, skillDef.projectId)
+            nativeQueriesRepo.addUserPointsHistory(skillDef.projectId, userId, subjectId, new Date(performedOn.time).clearTime(), -skillDef.pointIncrement)
+        }
+    }
+
+    /**
+     * @param subjectId null for the whole project
+     * @return null if the ledger cannot serve the requested version or the user's rows are being rebuilt
+     */
+    @Profile
+    DailyPoints loadDailyPoints(String projectId, String userId, String subjectId, Date start, Integer version) {
+        if (!enabled || !isLatestVersion(projectId, version)) {
+            return null
+        }
+        if (!invalidationTracker.isCurrent(projectId, userPointsHistoryRepo.findBuilt(projectId, userId))) {
+            scheduleRebuild(projectId, userId)
+            return null
+        }
+
+        List<DayCountItem> items
+        UserPointsHistoryRepo.PointsBefore before
+        if (subjectId) {
+            items = userPointsHistoryRepo.findSubjectPointsByDay(projectId, userId, subjectId, start)
+            before = userPointsHistoryRepo.findSubjectPointsBefore(projectId, userId, subjectId, start)
+        } else {
+            items = userPointsHistoryRepo.findProjectPointsByDay(projectId, userId, start)
+            before = userPointsHistoryRepo.findProjectPointsBefore(projectId, userId, start)
+        }
+
+        Map<Date, Long> pointsByDay = [:]
+        items.each {
+            // it.day is java.sql.Date
+            pointsByDay.put(new Date(it.day.time).clearTime(), it.count)
+        }
+        return new DailyPoints(pointsByDay: pointsByDay, numDaysBefore: before.numDays.intValue(), pointsBefore: before.points)
+    }
+
+    private boolean isLatestVersion(String projectId, Integer version) {
+        if (version == null || version == Integer.MAX_VALUE) {
+            return true
+        }
+        Integer maxVersion = skillDefRepo.findMaxVersionByProjectId(projectId)
+        return version >= (maxVersion ?: 0)
+    }
+
+    private void scheduleRebuild(String projectId, String userId) {
+        String key = "${projectId}|${userId}".toString()
+        if (rebuilding.add(key)) {
+            pool.submit([ThreadPoolUtils.callable {
+                try {
+                    rebuild(projectId, userId)
+                } catch (Throwable t) {
+                    log.error("Failed to rebuild points history for user [${userId}] and project [${projectId}]", t)
+                } finally {
+                    rebuilding.remove(key)
+                }
+            }])
+        }
+    }
+
+    private void rebuild(String projectId, String userId) {
+        newTransactionTemplate.executeWithoutResult({
+            // serializes with skill events appending to (or removing from) the user's rows
+            lockingService.lockForSkillReporting(userId, projectId)
+            long rebuildStarted = System.currentTimeMillis()
+            userPointsHistoryRepo.deleteByProjectIdAndUserId(projectId, userId)
+            userPointsHistoryRepo.insertFromPerformedSkills(projectId, userId)
+            nativeQueriesRepo.saveUserPointsHistoryBuilt(projectId, userId, invalidationTracker.stamp(rebuildStarted, clockSkewToleranceInMillis))
+        })
+        log.debug("Rebuilt points history for user [{}] and project [{}]", userId, projectId)
+    }
+}
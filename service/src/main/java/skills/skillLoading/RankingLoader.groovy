@@ -28,6 +28,9 @@ import skills.controller.exceptions.ErrorCode
 import skills.controller.exceptions.SkillException
 import skills.services.AccessSettingsStorageService
 import skills.services.LevelDefinitionStorageService
+import skills.services.ranking.RankIndex
+import skills.services.ranking.RankIndexService
+import skills.services.ranking.RankingOptOutCache
 import skills.services.settings.SettingsDataAccessor
 import skills.skillLoading.model.*
 import skills.storage.accessors.ProjDefAccessor
@@ -71,6 +74,12 @@ class RankingLoader {
     @Autowired
     AccessSettingsStorageService accessSettingsStorageService
 
+    @Autowired
+    RankIndexService rankIndexService
+
+    @Autowired
+    RankingOptOutCache rankingOptOutCache
+
     SkillsRanking getUserSkillsRanking(String projectId, String userId, String subjectId = null) {
         Integer points = subjectId ?
                 userPointsRepository.findPointsByProjectIdAndUserIdAndSkillId(projectId, userId, subjectId) :
@@ -91,8 +100,11 @@ class RankingLoader {
         LocalDateTime userCreatedDate = userAttrs.created
         OptOutInfo optOutInfo = getOptOutInfo(userId, projectId)
 
+        RankIndex rankIndex = rankIndexService.getIndex(projectId, subjectId)
         List<RankedUserRes> res
-        if (type == LeaderboardRes.Type.tenAroundMe) {
+        if (rankIndex) {
+            res = getLeaderboardFromIndex(rankIndex, projectId, userAttrs, type, optOutInfo)
+        } else if (type == LeaderboardRes.Type.tenAroundMe) {
             if (optOutInfo.isOptOut()) {
                 throw new SkillException("Leaderboard type of [${LeaderboardRes.Type.tenAroundMe}] is not supported for opted-out users. Requested user is [${userId}]", projectId)
             }
@@ -130,6 +142,88 @@ class RankingLoader {
         return new LeaderboardRes(rankedUsers: res, availablePoints: getAvailablePoints(projectId, subjectId), optedOut: optOutInfo.isPersonalOptOut())
     }
 
+    @Profile
+    private List<RankedUserRes> getLeaderboardFromIndex(RankIndex rankIndex, String projectId, UserAttrs userAttrs, LeaderboardRes.Type type, OptOutInfo optOutInfo) {
+        List<RankedUserRes> res
+        int myPoints = rankIndex.get(userAttrs.userId)?.points ?: 0
+        if (type == LeaderboardRes.Type.tenAroundMe) {
+            if (optOutInfo.isOptOut()) {
+                throw new SkillException("Leaderboard type of [${LeaderboardRes.Type.tenAroundMe}] is not supported for opted-out users. Requested user is [${userAttrs.userId}]", projectId)
+            }
+            long myFirstSeen = RankIndexService.toMillis(userAttrs.created)
+            int numWithHigherScore = rankIndex.countAhead(myPoints, myFirstSeen)
+            int rank = numWithHigherScore + 1
+            if (rank <= 5) {
+                res = getTop10UsersFromIndex(rankIndex, userAttrs, optOutInfo, myPoints)
+            } else {
+                List<RankIndex.Entry> above = rankIndex.getRange(numWithHigherScore - 5, 5)
+                List<RankIndex.Entry> below = rankIndex.getRange(rankIndex.countAhead(myPoints, myFirstSeen + 1), 5)
+                Map<String, UserAttrs> userAttrsByUserId = loadUserAttrs(above + below)
+
+                res = []
+                res.addAll(convertToRankedUserRes(above, userAttrsByUserId, rank - 5, userAttrs.userId))
+                res.add(createRankedUserForThisUser(rank, userAttrs, myPoints))
+                res.addAll(convertToRankedUserRes(below, userAttrsByUserId, rank + 1, userAttrs.userId))
+            }
+        } else {
+            res = getTop10UsersFromIndex(rankIndex, userAttrs, optOutInfo, myPoints)
+        }
+        return res
+    }
+
+    private List<RankedUserRes> getTop10UsersFromIndex(RankIndex rankIndex, UserAttrs userAttrs, OptOutInfo optOut, int myPoints) {
+        int size = 10
+        Set<String> excludedIds = getExcludedFromRanking(optOut)
+        List<RankIndex.Entry> top = []
+        rankIndex.eachInRankOrder { RankIndex.Entry entry ->
+            if (!excludedIds.contains(entry.userId)) {
+                top.add(entry)
+            }
+            return top.size() < size
+        }
+        List<RankedUserRes> res = convertToRankedUserRes(top, loadUserAttrs(top), 1, userAttrs.userId)
+
+        // if user is NOT in the top 10 then artificially add the user on the bottom
+        if (!optOut.isPersonalOptOut() && res.size() > 0 && res.size() < 10 && !res.find { it.isItMe }) {
+            res.add(createRankedUserForThisUser(res.size() + 1, userAttrs, myPoints))
+        }
+        return res
+    }
+
+    private Map<String, UserAttrs> loadUserAttrs(List<RankIndex.Entry> entries) {
+        if (!entries) {
+            return [:]
+        }
+        return userAttrsRepo.findAllByUserIdIn(entries.collect { it.userId }).collectEntries { [it.userId, it] }
+    }
+
+    private List<RankedUserRes> convertToRankedUserRes(List<RankIndex.Entry> entries, Map<String, UserAttrs> userAttrsByUserId, int startRank, String userId) {
+        int count = startRank
+        return entries.collect { RankIndex.Entry entry ->
+            UserAttrs attrs = userAttrsByUserId.get(entry.userId)
+            new RankedUserRes(
+                    rank: count++,
+                    userId: attrs?.userIdForDisplay,
+                    firstName: attrs?.firstName,
+                    lastName: attrs?.lastName,
+                    nickname: attrs?.nickname,
+                    points: entry.points,
+                    userFirstSeenTimestamp: entry.firstSeen,
+                    isItMe: entry.userId == userId,
+            )
+        }
+    }
+
+    /**
+     * opted-out admins and users that personally opted out are not ranked
+     */
+    @Profile
+    private Set<String> getExcludedFromRanking(OptOutInfo optOut) {
+        Set<String> res = new HashSet<>(rankingOptOutCache.getOptedOutUserIds())
+        res.addAll(optOut.admins)
+        return res
+    }
+
     private RankedUserRes createRankedUserForThisUser(int rank, UserAttrs userAttrs, int myPoints) {
         new RankedUserRes(rank: rank, userId: userAttrs.userIdForDisplay, firstName: userAttrs.firstName, lastName: userAttrs.lastName,
                 nickname: userAttrs.nickname, isItMe: true, points: myPoints, userFirstSeenTimestamp: userAttrs.created.toInstant(ZoneOffset.UTC).toEpochMilli())
@@ -185,13 +279,19 @@ class RankingLoader {
 
     @Profile
     private SkillsRanking doGetUserSkillsRanking(String userId, String projectId, Integer points, String subjectId = null) {
+        RankIndex rankIndex = rankIndexService.getIndex(projectId, subjectId)
         // always calculate total number of users
-        int numUsers = findNumberOfUsers(projectId, subjectId) as int
+        int numUsers = rankIndex ? rankIndex.size() : findNumberOfUsers(projectId, subjectId) as int
 
         OptOutInfo optOut = getOptOutInfo(userId, projectId)
 
         SkillsRanking ranking
-        if (points) {
+        if (points && rankIndex) {
+            Set<String> excludedIds = getExcludedFromRanking(optOut)
+            int numExcludedWithMorePoints = excludedIds.count { String excludedId -> rankIndex.get(excludedId)?.points > points } as int
+            int position = rankIndex.countWithMorePoints(points) - numExcludedWithMorePoints + 1
+            ranking = new SkillsRanking(numUsers: numUsers, position: position, optedOut: optOut.isPersonalOptOut())
+        } else if (points) {
             List<String> excludedIds = optOut.admins ?: ['$%^&*']
             int numUsersWithMorePoints = calculateNumberOfUsersWithGreaterPoints(subjectId, projectId, points, excludedIds)
             int position = numUsersWithMorePoints + 1
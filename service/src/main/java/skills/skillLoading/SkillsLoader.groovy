@@ -129,6 +129,9 @@ class SkillsLoader {
     @Autowired
     SkillsLoader skillsLoader
 
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
     @Autowired
     GlobalBadgesService globalBadgesService
 
@@ -248,6 +251,14 @@ class SkillsLoader {
     @Profile
     @Transactional(readOnly = true)
     OverallSkillSummary loadOverallSummary(String projectId, String userId, Integer version = -1) {
+        return userProjectSummaryLoader.load(projectId, userId, version, { computeOverallSummary(projectId, userId, version) })
+    }
+
+    /**
+     * Computes the summary from scratch, {@link #loadOverallSummary} serves it from {@link UserProjectSummaryLoader}
+     */
+    @Profile
+    OverallSkillSummary computeOverallSummary(String projectId, String userId, Integer version) {
         ProjDef projDef = getProjDef(userId, projectId)
         List<SkillSubjectSummary> subjects = loadSubjectsSummaries(projDef, userId, version)
 
@@ -275,19 +286,13 @@ class SkillsLoader {
         }
 
         //these probably need to exclude badges where enabled = FALSE
-        int numBadgesAchieved = achievedLevelRepository.countAchievedForUser(userId, projDef.projectId, SkillDef.ContainerType.Badge)
+        int numBadgesAchieved = countBadgesAchieved(projDef, userId)
         int numTotalBadges = skillDefRepo.countByProjectIdAndTypeWhereEnabled(projDef.projectId, SkillDef.ContainerType.Badge)
 
         // add in global badge counts
-        numBadgesAchieved += achievedLevelRepository.countAchievedGlobalBadgeForUserIntersectingProjectId(userId, projDef.projectId)
         numTotalBadges += skillDefRepo.countGlobalBadgesIntersectingWithProjectIdWhereEnabled(projDef.projectId)
 
-        SettingsResult showDescSetting = settingsService.getProjectSetting(projDef.projectId, Settings.SHOW_PROJECT_DESCRIPTION_EVERYWHERE.settingName)
-        String projectDescription
-        if (showDescSetting?.value?.equalsIgnoreCase(Boolean.TRUE.toString())) {
-            String projDefString = projDefWithDescriptionRepo.getDescriptionByProjectId(projDef.projectId)
-            projectDescription = projDefString ? InputSanitizer.unsanitizeForMarkdown(projDefString) : null
-        }
+        UserProjectSummaryLoader.ProjectMetadata projectMetadata = userProjectSummaryLoader.getProjectMetadata(projDef.projectId)
 
         OverallSkillSummary res = new OverallSkillSummary(
                 projectId: projDef.projectId,
@@ -301,12 +306,53 @@ class SkillsLoader {
                 levelTotalPoints: levelTotalPoints,
                 subjects: subjects,
                 badges: new OverallSkillSummary.BadgeStats(numTotalBadges: numTotalBadges, numBadgesCompleted: numBadgesAchieved, enabled: numTotalBadges > 0),
-                projectDescription: projectDescription
+                projectDescription: projectMetadata?.projectDescription
         )
 
         return res
     }
 
+    /**
+     * Applies the user's new subject points to a summary computed by {@link #computeOverallSummary}: the project's
+     * points and levels, the subjects' levels and the number of completed badges are re-derived, nothing else in the
+     * summary depends on the user's points
+     *
+     * @param pointsBySubjectId user's current points of the subjects that changed
+     * @param todaysPointsToAdd added to today's points of the subjects that changed
+     */
+    @Profile
+    void applyPointsToOverallSummary(OverallSkillSummary summary, String userId, Map<String, Integer> pointsBySubjectId, int todaysPointsToAdd) {
+        ProjDef projDef = getProjDef(userId, summary.projectId)
+        summary.subjects?.each { SkillSubjectSummary subjectSummary ->
+            if (pointsBySubjectId.containsKey(subjectSummary.subjectId)) {
+                SkillDef subjectDefinition = skillDefRepo.findByProjectIdAndSkillIdAndType(projDef.projectId, subjectSummary.subjectId, SkillDef.ContainerType.Subject)
+                int points = pointsBySubjectId.get(subjectSummary.subjectId) ?: 0
+                LevelInfo levelInfo = getSubjectLevelInfo(projDef, userId, subjectDefinition, points)
+                subjectSummary.points = points
+                subjectSummary.todaysPoints += todaysPointsToAdd
+                subjectSummary.skillsLevel = levelInfo.level
+                subjectSummary.levelPoints = levelInfo.currentPoints
+                subjectSummary.levelTotalPoints = levelInfo.nextLevelPoints
+            }
+        }
+
+        if (summary.subjects) {
+            summary.points = (int) summary.subjects.collect({ it.points }).sum()
+            summary.todaysPoints = (int) summary.subjects.collect({ it.todaysPoints }).sum()
+            LevelInfo levelInfo = getRealLevelInfo(projDef, userId, summary.points, summary.totalPoints)
+            summary.skillsLevel = summary.totalPoints < minimumProjectPoints ? 0 : levelInfo.level
+            summary.levelPoints = levelInfo.currentPoints
+            summary.levelTotalPoints = levelInfo.nextLevelPoints
+        }
+        summary.badges.numBadgesCompleted = countBadgesAchieved(projDef, userId)
+    }
+
+    @Profile
+    private int countBadgesAchieved(ProjDef projDef, String userId) {
+        return achievedLevelRepository.countAchievedForUser(userId, projDef.projectId, SkillDef.ContainerType.Badge) +
+                achievedLevelRepository.countAchievedGlobalBadgeForUserIntersectingProjectId(userId, projDef.projectId)
+    }
+
     @Profile
     private LevelInfo getRealLevelInfo(ProjDef projDef, String userId, Integer points, Integer totalPoints) {
         LevelInfo levelInfo = levelDefService.getOverallLevelInfo(projDef, points)
@@ -783,17 +829,7 @@ class SkillsLoader {
         points = points ?: 0
         todaysPoints = todaysPoints ?: 0
 
-        LevelInfo levelInfo = levelDefService.getLevelInfo(subjectDefinition, points)
-
-        List<UserAchievement> achievedLevels = locateAchievedLevels(userId, projDef, subjectDefinition)
-        if (achievedLevels) {
-            achievedLevels = achievedLevels.sort({ it.created })
-            levelInfo = updateLevelBasedOnLastAchieved(projDef, points, achievedLevels?.last(), levelInfo, subjectDefinition)
-        }
-
-        if(subjectDefinition.totalPoints < minimumSubjectPoints){
-            levelInfo.level = 0
-        }
+        LevelInfo levelInfo = getSubjectLevelInfo(projDef, userId, subjectDefinition, points)
 
         String helpUrl = null
         if(subjectDefinition instanceof SkillDefWithExtra) {
@@ -838,6 +874,22 @@ class SkillsLoader {
         achievedLevelRepository.findAllByUserIdAndProjectIdAndSkillId(userId, projDef.projectId, subjectDefinition.skillId)
     }
 
+    @Profile
+    private LevelInfo getSubjectLevelInfo(ProjDef projDef, String userId, SkillDefParent subjectDefinition, int points) {
+        LevelInfo levelInfo = levelDefService.getLevelInfo(subjectDefinition, points)
+
+        List<UserAchievement> achievedLevels = locateAchievedLevels(userId, projDef, subjectDefinition)
+        if (achievedLevels) {
+            achievedLevels = achievedLevels.sort({ it.created })
+            levelInfo = updateLevelBasedOnLastAchieved(projDef, points, achievedLevels?.last(), levelInfo, subjectDefinition)
+        }
+
+        if(subjectDefinition.totalPoints < minimumSubjectPoints){
+            levelInfo.level = 0
+        }
+        return levelInfo
+    }
+
     @Profile
     private Integer calculateTodayPoints(String userId, SkillDefParent subjectDefinition) {
         Integer res = userPointsRepo.getParentsPointsForAGivenDay(userId, subjectDefinition.id, new Date().clearTime())
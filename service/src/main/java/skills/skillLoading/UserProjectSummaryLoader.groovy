@@ -0,0 +1,447 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.skillLoading
+
+import callStack.profiler.Profile
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import skills.PublicProps
+import skills.controller.result.model.SettingsResult
+import skills.services.caching.CacheInvalidationService
+import skills.services.caching.InvalidatableCache
+import skills.services.caching.ProjectInvalidationTracker
+import skills.services.events.SkillDefinitionSnapshotCache
+import skills.services.ranking.RankIndexService
+import skills.services.settings.Settings
+import skills.services.settings.SettingsService
+import skills.skillLoading.model.OverallSkillSummary
+import skills.storage.model.ProjDef
+import skills.storage.model.UserProjectSummary
+import skills.storage.repos.CacheInvalidationRepo
+import skills.storage.repos.ProjDefRepo
+import skills.storage.repos.ProjDefWithDescriptionRepo
+import skills.storage.repos.UserProjectSummaryRepo
+import skills.storage.repos.nativeSql.NativeQueriesRepo
+import skills.utils.InputSanitizer
+
+import javax.annotation.PostConstruct
+import java.time.Duration
+import java.time.LocalDate
+import java.time.ZoneId
+
+/**
+ * Serves {@link OverallSkillSummary} (client display's project summary) from a materialized per user, project and
+ * version row (user_project_summary) plus cached project-level metadata (name and description).
+ *
+ * Rows are written by the skill reporting path only, reads never write: when a reported skill event changes the user's
+ * points (see {@link #pointsChanged}) the user's rows for the project are updated with the new points right before the
+ * reporting transaction commits; rows that are no longer valid (or missing) are re-computed within that transaction.
+ * A row is no longer valid when:
+ *  - the user's data changed through anything other than a reported skill event - see {@link #userChanged(String)},
+ *    recorded in user_summary_invalidation as part of the same transaction and checked by the same query that loads the row
+ *  - the project's definitions, settings or points changed after the row was computed - project invalidations are
+ *    distributed through {@link CacheInvalidationService} (including skill definition and rank index invalidations)
+ * Rows last updated on a previous day are served with no points for today.
+ *
+ * Modes (skills.config.userProjectSummary.mode):
+ *  - enabled: serve valid rows
+ *  - verify: always compute, compare against the valid row (if any) and report mismatches
+ *  - disabled: always compute, nothing is stored
+ *
+ * The rows' update times and the persisted invalidations are also exposed as a per user and project data version
+ * (see {@link #getDataVersion}).
+ */
+@Component
+@Slf4j
+@CompileStatic
+class UserProjectSummaryLoader implements InvalidatableCache {
+
+    static final String CACHE_NAME = 'userProjectSummary'
+
+    private static final String PENDING_CHANGES_KEY = UserProjectSummaryLoader.class.name + '.pendingChanges'
+
+    private static final List<String> PROJECT_CACHE_NAMES = [CACHE_NAME, SkillDefinitionSnapshotCache.CACHE_NAME, RankIndexService.CACHE_NAME]
+
+    static enum Mode {
+        enabled, verify, disabled
+    }
+
+    static class PendingPoints {
+        String userId
+        String projectId
+        // latest points of the subjects that changed within the transaction
+        Map<String, Integer> pointsBySubjectId = [:]
+        int todaysPointsToAdd = 0
+        boolean computeIfMissing = false
+    }
+
+    static class PendingChanges {
+        Set<String> invalidatedUsers = new LinkedHashSet<String>()
+        Map<String, PendingPoints> points = new LinkedHashMap<String, PendingPoints>()
+    }
+
+    static class ProjectMetadata {
+        String projectId
+        String projectName
+        String projectDescription
+    }
+
+    @Value('#{"${skills.config.userProjectSummary.mode:enabled}"}')
+    Mode mode
+
+    // see ProjectInvalidationTracker
+    @Value('#{"${skills.config.userProjectSummary.clockSkewToleranceInMillis:1000}"}')
+    Long clockSkewToleranceInMillis
+
+    @Value('#{"${skills.config.userProjectSummary.projectMetadata.maxNumProjects:2000}"}')
+    Integer maxNumProjects
+
+    @Value('#{"${skills.config.userProjectSummary.projectMetadata.expireAfterWrite:PT30M}"}')
+    String expireAfterWrite
+
+    @Autowired
+    UserProjectSummaryRepo userProjectSummaryRepo
+
+    @Autowired
+    NativeQueriesRepo nativeQueriesRepo
+
+    @Autowired
+    ProjDefRepo projDefRepo
+
+    @Autowired
+    ProjDefWithDescriptionRepo projDefWithDescriptionRepo
+
+    @Autowired
+    SettingsService settingsService
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    @Autowired
+    CacheInvalidationRepo cacheInvalidationRepo
+
+    @Autowired
+    ObjectMapper objectMapper
+
+    @Autowired
+    SkillsLoader skillsLoader
+
+    @Autowired
+    PublicProps publicProps
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    private Cache<String, ProjectMetadata> projectMetadata
+    private ProjectInvalidationTracker invalidationTracker
+
+    private Counter hits
+    private Counter misses
+    private Counter mismatches
+
+    @PostConstruct
+    void init() {
+        projectMetadata = Caffeine.newBuilder()
+                .maximumSize(maxNumProjects)
+                .expireAfterWrite(Duration.parse(expireAfterWrite))
+                .build()
+
+        invalidationTracker = new ProjectInvalidationTracker()
+        invalidationTracker.track(this, [SkillDefinitionSnapshotCache.CACHE_NAME, RankIndexService.CACHE_NAME], cacheInvalidationService, cacheInvalidationRepo)
+        cacheInvalidationService.registerVersioned(PROJECT_CACHE_NAMES)
+
+        hits = meterRegistry.counter('skills.userProjectSummary', 'result', 'hit')
+        misses = meterRegistry.counter('skills.userProjectSummary', 'result', 'miss')
+        mismatches = meterRegistry.counter('skills.userProjectSummary', 'result', 'mismatch')
+        log.info("User project summary: mode=[{}]", mode)
+    }
+
+    @Override
+    String getCacheName() {
+        return CACHE_NAME
+    }
+
+    /**
+     * @param computeSummary computes the summary from scratch when there is no valid row, the result is not stored
+     */
+    @Profile
+    OverallSkillSummary load(String projectId, String userId, int version, Closure<OverallSkillSummary> computeSummary) {
+        if (mode == Mode.disabled) {
+            return computeSummary.call()
+        }
+        ProjectMetadata metadata = getProjectMetadata(projectId)
+        if (metadata == null) {
+            // let the computation report the missing project
+            return computeSummary.call()
+        }
+
+        UserProjectSummary existing = userProjectSummaryRepo.findValidSummary(userId, metadata.projectId, version)
+        OverallSkillSummary stored = existing && isCurrent(existing) ? deserialize(existing) : null
+        if (stored && !isUpdatedToday(existing)) {
+            resetTodaysPoints(stored)
+        }
+        if (stored && mode == Mode.enabled) {
+            hits.increment()
+            stored.projectName = metadata.projectName
+            stored.projectDescription = metadata.projectDescription
+            return stored
+        }
+
+        misses.increment()
+        OverallSkillSummary summary = computeSummary.call()
+        if (stored && serialize(stored) != serialize(summary)) {
+            mismatches.increment()
+            log.warn("Materialized summary for user [{}], project [{}] and version [{}] computed on [{}] and updated on [{}] does not match:\nstored:   {}\ncomputed: {}",
+                    userId, metadata.projectId, version, existing.computed, existing.updated, serialize(stored), serialize(summary))
+        }
+        return summary
+    }
+
+    /**
+     * Must be called within the skill reporting transaction, while the user is locked, once the user's points were saved;
+     * the user's rows for the project are updated with the provided points right before the transaction commits.
+     *
+     * @param pointsBySubjectId user's current points of the subjects (and project - null key) that changed
+     * @param todaysPointsToAdd points earned by the event for today, 0 if the event was performed on a different day
+     * @param computeIfMissing whether to compute rows that are missing or no longer valid, otherwise the user's
+     *        summaries are invalidated (bulk reporting)
+     */
+    void pointsChanged(String userId, String projectId, Map<String, Integer> pointsBySubjectId, int todaysPointsToAdd, boolean computeIfMissing) {
+        if (mode == Mode.disabled || !userId || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            userChanged(userId)
+            return
+        }
+        Map<String, PendingPoints> pendingPoints = getPendingChangesForCurrentTransaction().points
+        String key = "${userId}|${projectId}".toString()
+        PendingPoints pending = pendingPoints.get(key)
+        if (pending == null) {
+            pending = new PendingPoints(userId: userId, projectId: projectId)
+            pendingPoints.put(key, pending)
+        }
+        pointsBySubjectId.each { String subjectId, Integer points ->
+            if (subjectId != null) {
+                pending.pointsBySubjectId.put(subjectId, points)
+            }
+        }
+        pending.todaysPointsToAdd += todaysPointsToAdd
+        pending.computeIfMissing = pending.computeIfMissing || computeIfMissing
+    }
+
+    /**
+     * Must be called whenever the user's points, achievements or events change outside of reported skill events
+     * (see {@link #pointsChanged}) and bulk, project-wide operations; invalidates all of the user's summaries when the
+     * current transaction commits
+     */
+    void userChanged(String userId) {
+        if (mode == Mode.disabled || !userId) {
+            return
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            getPendingChangesForCurrentTransaction().invalidatedUsers.add(userId)
+        } else {
+            nativeQueriesRepo.invalidateUserSummaries(userId, new Date())
+        }
+    }
+
+    /**
+     * Must be called when data that summaries depend on changes for the whole project (or all projects if null)
+     * and is not already covered by skill definition or rank index invalidations
+     */
+    void projectChanged(String projectId) {
+        cacheInvalidationService.invalidate(CACHE_NAME, projectId)
+    }
+
+    /**
+     * Cheap token that changes whenever the user's data (see {@link #pointsChanged} and {@link #userChanged(String)})
+     * or the project's definitions, settings or points change; used to tag client display responses (HTTP ETag).
+     * Derived from persisted state only (the user's rows and invalidation stamp and the project's latest published
+     * invalidation) so every node yields the same token.
+     *
+     * @return null if changes are not tracked (disabled mode)
+     */
+    String getDataVersion(String projectId, String userId) {
+        if (mode == Mode.disabled) {
+            return null
+        }
+        Date userInvalidated = userProjectSummaryRepo.findUserInvalidated(userId)
+        Date summaryUpdated = userProjectSummaryRepo.findLastUpdated(userId, projectId)
+        Date userChanged = [userInvalidated, summaryUpdated].findAll().max()
+        long projectVersion = cacheInvalidationService.getVersion(PROJECT_CACHE_NAMES, projectId)
+        // today's points can only be earned on a day the user's data changed and drop to zero once that day is over
+        boolean changedToday = userChanged && toLocalDate(userChanged) == LocalDate.now()
+        return "${userInvalidated ? userInvalidated.time : 0}-${summaryUpdated ? summaryUpdated.time : 0}-${projectVersion}-${changedToday ? 'today' : 'past'}".toString()
+    }
+
+    @Override
+    void invalidateLocally(String projectId) {
+        invalidationTracker.invalidated(projectId)
+        if (projectId == null) {
+            projectMetadata.invalidateAll()
+        } else {
+            projectMetadata.invalidate(projectId)
+        }
+    }
+
+    /**
+     * @return null if the project does not exist
+     */
+    ProjectMetadata getProjectMetadata(String projectId) {
+        if (mode == Mode.disabled) {
+            return loadProjectMetadata(projectId)
+        }
+        ProjectMetadata metadata = projectMetadata.getIfPresent(projectId)
+        if (metadata == null) {
+            long loadStarted = System.currentTimeMillis()
+            metadata = loadProjectMetadata(projectId)
+            if (metadata != null && loadStarted > invalidationTracker.getLastInvalidated(projectId)) {
+                projectMetadata.put(projectId, metadata)
+            }
+        }
+        return metadata
+    }
+
+    private ProjectMetadata loadProjectMetadata(String projectId) {
+        ProjDef projDef = projDefRepo.findByProjectId(projectId)
+        if (!projDef) {
+            return null
+        }
+        String projectDescription = null
+        SettingsResult showDescSetting = settingsService.getProjectSetting(projDef.projectId, Settings.SHOW_PROJECT_DESCRIPTION_EVERYWHERE.settingName)
+        if (showDescSetting?.value?.equalsIgnoreCase(Boolean.TRUE.toString())) {
+            String description = projDefWithDescriptionRepo.getDescriptionByProjectId(projDef.projectId)
+            projectDescription = description ? InputSanitizer.unsanitizeForMarkdown(description) : null
+        }
+        return new ProjectMetadata(projectId: projDef.projectId, projectName: InputSanitizer.unsanitizeName(projDef.name), projectDescription: projectDescription)
+    }
+
+    private boolean isCurrent(UserProjectSummary summary) {
+        return invalidationTracker.isCurrent(summary.projectId, summary.computed)
+    }
+
+    private static boolean isUpdatedToday(UserProjectSummary summary) {
+        return toLocalDate(summary.updated ?: summary.computed) == LocalDate.now()
+    }
+
+    private static void resetTodaysPoints(OverallSkillSummary summary) {
+        summary.todaysPoints = 0
+        summary.subjects?.each { it.todaysPoints = 0 }
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate()
+    }
+
+    @Profile
+    private void applyPendingPoints(PendingPoints pending, Date now) {
+        List<UserProjectSummary> rows = userProjectSummaryRepo.findAllByUserIdAndProjectId(pending.userId, pending.projectId)
+        Date userInvalidated = userProjectSummaryRepo.findUserInvalidated(pending.userId)
+
+        boolean updated = false
+        rows.each { UserProjectSummary row ->
+            boolean valid = isCurrent(row) && (userInvalidated == null || userInvalidated.before(row.computed))
+            OverallSkillSummary summary = valid ? deserialize(row) : null
+            if (summary != null) {
+                if (!isUpdatedToday(row)) {
+                    resetTodaysPoints(summary)
+                }
+                skillsLoader.applyPointsToOverallSummary(summary, pending.userId, pending.pointsBySubjectId, pending.todaysPointsToAdd)
+                row.summary = serialize(summary)
+                row.updated = now
+                userProjectSummaryRepo.save(row)
+                updated = true
+            } else if (pending.computeIfMissing) {
+                compute(pending.userId, pending.projectId, row.version, now)
+                updated = true
+            }
+        }
+        if (!rows && pending.computeIfMissing) {
+            compute(pending.userId, pending.projectId, publicProps.getInt(PublicProps.UiProp.maxSkillVersion), now)
+            updated = true
+        }
+        if (!updated) {
+            // the user's data version must still change
+            nativeQueriesRepo.invalidateUserSummaries(pending.userId, now)
+        }
+    }
+
+    private void compute(String userId, String projectId, int version, Date now) {
+        long computeStarted = System.currentTimeMillis()
+        OverallSkillSummary summary = skillsLoader.computeOverallSummary(projectId, userId, version)
+        nativeQueriesRepo.saveUserProjectSummary(userId, projectId, version, serialize(summary), invalidationTracker.stamp(computeStarted, clockSkewToleranceInMillis), now)
+    }
+
+    private String serialize(OverallSkillSummary summary) {
+        // project-level metadata is applied on read
+        String projectName = summary.projectName
+        String projectDescription = summary.projectDescription
+        summary.projectName = null
+        summary.projectDescription = null
+        try {
+            return objectMapper.writeValueAsString(summary)
+        } finally {
+            summary.projectName = projectName
+            summary.projectDescription = projectDescription
+        }
+    }
+
+    private OverallSkillSummary deserialize(UserProjectSummary summary) {
+        try {
+            return objectMapper.readValue(summary.summary, OverallSkillSummary)
+        } catch (Exception e) {
+            log.warn("Failed to read stored summary [${summary}], it will be re-computed", e)
+            return null
+        }
+    }
+
+    private PendingChanges getPendingChangesForCurrentTransaction() {
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(PENDING_CHANGES_KEY)
+        if (pending == null) {
+            pending = new PendingChanges()
+            TransactionSynchronizationManager.bindResource(PENDING_CHANGES_KEY, pending)
+            final PendingChanges toApply = pending
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                void beforeCommit(boolean readOnly) {
+                    // stamped as late as possible so that summaries computed while this transaction was running are rejected
+                    Date now = new Date()
+                    toApply.points.values().each { PendingPoints pendingPoints ->
+                        // users invalidated within the same transaction are re-computed on their next reported event
+                        if (!toApply.invalidatedUsers.contains(pendingPoints.userId)) {
+                            applyPendingPoints(pendingPoints, now)
+                        }
+                    }
+                    toApply.invalidatedUsers.each { nativeQueriesRepo.invalidateUserSummaries(it, now) }
+                }
+
+                @Override
+                void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_CHANGES_KEY)
+                }
+            })
+        }
+        return pending
+    }
+}
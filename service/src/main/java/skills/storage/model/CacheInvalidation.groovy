@@ -0,0 +1,45 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.model
+
+import groovy.transform.ToString
+import org.springframework.data.annotation.CreatedDate
+import org.springframework.data.jpa.domain.support.AuditingEntityListener
+
+import javax.persistence.*
+
+/**
+ * Append-only log of cache invalidations, polled by every node in the cluster
+ */
+@Entity
+@Table(name = 'cache_invalidation')
+@ToString(includeNames = true)
+@EntityListeners(AuditingEntityListener)
+class CacheInvalidation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id
+
+    String cacheName
+
+    // null invalidates all of the entries of the cache
+    String cacheKey
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @CreatedDate
+    Date created
+}
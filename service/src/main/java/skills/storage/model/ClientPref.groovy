@@ -19,13 +19,14 @@ import groovy.transform.ToString
 import org.springframework.data.annotation.CreatedDate
 import org.springframework.data.annotation.LastModifiedDate
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.services.events.UserDataChangeListener
 
 import javax.persistence.*
 
 @Entity
 @Table(name = 'client_preferences')
 @ToString(includeNames = true)
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, UserDataChangeListener])
 class ClientPref {
 
     @Id
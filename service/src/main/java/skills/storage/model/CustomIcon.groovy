@@ -19,6 +19,7 @@ import groovy.transform.ToString
 import org.springframework.data.annotation.CreatedDate
 import org.springframework.data.annotation.LastModifiedDate
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.icons.CustomIconChangeListener
 
 import javax.persistence.*
 
@@ -30,7 +31,7 @@ import javax.persistence.*
 @Entity
 @Table(name='custom_icons')
 @ToString(includeNames = true)
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, CustomIconChangeListener])
 class CustomIcon {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
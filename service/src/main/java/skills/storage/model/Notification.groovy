@@ -60,6 +60,12 @@ class Notification {
     // this will be incremented if notification fails to run
     int failedCount
 
+    // set while a dispatcher is processing this notification; claim expires at claimedUntil
+    String claimedBy
+
+    @Temporal(TemporalType.TIMESTAMP)
+    Date claimedUntil
+
     @Temporal(TemporalType.TIMESTAMP)
     @CreatedDate
     Date created
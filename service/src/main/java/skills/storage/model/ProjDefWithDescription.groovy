@@ -18,12 +18,16 @@ package skills.storage.model
 import groovy.transform.CompileStatic
 import groovy.transform.ToString
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.auth.UserRecordsChangeListener
+import skills.icons.CustomIconChangeListener
+import skills.services.events.SkillDefinitionChangeListener
+import skills.services.settings.SettingRecordsChangeListener
 
 import javax.persistence.*
 
 @Entity
 @Table(name = 'project_definition')
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, SkillDefinitionChangeListener, UserRecordsChangeListener, SettingRecordsChangeListener, CustomIconChangeListener])
 @CompileStatic
 @ToString(includeNames = true)
 class ProjDefWithDescription extends ProjDefParent {
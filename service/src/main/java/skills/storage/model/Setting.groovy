@@ -19,6 +19,7 @@ import groovy.transform.ToString
 import org.springframework.data.annotation.CreatedDate
 import org.springframework.data.annotation.LastModifiedDate
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.services.settings.SettingRecordsChangeListener
 
 import javax.persistence.Column
 import javax.persistence.Entity
@@ -35,7 +36,7 @@ import javax.persistence.TemporalType
 @Entity
 @Table(name = 'settings')
 @ToString(includeNames = true)
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, SettingRecordsChangeListener])
 class Setting {
 
     static enum SettingType { User, Project, Global, UserProject, RootUser }
@@ -18,6 +18,7 @@ package skills.storage.model
 import org.springframework.data.annotation.CreatedDate
 import org.springframework.data.annotation.LastModifiedDate
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.services.events.UserDataChangeListener
 
 import javax.persistence.Entity
 import javax.persistence.EntityListeners
@@ -33,7 +34,7 @@ import javax.persistence.TemporalType
 @Entity
 @Table(name="skill_approval")
 @ToString(includeNames = true)
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, UserDataChangeListener])
 class SkillApproval {
 
     @Id
@@ -17,6 +17,7 @@ package skills.storage.model
 
 import groovy.transform.CompileStatic
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.services.events.SkillDefinitionChangeListener
 
 import javax.persistence.Entity
 import javax.persistence.EntityListeners
@@ -24,7 +25,7 @@ import javax.persistence.Table
 
 @Entity()
 @Table(name = 'skill_definition')
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, SkillDefinitionChangeListener])
 @CompileStatic
 class SkillDef extends SkillDefParent {
     static enum ContainerType {
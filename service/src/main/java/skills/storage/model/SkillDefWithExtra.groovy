@@ -19,12 +19,13 @@ import groovy.transform.CompileStatic
 import org.springframework.data.annotation.CreatedDate
 import org.springframework.data.annotation.LastModifiedDate
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.services.events.SkillDefinitionChangeListener
 
 import javax.persistence.*
 
 @Entity()
 @Table(name='skill_definition')
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, SkillDefinitionChangeListener])
 @CompileStatic
 class SkillDefWithExtra extends SkillDefParent {
 
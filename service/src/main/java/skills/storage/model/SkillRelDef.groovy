@@ -19,13 +19,14 @@ import groovy.transform.ToString
 import org.springframework.data.annotation.CreatedDate
 import org.springframework.data.annotation.LastModifiedDate
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.services.events.SkillDefinitionChangeListener
 
 import javax.persistence.*
 
 @ToString(excludes =['parent', 'child'])
 @Entity()
 @Table(name='skill_relationship_definition')
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, SkillDefinitionChangeListener])
 class SkillRelDef {
 
     enum RelationshipType { RuleSetDefinition, Dependence, BadgeRequirement, Recommendation, SkillsGroupRequirement, GroupSkillToSubject }
@@ -17,13 +17,14 @@ package skills.storage.model
 
 import org.springframework.data.annotation.CreatedDate
 import org.springframework.data.jpa.domain.support.AuditingEntityListener
+import skills.auth.UserRecordsChangeListener
 
 import javax.persistence.*
 import java.time.LocalDateTime
 
 @Entity
 @Table(name = 'user_attrs')
-@EntityListeners(AuditingEntityListener)
+@EntityListeners([AuditingEntityListener, UserRecordsChangeListener])
 class UserAttrs {
 
     @Id
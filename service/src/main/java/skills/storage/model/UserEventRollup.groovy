@@ -0,0 +1,51 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.model
+
+import groovy.transform.ToString
+
+import javax.persistence.*
+
+/**
+ * Pre-aggregated {@link UserEvent}s of a single skill for a single event time and type: the total event count
+ * and a {@link skills.utils.DistinctCountSketch} of the users that performed them
+ */
+@Entity
+@Table(name = 'user_event_rollups')
+@ToString(includeNames = true, excludes = ['usersSketch'])
+class UserEventRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Integer id
+
+    String projectId
+
+    // fk to SkillDef
+    Integer skillRefId
+
+    @Enumerated(EnumType.STRING)
+    EventType eventType
+
+    @Temporal(TemporalType.TIMESTAMP)
+    Date eventTime
+
+    Integer weekNumber
+
+    Long count
+
+    byte[] usersSketch
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.model
+
+import groovy.transform.ToString
+
+import javax.persistence.*
+
+/**
+ * Single row table holding the time before which all {@link UserEvent}s have been rolled up into {@link UserEventRollup}s
+ */
+@Entity
+@Table(name = 'user_event_rollup_state')
+@ToString(includeNames = true)
+class UserEventRollupState {
+
+    static final Integer ID = 1
+
+    @Id
+    Integer id
+
+    @Temporal(TemporalType.TIMESTAMP)
+    Date rolledUpBefore
+}
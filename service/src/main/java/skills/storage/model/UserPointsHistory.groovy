@@ -0,0 +1,45 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.model
+
+import groovy.transform.ToString
+
+import javax.persistence.*
+
+/**
+ * Points a user earned in a subject on a single day (see {@link skills.skillLoading.PointsHistoryLedger}); rows hold
+ * daily deltas so removed events may leave a row with 0 points
+ */
+@Entity
+@Table(name = 'user_points_history')
+@ToString(includeNames = true)
+class UserPointsHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Integer id
+
+    String projectId
+
+    String userId
+
+    String subjectId
+
+    @Temporal(TemporalType.DATE)
+    Date dayPerformed
+
+    int points
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.model
+
+import groovy.transform.ToString
+
+import javax.persistence.*
+
+/**
+ * When a user's {@link UserPointsHistory} rows for a project were last rebuilt from the performed skills
+ */
+@Entity
+@Table(name = 'user_points_history_state')
+@ToString(includeNames = true)
+class UserPointsHistoryState {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Integer id
+
+    String projectId
+
+    String userId
+
+    // when the rebuild started; the rows are only valid if they were rebuilt after the last project-wide change
+    @Temporal(TemporalType.TIMESTAMP)
+    Date built
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.model
+
+import groovy.transform.ToString
+
+import javax.persistence.*
+
+/**
+ * Materialized client-display project summary (see {@link skills.skillLoading.UserProjectSummaryLoader})
+ */
+@Entity
+@Table(name = 'user_project_summary')
+@ToString(includeNames = true, excludes = ['summary'])
+class UserProjectSummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Integer id
+
+    String userId
+
+    String projectId
+
+    int version
+
+    // serialized skills.skillLoading.model.OverallSkillSummary
+    @Lob
+    @Column(columnDefinition = "text")
+    String summary
+
+    // when the computation started; a summary is only valid if it was computed after the last change
+    @Temporal(TemporalType.TIMESTAMP)
+    Date computed
+
+    // when the summary was last computed or updated with the points of reported skill events
+    @Temporal(TemporalType.TIMESTAMP)
+    Date updated
+}
@@ -16,11 +16,13 @@
 package skills.storage.model.auth
 
 import groovy.transform.ToString
+import skills.auth.UserRecordsChangeListener
 
 import javax.persistence.*
 
 @Entity
 @Table(name = 'users')
+@EntityListeners(UserRecordsChangeListener)
 class User implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -17,12 +17,14 @@ package skills.storage.model.auth
 
 import groovy.transform.Canonical
 import groovy.transform.ToString
+import skills.auth.UserRecordsChangeListener
 
 import javax.persistence.*
 
 @ToString
 @Entity
 @Table(name = 'user_roles')
+@EntityListeners(UserRecordsChangeListener)
 @Canonical
 class UserRole implements Serializable {
 
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.repos
+
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.CrudRepository
+import org.springframework.lang.Nullable
+import skills.storage.model.CacheInvalidation
+
+interface CacheInvalidationRepo extends CrudRepository<CacheInvalidation, Long> {
+
+    List<CacheInvalidation> findAllByIdGreaterThanOrderByIdAsc(Long id)
+
+    List<CacheInvalidation> findAllByCacheNameInAndCreatedAfter(Collection<String> cacheNames, Date created)
+
+    @Nullable
+    @Query('''select max(ci.id) from CacheInvalidation ci''')
+    Long findMaxId()
+
+    /**
+     * @return id of the latest invalidation of the key or of all keys (null key) in any of the provided caches
+     */
+    @Nullable
+    @Query('''select max(ci.id) from CacheInvalidation ci where ci.cacheName in ?1 and (ci.cacheKey = ?2 or ci.cacheKey is null)''')
+    Long findMaxIdByCacheNameInForKeyOrAll(Collection<String> cacheNames, String cacheKey)
+
+    @Modifying
+    @Query('''delete from CacheInvalidation ci where ci.created < ?1''')
+    void deleteByCreatedBefore(Date date)
+
+    @Modifying
+    @Query('''delete from CacheInvalidation ci where ci.created < ?1 and ci.cacheName not in ?2''')
+    void deleteByCreatedBeforeAndCacheNameNotIn(Date date, Collection<String> cacheNames)
+
+    /**
+     * keeps the latest invalidation of every key so that versions derived from them never go back
+     */
+    @Modifying
+    @Query('''delete from CacheInvalidation ci where ci.created < ?1 and ci.cacheName in ?2 and ci.id not in (
+                select max(latest.id) from CacheInvalidation latest where latest.cacheName in ?2 group by latest.cacheName, latest.cacheKey)''')
+    void deleteSupersededByCreatedBeforeAndCacheNameIn(Date date, Collection<String> cacheNames)
+}
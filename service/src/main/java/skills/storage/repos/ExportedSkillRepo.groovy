@@ -28,6 +28,10 @@ import skills.storage.model.SkillDefWithExtra
 
 interface ExportedSkillRepo extends PagingAndSortingRepository<ExportedSkill, Integer> {
 
+    @Nullable
+    @Query('''select 'true' from ExportedSkill es where es.skill.id = ?1''')
+    Boolean isSkillRefIdExported(Integer skillRefId)
+
     @Nullable
     @Query('''select 'true' from ExportedSkill es where es.projectId = ?1 and es.skill.skillId = ?2''')
     Boolean doesSkillExistInCatalog(String projectId, String skillId)
@@ -15,8 +15,10 @@
  */
 package skills.storage.repos
 
+import org.springframework.data.jpa.repository.Modifying
 import org.springframework.data.jpa.repository.Query
 import org.springframework.data.repository.CrudRepository
+import org.springframework.data.repository.query.Param
 import skills.storage.model.LevelDef
 import skills.storage.model.SkillDef.ContainerType
 
@@ -41,5 +43,28 @@ interface LevelDefRepo extends CrudRepository<LevelDef, Integer>{
            ''')
     List<SubjectLevelCount> countNumLevelsPerSubject(String projectId)
 
+    @Modifying
+    @Query('''delete from LevelDef ld where ld.projectRefId = ?1''')
+    void deleteAllByProjectRefId(Integer projectRefId)
 
+    @Modifying
+    @Query(value = '''INSERT INTO level_definition (project_ref_id, level, percent, points_from, points_to, icon_class, logical_name)
+        SELECT :toProjRefId, ld.level, ld.percent, ld.points_from, ld.points_to, ld.icon_class, ld.logical_name
+        FROM level_definition ld
+        WHERE ld.project_ref_id = :fromProjRefId''', nativeQuery = true)
+    void copyProjectLevels(@Param('fromProjRefId') Integer fromProjRefId, @Param('toProjRefId') Integer toProjRefId)
+
+    /**
+     * Copies the levels of every subject onto the subject with the same id in toProjectId
+     */
+    @Modifying
+    @Query(value = '''INSERT INTO level_definition (skill_ref_id, level, percent, points_from, points_to, icon_class, logical_name)
+        SELECT toSubject.id, ld.level, ld.percent, ld.points_from, ld.points_to, ld.icon_class, ld.logical_name
+        FROM level_definition ld
+            JOIN skill_definition fromSubject ON fromSubject.id = ld.skill_ref_id
+            JOIN skill_definition toSubject ON toSubject.project_id = :toProjectId AND toSubject.skill_id = fromSubject.skill_id
+        WHERE fromSubject.project_id = :fromProjectId
+          AND fromSubject.type = 'Subject'
+          AND toSubject.type = 'Subject'''', nativeQuery = true)
+    void copySubjectLevels(@Param('fromProjectId') String fromProjectId, @Param('toProjectId') String toProjectId)
 }
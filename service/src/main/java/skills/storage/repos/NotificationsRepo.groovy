@@ -15,17 +15,43 @@
  */
 package skills.storage.repos
 
+import org.springframework.data.domain.Pageable
 import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
 import org.springframework.data.jpa.repository.Query
 import skills.storage.model.Notification
 
-import java.util.stream.Stream
-
 interface NotificationsRepo extends JpaRepository<Notification, Integer> {
 
-    @Query("select n from Notification n where n.failedCount = 0")
-    Stream<Notification> streamNewNotifications();
+    @Query("""select n.id from Notification n
+              where n.failedCount = 0 and
+              n.id > ?1 and
+              (n.claimedUntil is null or n.claimedUntil < ?2)
+              order by n.id asc""")
+    List<Integer> findNewNotificationIdsToClaim(Integer afterId, Date now, Pageable pageable)
+
+    @Query("""select n.id from Notification n
+              where n.failedCount > 0 and
+              n.id > ?1 and
+              (n.claimedUntil is null or n.claimedUntil < ?2)
+              order by n.id asc""")
+    List<Integer> findFailedNotificationIdsToClaim(Integer afterId, Date now, Pageable pageable)
+
+    /**
+     * Only claims notifications that are not claimed by another dispatcher (or whose claim expired),
+     * the number of claimed notifications is returned
+     */
+    @Modifying
+    @Query("""update Notification n set n.claimedBy = ?2, n.claimedUntil = ?3
+              where n.id in ?1 and
+              (n.claimedUntil is null or n.claimedUntil < ?4)""")
+    int claim(List<Integer> ids, String claimedBy, Date claimedUntil, Date now)
+
+    List<Notification> findAllByClaimedBy(String claimedBy)
+
+    @Query("select count(n.id) from Notification n where n.failedCount = 0")
+    long countNewNotifications()
 
-    @Query("select n from Notification n where n.failedCount > 0")
-    Stream<Notification> streamFailedNotifications();
+    @Query("select count(n.id) from Notification n where n.failedCount > 0")
+    long countFailedNotifications()
 }
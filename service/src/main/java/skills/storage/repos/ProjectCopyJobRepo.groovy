@@ -0,0 +1,39 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.repos
+
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.CrudRepository
+import org.springframework.lang.Nullable
+import org.springframework.transaction.annotation.Transactional
+import skills.storage.model.ProjectCopyJob
+
+interface ProjectCopyJobRepo extends CrudRepository<ProjectCopyJob, Integer> {
+
+    @Nullable
+    ProjectCopyJob findByIdAndFromProjectId(Integer id, String fromProjectId)
+
+    /**
+     * Atomically claims a job that has not been started yet by setting its current step
+     * @return 1 if the job was claimed, 0 if it is not RUNNING or was already started
+     */
+    @Transactional
+    @Modifying
+    @Query('''update ProjectCopyJob job set job.currentStep = ?2
+            where job.id = ?1 and job.state = ?3 and job.completedSteps = 0 and job.currentStep is null''')
+    int claim(Integer id, String currentStep, ProjectCopyJob.State runningState)
+}
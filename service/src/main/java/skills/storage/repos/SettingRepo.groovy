@@ -18,6 +18,7 @@ package skills.storage.repos
 import org.springframework.data.jpa.repository.Modifying
 import org.springframework.data.jpa.repository.Query
 import org.springframework.data.repository.CrudRepository
+import org.springframework.data.repository.query.Param
 import org.springframework.lang.Nullable
 import skills.storage.model.Setting
 
@@ -35,6 +36,15 @@ interface SettingRepo extends CrudRepository<Setting, Integer> {
     @Nullable
     List<Setting> findAllByTypeAndProjectId(Setting.SettingType type, String projectId)
 
+    @Nullable
+    List<Setting> findAllByType(Setting.SettingType type)
+
+    @Nullable
+    List<Setting> findAllByTypeAndUserRefId(Setting.SettingType type, @Nullable Integer userRefId)
+
+    @Nullable
+    List<Setting> findAllByTypeAndUserRefIdAndProjectId(Setting.SettingType type, @Nullable Integer userRefId, @Nullable String projectId)
+
     @Nullable
     List<Setting> findAllByTypeAndSettingGroup(Setting.SettingType type, String settingGroup)
 
@@ -55,6 +65,15 @@ interface SettingRepo extends CrudRepository<Setting, Integer> {
                 s.type='User' ''')
     String findUserSettingValueByUserIdAndSettingAndProjectIdIsNull(String userId, String setting)
 
+    @Query('''select u.userId from Setting s, User u
+            where
+                s.userRefId = u.id and
+                s.settingGroup=?1 and
+                s.setting=?2 and
+                s.value=?3 and
+                s.projectId is null''')
+    List<String> findUserIdsByUserSettingGroupAndSettingAndValue(String settingGroup, String setting, String value)
+
     @Nullable
     @Query('''select s.value from Setting s, User u 
             where 
@@ -91,4 +110,21 @@ interface SettingRepo extends CrudRepository<Setting, Integer> {
     @Modifying
     void deleteBySettingAndSettingGroupAndProjectIdAndTypeAndUserRefId(String setting, String settingGroup, String projectId, Setting.SettingType type, Integer userRefId)
 
+    /**
+     * Copies project settings except for the excluded ones and except for the production mode (discoverable
+     * project) setting when it is enabled
+     */
+    @Modifying
+    @Query(value = '''INSERT INTO settings (setting, value, type, project_id, setting_group)
+        SELECT s.setting, s.value, s.type, :toProjectId, s.setting_group
+        FROM settings s
+        WHERE s.type = 'Project'
+          AND s.project_id = :fromProjectId
+          AND s.setting NOT IN (:excludedSettings)
+          AND NOT (s.setting = :productionModeSetting AND s.value = 'true')''', nativeQuery = true)
+    void copyProjectSettings(@Param('fromProjectId') String fromProjectId,
+                             @Param('toProjectId') String toProjectId,
+                             @Param('excludedSettings') List<String> excludedSettings,
+                             @Param('productionModeSetting') String productionModeSetting)
+
 }
@@ -314,6 +314,7 @@ interface SkillDefRepo extends PagingAndSortingRepository<SkillDef, Integer> {
     boolean existsByProjectIdAndNameAndTypeAllIgnoreCase(@Nullable String id, String name, SkillDef.ContainerType type)
     boolean existsByProjectIdAndNameAndTypeInAllIgnoreCase(@Nullable String id, String name, List<SkillDef.ContainerType> types)
 
+    @Nullable
     @Query('SELECT MAX (s.version) from SkillDef s where s.projectId=?1')
     Integer findMaxVersionByProjectId(String projectId)
 
@@ -477,6 +478,25 @@ interface SkillDefRepo extends PagingAndSortingRepository<SkillDef, Integer> {
     @Query('''select s from SkillDef s where s.copiedFrom = ?1''')
     List<SkillDef> findSkillsCopiedFrom(int skillRefId)
 
+    /**
+     * skill ids that user events of the project's enabled skills are recorded against (imported skills record against the original)
+     */
+    @Query('''
+        select distinct case when sd.copiedFrom is not null then sd.copiedFrom else sd.id end from SkillDef sd
+        where sd.projectId = ?1 and sd.type = 'Skill' and sd.enabled = 'true'
+    ''')
+    List<Integer> findEventSkillRefIdsByProjectId(String projectId)
+
+    /**
+     * skill ids that user events of the subject's enabled skills are recorded against (imported skills record against the original)
+     */
+    @Query('''
+        select distinct case when sd.copiedFrom is not null then sd.copiedFrom else sd.id end from SkillDef sd
+        where sd.type = 'Skill' and sd.enabled = 'true' and
+        sd.id in (select rel.child.id from SkillRelDef rel where rel.parent.id = ?1)
+    ''')
+    List<Integer> findEventSkillRefIdsBySubjectRefId(Integer subjectRefId)
+
     @Nullable
     @Query('''
         select s.id as id,
@@ -669,4 +689,86 @@ interface SkillDefRepo extends PagingAndSortingRepository<SkillDef, Integer> {
             join LevelDef ld on ld.skillRefId = sd.id and ld.pointsFrom > sd.totalPoints''')
     List<UnachievableSubjectLevel> findUnachievableSubjectLevels()
 
+    @Nullable
+    List<SkillDef> findAllByProjectIdAndCopiedFromProjectId(String projectId, String copiedFromProjectId)
+
+    /**
+     * Definitions copied by ProjectCopyService: subjects, badges and the enabled skills and groups that were not
+     * imported or reused (skills of a disabled group are not copied either)
+     */
+    @Query(value = '''SELECT s.id
+        FROM skill_definition s
+        WHERE s.project_id = :projectId
+          AND (s.type IN ('Subject', 'Badge')
+            OR (s.type IN ('Skill', 'SkillsGroup')
+              AND s.enabled = 'true'
+              AND s.copied_from_skill_ref IS NULL
+              AND (s.group_id IS NULL OR EXISTS (
+                SELECT 1 FROM skill_definition g
+                WHERE g.project_id = s.project_id
+                  AND g.skill_id = s.group_id
+                  AND g.type = 'SkillsGroup'
+                  AND g.enabled = 'true'))))
+        ORDER BY s.id''', nativeQuery = true)
+    List<Integer> getSkillRefIdsToCopy(@Param('projectId') String projectId)
+
+    /**
+     * Copies the provided definitions under the same skill ids; version is reset and badges are copied disabled
+     */
+    @Modifying
+    @Query(value = '''INSERT INTO skill_definition (project_id, skill_id, proj_ref_id, name, point_increment, point_increment_interval,
+            increment_interval_max_occurrences, total_points, description, help_url, display_order, type, icon_class,
+            start_date, end_date, version, enabled, self_reporting_type, num_skills_required, group_id, justification_required)
+        SELECT :toProjectId, s.skill_id, CASE WHEN s.proj_ref_id IS NULL THEN NULL ELSE :toProjRefId END, s.name, s.point_increment, s.point_increment_interval,
+            s.increment_interval_max_occurrences, s.total_points, s.description, s.help_url, s.display_order, s.type, s.icon_class,
+            s.start_date, s.end_date, 0, CASE WHEN s.type = 'Badge' THEN 'false' ELSE s.enabled END, s.self_reporting_type, s.num_skills_required, s.group_id, s.justification_required
+        FROM skill_definition s
+        WHERE s.id IN (:skillRefIds)''', nativeQuery = true)
+    void copySkillDefs(@Param('toProjectId') String toProjectId, @Param('toProjRefId') Integer toProjRefId, @Param('skillRefIds') List<Integer> skillRefIds)
+
+    /**
+     * Renumbers subjects and badges of the project from 1 based on their current display order
+     */
+    @Modifying
+    @Query(value = '''UPDATE skill_definition SET display_order = (
+            SELECT COUNT(*) FROM skill_definition sibling
+            WHERE sibling.project_id = skill_definition.project_id
+              AND sibling.type = skill_definition.type
+              AND (sibling.display_order < skill_definition.display_order
+                OR (sibling.display_order = skill_definition.display_order AND sibling.id <= skill_definition.id)))
+        WHERE project_id = :projectId
+          AND type IN ('Subject', 'Badge')''', nativeQuery = true)
+    void normalizeSubjectAndBadgeDisplayOrder(@Param('projectId') String projectId)
+
+    /**
+     * Renumbers skills and groups of the project from 1 within their subject or group based on their current display order
+     */
+    @Modifying
+    @Query(value = '''UPDATE skill_definition SET display_order = (
+            SELECT COUNT(*) FROM skill_relationship_definition myRel
+                JOIN skill_relationship_definition siblingRel ON siblingRel.parent_ref_id = myRel.parent_ref_id AND siblingRel.type = myRel.type
+                JOIN skill_definition sibling ON sibling.id = siblingRel.child_ref_id
+            WHERE myRel.child_ref_id = skill_definition.id
+              AND myRel.type IN ('RuleSetDefinition', 'SkillsGroupRequirement')
+              AND (sibling.display_order < skill_definition.display_order
+                OR (sibling.display_order = skill_definition.display_order AND sibling.id <= skill_definition.id)))
+        WHERE project_id = :projectId
+          AND type IN ('Skill', 'SkillsGroup')''', nativeQuery = true)
+    void normalizeSkillDisplayOrder(@Param('projectId') String projectId)
+
+    /**
+     * Enables copied badges whose original is enabled, once the badge has skills
+     */
+    @Modifying
+    @Query(value = '''UPDATE skill_definition SET enabled = 'true'
+        WHERE project_id = :toProjectId
+          AND type = 'Badge'
+          AND skill_id IN (
+            SELECT fromBadge.skill_id FROM skill_definition fromBadge
+            WHERE fromBadge.project_id = :fromProjectId AND fromBadge.type = 'Badge' AND fromBadge.enabled = 'true')
+          AND EXISTS (
+            SELECT 1 FROM skill_relationship_definition rel
+            WHERE rel.parent_ref_id = skill_definition.id AND rel.type = 'BadgeRequirement')''', nativeQuery = true)
+    void enableCopiedBadges(@Param('fromProjectId') String fromProjectId, @Param('toProjectId') String toProjectId)
+
 }
@@ -48,6 +48,10 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
         String getEnabled()
     }
 
+    static interface TinySkillDefParent extends TinySkillDef {
+        Integer getChildId()
+    }
+
     static interface TinyUserPoints {
         Integer getId()
         Integer getSkillRefId()
@@ -59,6 +63,27 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
         Integer getLevel()
     }
 
+    static interface TinyUserPointsWithUserId extends TinyUserPoints {
+        String getUserId()
+    }
+
+    static interface TinyUserAchievementWithUserId extends TinyUserAchievement {
+        String getUserId()
+    }
+
+    static interface TinySkillRelationship {
+        String getSkillId()
+        Integer getChildId()
+        String getChildProjectId()
+        String getChildSkillId()
+    }
+
+    static interface TinyGlobalBadgeRequirement {
+        String getBadgeId()
+        Integer getSkillRefId()
+        String getProjectId()
+    }
+
     @Query('''SELECT
         s.id as id,
         s.skillId as skillId,
@@ -75,6 +100,23 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
             srd.type in ?2''')
     List<TinySkillDef> findTinySkillDefsParentsByChildIdAndTypeIn(Integer childId, List<SkillRelDef.RelationshipType> types)
 
+    @Query('''SELECT
+        srd.child.id as childId,
+        s.id as id,
+        s.skillId as skillId,
+        s.name as name,
+        s.totalPoints as totalPoints,
+        s.type as type,
+        s.pointIncrement as pointIncrement,
+        s.numSkillsRequired as numSkillsRequired,
+        s.enabled as enabled
+        from SkillDef s, SkillRelDef srd
+        where
+            s.id = srd.parent and
+            s.projectId=?1 and
+            srd.type in ?2''')
+    List<TinySkillDefParent> findTinySkillDefParentsByProjectIdAndTypeIn(String projectId, List<SkillRelDef.RelationshipType> types)
+
     @Query('''SELECT
         up.id as id,
         up.skillRefId as skillRefId,
@@ -86,6 +128,18 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
             (up.skillRefId in (?3) or up.skillRefId is null)''')
     List<TinyUserPoints> findTinyUserPointsProjectIdAndUserIdAndSkills(String projectId, String usedId, List<Integer> skillRefIds)
 
+    @Query('''SELECT
+        up.id as id,
+        up.userId as userId,
+        up.skillRefId as skillRefId,
+        up.points as points
+        from UserPoints up
+        where
+            up.projectId=?1 and
+            up.userId in (?2) and
+            (up.skillRefId in (?3) or up.skillRefId is null)''')
+    List<TinyUserPointsWithUserId> findTinyUserPointsProjectIdAndUserIdInAndSkills(String projectId, Collection<String> userIds, List<Integer> skillRefIds)
+
     @Query('''SELECT
         up.id as id,
         up.skillRefId as skillRefId,
@@ -118,6 +172,39 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
     @Nullable
     SkillDefMin findByProjectIdAndSkillIdAndType(String projectId, String skillId, SkillDef.ContainerType type)
 
+    @Query('''SELECT
+        s.id as id,
+        s.projectId as projectId,
+        s.skillId as skillId,
+        s.name as name,
+        s.pointIncrement as pointIncrement,
+        s.pointIncrementInterval as pointIncrementInterval,
+        s.numMaxOccurrencesIncrementInterval as numMaxOccurrencesIncrementInterval,
+        s.totalPoints as totalPoints,
+        s.type as type,
+        s.enabled as enabled,
+        s.selfReportingType as selfReportingType,
+        s.copiedFrom as copiedFrom,
+        s.copiedFromProjectId as copiedFromProjectId,
+        s.readOnly as readOnly,
+        s.groupId as groupId,
+        s.numSkillsRequired as numSkillsRequired
+        from SkillDef s where s.projectId = ?1 and s.type in ?2''')
+    List<SkillDefMin> findAllByProjectIdAndTypeIn(String projectId, List<SkillDef.ContainerType> types)
+
+    @Query('''SELECT
+        s.skillId as skillId,
+        child.id as childId,
+        child.projectId as childProjectId,
+        child.skillId as childSkillId
+        from SkillDef s, SkillRelDef srd, SkillDef child
+        where
+            s.id = srd.parent and
+            child.id = srd.child and
+            s.projectId = ?1 and
+            srd.type = ?2''')
+    List<TinySkillRelationship> findTinySkillRelationshipsByProjectIdAndType(String projectId, SkillRelDef.RelationshipType type)
+
     @Query('''SELECT
         s.id as id,
         s.projectId as projectId,
@@ -210,8 +297,36 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
     @Nullable
     List<SkillDefMin> findGlobalBadgesForProjectIdAndSkillId(String projectId, String skillId)
 
+    @Query('''SELECT
+        badge.id as id,
+        badge.skillId as skillId,
+        badge.name as name,
+        badge.totalPoints as totalPoints,
+        badge.type as type,
+        badge.pointIncrement as pointIncrement,
+        badge.numSkillsRequired as numSkillsRequired,
+        badge.enabled as enabled
+        from SkillDef badge
+        where
+            badge.projectId is null and
+            badge.type = 'GlobalBadge' ''')
+    List<TinySkillDef> findAllGlobalBadges()
+
+    @Query('''SELECT
+        badge.skillId as badgeId,
+        child.id as skillRefId,
+        child.projectId as projectId
+        from SkillDef badge, SkillRelDef srd, SkillDef child
+        where
+            badge.projectId is null and
+            badge.type = 'GlobalBadge' and
+            srd.parent = badge and
+            srd.child = child and
+            srd.type = 'BadgeRequirement' ''')
+    List<TinyGlobalBadgeRequirement> findAllGlobalBadgeSkillRequirements()
+
     @Modifying
-    @Query('''update UserPoints up set up.points = up.points + ?2 where up.id = ?1''')
+    @Query('''update UserPoints up set up.points = up.points + ?2, up.updated = CURRENT_TIMESTAMP where up.id = ?1''')
     void addUserPoints(Integer id, int pointsToAdd)
 
     @Query('''SELECT l from LevelDef l where l.skillRefId = ?1''')
@@ -227,6 +342,19 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
         from LevelDef l where l.skillRefId in (?1) or l.projectRefId = ?2''')
     List<LevelDefInterface> findLevelsBySkillIdsOrByProjectId(List<Integer> skillIds, Integer projectId)
 
+    @Query('''SELECT 
+        l.projectRefId as projectRefId,
+        l.skillRefId as skillRefId,
+        l.level as level,
+        l.percent as percent,
+        l.pointsFrom as pointsFrom,
+        l.pointsTo as pointsTo 
+        from LevelDef l 
+        where 
+            l.projectRefId = ?1 or 
+            l.skillRefId in (select s.id from SkillDef s where s.projectId = ?2)''')
+    List<LevelDefInterface> findAllLevelsByProjectRefIdOrProjectSkills(Integer projectRefId, String projectId)
+
     @Query('''SELECT 
         ua.skillRefId as skillRefId,
         ua.level as level
@@ -237,6 +365,17 @@ interface SkillEventsSupportRepo extends CrudRepository<SkillDef, Long> {
             ua.projectId = ?2 ''')
     List<TinyUserAchievement> findTinyUserAchievementsByUserIdAndProjectIdAndSkillIds(String userId, String projectId, List<Integer> skillIds)
 
+    @Query('''SELECT
+        ua.userId as userId,
+        ua.skillRefId as skillRefId,
+        ua.level as level
+        from UserAchievement ua
+        where
+            ua.userId in (?1) and
+            (ua.skillRefId in (?3) or ua.skillRefId is null) and
+            ua.projectId = ?2 ''')
+    List<TinyUserAchievementWithUserId> findTinyUserAchievementsByUserIdInAndProjectIdAndSkillIds(Collection<String> userIds, String projectId, List<Integer> skillIds)
+
     @Query('''SELECT 
         ua.skillRefId as skillRefId,
         ua.level as level
@@ -15,6 +15,7 @@
  */
 package skills.storage.repos
 
+import org.springframework.data.jpa.repository.Modifying
 import org.springframework.data.jpa.repository.Query
 import org.springframework.data.repository.CrudRepository
 import org.springframework.data.repository.query.Param
@@ -368,4 +369,22 @@ interface SkillRelDefRepo extends CrudRepository<SkillRelDef, Integer> {
         sub.type = 'Subject'
     ''', nativeQuery=true)
     List<SubjectTotalPoints> getSubjectTotalPointsIncPendingFinalization(@Param("projectId") String projectId)
+
+    /**
+     * Copies the relationships of the provided children; both ends are remapped by skill id onto the definitions
+     * already copied into toProjectId, relationships to definitions that were not copied (or to other projects) are skipped
+     */
+    @Modifying
+    @Query(value = '''INSERT INTO skill_relationship_definition (parent_ref_id, child_ref_id, type)
+        SELECT toParent.id, toChild.id, rel.type
+        FROM skill_relationship_definition rel
+            JOIN skill_definition fromParent ON fromParent.id = rel.parent_ref_id
+            JOIN skill_definition fromChild ON fromChild.id = rel.child_ref_id
+            JOIN skill_definition toParent ON toParent.project_id = :toProjectId AND toParent.skill_id = fromParent.skill_id
+            JOIN skill_definition toChild ON toChild.project_id = :toProjectId AND toChild.skill_id = fromChild.skill_id
+        WHERE rel.child_ref_id IN (:childRefIds)
+          AND fromParent.project_id = :fromProjectId
+          AND fromChild.project_id = :fromProjectId
+          AND rel.type IN ('RuleSetDefinition', 'SkillsGroupRequirement', 'GroupSkillToSubject', 'BadgeRequirement', 'Dependence')''', nativeQuery = true)
+    void copyRelationships(@Param('fromProjectId') String fromProjectId, @Param('toProjectId') String toProjectId, @Param('childRefIds') List<Integer> childRefIds)
 }
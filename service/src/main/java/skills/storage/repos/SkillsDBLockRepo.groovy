@@ -45,6 +45,24 @@ interface SkillsDBLockRepo extends CrudRepository<SkillsDBLock, Integer> {
             attrs.userId = ?1''')
     Integer findUserAttrsByUserId(String userId)
 
+    /**
+     * Claims the lock until claimedUntil unless it is claimed past now; the claim is kept in the updated column
+     * @return number of claimed rows (0 or 1)
+     */
+    @Modifying
+    @Query(value="update skills_db_locks set updated = ?3 where lock = ?1 and updated <= ?2", nativeQuery=true)
+    int claimUntil(String lock, Date now, Date claimedUntil)
+
+    /**
+     * Extends (or releases when claimedUntil is now) a claim made with {@link #claimUntil}
+     */
+    @Modifying
+    @Query(value="update skills_db_locks set updated = ?2 where lock = ?1", nativeQuery=true)
+    void updateClaim(String lock, Date claimedUntil)
+
+    @Query(value="select count(*) from skills_db_locks where lock = ?1 and updated > ?2", nativeQuery=true)
+    Long countClaimedAfter(String lock, Date now)
+
     @Modifying
     @Query(value="delete from skills_db_locks where created < ?1  and expires='true'", nativeQuery=true)
     void deleteByCreatedBeforeAndExpires(Date date)
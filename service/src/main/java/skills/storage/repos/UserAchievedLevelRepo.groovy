@@ -46,8 +46,21 @@ interface UserAchievedLevelRepo extends CrudRepository<UserAchievement, Integer>
     @Query('''select ua from UserAchievement ua where ua.userId = ?1 and ua.projectId in ?2''')
     List<UserAchievement> findAllByUserAndProjectIds(String userId, Collection<String> projectId)
 
-    @Query('''select ua from UserAchievement ua where ua.userId= ?1 and ua.level is not null''')
-    List<UserAchievement> findAllLevelsByUserId(String userId)
+    @Query('''select distinct ua.skillRefId from UserAchievement ua where ua.userId = ?1 and ua.skillRefId in ?2''')
+    List<Integer> findAchievedSkillRefIds(String userId, Collection<Integer> skillRefIds)
+
+    @Query('''select ua.skillId from UserAchievement ua where ua.userId = ?1 and ua.projectId is null and ua.skillId in ?2''')
+    List<String> findAchievedGlobalBadgeIds(String userId, Collection<String> badgeIds)
+
+    static interface ProjectLevel {
+        String getProjectId()
+        Integer getLevel()
+    }
+
+    @Query('''select ua.projectId as projectId, max(ua.level) as level from UserAchievement ua
+              where ua.userId = ?1 and ua.skillId is null and ua.level is not null and ua.projectId in ?2
+              group by ua.projectId''')
+    List<ProjectLevel> findMaxLevelsByUserIdAndProjectIdIn(String userId, Collection<String> projectIds)
 
     @Query('''select ua from UserAchievement ua where ua.userId= ?1 and ua.level is not null and ua.skillId is null''')
     List<UserAchievement> findAllProjectLevelsByUserId(String userId)
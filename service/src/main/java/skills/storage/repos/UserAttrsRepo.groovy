@@ -26,6 +26,8 @@ interface UserAttrsRepo extends CrudRepository<UserAttrs, Integer> {
     @Nullable
     UserAttrs findByUserId(String userId)
 
+    List<UserAttrs> findAllByUserIdIn(Collection<String> userIds)
+
     @Query('''select attrs 
         from User u, UserAttrs attrs 
         where
@@ -39,6 +41,14 @@ interface UserAttrsRepo extends CrudRepository<UserAttrs, Integer> {
     @Query(value='''select attrs.email from user_attrs attrs where attrs.user_id = ?1''', nativeQuery = true)
     String findEmailByUserId(String userId)
 
+    static interface UserIdAndEmail {
+        String getUserId()
+        String getEmail()
+    }
+
+    @Query('''select attrs.userId as userId, attrs.email as email from UserAttrs attrs where attrs.userId in ?1''')
+    List<UserIdAndEmail> findEmailsByUserIdIn(Collection<String> userIds)
+
     @Query("SELECT DISTINCT(ua.userIdForDisplay) from UserAttrs ua where lower(ua.userIdForDisplay) LIKE %?1% order by ua.userIdForDisplay asc" )
     List<String> findDistinctUserIdForDisplay(String userUserIdForDisplayQuery, Pageable pageable)
 
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.repos
+
+import groovy.transform.CompileStatic
+import org.springframework.data.jpa.repository.Lock
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.jpa.repository.QueryHints
+import org.springframework.data.repository.CrudRepository
+import org.springframework.lang.Nullable
+import skills.storage.model.DayCountItem
+import skills.storage.model.EventType
+import skills.storage.model.UserEventRollup
+import skills.storage.model.WeekCountItem
+
+import javax.persistence.LockModeType
+import javax.persistence.QueryHint
+import java.util.stream.Stream
+
+@CompileStatic
+interface UserEventRollupRepo extends CrudRepository<UserEventRollup, Integer> {
+
+    @Nullable
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    UserEventRollup findBySkillRefIdAndEventTypeAndEventTime(Integer skillRefId, EventType type, Date eventTime)
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query('''select r from UserEventRollup r where r.eventTime = ?1 order by r.skillRefId, r.eventType''')
+    List<UserEventRollup> findAllByEventTime(Date eventTime)
+
+    @Query('''select distinct r.eventTime from UserEventRollup r where r.eventTime >= ?1 and r.eventTime < ?2''')
+    List<Date> findDistinctEventTimes(Date start, Date end)
+
+    @Query('''
+        select min(r.projectId) as projectId, r.eventTime as day, sum(r.count) as count from UserEventRollup r
+        where r.skillRefId in ?1 and r.eventType = ?2 and r.eventTime >= ?3 and r.eventTime < ?4
+        group by r.eventTime
+    ''')
+    Stream<DayCountItem> getEventCountBySkillRefIds(List<Integer> skillRefIds, EventType type, Date start, Date end)
+
+    @Query('''
+        select min(r.projectId) as projectId, r.weekNumber as weekNumber, sum(r.count) as count from UserEventRollup r
+        where r.skillRefId in ?1 and r.eventTime >= ?2 and r.eventTime < ?3
+        group by r.weekNumber
+    ''')
+    Stream<WeekCountItem> getEventCountBySkillRefIdsGroupedByWeek(List<Integer> skillRefIds, Date start, Date end)
+
+    @QueryHints(value = [
+        @QueryHint(name = "org.hibernate.cacheable", value = "false"),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    ])
+    @Query('''
+        select r from UserEventRollup r
+        where r.skillRefId in ?1 and r.eventType in ?2 and r.eventTime >= ?3 and r.eventTime < ?4
+    ''')
+    Stream<UserEventRollup> findAllBySkillRefIdsAndEventTypes(List<Integer> skillRefIds, List<EventType> types, Date start, Date end)
+
+    @QueryHints(value = [
+        @QueryHint(name = "org.hibernate.cacheable", value = "false"),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    ])
+    Stream<UserEventRollup> findAllByProjectIdAndWeekNumberAndEventTypeAndEventTimeLessThan(String projectId, Integer weekNumber, EventType type, Date start)
+
+    @Modifying
+    @Query('''delete from UserEventRollup r where r.projectId = ?1 and r.weekNumber = ?2 and r.eventType = ?3 and r.eventTime < ?4''')
+    void deleteByProjectIdAndWeekNumberAndEventTypeAndEventTimeLessThan(String projectId, Integer weekNumber, EventType type, Date start)
+}
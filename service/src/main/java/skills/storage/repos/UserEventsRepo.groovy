@@ -26,6 +26,7 @@ import skills.storage.model.DayCountItem
 import skills.storage.model.EventCount
 import skills.storage.model.EventType
 import skills.storage.model.LabeledCount
+import skills.storage.model.ProjectWeekItem
 import skills.storage.model.UserEvent
 import skills.storage.model.WeekCountItem
 
@@ -403,20 +404,62 @@ interface UserEventsRepo extends CrudRepository<UserEvent, Integer> {
     """)
     Stream<WeekCountItem> getDistinctUserCountForProjectGroupedByWeek(@Param("projectId") String projectId, @Param("start") Date start)
 
-    @Nullable
-    Stream<UserEvent> findAllBySkillRefIdAndEventType(Integer skillRefId, EventType type)
+    @Query(value="""
+        select min(ue.projectId) as projectId, ue.eventTime as day, sum(ue.count) as count from UserEvent ue
+        where ue.skillRefId in :skillRefIds and ue.eventType = :type and ue.eventTime >= :start
+        group by ue.eventTime
+    """)
+    Stream<DayCountItem> getEventCountBySkillRefIds(@Param("skillRefIds") List<Integer> skillRefIds, @Param("type") EventType type, @Param("start") Date start)
 
-    @Nullable
-    UserEvent findTopByProjectIdOrderByEventTimeDesc(String projectId)
+    @Query(value="""
+        select min(ue.projectId) as projectId, ue.eventTime as day, count(distinct ue.userId) as count from UserEvent ue
+        where ue.skillRefId in :skillRefIds and ue.eventType = :type and ue.eventTime >= :start
+        group by ue.eventTime
+    """)
+    Stream<DayCountItem> getDistinctUserCountBySkillRefIds(@Param("skillRefIds") List<Integer> skillRefIds, @Param("type") EventType type, @Param("start") Date start)
+
+    @Query(value="""
+        select min(ue.projectId) as projectId, ue.weekNumber as weekNumber, sum(ue.count) as count from UserEvent ue
+        where ue.skillRefId in :skillRefIds and ue.eventTime >= :start
+        group by ue.weekNumber
+    """)
+    Stream<WeekCountItem> getEventCountBySkillRefIdsGroupedByWeek(@Param("skillRefIds") List<Integer> skillRefIds, @Param("start") Date start)
+
+    @QueryHints(value = [
+        @QueryHint(name = "org.hibernate.cacheable", value = "false"),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    ])
+    Stream<UserEvent> findAllBySkillRefIdInAndEventTimeGreaterThanEqual(List<Integer> skillRefIds, Date start)
 
     @QueryHints(value = [
         @QueryHint(name = "org.hibernate.cacheable", value = "false"),
         @QueryHint(name = "org.hibernate.readOnly", value = "true")
     ])
+    Stream<UserEvent> findAllByEventTime(Date eventTime)
+
+    List<UserEvent> findAllBySkillRefIdAndEventTypeAndEventTime(Integer skillRefId, EventType type, Date eventTime)
+
+    @Query(value="""select distinct ue.eventTime from UserEvent ue where ue.eventTime >= ?1 and ue.eventTime < ?2""")
+    List<Date> findDistinctEventTimes(Date start, Date end)
+
     @Nullable
-    Stream<UserEvent> findAllByEventTypeAndEventTimeLessThan(EventType type, Date start)
+    Stream<UserEvent> findAllBySkillRefIdAndEventType(Integer skillRefId, EventType type)
 
-    void deleteByEventTypeAndEventTimeLessThan(EventType type, Date start)
+    @Nullable
+    UserEvent findTopByProjectIdOrderByEventTimeDesc(String projectId)
+
+    @Query(value="""
+        select distinct ue.projectId as projectId, ue.weekNumber as weekNumber from UserEvent ue
+        where ue.eventType = :type and ue.eventTime < :start
+    """)
+    List<ProjectWeekItem> findDistinctProjectWeeksByEventTypeAndEventTimeLessThan(@Param("type") EventType type, @Param("start") Date start)
+
+    @Modifying
+    @Query(value="""
+        delete from UserEvent ue
+        where ue.projectId = :projectId and ue.weekNumber = :weekNumber and ue.eventType = :type and ue.eventTime < :start
+    """)
+    int deleteByProjectIdAndWeekNumberAndEventTypeAndEventTimeLessThan(@Param("projectId") String projectId, @Param("weekNumber") Integer weekNumber, @Param("type") EventType type, @Param("start") Date start)
 
     @Modifying
     @Query(value='''
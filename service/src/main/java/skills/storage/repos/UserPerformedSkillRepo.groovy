@@ -94,6 +94,44 @@ interface UserPerformedSkillRepo extends JpaRepository<UserPerformedSkill, Integ
               u.performedOn < ?5''')
     Long countByUserIdAndProjectIdAndSkillIdAndPerformedOnGreaterThanAndPerformedOnLessThan(String userId, String projectId, String skillId, Date startDate, Date endDate)
 
+    static interface UserCount {
+        String getUserId()
+        Long getCount()
+    }
+
+    @Query('''select u.userId as userId, count(u.id) as count from UserPerformedSkill u
+              where
+              u.skillRefId in (
+                select case when s.copiedFrom is not null then s.copiedFrom else s.id end as id from SkillDef s
+                where s.projectId = ?2 and
+                s.skillId = ?3 and
+                s.enabled = 'true'
+              ) and
+              u.userId in ?1
+              group by u.userId''')
+    List<UserCount> countByUserIdInAndProjectIdAndSkillIdGroupByUserId(Collection<String> userIds, String projectId, String skillId)
+
+    @Query('''select u.userId as userId, count(u.id) as count from UserPerformedSkill u
+              where
+              u.skillRefId in (
+                select case when s.copiedFrom is not null then s.copiedFrom else s.id end as id from SkillDef s
+                where s.projectId = ?2 and
+                s.skillId = ?3 and
+                s.enabled = 'true'
+              ) and
+              u.userId in ?1 and
+              u.performedOn > ?4 and
+              u.performedOn < ?5
+              group by u.userId''')
+    List<UserCount> countByUserIdInAndProjectIdAndSkillIdAndPerformedOnGreaterThanAndPerformedOnLessThanGroupByUserId(Collection<String> userIds, String projectId, String skillId, Date startDate, Date endDate)
+
+    @Query('''select u.performedOn from UserPerformedSkill u
+              where
+              u.userId = ?1 and
+              u.skillRefId = ?2 and
+              u.performedOn >= ?3''')
+    List<Date> findPerformedOnByUserIdAndSkillRefIdAndPerformedOnGreaterThanEqual(String userId, Integer skillRefId, Date startDate)
+
     @Query("SELECT DISTINCT(p.userId) from UserPerformedSkill p where lower(p.userId) LIKE %?1% order by p.userId asc" )
     List<String> findDistinctUserIds(String userIdQuery, Pageable pageable)
 
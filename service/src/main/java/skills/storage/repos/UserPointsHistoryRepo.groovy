@@ -0,0 +1,132 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.repos
+
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.CrudRepository
+import org.springframework.data.repository.query.Param
+import org.springframework.lang.Nullable
+import skills.storage.model.DayCountItem
+import skills.storage.model.UserPointsHistory
+
+interface UserPointsHistoryRepo extends CrudRepository<UserPointsHistory, Integer> {
+
+    static interface PointsBefore {
+        Long getNumDays()
+        Long getPoints()
+    }
+
+    @Nullable
+    @Query('select s.built from UserPointsHistoryState s where s.projectId = ?1 and s.userId = ?2')
+    Date findBuilt(String projectId, String userId)
+
+    @Modifying
+    @Query('delete from UserPointsHistory h where h.projectId = ?1 and h.userId = ?2')
+    void deleteByProjectIdAndUserId(String projectId, String userId)
+
+    /**
+     * Same calculation as {@link UserPerformedSkillRepo#calculatePointHistoryForSubject} for every subject of the project
+     */
+    @Modifying
+    @Query(value = '''
+        insert into user_points_history (project_id, user_id, subject_id, day_performed, points)
+        select :projectId, :userId, subject.skill_id, CAST(ups.performed_on as date), SUM(child.point_increment)
+        from skill_definition subject,
+             skill_relationship_definition rel,
+             skill_definition child,
+             user_performed_skill ups
+        where subject.project_id = :projectId
+          and subject.type = 'Subject'
+          and rel.parent_ref_id = subject.id
+          and rel.child_ref_id = child.id
+          and rel.type in ('RuleSetDefinition', 'GroupSkillToSubject')
+          and child.type = 'Skill'
+          and child.enabled = 'true'
+          and ups.user_id = :userId
+          and ups.skill_ref_id = case when child.copied_from_skill_ref is not null then child.copied_from_skill_ref else child.id end
+        group by subject.skill_id, CAST(ups.performed_on as date)''', nativeQuery = true)
+    void insertFromPerformedSkills(@Param('projectId') String projectId, @Param('userId') String userId)
+
+    @Nullable
+    @Query(value = '''
+        select subject.skill_id
+        from skill_definition subject,
+             skill_relationship_definition rel
+        where rel.child_ref_id = :skillRefId
+          and rel.parent_ref_id = subject.id
+          and rel.type in ('RuleSetDefinition', 'GroupSkillToSubject')
+          and subject.type = 'Subject' ''', nativeQuery = true)
+    String findSubjectIdBySkillRefId(@Param('skillRefId') Integer skillRefId)
+
+    @Query(value = '''
+        select day_performed as day, SUM(points) as count
+        from user_points_history
+        where project_id = :projectId
+          and user_id = :userId
+          and day_performed >= :start
+        group by day_performed
+        having SUM(points) <> 0''', nativeQuery = true)
+    List<DayCountItem> findProjectPointsByDay(@Param('projectId') String projectId,
+                                              @Param('userId') String userId,
+                                              @Param('start') Date start)
+
+    @Query(value = '''
+        select day_performed as day, SUM(points) as count
+        from user_points_history
+        where project_id = :projectId
+          and user_id = :userId
+          and subject_id = :subjectId
+          and day_performed >= :start
+        group by day_performed
+        having SUM(points) <> 0''', nativeQuery = true)
+    List<DayCountItem> findSubjectPointsByDay(@Param('projectId') String projectId,
+                                              @Param('userId') String userId,
+                                              @Param('subjectId') String subjectId,
+                                              @Param('start') Date start)
+
+    @Query(value = '''
+        select count(*) as numDays, CAST(COALESCE(SUM(t.points), 0) as bigint) as points
+        from (
+            select SUM(points) as points
+            from user_points_history
+            where project_id = :projectId
+              and user_id = :userId
+              and day_performed < :start
+            group by day_performed
+            having SUM(points) <> 0
+        ) t''', nativeQuery = true)
+    PointsBefore findProjectPointsBefore(@Param('projectId') String projectId,
+                                         @Param('userId') String userId,
+                                         @Param('start') Date start)
+
+    @Query(value = '''
+        select count(*) as numDays, CAST(COALESCE(SUM(t.points), 0) as bigint) as points
+        from (
+            select SUM(points) as points
+            from user_points_history
+            where project_id = :projectId
+              and user_id = :userId
+              and subject_id = :subjectId
+              and day_performed < :start
+            group by day_performed
+            having SUM(points) <> 0
+        ) t''', nativeQuery = true)
+    PointsBefore findSubjectPointsBefore(@Param('projectId') String projectId,
+                                         @Param('userId') String userId,
+                                         @Param('subjectId') String subjectId,
+                                         @Param('start') Date start)
+}
@@ -96,6 +96,56 @@ interface UserPointsRepo extends CrudRepository<UserPoints, Integer> {
     Integer findPointsByProjectIdAndUserIdAndSkillId(String projectId, String userId, String skillId)
 
 
+    static interface RankIndexEntry {
+        String getUserId()
+        String getProjectId()
+        String getSkillId()
+        Integer getPoints()
+        LocalDateTime getUserFirstSeenTimestamp()
+    }
+
+    @Query('''SELECT
+                    p.userId as userId,
+                    p.projectId as projectId,
+                    p.skillId as skillId,
+                    p.points as points,
+                    uAttrs.created as userFirstSeenTimestamp
+                from UserPoints p, UserAttrs uAttrs
+                where
+                    p.userId = uAttrs.userId and
+                    p.projectId=?1 and
+                    p.skillId is null
+            ''')
+    List<RankIndexEntry> findAllForRankIndex(String projectId)
+
+    @Query('''SELECT
+                    p.userId as userId,
+                    p.projectId as projectId,
+                    p.skillId as skillId,
+                    p.points as points,
+                    uAttrs.created as userFirstSeenTimestamp
+                from UserPoints p, UserAttrs uAttrs
+                where
+                    p.userId = uAttrs.userId and
+                    p.projectId=?1 and
+                    p.skillId=?2
+            ''')
+    List<RankIndexEntry> findAllForRankIndex(String projectId, String subjectId)
+
+    @Query('''SELECT
+                    p.userId as userId,
+                    p.projectId as projectId,
+                    p.skillId as skillId,
+                    p.points as points,
+                    uAttrs.created as userFirstSeenTimestamp
+                from UserPoints p, UserAttrs uAttrs
+                where
+                    p.userId = uAttrs.userId and
+                    p.projectId in ?1 and
+                    p.updated >= ?2
+            ''')
+    List<RankIndexEntry> findUpdatedForRankIndex(Collection<String> projectIds, Date updatedSince)
+
     static interface RankedUserRes {
         String getUserId()
         String getUserIdForDisplay()
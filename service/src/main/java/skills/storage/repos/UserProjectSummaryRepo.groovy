@@ -0,0 +1,42 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.repos
+
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.CrudRepository
+import org.springframework.lang.Nullable
+import skills.storage.model.UserProjectSummary
+
+interface UserProjectSummaryRepo extends CrudRepository<UserProjectSummary, Integer> {
+
+    @Nullable
+    @Query('''select s from UserProjectSummary s where 
+            s.userId = ?1 and 
+            s.projectId = ?2 and 
+            s.version = ?3 and 
+            not exists (select i.userId from UserSummaryInvalidation i where i.userId = s.userId and i.invalidated >= s.computed)''')
+    UserProjectSummary findValidSummary(String userId, String projectId, int version)
+
+    @Nullable
+    @Query('select i.invalidated from UserSummaryInvalidation i where i.userId = ?1')
+    Date findUserInvalidated(String userId)
+
+    List<UserProjectSummary> findAllByUserIdAndProjectId(String userId, String projectId)
+
+    @Nullable
+    @Query('select max(coalesce(s.updated, s.computed)) from UserProjectSummary s where s.userId = ?1 and s.projectId = ?2')
+    Date findLastUpdated(String userId, String projectId)
+}
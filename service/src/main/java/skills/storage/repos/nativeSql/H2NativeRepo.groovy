@@ -38,6 +38,7 @@ import skills.storage.repos.UserPointsRepo
 import javax.persistence.EntityManager
 import javax.persistence.PersistenceContext
 import javax.persistence.Query
+import javax.persistence.TemporalType
 import java.util.stream.Stream
 
 @Conditional(DBConditions.H2)
@@ -651,6 +652,150 @@ class H2NativeRepo implements NativeQueriesRepo {
         return lock
     }
 
+    @Override
+    boolean acquireTransactionScopedLock(String lockKey) {
+        // H2 has no advisory locks, fall back to the row lock
+        insertLockOrSelectExisting(lockKey)
+        return false
+    }
+
+
+    @Override
+    void saveUserProjectSummary(String userId, String projectId, int version, String summary, Date computed, Date updated) {
+        String sql = '''
+           merge into user_project_summary (user_id, project_id, version, summary, computed, updated) key (user_id, project_id, version)
+           values (:userId, :projectId, :version, :summary, :computed, :updated)
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("userId", userId)
+        query.setParameter("projectId", projectId)
+        query.setParameter("version", version)
+        query.setParameter("summary", summary)
+        query.setParameter("computed", computed)
+        query.setParameter("updated", updated)
+        query.executeUpdate()
+    }
+
+    @Override
+    void invalidateUserSummaries(String userId, Date invalidated) {
+        String sql = '''
+           merge into user_summary_invalidation (user_id, invalidated) key (user_id)
+           values (:userId, :invalidated)
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("userId", userId)
+        query.setParameter("invalidated", invalidated)
+        query.executeUpdate()
+    }
+
+    @Override
+    void addUserPointsHistory(String projectId, String userId, String subjectId, Date day, int points) {
+        String update = '''
+           UPDATE user_points_history SET points = points + :points
+           WHERE project_id = :projectId AND user_id = :userId AND subject_id = :subjectId AND day_performed = :day
+        '''
+        String insert = '''
+           INSERT INTO user_points_history (project_id, user_id, subject_id, day_performed, points)
+           SELECT :projectId, :userId, :subjectId, :day, :points FROM dual
+           WHERE NOT EXISTS (
+               SELECT 1 FROM user_points_history h
+               WHERE h.project_id = :projectId AND h.user_id = :userId AND h.subject_id = :subjectId AND h.day_performed = :day
+           )
+        '''
+        for (String sql : [update, insert]) {
+            Query query = entityManager.createNativeQuery(sql)
+            query.setParameter("projectId", projectId)
+            query.setParameter("userId", userId)
+            query.setParameter("subjectId", subjectId)
+            query.setParameter("day", day, TemporalType.DATE)
+            query.setParameter("points", points)
+            if (query.executeUpdate() > 0) {
+                break
+            }
+        }
+    }
+
+    @Override
+    void saveUserPointsHistoryBuilt(String projectId, String userId, Date built) {
+        String sql = '''
+           merge into user_points_history_state (project_id, user_id, built) key (project_id, user_id)
+           values (:projectId, :userId, :built)
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("projectId", projectId)
+        query.setParameter("userId", userId)
+        query.setParameter("built", built)
+        query.executeUpdate()
+    }
+
+    @Override
+    void insertUserEventRollupIfMissing(String projectId, Integer skillRefId, String type, Date eventTime, Integer weekNumber) {
+        String sql = '''
+           INSERT INTO user_event_rollups (project_id, skill_ref_id, event_type, event_time, week_number, count)
+           SELECT :projectId, :skillRefId, :type, :eventTime, :weekNumber, 0 FROM dual
+           WHERE NOT EXISTS (
+               SELECT 1 FROM user_event_rollups r WHERE r.skill_ref_id = :skillRefId AND r.event_type = :type AND r.event_time = :eventTime
+           )
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("projectId", projectId)
+        query.setParameter("skillRefId", skillRefId)
+        query.setParameter("type", type)
+        query.setParameter("eventTime", eventTime)
+        query.setParameter("weekNumber", weekNumber)
+        query.executeUpdate()
+    }
+
+    @Override
+    void insertMissingUserEventRollups(Date eventTime) {
+        String sql = '''
+           INSERT INTO user_event_rollups (project_id, skill_ref_id, event_type, event_time, week_number, count)
+           SELECT min(ue.project_id), ue.skill_ref_id, ue.event_type, ue.event_time, min(ue.week_number), 0
+           FROM user_events ue
+           WHERE ue.event_time = :eventTime AND NOT EXISTS (
+               SELECT 1 FROM user_event_rollups r WHERE r.skill_ref_id = ue.skill_ref_id AND r.event_type = ue.event_type AND r.event_time = ue.event_time
+           )
+           GROUP BY ue.skill_ref_id, ue.event_type, ue.event_time
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("eventTime", eventTime)
+        query.executeUpdate()
+    }
+
+    @Override
+    int compactDailyUserEvents(String projectId, Integer weekNumber, Date startOfWeek, Date before) {
+        String dailyEvents = '''
+            FROM user_events d
+            WHERE d.project_id = :projectId AND d.week_number = :weekNumber AND d.event_type = 'DAILY' AND d.event_time < :before
+        '''
+        String update = """
+            UPDATE user_events w SET count = w.count + (
+                SELECT sum(d.count) ${dailyEvents} AND d.skill_ref_id = w.skill_ref_id AND d.user_id = w.user_id
+            )
+            WHERE w.project_id = :projectId AND w.event_type = 'WEEKLY' AND w.event_time = :startOfWeek AND EXISTS (
+                SELECT 1 ${dailyEvents} AND d.skill_ref_id = w.skill_ref_id AND d.user_id = w.user_id
+            )
+        """
+        String insert = """
+            INSERT INTO user_events (project_id, skill_ref_id, user_id, event_time, count, event_type, week_number)
+            SELECT d.project_id, d.skill_ref_id, d.user_id, :startOfWeek, sum(d.count), 'WEEKLY', d.week_number
+            ${dailyEvents} AND NOT EXISTS (
+                SELECT 1 FROM user_events w
+                WHERE w.project_id = d.project_id AND w.skill_ref_id = d.skill_ref_id AND w.user_id = d.user_id AND w.event_type = 'WEEKLY' AND w.event_time = :startOfWeek
+            )
+            GROUP BY d.project_id, d.skill_ref_id, d.user_id, d.week_number
+        """
+        int numUpdated = 0
+        [update, insert].each { String sql ->
+            Query query = entityManager.createNativeQuery(sql)
+            query.setParameter("projectId", projectId)
+            query.setParameter("weekNumber", weekNumber)
+            query.setParameter("startOfWeek", startOfWeek)
+            query.setParameter("before", before)
+            numUpdated += query.executeUpdate()
+        }
+        return numUpdated
+    }
 
     @Override
     Long countDistinctUsersByProjectIdAndSubjectIdAndUserIdLike(String projectId, String subjectId, String userIdQuery) {
@@ -62,6 +62,50 @@ interface NativeQueriesRepo {
 
     SkillsDBLock insertLockOrSelectExisting(String lockKey)
 
+    /**
+     * Acquires a lock that is held until the current transaction completes and does not leave any rows behind.
+     * @return true if the lock was held by another transaction and this call had to wait for it
+     */
+    boolean acquireTransactionScopedLock(String lockKey)
+
+    /**
+     * Inserts or replaces the materialized summary for the user, project and version
+     */
+    void saveUserProjectSummary(String userId, String projectId, int version, String summary, Date computed, Date updated)
+
+    /**
+     * Records that the user's data changed at the provided time, invalidating previously computed summaries
+     */
+    void invalidateUserSummaries(String userId, Date invalidated)
+
+    /**
+     * Adds (or subtracts when negative) points to the user's subject points for the day, inserting the row if missing
+     */
+    void addUserPointsHistory(String projectId, String userId, String subjectId, Date day, int points)
+
+    /**
+     * Inserts or replaces when the user's points history for the project was last rebuilt
+     */
+    void saveUserPointsHistoryBuilt(String projectId, String userId, Date built)
+
+    /**
+     * Inserts an empty user event rollup for the skill, event type and time unless it already exists
+     */
+    void insertUserEventRollupIfMissing(String projectId, Integer skillRefId, String type, Date eventTime, Integer weekNumber)
+
+    /**
+     * Inserts empty user event rollups for every skill and event type that has raw user events at the provided time
+     * and no rollup yet
+     */
+    void insertMissingUserEventRollups(Date eventTime)
+
+    /**
+     * Sums the project's DAILY user events of the week that occurred before the provided date into WEEKLY user events,
+     * one upsert per user and skill; the DAILY events are left in place
+     * @return number of WEEKLY user events inserted or updated
+     */
+    int compactDailyUserEvents(String projectId, Integer weekNumber, Date startOfWeek, Date before)
+
     Long countDistinctUsersByProjectIdAndSubjectIdAndUserIdLike(String projectId, String subjectId, String userId)
 
     Long countDistinctUsersByProjectIdAndSubjectId(String projectId, String subjectId)
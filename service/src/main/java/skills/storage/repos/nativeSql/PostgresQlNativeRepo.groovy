@@ -15,6 +15,7 @@
  */
 package skills.storage.repos.nativeSql
 
+import com.google.common.hash.Hashing
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.context.annotation.Conditional
 import org.springframework.data.domain.Pageable
@@ -31,6 +32,8 @@ import javax.persistence.EntityManager
 import javax.persistence.ParameterMode
 import javax.persistence.PersistenceContext
 import javax.persistence.Query
+import javax.persistence.TemporalType
+import java.nio.charset.StandardCharsets
 import java.util.stream.Stream
 
 @Conditional(DBConditions.PostgresQL)
@@ -506,6 +509,132 @@ class PostgresQlNativeRepo implements NativeQueriesRepo {
         return dbLock
     }
 
+    @Override
+    boolean acquireTransactionScopedLock(String lockKey) {
+        long key = Hashing.murmur3_128().hashString(lockKey, StandardCharsets.UTF_8).asLong()
+        Boolean acquired = (Boolean) entityManager.createNativeQuery("select pg_try_advisory_xact_lock(:key)")
+                .setParameter("key", key)
+                .getSingleResult()
+        if (acquired) {
+            return false
+        }
+        // pg_advisory_xact_lock returns void which cannot be mapped, so select a count of the (single) row instead
+        entityManager.createNativeQuery("select count(*) from (select pg_advisory_xact_lock(:key)) as l")
+                .setParameter("key", key)
+                .getSingleResult()
+        return true
+    }
+
+    @Override
+    void saveUserProjectSummary(String userId, String projectId, int version, String summary, Date computed, Date updated) {
+        String sql = '''
+           INSERT INTO user_project_summary (user_id, project_id, version, summary, computed, updated)
+           VALUES (:userId, :projectId, :version, :summary, :computed, :updated)
+           ON CONFLICT ON CONSTRAINT user_project_summary_unique_row DO UPDATE SET summary = excluded.summary, computed = excluded.computed, updated = excluded.updated
+           WHERE user_project_summary.computed <= excluded.computed
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("userId", userId)
+        query.setParameter("projectId", projectId)
+        query.setParameter("version", version)
+        query.setParameter("summary", summary)
+        query.setParameter("computed", computed)
+        query.setParameter("updated", updated)
+        query.executeUpdate()
+    }
+
+    @Override
+    void invalidateUserSummaries(String userId, Date invalidated) {
+        String sql = '''
+           INSERT INTO user_summary_invalidation (user_id, invalidated)
+           VALUES (:userId, :invalidated)
+           ON CONFLICT (user_id) DO UPDATE SET invalidated = excluded.invalidated
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("userId", userId)
+        query.setParameter("invalidated", invalidated)
+        query.executeUpdate()
+    }
+
+    @Override
+    void addUserPointsHistory(String projectId, String userId, String subjectId, Date day, int points) {
+        String sql = '''
+           INSERT INTO user_points_history (project_id, user_id, subject_id, day_performed, points)
+           VALUES (:projectId, :userId, :subjectId, :day, :points)
+           ON CONFLICT ON CONSTRAINT user_points_history_unique_row DO UPDATE SET points = user_points_history.points + excluded.points
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("projectId", projectId)
+        query.setParameter("userId", userId)
+        query.setParameter("subjectId", subjectId)
+        query.setParameter("day", day, TemporalType.DATE)
+        query.setParameter("points", points)
+        query.executeUpdate()
+    }
+
+    @Override
+    void saveUserPointsHistoryBuilt(String projectId, String userId, Date built) {
+        String sql = '''
+           INSERT INTO user_points_history_state (project_id, user_id, built)
+           VALUES (:projectId, :userId, :built)
+           ON CONFLICT ON CONSTRAINT user_points_history_state_unique_row DO UPDATE SET built = excluded.built
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("projectId", projectId)
+        query.setParameter("userId", userId)
+        query.setParameter("built", built)
+        query.executeUpdate()
+    }
+
+    @Override
+    void insertUserEventRollupIfMissing(String projectId, Integer skillRefId, String type, Date eventTime, Integer weekNumber) {
+        String sql = '''
+           INSERT INTO user_event_rollups (project_id, skill_ref_id, event_type, event_time, week_number, count)
+           VALUES (:projectId, :skillRefId, :type, :eventTime, :weekNumber, 0)
+           ON CONFLICT ON CONSTRAINT user_event_rollups_unique_row DO NOTHING
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("projectId", projectId)
+        query.setParameter("skillRefId", skillRefId)
+        query.setParameter("type", type)
+        query.setParameter("eventTime", eventTime)
+        query.setParameter("weekNumber", weekNumber)
+        query.executeUpdate()
+    }
+
+    @Override
+    void insertMissingUserEventRollups(Date eventTime) {
+        String sql = '''
+           INSERT INTO user_event_rollups (project_id, skill_ref_id, event_type, event_time, week_number, count)
+           SELECT min(ue.project_id), ue.skill_ref_id, ue.event_type, ue.event_time, min(ue.week_number), 0
+           FROM user_events ue
+           WHERE ue.event_time = :eventTime
+           GROUP BY ue.skill_ref_id, ue.event_type, ue.event_time
+           ON CONFLICT ON CONSTRAINT user_event_rollups_unique_row DO NOTHING
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("eventTime", eventTime)
+        query.executeUpdate()
+    }
+
+    @Override
+    int compactDailyUserEvents(String projectId, Integer weekNumber, Date startOfWeek, Date before) {
+        String sql = '''
+           INSERT INTO user_events (project_id, skill_ref_id, user_id, event_time, count, event_type, week_number)
+           SELECT ue.project_id, ue.skill_ref_id, ue.user_id, :startOfWeek, sum(ue.count), 'WEEKLY', ue.week_number
+           FROM user_events ue
+           WHERE ue.project_id = :projectId AND ue.week_number = :weekNumber AND ue.event_type = 'DAILY' AND ue.event_time < :before
+           GROUP BY ue.project_id, ue.skill_ref_id, ue.user_id, ue.week_number
+           ON CONFLICT ON CONSTRAINT user_events_unique_row DO UPDATE SET count = user_events.count + excluded.count
+        '''
+        Query query = entityManager.createNativeQuery(sql)
+        query.setParameter("projectId", projectId)
+        query.setParameter("weekNumber", weekNumber)
+        query.setParameter("startOfWeek", startOfWeek)
+        query.setParameter("before", before)
+        return query.executeUpdate()
+    }
+
     @Override
     Long countDistinctUsersByProjectIdAndSubjectIdAndUserIdLike(String projectId, String subjectId, String userId) {
         userPointsRepo.countDistinctUsersByProjectIdAndSubjectIdAndUserIdLike(projectId, subjectId, userId)
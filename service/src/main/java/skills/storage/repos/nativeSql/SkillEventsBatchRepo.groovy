@@ -0,0 +1,125 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.storage.repos.nativeSql
+
+import callStack.profiler.Profile
+import groovy.transform.CompileStatic
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.jdbc.core.namedparam.SqlParameterSource
+import org.springframework.stereotype.Service
+import skills.storage.model.UserAchievement
+import skills.storage.model.UserPerformedSkill
+import skills.storage.model.UserPoints
+
+import java.sql.Timestamp
+
+/**
+ * JDBC batch writes of the rows created when the same skill is reported for many users at once. Plain INSERT/UPDATE
+ * statements so that they work with any supported database; must be called within the reporting transaction,
+ * while the users are locked.
+ */
+@Service
+@CompileStatic
+class SkillEventsBatchRepo {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbcTemplate
+
+    @Profile
+    void insertPerformedSkills(List<UserPerformedSkill> performedSkills) {
+        if (!performedSkills) {
+            return
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis())
+        List<SqlParameterSource> params = performedSkills.collect { UserPerformedSkill performedSkill ->
+            (SqlParameterSource) new MapSqlParameterSource()
+                    .addValue('userId', performedSkill.userId)
+                    .addValue('projectId', performedSkill.projectId)
+                    .addValue('skillId', performedSkill.skillId)
+                    .addValue('skillRefId', performedSkill.skillRefId)
+                    .addValue('performedOn', new Timestamp(performedSkill.performedOn.time))
+                    .addValue('now', now)
+        }
+        jdbcTemplate.batchUpdate('''
+            INSERT INTO user_performed_skill (user_id, project_id, skill_id, skill_ref_id, performed_on, created, updated)
+            VALUES (:userId, :projectId, :skillId, :skillRefId, :performedOn, :now, :now)''', params as SqlParameterSource[])
+    }
+
+    @Profile
+    void insertUserPoints(List<UserPoints> userPoints) {
+        if (!userPoints) {
+            return
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis())
+        List<SqlParameterSource> params = userPoints.collect { UserPoints points ->
+            (SqlParameterSource) new MapSqlParameterSource()
+                    .addValue('userId', points.userId)
+                    .addValue('projectId', points.projectId)
+                    .addValue('skillId', points.skillId)
+                    .addValue('skillRefId', points.skillRefId)
+                    .addValue('points', points.points)
+                    .addValue('contributesToSkillsGroup', points.contributesToSkillsGroup)
+                    .addValue('now', now)
+        }
+        jdbcTemplate.batchUpdate('''
+            INSERT INTO user_points (user_id, project_id, skill_id, skill_ref_id, points, contributes_to_skills_group, created, updated)
+            VALUES (:userId, :projectId, :skillId, :skillRefId, :points, :contributesToSkillsGroup, :now, :now)''', params as SqlParameterSource[])
+    }
+
+    /**
+     * @param pointsToAddById points to add to each of the existing user_points rows
+     */
+    @Profile
+    void addUserPoints(Map<Integer, Integer> pointsToAddById) {
+        if (!pointsToAddById) {
+            return
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis())
+        List<SqlParameterSource> params = pointsToAddById.collect { Integer id, Integer pointsToAdd ->
+            (SqlParameterSource) new MapSqlParameterSource()
+                    .addValue('id', id)
+                    .addValue('pointsToAdd', pointsToAdd)
+                    .addValue('now', now)
+        }
+        jdbcTemplate.batchUpdate('''
+            UPDATE user_points SET points = points + :pointsToAdd, updated = :now WHERE id = :id''', params as SqlParameterSource[])
+    }
+
+    @Profile
+    void insertUserAchievements(List<UserAchievement> achievements) {
+        if (!achievements) {
+            return
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis())
+        List<SqlParameterSource> params = achievements.collect { UserAchievement achievement ->
+            (SqlParameterSource) new MapSqlParameterSource()
+                    .addValue('userId', achievement.userId)
+                    .addValue('projectId', achievement.projectId)
+                    .addValue('skillId', achievement.skillId)
+                    .addValue('skillRefId', achievement.skillRefId)
+                    .addValue('level', achievement.level)
+                    .addValue('pointsWhenAchieved', achievement.pointsWhenAchieved)
+                    .addValue('achievedOn', new Timestamp(achievement.achievedOn.time))
+                    .addValue('notified', achievement.notified)
+                    .addValue('now', now)
+        }
+        jdbcTemplate.batchUpdate('''
+            INSERT INTO user_achievement (user_id, project_id, skill_id, skill_ref_id, level, points_when_achieved, achieved_on, notified, created, updated)
+            VALUES (:userId, :projectId, :skillId, :skillRefId, :level, :pointsWhenAchieved, :achievedOn, :notified, :now, :now)''', params as SqlParameterSource[])
+    }
+}
@@ -26,6 +26,7 @@ import skills.services.events.SkillDate
 import skills.tasks.data.CatalogFinalizeRequest
 import skills.tasks.data.CatalogSkillDefinitionUpdated
 import skills.tasks.data.ImportedSkillAchievement
+import skills.tasks.data.ProjectCopyRequest
 import skills.tasks.data.ProjectInviteCleanup
 
 import javax.annotation.PostConstruct
@@ -50,6 +51,9 @@ class TaskSchedulerService {
     @Autowired
     OneTimeTask<CatalogFinalizeRequest> finalizeCatalogImportsOneTimeTask
 
+    @Autowired
+    OneTimeTask<ProjectCopyRequest> projectCopyOneTimeTask
+
     void scheduleCatalogSkillUpdate(String projectId, String catalogSkillId, Integer rawId){
         String id = "${catalogSkillId}-${UUID.randomUUID().toString()}}"
         log.debug("scheduling catalog skill update task [{}] using db-scheduler", id)
@@ -61,16 +65,24 @@ class TaskSchedulerService {
     }
 
     void scheduleImportedSkillAchievement(String userId, Integer rawSkillId, SkillDate incomingSkillDate, boolean thisRequestCompletedOriginalSkill) {
+        scheduleImportedSkillAchievement(userId, rawSkillId, [rawSkillId], incomingSkillDate, thisRequestCompletedOriginalSkill)
+    }
+
+    /**
+     * @param idPrefix prefix of the task instance id
+     * @param rawSkillIds imported skills (of possibly many projects) handled by a single task
+     */
+    void scheduleImportedSkillAchievement(String userId, Integer idPrefix, List<Integer> rawSkillIds, SkillDate incomingSkillDate, boolean thisRequestCompletedOriginalSkill) {
         String uuid = UUID.randomUUID().toString()
-        String id = "${rawSkillId}-${uuid}"
+        String id = "${idPrefix}-${uuid}"
         ImportedSkillAchievement importedSkillAchievement = new ImportedSkillAchievement(
                 uuid: uuid,
                 userId: userId,
-                rawSkillId: rawSkillId,
+                rawSkillIds: rawSkillIds,
                 incomingSkillDate: incomingSkillDate,
                 thisRequestCompletedOriginalSkill: thisRequestCompletedOriginalSkill
         )
-        log.debug("scheduling imported skill achievement task [{}] using db-scheduler", id)
+        log.debug("scheduling imported skill achievement task [{}] for [{}] skills using db-scheduler", id, rawSkillIds.size())
         scheduler.schedule(importedSkillAchievementOneTimeTask.instance(id, importedSkillAchievement), Instant.now().plusSeconds(schedulingDelaySeconds))
     }
 
@@ -81,4 +93,13 @@ class TaskSchedulerService {
                 projectId: projectId
         )), Instant.now().plusSeconds(schedulingDelaySeconds))
     }
+
+    void scheduleProjectCopy(Integer jobId){
+        String id = "${jobId}-${UUID.randomUUID().toString()}"
+        log.info("scheduling project copy [{}] using db-scheduler", id)
+        // the job was already committed so there is nothing to wait for
+        scheduler.schedule(projectCopyOneTimeTask.instance(id, new ProjectCopyRequest(
+                jobId: jobId
+        )), Instant.now())
+    }
 }
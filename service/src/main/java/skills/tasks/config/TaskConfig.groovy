@@ -35,11 +35,13 @@ import skills.tasks.JsonSerializer
 import skills.tasks.data.CatalogFinalizeRequest
 import skills.tasks.data.CatalogSkillDefinitionUpdated
 import skills.tasks.data.ImportedSkillAchievement
+import skills.tasks.data.ProjectCopyRequest
 import skills.tasks.data.ProjectInviteCleanup
 import skills.tasks.data.UnachievableLevelIdentification
 import skills.tasks.executors.CatalogSkillUpdatedTaskExecutor
 import skills.tasks.executors.FinalizeCatalogSkillsImportExecutor
 import skills.tasks.executors.ImportedSkillAchievementTaskExecutor
+import skills.tasks.executors.ProjectCopyTaskExecutor
 import skills.tasks.executors.ProjectInviteCleanupTaskExecutor
 import skills.tasks.executors.UnachievableLevelIdentificationTaskExecutor
 
@@ -136,6 +138,15 @@ class TaskConfig {
                 .execute(finalizeCatalogSkillsImportExecutor)
     }
 
+    @Bean
+    OneTimeTask<ProjectCopyRequest> projectCopyOneTimeTask(ProjectCopyTaskExecutor projectCopyTaskExecutor) {
+        return Tasks.oneTime("project-copy", ProjectCopyRequest.class)
+                .onFailure(new DontRetryOnNoRetryExceptionHandler(new FailureHandler.MaxRetriesFailureHandler(maxRetries,
+                        new FailureHandler.ExponentialBackoffFailureHandler(Duration.ofSeconds(exponentialBackOffSeconds), exponentialBackOffRate)))
+                )
+                .execute(projectCopyTaskExecutor)
+    }
+
     @Bean
     RecurringTask<ProjectInviteCleanup> cleanupProjectInvitesTask(ProjectInviteCleanupTaskExecutor projectInviteCleanupTaskExecutor) {
         //recurring tasks are automatically picked up by the scheduler
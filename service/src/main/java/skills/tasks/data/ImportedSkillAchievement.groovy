@@ -20,7 +20,9 @@ import skills.services.events.SkillDate
 class ImportedSkillAchievement {
     String uuid
     String userId
+    // only set by tasks scheduled before rawSkillIds was introduced
     Integer rawSkillId
+    List<Integer> rawSkillIds
     SkillDate incomingSkillDate
     boolean thisRequestCompletedOriginalSkill
 }
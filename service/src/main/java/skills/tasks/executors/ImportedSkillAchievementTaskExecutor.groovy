@@ -53,29 +53,39 @@ class ImportedSkillAchievementTaskExecutor implements VoidExecutionHandler<Impor
     @Override
     void execute(TaskInstance<ImportedSkillAchievement> taskInstance, ExecutionContext executionContext) {
         ImportedSkillAchievement data = taskInstance.getData()
-        SkillDefMin min = getSkill(data.rawSkillId)
-        log.debug("Running async imported skill achievement scheduled task for [{}-{}, {}], uuid=[{}]", min.projectId, min.skillId, data.userId, data.uuid)
+        List<SkillDefMin> skills = getSkills(data.rawSkillIds ?: [data.rawSkillId])
+        String skillsForLog = skills.collect { "${it.projectId}-${it.skillId}" }.join(", ")
+        log.debug("Running async imported skill achievement scheduled task for [{}, {}], uuid=[{}]", skillsForLog, data.userId, data.uuid)
 
         CProf.clear()
         String profName = "asyncReport".toString()
         CProf.start(profName)
-        importedSkillsAchievementsHandler.handleAchievementsForImportedSkills(data.userId, min, data.incomingSkillDate, data.thisRequestCompletedOriginalSkill)
+        importedSkillsAchievementsHandler.handleAchievementsForImportedSkills(data.userId, skills, data.incomingSkillDate, data.thisRequestCompletedOriginalSkill)
         ProfileEvent resProfEvent = CProf.stop(profName)
         if (resProfEvent.getRuntimeInMillis() > minMillisToPrint) {
-            log.info("Profiled ImportedSkillAchievementTaskExecutor for projectId=[{}], skillId=[{}], userId=[{}]:\n{}", min.projectId, min.skillId, data.userId, CProf.prettyPrint())
+            log.info("Profiled ImportedSkillAchievementTaskExecutor for skills=[{}], userId=[{}]:\n{}", skillsForLog, data.userId, CProf.prettyPrint())
         }
-        log.debug("Completed async imported skill achievement scheduled task for [{}-{}, {}], uuid=[{}]", min.projectId, min.skillId, data.userId, data.uuid)
+        log.debug("Completed async imported skill achievement scheduled task for [{}, {}], uuid=[{}]", skillsForLog, data.userId, data.uuid)
     }
 
-    private SkillDefMin getSkill(int id) {
-        try {
-            SkillDefMin min = skillDefRepo.findSkillDefMinById(id)
-            if (!min) {
-                throw new TaskConfig.DoNotRetryAsyncTaskException("Failed to find skillId with id=[${id}]")
+    // skills removed since the task was scheduled are skipped, the task is only dropped when none are left
+    private List<SkillDefMin> getSkills(List<Integer> ids) {
+        List<SkillDefMin> res = []
+        ids.each { Integer id ->
+            try {
+                SkillDefMin min = skillDefRepo.findSkillDefMinById(id)
+                if (min) {
+                    res.add(min)
+                } else {
+                    log.warn("Failed to find skillId with id=[{}], skipping", id)
+                }
+            } catch (EmptyResultDataAccessException e) {
+                log.warn("Failed to find skillId with id=[{}], skipping", id)
             }
-            return min
-        } catch (EmptyResultDataAccessException e) {
-            throw new TaskConfig.DoNotRetryAsyncTaskException(e)
         }
+        if (!res) {
+            throw new TaskConfig.DoNotRetryAsyncTaskException("Failed to find skills with ids=${ids}")
+        }
+        return res
     }
 }
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.tasks.executors
+
+import callStack.profiler.CProf
+import com.github.kagkarlsson.scheduler.task.ExecutionContext
+import com.github.kagkarlsson.scheduler.task.TaskInstance
+import com.github.kagkarlsson.scheduler.task.VoidExecutionHandler
+import groovy.util.logging.Slf4j
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Component
+import skills.services.admin.ProjectCopyService
+import skills.tasks.config.TaskConfig
+import skills.tasks.data.ProjectCopyRequest
+
+@Component
+@Slf4j
+class ProjectCopyTaskExecutor implements VoidExecutionHandler<ProjectCopyRequest> {
+
+    @Autowired
+    ProjectCopyService projectCopyService
+
+    @Override
+    void execute(TaskInstance<ProjectCopyRequest> taskInstance, ExecutionContext executionContext) {
+        ProjectCopyRequest data = taskInstance.getData()
+        log.debug("running async ProjectCopyTaskExecutor for job [{}]", data.jobId)
+
+        CProf.clear()
+        String profName = "${data.jobId}-project-copy".toString()
+        CProf.start(profName)
+        try {
+            projectCopyService.runCopy(data.jobId)
+        } catch (Throwable t) {
+            // the job was either marked as failed (and its partial copy removed) or already started by another run, re-running would not help
+            throw new TaskConfig.DoNotRetryAsyncTaskException("Failed to copy project for job [${data.jobId}]", t)
+        } finally {
+            CProf.stop(profName)
+            log.info("Profiled ProjectCopyTaskExecutor for job [{}]:\n{}", data.jobId, CProf.prettyPrint())
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.utils
+
+import com.google.common.hash.HashFunction
+import com.google.common.hash.Hashing
+import groovy.transform.CompileStatic
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+/**
+ * Mergeable distinct count estimator (HyperLogLog with precision 12, ~1.6% standard error).
+ *
+ * Small sets are kept as exact 64-bit hashes and switch to HyperLogLog registers once the exact representation
+ * would be larger than the registers, so counts of up to {@link #MAX_EXACT} distinct values are exact.
+ */
+@CompileStatic
+class DistinctCountSketch {
+
+    static final int PRECISION = 12
+    static final int NUM_REGISTERS = 1 << PRECISION
+    static final int MAX_EXACT = NUM_REGISTERS / 8 as int
+
+    private static final byte EXACT = 0
+    private static final byte REGISTERS = 1
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128()
+
+    private Set<Long> hashes = new HashSet<>()
+    private byte[] registers
+
+    void add(String value) {
+        addHash(HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong())
+    }
+
+    DistinctCountSketch merge(DistinctCountSketch other) {
+        if (other.registers != null) {
+            convertToRegisters()
+            for (int i = 0; i < NUM_REGISTERS; i++) {
+                if (other.registers[i] > registers[i]) {
+                    registers[i] = other.registers[i]
+                }
+            }
+        } else {
+            other.hashes.each { Long hash -> addHash(hash) }
+        }
+        return this
+    }
+
+    long estimate() {
+        if (registers == null) {
+            return hashes.size()
+        }
+        double sum = 0
+        int numZeros = 0
+        for (int i = 0; i < NUM_REGISTERS; i++) {
+            sum += Math.pow(2, -registers[i])
+            if (registers[i] == 0) {
+                numZeros++
+            }
+        }
+        double alpha = 0.7213d / (1 + 1.079d / NUM_REGISTERS)
+        double estimate = alpha * NUM_REGISTERS * NUM_REGISTERS / sum
+        if (estimate <= 2.5d * NUM_REGISTERS && numZeros > 0) {
+            // small range correction (linear counting)
+            estimate = NUM_REGISTERS * Math.log(NUM_REGISTERS / (double) numZeros)
+        }
+        return Math.round(estimate)
+    }
+
+    byte[] toBytes() {
+        if (registers == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + Integer.BYTES + hashes.size() * Long.BYTES)
+            buffer.put(EXACT)
+            buffer.putInt(hashes.size())
+            hashes.each { Long hash -> buffer.putLong(hash) }
+            return buffer.array()
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 + NUM_REGISTERS)
+        buffer.put(REGISTERS)
+        buffer.put(registers)
+        return buffer.array()
+    }
+
+    static DistinctCountSketch fromBytes(byte[] bytes) {
+        DistinctCountSketch sketch = new DistinctCountSketch()
+        if (bytes == null || bytes.length == 0) {
+            return sketch
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes)
+        byte type = buffer.get()
+        if (type == EXACT) {
+            int size = buffer.getInt()
+            for (int i = 0; i < size; i++) {
+                sketch.hashes.add(buffer.getLong())
+            }
+        } else {
+            sketch.registers = new byte[NUM_REGISTERS]
+            buffer.get(sketch.registers)
+            sketch.hashes = null
+        }
+        return sketch
+    }
+
+    private void addHash(long hash) {
+        if (registers == null) {
+            hashes.add(hash)
+            if (hashes.size() > MAX_EXACT) {
+                convertToRegisters()
+            }
+        } else {
+            int index = (int) (hash >>> (64 - PRECISION))
+            long remaining = hash << PRECISION
+            byte rank = (byte) (remaining == 0 ? 64 - PRECISION + 1 : Long.numberOfLeadingZeros(remaining) + 1)
+            if (rank > registers[index]) {
+                registers[index] = rank
+            }
+        }
+    }
+
+    private void convertToRegisters() {
+        if (registers == null) {
+            registers = new byte[NUM_REGISTERS]
+            Set<Long> exact = hashes
+            hashes = null
+            exact.each { Long hash -> addHash(hash) }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.utils
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+import org.springframework.http.HttpEntity
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpMethod
+import org.springframework.http.MediaType
+import org.springframework.web.client.RestTemplate
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Exports metrics messages to the external endpoint from a single background thread. Messages are held in a bounded
+ * buffer and, by default, sent one json object per request. Batching and gzip are opt-in since the endpoint must
+ * support them: when batch is enabled messages are sent as a json array once maxBatchSize messages are available or
+ * flushIntervalInMillis elapsed since the first message of the batch. Failed requests are retried with exponential backoff.
+ *
+ * Adding a message never blocks, when the buffer is full the {@link OverflowPolicy} decides which messages are dropped.
+ */
+@CompileStatic
+@Slf4j
+class MetricsExporter {
+
+    static enum OverflowPolicy {
+        // evict the oldest buffered message to make room for the new one
+        DropOldest,
+        // once the buffer is half full only every sampleRate-th message is accepted, new messages are dropped when full
+        Sample
+    }
+
+    static class Config {
+        String endpointUrl
+        int bufferSize = 10000
+        boolean batch = false
+        int maxBatchSize = 100
+        long flushIntervalInMillis = 1000
+        boolean gzip = false
+        int maxRetries = 3
+        long retryBackoffInMillis = 500
+        OverflowPolicy overflowPolicy = OverflowPolicy.DropOldest
+        int sampleRate = 10
+    }
+
+    private final Config config
+    private final RestTemplate restTemplate
+    private final ObjectMapper objectMapper = new ObjectMapper()
+    private final ArrayBlockingQueue<MetricsLogger.MetricsMessage> buffer
+    private final int batchSize
+    private final AtomicLong numOverflowed = new AtomicLong()
+    private final Thread sender
+    private volatile boolean running = true
+
+    private final Counter sent
+    private final Counter droppedOverflow
+    private final Counter droppedSampled
+    private final Counter droppedFailed
+    private final Timer latency
+
+    MetricsExporter(Config config, RestTemplate restTemplate, MeterRegistry meterRegistry) {
+        assert config.endpointUrl
+        assert config.bufferSize > 0
+        assert config.maxBatchSize > 0
+        assert config.flushIntervalInMillis > 0
+        assert config.sampleRate > 0
+        this.config = config
+        this.restTemplate = restTemplate
+        buffer = new ArrayBlockingQueue<>(config.bufferSize)
+        batchSize = config.batch ? config.maxBatchSize : 1
+
+        sent = meterRegistry.counter('skills.external.metrics.sent')
+        droppedOverflow = meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'overflow')
+        droppedSampled = meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'sampled')
+        droppedFailed = meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'failed')
+        latency = Timer.builder('skills.external.metrics.latency')
+                .description('Time to deliver a batch of metrics messages to the external endpoint, including retries')
+                .register(meterRegistry)
+        meterRegistry.gaugeCollectionSize('skills.external.metrics.buffered', Tags.empty(), buffer)
+
+        sender = new Thread({ run() } as Runnable, 'metrics-exporter')
+        sender.setDaemon(true)
+        sender.start()
+    }
+
+    void add(MetricsLogger.MetricsMessage message) {
+        if (config.overflowPolicy == OverflowPolicy.Sample && buffer.size() >= config.bufferSize.intdiv(2)) {
+            if (numOverflowed.getAndIncrement() % config.sampleRate != 0) {
+                droppedSampled.increment()
+                return
+            }
+        }
+        while (!buffer.offer(message)) {
+            if (config.overflowPolicy == OverflowPolicy.Sample) {
+                droppedOverflow.increment()
+                return
+            }
+            if (buffer.poll() != null) {
+                droppedOverflow.increment()
+            }
+        }
+    }
+
+    /**
+     * Stops the sender thread and makes one attempt to send the remaining messages
+     */
+    void shutdown(long waitInMillis = 5000) {
+        running = false
+        sender.interrupt()
+        sender.join(waitInMillis)
+        List<MetricsLogger.MetricsMessage> batch = []
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            if (!send(batch, 0)) {
+                break
+            }
+            batch.clear()
+        }
+    }
+
+    private void run() {
+        List<MetricsLogger.MetricsMessage> batch = []
+        while (running) {
+            try {
+                MetricsLogger.MetricsMessage first = buffer.poll(config.flushIntervalInMillis, TimeUnit.MILLISECONDS)
+                if (first == null) {
+                    continue
+                }
+                batch.add(first)
+                long deadline = System.currentTimeMillis() + config.flushIntervalInMillis
+                while (batch.size() < batchSize) {
+                    buffer.drainTo(batch, batchSize - batch.size())
+                    long remaining = deadline - System.currentTimeMillis()
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break
+                    }
+                    MetricsLogger.MetricsMessage next = buffer.poll(remaining, TimeUnit.MILLISECONDS)
+                    if (next == null) {
+                        break
+                    }
+                    batch.add(next)
+                }
+                send(batch, config.maxRetries)
+                batch.clear()
+            } catch (InterruptedException ignored) {
+                // shutting down, remaining messages are sent by shutdown()
+                batch.each { MetricsLogger.MetricsMessage message ->
+                    if (!buffer.offer(message)) {
+                        droppedOverflow.increment()
+                    }
+                }
+                batch.clear()
+            } catch (Throwable t) {
+                log.error("Unexpected failure while exporting metrics", t)
+                batch.clear()
+            }
+        }
+    }
+
+    private boolean send(List<MetricsLogger.MetricsMessage> batch, int maxRetries) {
+        HttpEntity<byte[]> entity = createEntity(batch)
+        long start = System.nanoTime()
+        long backoff = config.retryBackoffInMillis
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            try {
+                restTemplate.exchange(config.endpointUrl, HttpMethod.PUT, entity, Void)
+                latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+                sent.increment(batch.size())
+                return true
+            } catch (Exception ex) {
+                if (attempt == maxRetries) {
+                    log.error("Unable to report [${batch.size()}] message(s) to external metrics service after [${attempt + 1}] attempt(s)", ex)
+                } else {
+                    log.warn("Unable to report to external metrics service, retrying in [${backoff}] ms. Error: ${ex.message}")
+                    Thread.sleep(backoff)
+                    backoff = backoff * 2
+                }
+            }
+        }
+        droppedFailed.increment(batch.size())
+        return false
+    }
+
+    private HttpEntity<byte[]> createEntity(List<MetricsLogger.MetricsMessage> batch) {
+        HttpHeaders headers = new HttpHeaders()
+        headers.setContentType(MediaType.APPLICATION_JSON)
+        byte[] body = config.batch ? objectMapper.writeValueAsBytes(batch) : objectMapper.writeValueAsBytes(batch.first())
+        if (config.gzip) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length)
+            new GZIPOutputStream(out).withCloseable { GZIPOutputStream gzip -> gzip.write(body) }
+            body = out.toByteArray()
+            headers.set(HttpHeaders.CONTENT_ENCODING, 'gzip')
+        }
+        return new HttpEntity<byte[]>(body, headers)
+    }
+}
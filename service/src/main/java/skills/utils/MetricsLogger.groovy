@@ -16,16 +16,12 @@
 package skills.utils
 
 import callStack.profiler.Profile
-import callStack.utils.CachedThreadPool
-import callStack.utils.ThreadPoolUtils
 import groovy.transform.Canonical
 import groovy.util.logging.Slf4j
+import io.micrometer.core.instrument.MeterRegistry
 import org.apache.commons.lang3.StringUtils
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Value
-import org.springframework.http.HttpEntity
-import org.springframework.http.HttpHeaders
-import org.springframework.http.MediaType
 import org.springframework.stereotype.Component
 import org.springframework.web.bind.annotation.RequestBody
 import org.springframework.web.client.RestTemplate
@@ -36,6 +32,7 @@ import skills.controller.result.model.RequestResult
 import skills.services.events.SkillEventResult
 
 import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
 
 @Component
 @Slf4j
@@ -47,11 +44,32 @@ class MetricsLogger {
     @Value('${skills.external.metrics.endpoint.url:#{null}}')
     String endpointUrl
 
-    @Value('#{"${skills.external.metrics.minNumOfThreads:3}"}')
-    Integer minNumOfThreads
+    @Value('#{"${skills.external.metrics.bufferSize:10000}"}')
+    Integer bufferSize
 
-    @Value('#{"${skills.external.metrics.maxNumOfThreads:10}"}')
-    Integer maxNumOfThreads
+    @Value('#{"${skills.external.metrics.batch:false}"}')
+    Boolean batch
+
+    @Value('#{"${skills.external.metrics.maxBatchSize:100}"}')
+    Integer maxBatchSize
+
+    @Value('#{"${skills.external.metrics.flushIntervalInMillis:1000}"}')
+    Long flushIntervalInMillis
+
+    @Value('#{"${skills.external.metrics.gzip:false}"}')
+    Boolean gzip
+
+    @Value('#{"${skills.external.metrics.maxRetries:3}"}')
+    Integer maxRetries
+
+    @Value('#{"${skills.external.metrics.retryBackoffInMillis:500}"}')
+    Long retryBackoffInMillis
+
+    @Value('#{"${skills.external.metrics.overflowPolicy:DropOldest}"}')
+    MetricsExporter.OverflowPolicy overflowPolicy
+
+    @Value('#{"${skills.external.metrics.sampleRate:10}"}')
+    Integer sampleRate
 
     @Value('${skills.config.ui.enablePageVisitReporting:#{false}}')
     Boolean enablePageVisitReporting
@@ -59,8 +77,10 @@ class MetricsLogger {
     @Autowired
     UserInfoService userInfoService
 
-    private RestTemplate restTemplate
-    private CachedThreadPool pool
+    @Autowired
+    MeterRegistry meterRegistry
+
+    private MetricsExporter exporter
 
     static enum MetricType {
         PageVisit, SkillReported
@@ -71,14 +91,29 @@ class MetricsLogger {
         if (enabled) {
             log.info("Enabling external tool reporting to endpoint [{}]", endpointUrl)
             assert endpointUrl
-            restTemplate = new RestTemplate();
-            pool = new CachedThreadPool('metrics-logger', minNumOfThreads, maxNumOfThreads)
+            exporter = new MetricsExporter(new MetricsExporter.Config(
+                    endpointUrl: endpointUrl,
+                    bufferSize: bufferSize,
+                    batch: batch,
+                    maxBatchSize: maxBatchSize,
+                    flushIntervalInMillis: flushIntervalInMillis,
+                    gzip: gzip,
+                    maxRetries: maxRetries,
+                    retryBackoffInMillis: retryBackoffInMillis,
+                    overflowPolicy: overflowPolicy,
+                    sampleRate: sampleRate,
+            ), new RestTemplate(), meterRegistry)
             if (enablePageVisitReporting) {
                 log.info("Page visit reporting is enabled")
             }
         }
     }
 
+    @PreDestroy
+    void shutdown() {
+        exporter?.shutdown()
+    }
+
     @Profile
     void logSkillReported(String userId, SkillEventResult result) {
         log([
@@ -115,18 +150,8 @@ class MetricsLogger {
             // user attributes must be obtained from the current thread
             attributes.putAll(getUserAttributes())
 
-            // report to external service in a separate thread
-            pool.submit([ThreadPoolUtils.callable {
-                MetricsMessage message = new MetricsMessage(attributes)
-                HttpHeaders headers = new HttpHeaders();
-                headers.setContentType(MediaType.APPLICATION_JSON);
-                HttpEntity<MetricsMessage> entity = new HttpEntity<>(message, headers);
-                try {
-                    restTemplate.put(endpointUrl, entity);
-                } catch(Exception ex) {
-                    log.error("Unable to report to external metrics service", ex)
-                }
-            }])
+            // reported to external service from a separate thread
+            exporter.add(new MetricsMessage(attributes))
         }
     }
 
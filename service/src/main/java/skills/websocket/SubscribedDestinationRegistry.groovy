@@ -46,6 +46,9 @@ class SubscribedDestinationRegistry implements ApplicationListener<AbstractSubPr
 
     private ConcurrentMap<String, ConcurrentSkipListSet<String>> sessionToDestinationRegistry = new ConcurrentHashMap<>()
     private ConcurrentMap<String, ConcurrentSkipListSet<String>> userToSessionRegistry = new ConcurrentHashMap<>()
+    // unique destinations (without the '/user' prefix) across all of the user's sessions, re-built on every
+    // subscribe/disconnect so that publishing does not have to walk the sessions
+    private ConcurrentMap<String, List<String>> userToDestinations = new ConcurrentHashMap<>()
 
     void add(String user, String sessionId, String destination) {
         log.debug("user [{}] subscribed to [{}}]", user, destination)
@@ -53,6 +56,7 @@ class SubscribedDestinationRegistry implements ApplicationListener<AbstractSubPr
         destinations.add(destination)
         ConcurrentSkipListSet<String> sessions = userToSessionRegistry.computeIfAbsent(user, skipListCreator)
         sessions.add(sessionId)
+        refreshDestinations(user)
     }
 
     void remove(String user, String sessionId) {
@@ -66,17 +70,30 @@ class SubscribedDestinationRegistry implements ApplicationListener<AbstractSubPr
         })
 
         sessionToDestinationRegistry.remove(sessionId)
+        refreshDestinations(user)
     }
 
-    List<String> getAllDestinationsForUser(String user) {
-        ConcurrentSkipListSet<String> sessions = userToSessionRegistry.get(user)
-        List<String> destinations = []
-        sessions?.each {
-            ConcurrentSkipListSet<String> d = sessionToDestinationRegistry.get(it)
-            destinations.addAll(d)
-        }
+    /**
+     * @return unmodifiable list of unique destinations the user is subscribed to with the '/user' prefix removed
+     */
+    List<String> getDestinationsForUser(String user) {
+        return userToDestinations.get(user) ?: Collections.<String>emptyList()
+    }
 
-        return destinations
+    private void refreshDestinations(String user) {
+        // compute() serializes concurrent refreshes of the same user and each one reads the latest sessions
+        userToDestinations.compute(user, new BiFunction<String, List<String>, List<String>>() {
+            @Override
+            List<String> apply(String u, List<String> existing) {
+                Set<String> destinations = new LinkedHashSet<>()
+                userToSessionRegistry.get(u)?.each { String sessionId ->
+                    sessionToDestinationRegistry.get(sessionId)?.each { String destination ->
+                        destinations.add(destination.replace("/user", ""))
+                    }
+                }
+                return destinations ? Collections.unmodifiableList(new ArrayList<String>(destinations)) : null
+            }
+        })
     }
 
     @Override
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.auth
+
+import org.springframework.beans.factory.annotation.Autowired
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.services.UserAttrsService
+import skills.storage.model.UserAttrs
+import skills.storage.model.UserTag
+import skills.storage.model.auth.RoleName
+import skills.storage.repos.UserAttrsRepo
+import skills.storage.repos.UserTagRepo
+import skills.utils.WaitFor
+
+class UserRecordsCacheSpec extends DefaultIntSpec {
+
+    @Autowired
+    UserRecordsCache userRecordsCache
+
+    @Autowired
+    UserAttrsService userAttrsService
+
+    @Autowired
+    UserAttrsRepo userAttrsRepo
+
+    @Autowired
+    UserTagRepo userTagRepo
+
+    def "cached user records are replaced once the user's roles change"() {
+        def proj = SkillsFactory.createProject()
+        skillsService.createProject(proj)
+        String userId = getRandomUsers(1)[0]
+        createService(userId)
+
+        when:
+        UserRecordsCache.Entry loaded = userRecordsCache.get(userId)
+        UserRecordsCache.Entry cached = userRecordsCache.get(userId)
+        skillsService.addProjectAdmin(proj.projectId, userId)
+        UserRecordsCache.Entry afterRoleChange = userRecordsCache.get(userId)
+
+        then:
+        loaded.user.userId == userId.toLowerCase()
+        cached.is(loaded)
+        !loaded.roles.find { it.roleName == RoleName.ROLE_PROJECT_ADMIN }
+        afterRoleChange.roles.find { it.roleName == RoleName.ROLE_PROJECT_ADMIN && it.projectId == proj.projectId }
+    }
+
+    def "cached user records are replaced once the user's attributes change"() {
+        String userId = getRandomUsers(1)[0]
+        createService(userId)
+
+        when:
+        UserRecordsCache.Entry loaded = userRecordsCache.get(userId)
+        userAttrsService.saveUserAttrs(userId, new UserInfo(username: userId, firstName: 'Changed'))
+        UserRecordsCache.Entry afterChange = userRecordsCache.get(userId)
+
+        then:
+        loaded.userAttrs.firstName != 'Changed'
+        afterChange.userAttrs.firstName == 'Changed'
+    }
+
+    def "due user tags refresh of an unchanged user is applied in the background"() {
+        String userId = getRandomUsers(1)[0]
+        createService(userId)
+        UserAttrs userAttrs = userAttrsRepo.findByUserId(userId.toLowerCase())
+        Date tagsLastUpdated = new Date() - 30
+        userAttrs.userTagsLastUpdated = tagsLastUpdated
+        userAttrsRepo.save(userAttrs)
+
+        when:
+        UserAttrs res = userAttrsService.saveUserAttrs(userId, new UserInfo(username: userId, userTags: [org: 'abc']))
+        userAttrsService.flushPendingUserTagsRefreshes()
+
+        then:
+        // returned right away without updating the record
+        res.userTagsLastUpdated.time == tagsLastUpdated.time
+        WaitFor.wait { userTagRepo.findAllByUserId(userId.toLowerCase()).collect { UserTag tag -> "${tag.key}=${tag.value}".toString() } == ['org=abc'] }
+        userAttrsRepo.findByUserId(userId.toLowerCase()).userTagsLastUpdated.after(tagsLastUpdated)
+    }
+}
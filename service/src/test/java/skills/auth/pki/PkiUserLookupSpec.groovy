@@ -0,0 +1,213 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.auth.pki
+
+import com.github.benmanes.caffeine.cache.Ticker
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.web.client.HttpClientErrorException
+import org.springframework.web.client.RestTemplate
+import skills.auth.UserInfo
+import skills.controller.exceptions.SkillException
+import skills.utils.WaitFor
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+class PkiUserLookupSpec extends Specification {
+
+    static class FakeTicker implements Ticker {
+        AtomicLong nanos = new AtomicLong()
+
+        @Override
+        long read() {
+            return nanos.get()
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration))
+        }
+    }
+
+    HttpServer server
+    Map<String, String> displayNamesByDn = new ConcurrentHashMap<>()
+    AtomicInteger numSingleLookups = new AtomicInteger()
+    AtomicInteger numBulkLookups = new AtomicInteger()
+    List<Integer> bulkRequestSizes = Collections.synchronizedList([])
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    FakeTicker ticker = new FakeTicker()
+    PkiUserLookup pkiUserLookup
+
+    def setup() {
+        server = HttpServer.create(new InetSocketAddress('localhost', 0), 0)
+        server.createContext('/userInfo') { HttpExchange exchange ->
+            numSingleLookups.incrementAndGet()
+            String dn = URLDecoder.decode(exchange.requestURI.rawQuery.substring('dn='.length()), 'UTF-8')
+            if (displayNamesByDn.containsKey(dn)) {
+                respond(exchange, userJson(dn))
+            } else {
+                exchange.sendResponseHeaders(404, -1)
+                exchange.close()
+            }
+        }
+        server.createContext('/bulkUserInfo') { HttpExchange exchange ->
+            numBulkLookups.incrementAndGet()
+            assert exchange.requestMethod == 'POST'
+            List<String> dns = (List<String>) new JsonSlurper().parse(exchange.requestBody)
+            bulkRequestSizes.add(dns.size())
+            respond(exchange, dns.findAll { displayNamesByDn.containsKey(it) }.collect { userJson(it) })
+        }
+        server.start()
+        (1..5).each { displayNamesByDn.put(dn(it), "User ${it}".toString()) }
+    }
+
+    def cleanup() {
+        pkiUserLookup?.destroy()
+        server.stop(0)
+    }
+
+    private static String dn(int num) {
+        return "CN=User ${num}, OU=People, O=Org".toString()
+    }
+
+    private Map userJson(String dn) {
+        return [username: dn.toLowerCase(), usernameForDisplay: displayNamesByDn.get(dn), userDn: dn]
+    }
+
+    private static void respond(HttpExchange exchange, Object body) {
+        byte[] bytes = JsonOutput.toJson(body).getBytes('UTF-8')
+        exchange.responseHeaders.add('Content-Type', 'application/json')
+        exchange.sendResponseHeaders(200, bytes.length)
+        exchange.responseBody.write(bytes)
+        exchange.close()
+    }
+
+    private PkiUserLookup createLookup(Map props = [:]) {
+        PkiUserLookup lookup = new PkiUserLookup(
+                restTemplate: new RestTemplate(),
+                meterRegistry: meterRegistry,
+                userInfoUri: "http://localhost:${server.address.port}/userInfo?dn={dn}".toString(),
+                bulkBatchSize: 100,
+                lookupThreads: 4,
+                cacheExpirationHours: 1,
+                refreshAheadPercent: 80,
+                negativeCacheExpirationSeconds: 60,
+                cacheMaxSize: 1000,
+                ticker: ticker,
+        )
+        props.each { String k, v -> lookup[k] = v }
+        lookup.configureCache()
+        return lookup
+    }
+
+    def "many DNs are resolved with one bulk call per batch"() {
+        pkiUserLookup = createLookup(userInfoBulkUri: "http://localhost:${server.address.port}/bulkUserInfo".toString(), bulkBatchSize: 2)
+
+        when:
+        Map<String, UserInfo> res = pkiUserLookup.lookupUserDns([dn(1), dn(2), dn(3), 'CN=Unknown'])
+        UserInfo cachedUser = pkiUserLookup.lookupUserDn(dn(2))
+        pkiUserLookup.lookupUserDn('CN=Unknown')
+
+        then:
+        thrown(SkillException)
+        res.keySet() == [dn(1), dn(2), dn(3)] as Set
+        res[dn(3)].usernameForDisplay == 'User 3'
+        cachedUser.usernameForDisplay == 'User 2'
+        numBulkLookups.get() == 2
+        bulkRequestSizes.sort() == [2, 2]
+        numSingleLookups.get() == 0
+    }
+
+    def "without a bulk endpoint many DNs are resolved with parallel single lookups"() {
+        pkiUserLookup = createLookup()
+
+        when:
+        Map<String, UserInfo> res = pkiUserLookup.lookupUserDns((1..5).collect { dn(it) } + ['CN=Unknown'])
+        Map<String, UserInfo> res1 = pkiUserLookup.lookupUserDns((1..5).collect { dn(it) })
+
+        then:
+        res.keySet() == (1..5).collect { dn(it) } as Set
+        res1 == res
+        numSingleLookups.get() == 6
+    }
+
+    def "unknown DNs are cached for a short period of time"() {
+        pkiUserLookup = createLookup()
+
+        when:
+        pkiUserLookup.lookupUserDn('CN=Unknown')
+        then:
+        thrown(HttpClientErrorException.NotFound)
+        numSingleLookups.get() == 1
+
+        when:
+        pkiUserLookup.lookupUserDn('CN=Unknown')
+        then:
+        thrown(HttpClientErrorException.NotFound)
+        numSingleLookups.get() == 1
+
+        when:
+        displayNamesByDn.put('CN=Unknown', 'Now Known')
+        ticker.advance(61, TimeUnit.SECONDS)
+        UserInfo userInfo = pkiUserLookup.lookupUserDn('CN=Unknown')
+        then:
+        userInfo.usernameForDisplay == 'Now Known'
+        numSingleLookups.get() == 2
+    }
+
+    def "entries are refreshed in the background before they expire"() {
+        pkiUserLookup = createLookup()
+
+        when:
+        UserInfo original = pkiUserLookup.lookupUserDn(dn(1))
+        displayNamesByDn.put(dn(1), 'Renamed')
+        ticker.advance(30, TimeUnit.MINUTES)
+        UserInfo beforeRefresh = pkiUserLookup.lookupUserDn(dn(1))
+        int numLookupsBeforeRefresh = numSingleLookups.get()
+
+        ticker.advance(20, TimeUnit.MINUTES)
+        // stale value is served while the refresh happens in the background
+        UserInfo duringRefresh = pkiUserLookup.lookupUserDn(dn(1))
+        assert WaitFor.wait(5) { pkiUserLookup.lookupUserDn(dn(1)).usernameForDisplay == 'Renamed' }
+
+        then:
+        original.usernameForDisplay == 'User 1'
+        beforeRefresh.usernameForDisplay == 'User 1'
+        numLookupsBeforeRefresh == 1
+        duringRefresh.usernameForDisplay == 'User 1'
+        numSingleLookups.get() == 2
+    }
+
+    def "cache and lookup latency metrics are recorded"() {
+        pkiUserLookup = createLookup()
+
+        when:
+        pkiUserLookup.lookupUserDn(dn(1))
+        pkiUserLookup.lookupUserDn(dn(1))
+        pkiUserLookup.lookupUserDn(dn(2))
+
+        then:
+        meterRegistry.get('cache.gets').tags('cache', PkiUserLookup.CACHE_NAME, 'result', 'hit').functionCounter().count() == 1
+        meterRegistry.get('cache.gets').tags('cache', PkiUserLookup.CACHE_NAME, 'result', 'miss').functionCounter().count() == 2
+        meterRegistry.get('skills.userInfo.lookup').tags('type', 'single').timer().count() == 2
+    }
+}
@@ -28,6 +28,7 @@ import skills.auth.UserInfo
 import skills.controller.exceptions.ErrorCode
 import skills.controller.exceptions.SkillException
 import skills.controller.request.model.SkillEventRequest
+import skills.controller.request.model.SkillEventsRequest
 import skills.services.events.SkillEventResult
 import spock.lang.IgnoreRest
 import spock.lang.Specification
@@ -95,6 +96,67 @@ class UpgradeInProgressFilterSpec extends Specification {
         }, _, _)
     }
 
+    def "requests to add multiple skill events are queued"() {
+        def upgradeSafeUrlDecider = Mock(UpgradeSafeUrlDecider)
+        def skillEventQueue = Mock(ReportedSkillEventQueue)
+        def mockMessageConverter = Mock(HttpMessageConverter)
+        def mockResponse = Mock(HttpServletResponse )
+        def mockFilterChain = Mock(FilterChain)
+        def authentication = Mock(Authentication)
+        def securityContext = Mock(SecurityContext)
+        def userInfo = Mock(UserInfo)
+
+        securityContext.getAuthentication() >> authentication
+        authentication.isAuthenticated() >> true
+        authentication.getPrincipal() >> userInfo
+        userInfo.getUsername() >> "userMakingRequest"
+
+        SecurityContextHolder.setContext(securityContext)
+
+        MockHttpServletRequest mockRequest = post("/api/projects/foo/skillEvents")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{fake}").buildRequest()
+
+        SkillEventsRequest skillEventsRequest = new SkillEventsRequest(userId: "aUser", events: [
+                new SkillEventsRequest.Event(skillId: "skill1", timestamp: 1000L),
+                new SkillEventsRequest.Event(skillId: "skill2"),
+        ])
+
+        when:
+        UpgradeInProgressFilter progressFilter = new UpgradeInProgressFilter()
+        progressFilter.configuredMessageConverters = [mockMessageConverter]
+        progressFilter.safeUrlDecider = upgradeSafeUrlDecider
+        progressFilter.skillEventQueue = skillEventQueue
+
+        progressFilter.doFilter(mockRequest, mockResponse, mockFilterChain)
+
+        then:
+        1 * upgradeSafeUrlDecider.isSkillEventReport("/api/projects/foo/skillEvents", HttpMethod.POST) >> null
+        1 * upgradeSafeUrlDecider.isSkillEventsReport("/api/projects/foo/skillEvents", HttpMethod.POST) >> "foo"
+        1 * mockMessageConverter.canRead(SkillEventsRequest, MediaType.APPLICATION_JSON) >> true
+        1 * mockMessageConverter.read(SkillEventsRequest, _) >> skillEventsRequest
+        1 * skillEventQueue.queueEvent({ QueuedSkillEvent qe ->
+            qe.userId == "userMakingRequest" &&
+            qe.skillId == "skill1" &&
+            qe.projectId == "foo" &&
+            qe.skillEventRequest.userId == "aUser" &&
+            qe.skillEventRequest.timestamp == 1000L
+        })
+        1 * skillEventQueue.queueEvent({ QueuedSkillEvent qe ->
+            qe.skillId == "skill2" &&
+            qe.projectId == "foo" &&
+            qe.skillEventRequest.userId == "aUser" &&
+            qe.skillEventRequest.timestamp == null
+        })
+        1 * mockMessageConverter.canWrite(List, _) >> true
+        1 * mockMessageConverter.write({ List<SkillEventResult> results ->
+            results.collect { it.skillId } == ["skill1", "skill2"] &&
+            results.every { it.projectId == "foo" && !it.skillApplied }
+        }, _, _)
+        0 * mockFilterChain.doFilter(_, _)
+    }
+
     def "GET requests are ignored by the filter"() {
         def upgradeSafeUrlDecider = Mock(UpgradeSafeUrlDecider)
         def skillEventQueue = Mock(ReportedSkillEventQueue)
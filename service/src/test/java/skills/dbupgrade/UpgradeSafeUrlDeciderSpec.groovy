@@ -77,4 +77,19 @@ class UpgradeSafeUrlDeciderSpec extends Specification {
         put.skillId == "mySkill"
         put.requestTime
     }
+
+    def "multiple skill events reporting is identified"() {
+        UpgradeSafeUrlDecider upgradeSafeUrlDecider = new UpgradeSafeUrlDecider()
+        upgradeSafeUrlDecider.init()
+
+        expect:
+        upgradeSafeUrlDecider.isSkillEventsReport(url, method) == projectId
+
+        where:
+        url | method | projectId
+        "/api/projects/myProj/skillEvents" | HttpMethod.POST | "myProj"
+        "/api/projects/myProj/skillEvents" | HttpMethod.PUT | "myProj"
+        "/api/projects/myProj/skillEvents" | HttpMethod.DELETE | null
+        "/api/projects/myProj/skills/mySkill" | HttpMethod.POST | null
+    }
 }
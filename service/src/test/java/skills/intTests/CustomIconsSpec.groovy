@@ -17,6 +17,9 @@ package skills.intTests
 
 
 import org.springframework.core.io.ClassPathResource
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
 import skills.intTests.utils.DefaultIntSpec
 import skills.intTests.utils.SkillsFactory
 import skills.intTests.utils.SkillsService
@@ -73,4 +76,88 @@ class CustomIconsSpec extends DefaultIntSpec {
         clientDisplayRes.toString().startsWith(".TestProject1-dot2png {\tbackground-image: url(")
     }
 
+    def "project named global does not share its css with the global icons"(){
+        ClassPathResource resource = new ClassPathResource("/dot2.png")
+        skillsService.deleteProjectIfExist('global')
+        skillsService.createProject([projectId: 'global', name: "Global Named Project"])
+
+        when:
+        ResponseEntity<String> globalCssBefore = getCss("api/icons/customIconCss")
+        skillsService.uploadIcon([projectId: 'global'], resource.getFile())
+        ResponseEntity<String> projectCss = getCss("api/projects/global/customIconCss")
+        ResponseEntity<String> globalCssAfter = getCss("api/icons/customIconCss")
+
+        then:
+        projectCss.body.startsWith(".global-dot2png {\tbackground-image: url(")
+        !globalCssAfter.body?.contains("global-dot2png")
+        globalCssAfter.headers.getETag() == globalCssBefore.headers.getETag()
+    }
+
+    def "css is served with a strong content ETag and is immutable under its hashed url"(){
+        ClassPathResource resource = new ClassPathResource("/dot2.png")
+        skillsService.createProject([projectId: projId, name: "Test Icon Project"])
+        String endpoint = "api/projects/${projId}/customIconCss"
+
+        when:
+        ResponseEntity<String> empty = getCss(endpoint)
+        skillsService.uploadIcon([projectId:(projId)], resource.getFile())
+        ResponseEntity<String> withIcon = getCss(endpoint)
+        ResponseEntity<String> unchanged = getCss(endpoint, withIcon.headers.getETag())
+        String hash = skillsService.getPublicClientDisplayConfigs(projId).customIconCssHash
+        ResponseEntity<String> hashed = getCss("${endpoint}/${hash}")
+        skillsService.deleteIcon([projectId:(projId), filename: "dot2.png"])
+        ResponseEntity<String> afterDelete = getCss(endpoint, withIcon.headers.getETag())
+
+        then:
+        !empty.body
+        withIcon.headers.getETag() != empty.headers.getETag()
+        !withIcon.headers.getETag().startsWith('W/')
+        withIcon.headers.getETag().contains(hash)
+        withIcon.headers.getVary().contains(HttpHeaders.ACCEPT_ENCODING)
+        withIcon.headers.getCacheControl() == "no-cache, private"
+        withIcon.body.startsWith(".TestProject1-dot2png {\tbackground-image: url(")
+
+        unchanged.statusCode == HttpStatus.NOT_MODIFIED
+
+        hashed.headers.getCacheControl() == "max-age=31536000, private, immutable"
+        hashed.body == withIcon.body
+
+        afterDelete.statusCode == HttpStatus.OK
+        afterDelete.headers.getETag() == empty.headers.getETag()
+        !afterDelete.body
+    }
+
+    def "gzipped and identity css are tagged with different ETags"(){
+        ClassPathResource resource = new ClassPathResource("/dot2.png")
+        skillsService.createProject([projectId: projId, name: "Test Icon Project"])
+        skillsService.uploadIcon([projectId:(projId)], resource.getFile())
+        String endpoint = "api/projects/${projId}/customIconCss"
+        String hash = skillsService.getPublicClientDisplayConfigs(projId).customIconCssHash
+
+        when:
+        ResponseEntity<String> identity = getCss(endpoint, null, 'identity')
+        ResponseEntity<String> identityUnchanged = getCss(endpoint, identity.headers.getETag(), 'identity')
+        ResponseEntity<String> gzipWithIdentityETag = getCss(endpoint, identity.headers.getETag(), 'gzip')
+        ResponseEntity<String> identityAgain = getCss(endpoint, null, 'identity')
+
+        then:
+        identity.headers.getETag() == "\"${hash}\"".toString()
+        !identity.headers.getFirst(HttpHeaders.CONTENT_ENCODING)
+        identity.body.startsWith(".TestProject1-dot2png {\tbackground-image: url(")
+        identityUnchanged.statusCode == HttpStatus.NOT_MODIFIED
+        gzipWithIdentityETag.statusCode == HttpStatus.OK
+        gzipWithIdentityETag.headers.getETag() == "\"${hash}-gzip\"".toString()
+        identityAgain.body == identity.body
+    }
+
+    private ResponseEntity<String> getCss(String endpoint, String etag = null, String acceptEncoding = null) {
+        HttpHeaders headers = new HttpHeaders()
+        if (etag) {
+            headers.setIfNoneMatch(etag)
+        }
+        if (acceptEncoding) {
+            headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding)
+        }
+        return skillsService.wsHelper.rawGet(endpoint.toString(), null, headers)
+    }
 }
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests
+
+import groovy.time.TimeCategory
+import org.springframework.beans.factory.annotation.Autowired
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.skillLoading.PointsHistoryLedger
+import skills.skillLoading.SkillsLoader
+import skills.skillLoading.model.SkillHistoryPoints
+import skills.storage.model.UserPointsHistory
+import skills.storage.repos.UserPointsHistoryRepo
+import skills.utils.WaitFor
+
+class PointsHistoryLedgerSpecs extends DefaultIntSpec {
+
+    @Autowired
+    SkillsLoader skillsLoader
+
+    @Autowired
+    PointsHistoryLedger pointsHistoryLedger
+
+    @Autowired
+    UserPointsHistoryRepo userPointsHistoryRepo
+
+    def "history reflects reported and removed skill events"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10, 1, 1, 100)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        String userId = getRandomUsers(1).first()
+        Date fiveDaysAgo
+        use(TimeCategory) {
+            skillsService.addSkill(skills[0], userId, 10.days.ago)
+            fiveDaysAgo = 5.days.ago
+            skillsService.addSkill(skills[1], userId, fiveDaysAgo)
+            skillsService.addSkill(skills[2], userId, 1.days.ago)
+        }
+
+        when:
+        def historyBefore = skillsService.getPointHistory(userId, proj.projectId)
+        waitForLedger(proj.projectId, userId)
+        skillsService.addSkill(skills[3], userId, new Date())
+        skillsService.deleteSkillEvent([projectId: proj.projectId, skillId: skills[1].skillId, userId: userId, timestamp: fiveDaysAgo.time])
+        def historyAfter = skillsService.getPointHistory(userId, proj.projectId)
+        List<UserPointsHistory> rows = userPointsHistoryRepo.findAll().findAll { it.userId == userId }
+
+        then:
+        historyBefore.pointsHistory.size() == 11
+        historyBefore.pointsHistory.first().points == 100
+        historyBefore.pointsHistory.last().points == 300
+
+        historyAfter.pointsHistory.size() == 11
+        historyAfter.pointsHistory.first().points == 100
+        historyAfter.pointsHistory[5].points == 100
+        historyAfter.pointsHistory.last().points == 300
+        // removed events leave an empty day behind rather than triggering a rebuild
+        rows.find { it.dayPerformed == fiveDaysAgo.clearTime() }.points == 0
+        rows.sum { it.points } == 300
+
+        pointHistory(proj.projectId, userId, 365) == legacyPointHistory(proj.projectId, userId, 365)
+    }
+
+    def "history is rebuilt when skill points change"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10, 1, 1, 100)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        String userId = getRandomUsers(1).first()
+        use(TimeCategory) {
+            skillsService.addSkill(skills[0], userId, 3.days.ago)
+            skillsService.addSkill(skills[1], userId, 1.days.ago)
+        }
+
+        when:
+        def historyBefore = skillsService.getPointHistory(userId, proj.projectId)
+        Date builtBefore = waitForLedger(proj.projectId, userId)
+        skills[0].pointIncrement = 50
+        skillsService.createSkill(skills[0])
+        def historyAfter = skillsService.getPointHistory(userId, proj.projectId)
+        Date builtAfter = waitForLedger(proj.projectId, userId, builtBefore)
+
+        then:
+        historyBefore.pointsHistory.points == [100, 100, 200, 200]
+        historyAfter.pointsHistory.points == [50, 50, 150, 150]
+        builtAfter.after(builtBefore)
+        pointHistory(proj.projectId, userId, 365) == legacyPointHistory(proj.projectId, userId, 365)
+    }
+
+    def "history is not rebuilt when definitions change without affecting points"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10, 1, 1, 100)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        String userId = getRandomUsers(1).first()
+        use(TimeCategory) {
+            skillsService.addSkill(skills[0], userId, 3.days.ago)
+            skillsService.addSkill(skills[1], userId, 1.days.ago)
+        }
+
+        when:
+        skillsService.getPointHistory(userId, proj.projectId)
+        Date builtBefore = waitForLedger(proj.projectId, userId)
+        skills[0].name = 'Renamed Skill'
+        skillsService.createSkill(skills[0])
+        def historyAfter = skillsService.getPointHistory(userId, proj.projectId)
+
+        then:
+        historyAfter.pointsHistory.points == [100, 100, 200, 200]
+        userPointsHistoryRepo.findBuilt(proj.projectId, userId) == builtBefore
+    }
+
+    def "subject history includes skills group children"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def subj2 = SkillsFactory.createSubject(1, 2)
+        def skills = SkillsFactory.createSkills(10, 1, 1, 100)
+        def subj2Skills = SkillsFactory.createSkills(2, 1, 2, 100)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+        skillsService.createSubject(subj2)
+        skillsService.createSkills(subj2Skills)
+
+        def skillsGroup = SkillsFactory.createSkillsGroup(1, 1, 20)
+        skillsService.createSkill(skillsGroup)
+        def groupChildren = [SkillsFactory.createSkill(1, 1, 21, 0, 1, 480, 40), SkillsFactory.createSkill(1, 1, 22, 0, 1, 480, 40)]
+        groupChildren.each { skillsService.assignSkillToSkillsGroup(skillsGroup.skillId, it) }
+
+        String userId = getRandomUsers(1).first()
+        use(TimeCategory) {
+            skillsService.addSkill(skills[0], userId, 4.days.ago)
+            skillsService.addSkill(groupChildren[0], userId, 4.days.ago)
+            skillsService.addSkill(subj2Skills[0], userId, 2.days.ago)
+            skillsService.addSkill(groupChildren[1], userId, 1.days.ago)
+        }
+
+        when:
+        def subjectHistory = skillsService.getPointHistory(userId, proj.projectId, subj.subjectId)
+        def subject2History = skillsService.getPointHistory(userId, proj.projectId, subj2.subjectId)
+        def projectHistory = skillsService.getPointHistory(userId, proj.projectId)
+
+        then:
+        subjectHistory.pointsHistory.points == [140, 140, 140, 180, 180]
+        !subject2History.pointsHistory
+        projectHistory.pointsHistory.points == [140, 140, 240, 280, 280]
+        pointHistory(proj.projectId, userId, 365, subj.subjectId) == legacyPointHistory(proj.projectId, userId, 365, subj.subjectId)
+        pointHistory(proj.projectId, userId, 365) == legacyPointHistory(proj.projectId, userId, 365)
+    }
+
+    def "days before the requested window are folded into its first day"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10, 1, 1, 100)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        List<String> users = getRandomUsers(2)
+        use(TimeCategory) {
+            skillsService.addSkill(skills[0], users[0], 10.days.ago)
+            skillsService.addSkill(skills[1], users[0], 8.days.ago)
+            skillsService.addSkill(skills[2], users[0], 1.days.ago)
+
+            skillsService.addSkill(skills[0], users[1], 10.days.ago)
+            skillsService.addSkill(skills[1], users[1], 8.days.ago)
+        }
+
+        when:
+        List<List> user1History = pointHistory(proj.projectId, users[0], 3)
+        List<List> user2History = pointHistory(proj.projectId, users[1], 3)
+
+        then:
+        user1History.collect { it[1] } == [200, 200, 300, 300]
+        user1History == legacyPointHistory(proj.projectId, users[0], 3)
+        user2History.collect { it[1] } == [200, 200, 200, 200]
+        user2History == legacyPointHistory(proj.projectId, users[1], 3)
+    }
+
+    private Date waitForLedger(String projectId, String userId, Date builtAfter = null) {
+        Date built = null
+        assert WaitFor.wait {
+            built = userPointsHistoryRepo.findBuilt(projectId, userId)
+            built && (!builtAfter || built.after(builtAfter))
+        }
+        return built
+    }
+
+    private List<List> pointHistory(String projectId, String userId, int showHistoryForNumDays, String subjectId = null) {
+        List<SkillHistoryPoints> history = skillsLoader.loadPointHistorySummary(projectId, userId, showHistoryForNumDays, subjectId).pointsHistory
+        return history.collect { [it.dayPerformed, it.points] }
+    }
+
+    private List<List> legacyPointHistory(String projectId, String userId, int showHistoryForNumDays, String subjectId = null) {
+        pointsHistoryLedger.enabled = false
+        try {
+            return pointHistory(projectId, userId, showHistoryForNumDays, subjectId)
+        } finally {
+            pointsHistoryLedger.enabled = true
+        }
+    }
+}
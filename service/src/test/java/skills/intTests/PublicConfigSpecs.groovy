@@ -16,6 +16,7 @@
 package skills.intTests
 
 import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
 import spock.lang.IgnoreIf
 import spock.lang.Requires
 
@@ -78,5 +79,21 @@ class PublicConfigSpecs extends DefaultIntSpec {
         config
         config.docsHost == "https://code.nsa.gov/skills-docs"
         config.enablePageVisitReporting == false
+        config.globalCustomIconCssHash
+        !config.customIconCssHash
+    }
+
+    def "Client Display configs carry the versions of the custom icon style sheets"() {
+        skillsService.createProject(SkillsFactory.createProject())
+
+        when:
+        def config = skillsService.getPublicClientDisplayConfigs(SkillsFactory.defaultProjId)
+        def css = skillsService.wsHelper.rawGet("api/projects/${SkillsFactory.defaultProjId}/customIconCss/${config.customIconCssHash}".toString(), null)
+        def globalCss = skillsService.wsHelper.rawGet("api/icons/customIconCss/${config.globalCustomIconCssHash}".toString(), null)
+
+        then:
+        config.customIconCssHash
+        css.headers.getCacheControl() == "max-age=31536000, private, immutable"
+        globalCss.headers.getCacheControl() == "max-age=31536000, private, immutable"
     }
 }
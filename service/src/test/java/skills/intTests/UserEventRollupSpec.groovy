@@ -0,0 +1,193 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.services.UserEventRollupService
+import skills.services.UserEventService
+import skills.storage.model.DayCountItem
+import skills.storage.model.EventType
+import skills.storage.model.UserEventRollupState
+import skills.storage.repos.UserEventRollupRepo
+import skills.storage.repos.UserEventRollupStateRepo
+
+import java.time.LocalDateTime
+
+class UserEventRollupSpec extends DefaultIntSpec {
+
+    @Autowired
+    UserEventService eventService
+
+    @Autowired
+    UserEventRollupService userEventRollupService
+
+    @Autowired
+    UserEventRollupRepo userEventRollupRepo
+
+    @Autowired
+    UserEventRollupStateRepo userEventRollupStateRepo
+
+    @Value('#{"${skills.config.compactDailyEventsOlderThan}"}')
+    int maxDailyDays
+
+    def proj = SkillsFactory.createProject()
+    def subj1 = SkillsFactory.createSubject(1, 1)
+    def subj2 = SkillsFactory.createSubject(1, 2)
+    def subj1Skills = SkillsFactory.createSkills(3, 1, 1, 10, 100)
+    def subj2Skills = SkillsFactory.createSkills(2, 1, 2, 10, 100)
+    LocalDateTime now = LocalDateTime.now()
+
+    def setup() {
+        userEventRollupStateRepo.save(new UserEventRollupState(id: UserEventRollupState.ID, rolledUpBefore: null))
+        subj1Skills.each { it.pointIncrementInterval = 0 }
+        subj2Skills.each { it.pointIncrementInterval = 0 }
+        skillsService.createProjectAndSubjectAndSkills(proj, subj1, subj1Skills)
+        skillsService.createSubject(subj2)
+        skillsService.createSkills(subj2Skills)
+    }
+
+    def cleanup() {
+        userEventRollupService.enabled = true
+    }
+
+    def "rolled up event metrics match raw event metrics"() {
+        assert maxDailyDays == 3, "test data is structured around compactDailyEventsOlderThan == 3"
+        List<String> users = getRandomUsers(6)
+        reportEvents(users)
+
+        when:
+        Map beforeRollUp = collectMetrics(false)
+        userEventRollupService.rollUp()
+        Map afterRollUp = collectMetrics(true)
+
+        then:
+        !beforeRollUp.rolledUp
+        afterRollUp.rolledUp
+        userEventRollupRepo.count() > 0
+        afterRollUp.raw == afterRollUp.rollups
+        afterRollUp.raw == beforeRollUp.raw
+    }
+
+    def "events reported and removed for rolled up days are applied to the rollups"() {
+        List<String> users = getRandomUsers(6)
+        reportEvents(users)
+        userEventRollupService.rollUp()
+
+        when:
+        Date yesterday = now.minusDays(1).toDate()
+        Date twoWeeksAgo = now.minusDays(14).toDate()
+        skillsService.addSkill(subj1Skills[0], users[5], yesterday)
+        skillsService.addSkill(subj1Skills[1], users[5], twoWeeksAgo)
+        skillsService.addSkill(subj2Skills[0], users[4], twoWeeksAgo)
+        skillsService.deleteSkillEvent([projectId: proj.projectId, skillId: subj2Skills[0].skillId, userId: users[4], timestamp: twoWeeksAgo.time])
+        skillsService.deleteSkillEvent([projectId: proj.projectId, skillId: subj1Skills[0].skillId, userId: users[0], timestamp: now.minusDays(2).withHour(9).withMinute(0).withSecond(0).withNano(0).toDate().time])
+        Map metrics = collectMetrics(true)
+
+        then:
+        metrics.rolledUp
+        metrics.raw == metrics.rollups
+    }
+
+    def "rollups are compacted along with daily events"() {
+        List<String> users = getRandomUsers(6)
+        reportEvents(users)
+
+        when:
+        eventService.compactDailyEvents()
+        Map metrics = collectMetrics(true)
+        Date cutoff = now.minusDays(maxDailyDays).toDate()
+
+        then:
+        metrics.rolledUp
+        metrics.raw == metrics.rollups
+        userEventRollupRepo.findAll().findAll { it.eventType == EventType.DAILY }.every { !it.eventTime.before(cutoff) }
+        userEventRollupRepo.findAll().find { it.eventType == EventType.WEEKLY }
+    }
+
+    def "rollups are rebuilt after being disabled"() {
+        List<String> users = getRandomUsers(6)
+        reportEvents(users)
+        userEventRollupService.rollUp()
+
+        when:
+        userEventRollupService.enabled = false
+        userEventRollupService.rollUp()
+        // not tracked by the rollups while disabled
+        skillsService.addSkill(subj1Skills[2], users[5], now.minusDays(2).toDate())
+        userEventRollupService.enabled = true
+        Map staleMetrics = collectMetrics(false)
+        userEventRollupService.rollUp()
+        Map metrics = collectMetrics(true)
+
+        then:
+        !staleMetrics.rolledUp
+        metrics.rolledUp
+        metrics.raw == metrics.rollups
+    }
+
+    private void reportEvents(List<String> users) {
+        List<Integer> daysAgo = [0, 1, 2, 5, 9, 16, 24]
+        daysAgo.eachWithIndex { Integer days, int dayIndex ->
+            Date date = days == 0 ? now.toDate() : now.minusDays(days).withHour(9).withMinute(0).withSecond(0).withNano(0).toDate()
+            users.eachWithIndex { String userId, int userIndex ->
+                if ((userIndex + dayIndex) % 3 != 0) {
+                    skillsService.addSkill(subj1Skills[(userIndex + dayIndex) % subj1Skills.size()], userId, date)
+                    skillsService.addSkill(subj2Skills[userIndex % subj2Skills.size()], userId, date)
+                }
+                if (userIndex < 2) {
+                    skillsService.addSkill(subj1Skills[0], userId, date)
+                }
+            }
+        }
+    }
+
+    /**
+     * @param useRollups whether the rollups are expected to be used for the read
+     */
+    private Map collectMetrics(boolean useRollups) {
+        Date dailyStart = now.minusDays(2).toDate()
+        Date weeklyStart = now.minusDays(30).toDate()
+        boolean rolledUp = userEventRollupService.getRolledUpBefore(dailyStart) != null && userEventRollupService.getRolledUpBefore(weeklyStart) != null
+        assert !useRollups || rolledUp
+
+        userEventRollupService.enabled = false
+        Map raw = readMetrics(dailyStart, weeklyStart)
+        userEventRollupService.enabled = true
+        Map rollups = readMetrics(dailyStart, weeklyStart)
+        return [rolledUp: rolledUp, raw: raw, rollups: rollups]
+    }
+
+    private Map readMetrics(Date dailyStart, Date weeklyStart) {
+        Map res = [:]
+        [daily: dailyStart, weekly: weeklyStart].each { String name, Date start ->
+            res["${name}-project"] = toList(eventService.getUserEventCountsForProject(proj.projectId, start))
+            res["${name}-projectDistinct"] = toList(eventService.getDistinctUserCountsForProject(proj.projectId, start))
+            [subj1.subjectId, subj2.subjectId, subj1Skills[0].skillId, subj2Skills[1].skillId].each { String skillId ->
+                res["${name}-${skillId}"] = toList(eventService.getUserEventCountsForSkillId(proj.projectId, skillId, start))
+                res["${name}-${skillId}-distinct"] = toList(eventService.getDistinctUserCountForSkillId(proj.projectId, skillId, start))
+            }
+        }
+        return res
+    }
+
+    private static List toList(List<DayCountItem> items) {
+        return items.collect { [it.projectId, it.day.time, it.count] }
+    }
+
+}
@@ -25,6 +25,7 @@ import skills.intTests.utils.SkillsFactory
 import skills.services.LockingService
 import skills.services.StartDateUtil
 import skills.services.UserEventService
+import skills.services.WeekNumberUtil
 import skills.storage.model.DayCountItem
 import skills.storage.model.EventType
 import skills.storage.model.SkillDef
@@ -52,6 +53,9 @@ class UserEventSpec extends DefaultIntSpec {
     @Autowired
     SkillDefRepo skillDefRepo
 
+    @Autowired
+    LockingService lockingService
+
     @Value('#{"${skills.config.compactDailyEventsOlderThan}"}')
     int maxDailyDays
 
@@ -125,6 +129,95 @@ class UserEventSpec extends DefaultIntSpec {
         postCompactionWeeklyCount == 3
     }
 
+    def "compaction sums daily events of each project and week into existing weekly events"() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager)
+        List<Map> projects = [1, 2].collect { SkillsFactory.createProject(it) }
+        List<Map> skills = [1, 2].collect { SkillsFactory.createSkill(it, 1, 1, 0, 100, 0) }
+        projects.eachWithIndex { Map proj, int i ->
+            skillsService.createProject(proj)
+            skillsService.createSubject(SkillsFactory.createSubject(i + 1))
+            skillsService.createSkill(skills[i])
+        }
+        List<String> userIds = getRandomUsers(2)
+        LocalDateTime compacted = LocalDateTime.now().minusDays(maxDailyDays + 14).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+
+        Closure<Map<String, Integer>> weeklyCounts = {
+            Map<String, Integer> res = [:]
+            transactionTemplate.execute({
+                skills.each { Map skill ->
+                    SkillDef skillDef = skillDefRepo.findByProjectIdAndSkillIdAndType(skill.projectId, skill.skillId, SkillDef.ContainerType.Skill)
+                    assert !userEventsRepo.findAllBySkillRefIdAndEventType(skillDef.id, EventType.DAILY).find { it.eventTime.before(compacted.plusDays(7).toDate()) }
+                    userEventsRepo.findAllBySkillRefIdAndEventType(skillDef.id, EventType.WEEKLY).forEach({ UserEvent event ->
+                        res["${event.projectId}-${event.userId}-${event.weekNumber}".toString()] = event.count
+                    })
+                }
+            })
+            return res
+        }
+
+        when:
+        skills.each { Map skill ->
+            skillsService.addSkill(skill, userIds[0], compacted.toDate())
+            skillsService.addSkill(skill, userIds[0], compacted.plusHours(1).toDate())
+            skillsService.addSkill(skill, userIds[0], compacted.plusDays(2).toDate())
+            skillsService.addSkill(skill, userIds[1], compacted.toDate())
+            skillsService.addSkill(skill, userIds[1], compacted.minusDays(7).toDate())
+        }
+        eventService.compactDailyEvents()
+        Map<String, Integer> firstRun = weeklyCounts.call()
+
+        skillsService.addSkill(skills[1], userIds[0], compacted.plusDays(1).toDate())
+        eventService.compactDailyEvents()
+        Map<String, Integer> secondRun = weeklyCounts.call()
+
+        int week = WeekNumberUtil.getWeekNumber(compacted.toDate())
+        Closure<String> key = { Map proj, String userId, int weekNumber -> "${proj.projectId}-${userId}-${weekNumber}".toString() }
+
+        then:
+        firstRun == [
+                (key(projects[0], userIds[0], week)): 3,
+                (key(projects[0], userIds[1], week)): 1,
+                (key(projects[0], userIds[1], week - 1)): 1,
+                (key(projects[1], userIds[0], week)): 3,
+                (key(projects[1], userIds[1], week)): 1,
+                (key(projects[1], userIds[1], week - 1)): 1,
+        ]
+        secondRun == firstRun + [(key(projects[1], userIds[0], week)): 4]
+    }
+
+    def "compaction is skipped while another run holds the compaction claim"() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager)
+        Map proj = SkillsFactory.createProject(42)
+        Map subject = SkillsFactory.createSubject(42)
+        Map skill = SkillsFactory.createSkill(42, 1, 1, 0, 40, 0)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subject)
+        skillsService.createSkill(skill)
+        String userId = getRandomUsers(1)[0]
+        skillsService.addSkill(skill, userId, LocalDateTime.now().minusDays(maxDailyDays + 15).toDate())
+        Integer skillRefId = skillDefRepo.findByProjectIdAndSkillIdAndType(proj.projectId, skill.skillId, SkillDef.ContainerType.Skill).id
+        Closure<Long> countDaily = {
+            transactionTemplate.execute({ userEventsRepo.findAllBySkillRefIdAndEventType(skillRefId, EventType.DAILY).count() })
+        }
+
+        when:
+        boolean claimed = lockingService.claimEventCompaction(60000)
+        boolean claimedTwice = lockingService.claimEventCompaction(60000)
+        eventService.compactDailyEvents()
+        long dailyWhileClaimed = countDaily.call()
+
+        lockingService.releaseEventCompactionClaim()
+        eventService.compactDailyEvents()
+        long dailyAfterRelease = countDaily.call()
+
+        then:
+        claimed
+        !claimedTwice
+        dailyWhileClaimed == 1
+        dailyAfterRelease == 0
+        !lockingService.isEventCompactionClaimed()
+    }
+
     def "project event counts spanning compactDailyEventsOlderThan produces accurate results"() {
         Map proj = SkillsFactory.createProject(42)
         Map subject = SkillsFactory.createSubject(42)
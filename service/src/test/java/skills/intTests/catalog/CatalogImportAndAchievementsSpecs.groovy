@@ -272,6 +272,80 @@ class CatalogImportAndAchievementsSpecs extends CatalogIntSpec {
         allPoints2.collect { it.projectId } == [proj1.p.projectId]
     }
 
+    def "events reported before a skill was imported do not prevent later events from being applied to the importing projects"() {
+        def proj1 = createProjWithCatalogSkills(1)
+        def proj2 = createProjWithCatalogSkills(2)
+        def proj3 = createProjWithCatalogSkills(3)
+
+        String userId = getRandomUsers(1)[0]
+        skillsService.addSkill(proj1.s1_skills[0], userId, new Date() - 1)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+
+        skillsService.importSkillFromCatalog(proj2.p.projectId, proj2.s1.subjectId, proj1.p.projectId, proj1.s1_skills[0].skillId)
+        skillsService.importSkillFromCatalog(proj3.p.projectId, proj3.s1.subjectId, proj1.p.projectId, proj1.s1_skills[0].skillId)
+        skillsService.finalizeSkillsImportFromCatalog(proj2.p.projectId)
+        skillsService.finalizeSkillsImportFromCatalog(proj3.p.projectId)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+
+        when:
+        skillsService.addSkill(proj1.s1_skills[0], userId)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        List<UserPoints> skillPoints = userPointsRepo.findAll().findAll({ it.skillId == proj1.s1_skills[0].skillId && it.userId == userId })
+        then:
+        skillPoints.collect { it.projectId }.sort() == [proj1.p.projectId, proj2.p.projectId, proj3.p.projectId]
+        skillPoints.collect { it.points }.unique() == [proj1.s1_skills[0].pointIncrement * 2]
+    }
+
+    def "events reported before a skill was exported to the catalog do not prevent later events from being applied to the importing projects"() {
+        def proj1 = createProject(1)
+        def proj1_subj = createSubject(1, 1)
+        def proj1_skill = createSkill(1, 1, 1, 0, 5, 0, 100)
+        skillsService.createProjectAndSubjectAndSkills(proj1, proj1_subj, [proj1_skill])
+        def proj2 = createProjWithCatalogSkills(2)
+
+        String userId = getRandomUsers(1)[0]
+        skillsService.addSkill(proj1_skill, userId, new Date() - 1)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+
+        skillsService.exportSkillToCatalog(proj1.projectId, proj1_skill.skillId)
+        skillsService.importSkillFromCatalog(proj2.p.projectId, proj2.s1.subjectId, proj1.projectId, proj1_skill.skillId)
+        skillsService.finalizeSkillsImportFromCatalog(proj2.p.projectId)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+
+        when:
+        skillsService.addSkill(proj1_skill, userId)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        List<UserPoints> skillPoints = userPointsRepo.findAll().findAll({ it.skillId == proj1_skill.skillId && it.userId == userId })
+        then:
+        skillPoints.collect { it.projectId }.sort() == [proj1.projectId, proj2.p.projectId]
+        skillPoints.collect { it.points }.unique() == [proj1_skill.pointIncrement * 2]
+    }
+
+    def "importing project's summary reflects points awarded asynchronously for the original skill"() {
+        def proj1 = createProjWithCatalogSkills(1, 2, true)
+        def proj2 = createProjWithCatalogSkills(2)
+        skillsService.importSkillFromCatalog(proj2.p.projectId, proj2.s1.subjectId, proj1.p.projectId, proj1.s1_skills[0].skillId)
+        skillsService.finalizeSkillsImportFromCatalog(proj2.p.projectId)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+
+        String userId = getRandomUsers(1)[0]
+        skillsService.addSkill(proj1.s1_skills[0], userId, new Date() - 1)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        def summaryBefore = skillsService.getSkillSummary(userId, proj2.p.projectId)
+
+        when:
+        skillsService.addSkill(proj1.s1_skills[0], userId)
+        // materialize the importing project's summary before the imported points are applied
+        def summaryReportedOnly = skillsService.getSkillSummary(userId, proj2.p.projectId)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        def summaryAfter = skillsService.getSkillSummary(userId, proj2.p.projectId)
+
+        then:
+        summaryBefore.points == 100
+        summaryReportedOnly.points in [100, 200]
+        summaryAfter.points == 200
+    }
+
     def "user_events and user_performed_skill rows are only created for the original skill"() {
         def proj1 = createProjWithCatalogSkills(1)
         def proj2 = createProjWithCatalogSkills(2)
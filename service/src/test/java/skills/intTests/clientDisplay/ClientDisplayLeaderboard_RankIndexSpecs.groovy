@@ -0,0 +1,115 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests.clientDisplay
+
+import org.springframework.beans.factory.annotation.Autowired
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.services.ranking.RankIndexService
+import skills.utils.WaitFor
+
+class ClientDisplayLeaderboard_RankIndexSpecs extends DefaultIntSpec {
+
+    @Autowired
+    RankIndexService rankIndexService
+
+    def "leaderboard and rank served from the index match the database"() {
+        int numUsers = 20
+        List<String> users = getRandomUsers(numUsers)
+        List<Date> days = (0..numUsers).collect { new Date() - it }
+
+        def proj = SkillsFactory.createProject(1)
+        def subj = SkillsFactory.createSubject(1, 1)
+        List<Map> skills = SkillsFactory.createSkills(numUsers, 1, 1)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        numUsers.times { Integer userNum ->
+            (userNum % 7 + 1).times { Integer skillNum ->
+                skillsService.addSkill([projectId: proj.projectId, skillId: skills.get(skillNum).skillId], users.get(userNum), days.get(userNum))
+            }
+        }
+
+        when:
+        rankIndexService.enabled = false
+        def fromDb = collectRankings(users, proj.projectId, subj.subjectId)
+        rankIndexService.enabled = true
+        assert WaitFor.wait { rankIndexService.getIndex(proj.projectId, null) && rankIndexService.getIndex(proj.projectId, subj.subjectId) }
+        def fromIndex = collectRankings(users, proj.projectId, subj.subjectId)
+
+        then:
+        fromIndex == fromDb
+
+        cleanup:
+        rankIndexService.enabled = true
+    }
+
+    def "index is updated when skills are reported"() {
+        int numUsers = 8
+        List<String> users = getRandomUsers(numUsers)
+        List<Date> days = (0..numUsers).collect { new Date() - it }
+
+        def proj = SkillsFactory.createProject(1)
+        def subj = SkillsFactory.createSubject(1, 1)
+        List<Map> skills = SkillsFactory.createSkills(10, 1, 1)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        numUsers.times { Integer userNum ->
+            (userNum + 1).times { Integer skillNum ->
+                skillsService.addSkill([projectId: proj.projectId, skillId: skills.get(skillNum).skillId], users.get(userNum), days.get(userNum))
+            }
+        }
+        skillsService.getLeaderboard(users.get(0), proj.projectId)
+        assert WaitFor.wait { rankIndexService.getIndex(proj.projectId, null) }
+
+        when:
+        def before = skillsService.getLeaderboard(users.get(0), proj.projectId)
+        def rankBefore = skillsService.getRank(users.get(0), proj.projectId)
+        (1..9).each { Integer skillNum ->
+            skillsService.addSkill([projectId: proj.projectId, skillId: skills.get(skillNum).skillId], users.get(0), new Date())
+        }
+        def after = skillsService.getLeaderboard(users.get(0), proj.projectId)
+        def rankAfter = skillsService.getRank(users.get(0), proj.projectId)
+
+        then:
+        before.rankedUsers.last().points == 10
+        before.rankedUsers.last().isItMe
+        rankBefore.position == 8
+        rankBefore.numUsers == 8
+        after.rankedUsers.first().points == 100
+        after.rankedUsers.first().isItMe
+        after.rankedUsers.collect { it.rank } == (1..8).collect { it }
+        rankAfter.position == 1
+        rankAfter.numUsers == 8
+    }
+
+    private List collectRankings(List<String> users, String projectId, String subjectId) {
+        return users.collect { String userId ->
+            [
+                    skillsService.getLeaderboard(userId, projectId).rankedUsers,
+                    skillsService.getLeaderboard(userId, projectId, null, 'tenAroundMe').rankedUsers,
+                    skillsService.getLeaderboard(userId, projectId, subjectId).rankedUsers,
+                    skillsService.getRank(userId, projectId),
+                    skillsService.getRank(userId, projectId, subjectId),
+            ]
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests.clientDisplay
+
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.services.settings.Settings
+import skills.skillLoading.UserProjectSummaryLoader
+import skills.storage.model.UserProjectSummary
+import skills.storage.repos.UserProjectSummaryRepo
+
+class ClientDisplaySummary_MaterializedSpecs extends DefaultIntSpec {
+
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @Autowired
+    UserProjectSummaryRepo userProjectSummaryRepo
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    def proj = SkillsFactory.createProject()
+    def subj = SkillsFactory.createSubject()
+    def subj2 = SkillsFactory.createSubject(1, 2)
+    List<Map> skills = SkillsFactory.createSkills(5, 1, 1, 100)
+    List<Map> subj2Skills = SkillsFactory.createSkills(3, 1, 2, 100)
+    def badge = SkillsFactory.createBadge()
+
+    def setup() {
+        // rows computed within the tolerance of a user's last event are not trusted, keep the specs fast
+        userProjectSummaryLoader.clockSkewToleranceInMillis = 0
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSubject(subj2)
+        skillsService.createSkills(skills)
+        skillsService.createSkills(subj2Skills)
+        skillsService.createBadge(badge)
+        skillsService.assignSkillToBadge(proj.projectId, badge.badgeId, skills[0].skillId)
+        badge.enabled = true
+        skillsService.createBadge(badge)
+    }
+
+    def cleanup() {
+        userProjectSummaryLoader.mode = UserProjectSummaryLoader.Mode.enabled
+        userProjectSummaryLoader.clockSkewToleranceInMillis = 1000
+    }
+
+    def "summary is materialized and served from the stored row"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[0], user)
+        skillsService.addSkill(skills[1], user)
+        skillsService.addSkill(subj2Skills[0], user)
+        Thread.sleep(10)
+
+        when:
+        def computed = skillsService.getSkillSummary(user, proj.projectId)
+        double hitsBefore = hits()
+        def fromRow = skillsService.getSkillSummary(user, proj.projectId)
+        double hitsAfter = hits()
+
+        userProjectSummaryLoader.mode = UserProjectSummaryLoader.Mode.disabled
+        def fromScratch = skillsService.getSkillSummary(user, proj.projectId)
+
+        then:
+        userProjectSummaryRepo.findValidSummary(user, proj.projectId, 999)
+        hitsAfter == hitsBefore + 1
+        computed.points == 300
+        computed.badges.numBadgesCompleted == 1
+        fromRow == computed
+        fromScratch == computed
+    }
+
+    def "reporting and deleting skill events changes the user's summary"() {
+        List<String> users = getRandomUsers(2)
+        skillsService.addSkill(skills[0], users[0])
+        skillsService.addSkill(skills[0], users[1])
+        Date date = new Date() - 1
+        skillsService.addSkill(skills[1], users[0], date)
+
+        when:
+        def summary1 = skillsService.getSkillSummary(users[0], proj.projectId)
+        def otherUserSummary1 = skillsService.getSkillSummary(users[1], proj.projectId)
+        skillsService.addSkill(skills[2], users[0])
+        def summary2 = skillsService.getSkillSummary(users[0], proj.projectId)
+        def otherUserSummary2 = skillsService.getSkillSummary(users[1], proj.projectId)
+        skillsService.deleteSkillEvent([projectId: proj.projectId, skillId: skills[1].skillId, userId: users[0], timestamp: date.time])
+        def summary3 = skillsService.getSkillSummary(users[0], proj.projectId)
+
+        then:
+        summary1.points == 200
+        summary1.todaysPoints == 100
+        summary2.points == 300
+        summary2.todaysPoints == 200
+        summary2.subjects.find { it.subjectId == subj.subjectId }.points == 300
+        summary3.points == 200
+        otherUserSummary1.points == 100
+        otherUserSummary2 == otherUserSummary1
+    }
+
+    def "reported skill events update the stored summary"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[1], user)
+        UserProjectSummary row = userProjectSummaryRepo.findAllByUserIdAndProjectId(user, proj.projectId)[0]
+
+        when:
+        skillsService.addSkill(skills[0], user)
+        skillsService.addSkill(subj2Skills[0], user, new Date() - 1)
+        UserProjectSummary updatedRow = userProjectSummaryRepo.findAllByUserIdAndProjectId(user, proj.projectId)[0]
+        double hitsBefore = hits()
+        def fromRow = skillsService.getSkillSummary(user, proj.projectId)
+        double hitsAfter = hits()
+
+        userProjectSummaryLoader.mode = UserProjectSummaryLoader.Mode.disabled
+        def fromScratch = skillsService.getSkillSummary(user, proj.projectId)
+
+        then:
+        updatedRow.computed == row.computed
+        updatedRow.updated.after(row.updated)
+        hitsAfter == hitsBefore + 1
+        fromRow.points == 300
+        fromRow.todaysPoints == 200
+        fromRow.subjects.find { it.subjectId == subj2.subjectId }.points == 100
+        fromRow.badges.numBadgesCompleted == 1
+        fromRow == fromScratch
+    }
+
+    def "reads do not store summaries, the next reported skill event does"() {
+        String user = getRandomUsers(1)[0]
+        Date date = new Date() - 1
+        skillsService.addSkill(skills[0], user)
+        skillsService.addSkill(skills[1], user, date)
+        skillsService.deleteSkillEvent([projectId: proj.projectId, skillId: skills[1].skillId, userId: user, timestamp: date.time])
+        Thread.sleep(10)
+
+        when:
+        double missesBefore = misses()
+        def summary1 = skillsService.getSkillSummary(user, proj.projectId)
+        def summary2 = skillsService.getSkillSummary(user, proj.projectId)
+        double missesAfterReads = misses()
+        boolean validAfterReads = userProjectSummaryRepo.findValidSummary(user, proj.projectId, 999) != null
+
+        skillsService.addSkill(skills[2], user)
+        double hitsBefore = hits()
+        def summary3 = skillsService.getSkillSummary(user, proj.projectId)
+
+        then:
+        missesAfterReads == missesBefore + 2
+        !validAfterReads
+        summary1.points == 100
+        summary2 == summary1
+        hits() == hitsBefore + 1
+        summary3.points == 200
+    }
+
+    def "project, subject and setting changes invalidate summaries"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[0], user)
+
+        when:
+        def summary1 = skillsService.getSkillSummary(user, proj.projectId)
+
+        subj.name = 'New Subject Name'
+        skillsService.updateSubject(subj, subj.subjectId)
+        def summary2 = skillsService.getSkillSummary(user, proj.projectId)
+
+        proj.description = 'new description'
+        skillsService.updateProject(proj, proj.projectId)
+        skillsService.addOrUpdateProjectSetting(proj.projectId, Settings.SHOW_PROJECT_DESCRIPTION_EVERYWHERE.settingName, 'true')
+        def summary3 = skillsService.getSkillSummary(user, proj.projectId)
+
+        proj.name = 'New Project Name'
+        skillsService.updateProject(proj, proj.projectId)
+        skillsService.createSkill(SkillsFactory.createSkill(1, 2, 10, 0, 1, 0, 100))
+        def summary4 = skillsService.getSkillSummary(user, proj.projectId)
+
+        then:
+        summary1.subjects.find { it.subjectId == subj.subjectId }.subject == 'Test Subject #1'
+        !summary1.projectDescription
+        summary2.subjects.find { it.subjectId == subj.subjectId }.subject == 'New Subject Name'
+        summary3.projectDescription == 'new description'
+        summary4.projectName == 'New Project Name'
+        summary4.totalPoints == summary3.totalPoints + 100
+    }
+
+    def "verify mode re-computes and reports summaries that do not match"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[0], user)
+        Thread.sleep(10)
+        def summary = skillsService.getSkillSummary(user, proj.projectId)
+        int numUpdated = jdbcTemplate.update("update user_project_summary set summary = replace(summary, '\"points\":100', '\"points\":55') where user_id = ?", user)
+        double mismatchesBefore = mismatches()
+
+        when:
+        def corrupted = skillsService.getSkillSummary(user, proj.projectId)
+        userProjectSummaryLoader.mode = UserProjectSummaryLoader.Mode.verify
+        def verified = skillsService.getSkillSummary(user, proj.projectId)
+
+        then:
+        numUpdated == 1
+        corrupted.points == 55
+        verified == summary
+        mismatches() == mismatchesBefore + 1
+    }
+
+    private double hits() {
+        return meterRegistry.counter('skills.userProjectSummary', 'result', 'hit').count()
+    }
+
+    private double misses() {
+        return meterRegistry.counter('skills.userProjectSummary', 'result', 'miss').count()
+    }
+
+    private double mismatches() {
+        return meterRegistry.counter('skills.userProjectSummary', 'result', 'mismatch').count()
+    }
+}
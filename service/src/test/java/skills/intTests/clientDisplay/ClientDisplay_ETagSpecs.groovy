@@ -0,0 +1,179 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests.clientDisplay
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.services.caching.CacheInvalidationService
+import skills.skillLoading.UserProjectSummaryLoader
+
+class ClientDisplay_ETagSpecs extends DefaultIntSpec {
+
+    @Autowired
+    UserProjectSummaryLoader userProjectSummaryLoader
+
+    @Autowired
+    CacheInvalidationService cacheInvalidationService
+
+    def proj = SkillsFactory.createProject()
+    def subj = SkillsFactory.createSubject()
+    List<Map> skills = SkillsFactory.createSkills(5, 1, 1, 100)
+    def badge = SkillsFactory.createBadge()
+
+    def setup() {
+        skills[4].selfReportingType = 'Approval'
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+        skillsService.createBadge(badge)
+        skillsService.assignSkillToBadge(proj.projectId, badge.badgeId, skills[0].skillId)
+        badge.enabled = true
+        skillsService.createBadge(badge)
+    }
+
+    def cleanup() {
+        userProjectSummaryLoader.mode = UserProjectSummaryLoader.Mode.enabled
+    }
+
+    def "unchanged data is answered with 304 and user's events change the ETag"() {
+        List<String> users = getRandomUsers(2)
+        skillsService.addSkill(skills[0], users[0])
+
+        when:
+        Map<String, ResponseEntity<String>> first = getAll(users[0])
+        Map<String, ResponseEntity<String>> second = getAll(users[0], first)
+        Map<String, ResponseEntity<String>> otherUser = getAll(users[1], first)
+
+        skillsService.addSkill(skills[1], users[0])
+        Map<String, ResponseEntity<String>> afterEvent = getAll(users[0], first)
+
+        then:
+        first.each { String endpoint, ResponseEntity<String> res ->
+            assert res.statusCode == HttpStatus.OK, endpoint
+            assert res.headers.getETag(), endpoint
+            assert res.headers.getCacheControl().contains('no-cache'), endpoint
+        }
+        second.each { String endpoint, ResponseEntity<String> res ->
+            assert res.statusCode == HttpStatus.NOT_MODIFIED, endpoint
+            assert !res.body, endpoint
+        }
+        otherUser.each { String endpoint, ResponseEntity<String> res ->
+            assert res.statusCode == HttpStatus.OK, endpoint
+            assert res.headers.getETag() != first[endpoint].headers.getETag(), endpoint
+        }
+        afterEvent.each { String endpoint, ResponseEntity<String> res ->
+            assert res.statusCode == HttpStatus.OK, endpoint
+            assert res.headers.getETag() != first[endpoint].headers.getETag(), endpoint
+        }
+    }
+
+    def "project definition changes and approval requests change the ETag"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[0], user)
+
+        when:
+        Map<String, ResponseEntity<String>> first = getAll(user)
+        subj.name = 'New Subject Name'
+        skillsService.updateSubject(subj, subj.subjectId)
+        Map<String, ResponseEntity<String>> afterSubjectChange = getAll(user, first)
+
+        ResponseEntity<String> subjectBeforeApproval = get("api/projects/${proj.projectId}/subjects/${subj.subjectId}/summary", user)
+        skillsService.addSkill(skills[4], user, new Date(), 'please approve')
+        ResponseEntity<String> subjectAfterApproval = get("api/projects/${proj.projectId}/subjects/${subj.subjectId}/summary", user, subjectBeforeApproval)
+
+        then:
+        afterSubjectChange.each { String endpoint, ResponseEntity<String> res ->
+            assert res.statusCode == HttpStatus.OK, endpoint
+        }
+        afterSubjectChange['subjectSummary'].body.contains('New Subject Name')
+        subjectAfterApproval.statusCode == HttpStatus.OK
+        subjectAfterApproval.headers.getETag() != subjectBeforeApproval.headers.getETag()
+    }
+
+    def "ETags only depend on persisted invalidations"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[0], user)
+        Integer retentionHours = cacheInvalidationService.invalidationRetentionHours
+
+        when:
+        Map<String, ResponseEntity<String>> first = getAll(user)
+        // not published, as if another node was invalidated
+        userProjectSummaryLoader.invalidateLocally(proj.projectId)
+        Map<String, ResponseEntity<String>> afterLocalInvalidation = getAll(user, first)
+        cacheInvalidationService.invalidationRetentionHours = 0
+        cacheInvalidationService.cleanupInvalidations()
+        Map<String, ResponseEntity<String>> afterCleanup = getAll(user, first)
+
+        then:
+        afterLocalInvalidation.each { String endpoint, ResponseEntity<String> res ->
+            assert res.statusCode == HttpStatus.NOT_MODIFIED, endpoint
+        }
+        afterCleanup.each { String endpoint, ResponseEntity<String> res ->
+            assert res.statusCode == HttpStatus.NOT_MODIFIED, endpoint
+        }
+
+        cleanup:
+        cacheInvalidationService.invalidationRetentionHours = retentionHours
+    }
+
+    def "rank is not tagged"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[0], user)
+
+        when:
+        ResponseEntity<String> res = get("api/projects/${proj.projectId}/rank", user)
+
+        then:
+        res.statusCode == HttpStatus.OK
+        !res.headers.getETag()
+    }
+
+    def "no ETags for versioned endpoints when the materialized summaries are disabled"() {
+        String user = getRandomUsers(1)[0]
+        skillsService.addSkill(skills[0], user)
+        userProjectSummaryLoader.mode = UserProjectSummaryLoader.Mode.disabled
+
+        when:
+        ResponseEntity<String> res = get("api/projects/${proj.projectId}/summary", user)
+
+        then:
+        res.statusCode == HttpStatus.OK
+        !res.headers.getETag()
+    }
+
+    private Map<String, ResponseEntity<String>> getAll(String userId, Map<String, ResponseEntity<String>> previous = [:]) {
+        Map<String, String> endpoints = [
+                summary       : "api/projects/${proj.projectId}/summary".toString(),
+                subjectSummary: "api/projects/${proj.projectId}/subjects/${subj.subjectId}/summary".toString(),
+                badges        : "api/projects/${proj.projectId}/badges/summary".toString(),
+                badge         : "api/projects/${proj.projectId}/badges/${badge.badgeId}/summary".toString(),
+                pointHistory  : "api/projects/${proj.projectId}/pointHistory".toString(),
+        ]
+        return endpoints.collectEntries { String name, String endpoint -> [name, get(endpoint, userId, previous[name])] }
+    }
+
+    private ResponseEntity<String> get(String endpoint, String userId, ResponseEntity<String> previous = null) {
+        HttpHeaders headers = new HttpHeaders()
+        if (previous?.headers?.getETag()) {
+            headers.setIfNoneMatch(previous.headers.getETag())
+        }
+        return skillsService.wsHelper.rawGet(endpoint, [userId: userId], headers)
+    }
+}
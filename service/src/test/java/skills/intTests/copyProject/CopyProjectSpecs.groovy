@@ -15,18 +15,38 @@
  */
 package skills.intTests.copyProject
 
+import org.springframework.beans.factory.annotation.Autowired
+import skills.controller.exceptions.SkillException
 import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsClientException
 import skills.intTests.utils.SkillsFactory
 import skills.intTests.utils.SkillsService
+import skills.services.admin.ProjectCopyService
+import skills.services.admin.ProjectCopyTransactionalAccessor
 import skills.services.admin.skillReuse.SkillReuseIdUtil
 import skills.services.settings.Settings
 import skills.skillLoading.RankingLoader
+import skills.storage.model.ProjectCopyJob
 import skills.storage.model.SkillDef
 import skills.storage.model.auth.RoleName
+import skills.storage.repos.ProjectCopyJobRepo
 import static skills.intTests.utils.SkillsFactory.*
 
 class CopyProjectSpecs extends DefaultIntSpec {
 
+    @Autowired
+    ProjectCopyService projectCopyService
+
+    @Autowired
+    ProjectCopyJobRepo projectCopyJobRepo
+
+    // test application.properties copies every project asynchronously
+    static final int DEFAULT_INLINE_MAX_SKILLS = 100
+
+    def cleanup() {
+        projectCopyService.inlineMaxSkills = 0
+    }
+
     def "copy project with majority of features utilized"() {
         def p1 = createProject(1)
         skillsService.createProject(p1)
@@ -546,6 +566,233 @@ class CopyProjectSpecs extends DefaultIntSpec {
         projects.projectId == [p1.projectId, projToCopy.projectId]
     }
 
+    def "copy project asynchronously and report its progress"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(7, 1, 1, 100)
+        def group1 = createSkillsGroup(1, 1, 22)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills[0..4])
+        skillsService.createSkill(group1)
+        p1Skills[5..6].each {
+            skillsService.assignSkillToSkillsGroup(group1.skillId, it)
+        }
+        def badge = createBadge(1, 1)
+        skillsService.createBadge(badge)
+        skillsService.assignSkillToBadge(p1.projectId, badge.badgeId, p1Skills[0].skillId)
+        badge.enabled = true
+        skillsService.createBadge(badge)
+        skillsService.assignDependency([projectId: p1.projectId, skillId: p1Skills.get(0).skillId, dependentSkillId: p1Skills.get(1).skillId])
+
+        when:
+        def projToCopy = createProject(2)
+        def started = skillsService.copyProjectAsync(p1.projectId, projToCopy)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        def info = skillsService.getProjectCopyInfo(p1.projectId, started.jobId)
+
+        def copiedProj = skillsService.getProject(projToCopy.projectId)
+        def copiedSkills = skillsService.getSkillsForSubject(projToCopy.projectId, p1subj1.subjectId)
+        def copiedGroupSkills = skillsService.getSkillsForGroup(projToCopy.projectId, group1.skillId)
+        def copiedBadge = skillsService.getBadge(projToCopy.projectId, badge.badgeId)
+        def copiedDeps = skillsService.getDependencyGraph(projToCopy.projectId, p1Skills.get(0).skillId)
+        then:
+        started.state == "RUNNING"
+        started.fromProjectId == p1.projectId
+        started.toProjectId == projToCopy.projectId
+
+        info.state == "COMPLETED"
+        // settings, 4 chunks of definitions and relationships, levels, display order and points
+        info.totalSteps == 12
+        info.completedSteps == info.totalSteps
+
+        copiedProj.totalPoints == skillsService.getProject(p1.projectId).totalPoints
+        copiedSkills.skillId == [p1Skills[0..4].skillId, group1.skillId].flatten()
+        copiedGroupSkills.skillId == p1Skills[5..6].skillId
+        copiedBadge.enabled == "true"
+        copiedBadge.numSkills == 1
+        copiedDeps.edges.size() == 1
+    }
+
+    def "partially copied project is removed when the asynchronous copy fails"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(2, 1, 1, 100)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills)
+
+        when:
+        def projToCopy = createProject(2)
+        def started = skillsService.copyProjectAsync(p1.projectId, projToCopy)
+        // definitions cannot be copied once the original project is gone
+        skillsService.deleteProject(p1.projectId)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+
+        // the original project is gone so the job cannot be retrieved through the endpoint anymore
+        ProjectCopyJob job = projectCopyJobRepo.findById(started.jobId).get()
+
+        then:
+        started.state == "RUNNING"
+        job.state == ProjectCopyJob.State.FAILED
+        job.errorMessage
+        skillsService.projectIdExists([projectId: projToCopy.projectId]).body == false
+    }
+
+    def "small projects are copied right away"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(2, 1, 1, 100)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills)
+        projectCopyService.inlineMaxSkills = 10
+
+        when:
+        def projToCopy = createProject(2)
+        def started = skillsService.copyProjectAsync(p1.projectId, projToCopy)
+        def copiedSkills = skillsService.getSkillsForSubject(projToCopy.projectId, p1subj1.subjectId)
+
+        then:
+        started.state == "COMPLETED"
+        started.completedSteps == started.totalSteps
+        !started.errorMessage
+        copiedSkills.skillId == p1Skills.skillId
+    }
+
+    def "re-running a copy job does not copy the project again"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(2, 1, 1, 100)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills)
+
+        def projToCopy = createProject(2)
+        def started = skillsService.copyProjectAsync(p1.projectId, projToCopy)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        def infoBefore = skillsService.getProjectCopyInfo(p1.projectId, started.jobId)
+
+        when:
+        projectCopyService.runCopy(started.jobId)
+        def infoAfter = skillsService.getProjectCopyInfo(p1.projectId, started.jobId)
+
+        then:
+        infoBefore.state == "COMPLETED"
+        infoAfter.state == "COMPLETED"
+        infoAfter.completedSteps == infoBefore.completedSteps
+        skillsService.getSkillsForSubject(projToCopy.projectId, p1subj1.subjectId).skillId == p1Skills.skillId
+    }
+
+    def "copy job that was already started is refused and left untouched"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(2, 1, 1, 100)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills)
+
+        def projToCopy = createProject(2)
+        def started = skillsService.copyProjectAsync(p1.projectId, projToCopy)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        // simulate a copy that is still in progress, possibly on another node
+        ProjectCopyJob job = projectCopyJobRepo.findById(started.jobId).get()
+        job.state = ProjectCopyJob.State.RUNNING
+        job.currentStep = ProjectCopyService.Step.Relationships.toString()
+        job.completedSteps = 2
+        projectCopyJobRepo.save(job)
+
+        when:
+        projectCopyService.runCopy(started.jobId)
+
+        then:
+        SkillException exception = thrown(SkillException)
+        exception.message.contains("was already started")
+        def info = skillsService.getProjectCopyInfo(p1.projectId, started.jobId)
+        info.state == "RUNNING"
+        info.completedSteps == 2
+        skillsService.getSkillsForSubject(projToCopy.projectId, p1subj1.subjectId).skillId == p1Skills.skillId
+    }
+
+    def "copy job claimed by another run before completing any steps is not copied again"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(2, 1, 1, 100)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills)
+
+        def projToCopy = createProject(2)
+        def started = skillsService.copyProjectAsync(p1.projectId, projToCopy)
+        waitForAsyncTasksCompletion.waitForAllScheduleTasks()
+        ProjectCopyJob job = projectCopyJobRepo.findById(started.jobId).get()
+        job.state = ProjectCopyJob.State.RUNNING
+        job.currentStep = ProjectCopyService.Step.Settings.toString()
+        job.completedSteps = 0
+        projectCopyJobRepo.save(job)
+
+        when:
+        projectCopyService.runCopy(started.jobId)
+
+        then:
+        thrown(SkillException)
+        projectCopyJobRepo.findById(started.jobId).get().state == ProjectCopyJob.State.RUNNING
+        skillsService.getSkillsForSubject(projToCopy.projectId, p1subj1.subjectId).skillId == p1Skills.skillId
+    }
+
+    def "projects within the default inline limit are copied within the request"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(7, 1, 1, 100)
+        def group1 = createSkillsGroup(1, 1, 22)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills[0..4])
+        skillsService.createSkill(group1)
+        p1Skills[5..6].each {
+            skillsService.assignSkillToSkillsGroup(group1.skillId, it)
+        }
+        def badge = createBadge(1, 1)
+        skillsService.createBadge(badge)
+        skillsService.assignSkillToBadge(p1.projectId, badge.badgeId, p1Skills[0].skillId)
+        badge.enabled = true
+        skillsService.createBadge(badge)
+        skillsService.assignDependency([projectId: p1.projectId, skillId: p1Skills.get(0).skillId, dependentSkillId: p1Skills.get(1).skillId])
+        projectCopyService.inlineMaxSkills = DEFAULT_INLINE_MAX_SKILLS
+
+        when:
+        def projToCopy = createProject(2)
+        def started = skillsService.copyProjectAsync(p1.projectId, projToCopy)
+
+        def copiedSkills = skillsService.getSkillsForSubject(projToCopy.projectId, p1subj1.subjectId)
+        def copiedGroupSkills = skillsService.getSkillsForGroup(projToCopy.projectId, group1.skillId)
+        def copiedBadge = skillsService.getBadge(projToCopy.projectId, badge.badgeId)
+        def copiedDeps = skillsService.getDependencyGraph(projToCopy.projectId, p1Skills.get(0).skillId)
+        then:
+        started.state == "COMPLETED"
+        started.totalSteps == 12
+        started.completedSteps == started.totalSteps
+        !started.currentStep
+
+        skillsService.getProject(projToCopy.projectId).totalPoints == skillsService.getProject(p1.projectId).totalPoints
+        copiedSkills.skillId == [p1Skills[0..4].skillId, group1.skillId].flatten()
+        copiedGroupSkills.skillId == p1Skills[5..6].skillId
+        copiedBadge.enabled == "true"
+        copiedDeps.edges.size() == 1
+    }
+
+    def "failure of an inline copy is returned to the caller and the partial copy removed"() {
+        def p1 = createProject(1)
+        def p1subj1 = createSubject(1, 1)
+        def p1Skills = createSkills(2, 1, 1, 100)
+        skillsService.createProjectAndSubjectAndSkills(p1, p1subj1, p1Skills)
+        projectCopyService.inlineMaxSkills = DEFAULT_INLINE_MAX_SKILLS
+        ProjectCopyTransactionalAccessor accessor = projectCopyService.projectCopyTransactionalAccessor
+        projectCopyService.projectCopyTransactionalAccessor = (ProjectCopyTransactionalAccessor) ProxyGenerator.INSTANCE.instantiateDelegateWithBaseClass(
+                [copyLevels: { String fromProjectId, String toProjectId -> throw new IllegalStateException("Failed to copy levels") }], [], accessor, ProjectCopyTransactionalAccessor)
+
+        when:
+        def projToCopy = createProject(2)
+        skillsService.copyProjectAsync(p1.projectId, projToCopy)
+
+        then:
+        thrown(SkillsClientException)
+        ProjectCopyJob job = projectCopyJobRepo.findAll().findAll { it.toProjectId == projToCopy.projectId }.max { it.id }
+        job.state == ProjectCopyJob.State.FAILED
+        job.currentStep == ProjectCopyService.Step.Levels.toString()
+        job.errorMessage == "Failed to copy levels"
+        skillsService.projectIdExists([projectId: projToCopy.projectId]).body == false
+
+        cleanup:
+        projectCopyService.projectCopyTransactionalAccessor = accessor
+    }
+
     static class Edge {
         String from
         String to
@@ -15,6 +15,7 @@
  */
 package skills.intTests.reportSkills
 
+import groovy.time.TimeCategory
 import groovy.util.logging.Slf4j
 import skills.intTests.utils.DefaultIntSpec
 import skills.intTests.utils.SkillsClientException
@@ -126,6 +127,79 @@ class BulkReportSkillsSpecs extends DefaultIntSpec {
         res.body.userIdsErrored.size() == 0
     }
 
+    def "bulk report skill for multiple users where some users reached max points or are within the time window"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10, 1, 1, 10, 2)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        String maxedOutUser = sampleUserIds[0]
+        String inTimeWindowUser = sampleUserIds[1]
+        use(TimeCategory) {
+            skillsService.addSkill([projectId: projId, skillId: skills[0].skillId], maxedOutUser, 2.days.ago)
+            skillsService.addSkill([projectId: projId, skillId: skills[0].skillId], maxedOutUser, 1.days.ago)
+            skillsService.addSkill([projectId: projId, skillId: skills[0].skillId], inTimeWindowUser, 1.hours.ago)
+        }
+
+        when:
+        def res = skillsService.bulkAddSkill([projectId: projId, skillId: skills[0].skillId], sampleUserIds, new Date())
+
+        then:
+        res.body.userIdsAppliedCount == sampleUserIds.size() - 2
+        res.body.userIdsNotAppliedCount == 2
+        res.body.userIdsErrored.size() == 0
+        skillsService.getSkillSummary(maxedOutUser, projId).points == 20
+        skillsService.getSkillSummary(inTimeWindowUser, projId).points == 10
+        sampleUserIds.drop(2).every { skillsService.getSkillSummary(it, projId).points == 10 }
+    }
+
+    def "bulk reported users earn the same points, levels and badges as an individually reported user"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(3, 1, 1, 100)
+        def badge = SkillsFactory.createBadge()
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+        skillsService.createBadge(badge)
+        skillsService.assignSkillToBadge(projId, badge.badgeId, skills[1].skillId)
+        badge.enabled = true
+        skillsService.createBadge(badge)
+
+        String individualUser = sampleUserIds[0]
+        List<String> bulkUsers = sampleUserIds.drop(1)
+        Date date = new Date()
+
+        when:
+        // the first report creates the points of every user, the second one adds to them
+        def individualRes = [skills[0], skills[1]].collect { skillsService.addSkill([projectId: projId, skillId: it.skillId], individualUser, date).body }
+        def bulkRes = [skills[0], skills[1]].collect { skillsService.bulkAddSkill([projectId: projId, skillId: it.skillId], bulkUsers, date).body }
+        def individualSummary = skillsService.getSkillSummary(individualUser, projId)
+        def individualSubjectSummary = skillsService.getSkillSummary(individualUser, projId, subj.subjectId)
+
+        then:
+        individualRes.every { it.skillApplied }
+        individualRes[1].completed.find { it.type == "Badge" && it.id == badge.badgeId }
+        individualSummary.points == 200
+        individualSummary.skillsLevel > 0
+        individualSummary.badges.numBadgesCompleted == 1
+
+        bulkRes.every { it.userIdsAppliedCount == bulkUsers.size() && it.userIdsNotAppliedCount == 0 }
+        bulkUsers.every { String userId ->
+            def summary = skillsService.getSkillSummary(userId, projId)
+            def subjectSummary = skillsService.getSkillSummary(userId, projId, subj.subjectId)
+            summary.points == individualSummary.points &&
+                    summary.skillsLevel == individualSummary.skillsLevel &&
+                    summary.badges.numBadgesCompleted == individualSummary.badges.numBadgesCompleted &&
+                    subjectSummary.skillsLevel == individualSubjectSummary.skillsLevel &&
+                    subjectSummary.skills.findAll { it.points == it.totalPoints }.size() == 2
+        }
+    }
+
     def "attempt to bulk report skill events without specifying a timestamp"() {
         def proj = SkillsFactory.createProject()
         def subj = SkillsFactory.createSubject()
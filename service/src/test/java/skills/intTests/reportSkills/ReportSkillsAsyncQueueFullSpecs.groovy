@@ -0,0 +1,93 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests.reportSkills
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpStatus
+import skills.SpringBootApp
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsClientException
+import skills.intTests.utils.SkillsFactory
+import skills.services.events.AcceptedSkillEvent
+import skills.services.events.SkillEventsIngestionQueue
+import skills.services.events.SkillEventsService
+import skills.utils.WaitFor
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@SpringBootTest(properties = ['skills.h2.port=9099',
+        'skills.config.asyncEventIngestion.enabled=true',
+        'skills.config.asyncEventIngestion.numOfThreads=1',
+        'skills.config.asyncEventIngestion.queueCapacity=1',
+        ], webEnvironment=SpringBootTest.WebEnvironment.RANDOM_PORT, classes = SpringBootApp)
+class ReportSkillsAsyncQueueFullSpecs extends DefaultIntSpec {
+
+    @Autowired
+    SkillEventsIngestionQueue skillEventsIngestionQueue
+
+    SkillEventsService originalSkillEventsService
+    CountDownLatch workerReleased = new CountDownLatch(1)
+
+    def setup() {
+        originalSkillEventsService = skillEventsIngestionQueue.skillEventsService
+        // hold the only worker so that accepted events stay queued
+        skillEventsIngestionQueue.skillEventsService = [reportSkills: { List<AcceptedSkillEvent> events ->
+            workerReleased.await(30, TimeUnit.SECONDS)
+            return originalSkillEventsService.reportSkills(events)
+        }] as SkillEventsService
+    }
+
+    def cleanup() {
+        workerReleased.countDown()
+        skillEventsIngestionQueue.skillEventsService = originalSkillEventsService
+    }
+
+    def "events are rejected with 429 when the ingestion queue is full"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        String userId = getRandomUsers(1).first()
+
+        when:
+        def first = skillsService.addSkillAsync([projectId: proj.projectId, skillId: skill.skillId], userId, new Date() - 2)
+        // the worker took the first event and is blocked applying it
+        WaitFor.wait { skillEventsIngestionQueue.queuedCount == 0 }
+        def second = skillsService.addSkillAsync([projectId: proj.projectId, skillId: skill.skillId], userId, new Date() - 1)
+        SkillsClientException rejected = null
+        try {
+            skillsService.addSkillAsync([projectId: proj.projectId, skillId: skill.skillId], userId, new Date())
+        } catch (SkillsClientException e) {
+            rejected = e
+        }
+        workerReleased.countDown()
+        WaitFor.wait { userPerformedSkillRepo.findAll().size() == 2 }
+
+        then:
+        first.body.receiptId
+        second.body.receiptId
+        rejected
+        rejected.httpStatus == HttpStatus.TOO_MANY_REQUESTS
+        rejected.message.contains("errorCode:EventQueueFull")
+        userPerformedSkillRepo.findAll().size() == 2
+    }
+}
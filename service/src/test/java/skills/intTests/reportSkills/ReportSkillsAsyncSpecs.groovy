@@ -0,0 +1,188 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests.reportSkills
+
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.lang.Nullable
+import org.springframework.messaging.converter.MappingJackson2MessageConverter
+import org.springframework.messaging.simp.stomp.StompHeaders
+import org.springframework.messaging.simp.stomp.StompSession
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter
+import org.springframework.web.socket.WebSocketHttpHeaders
+import org.springframework.web.socket.client.standard.StandardWebSocketClient
+import org.springframework.web.socket.messaging.WebSocketStompClient
+import org.springframework.web.socket.sockjs.client.SockJsClient
+import org.springframework.web.socket.sockjs.client.WebSocketTransport
+import skills.SpringBootApp
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.intTests.utils.TestUtils
+import skills.services.events.SkillEventResult
+import skills.utils.WaitFor
+import spock.lang.IgnoreIf
+
+import java.lang.reflect.Type
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@SpringBootTest(properties = ['skills.h2.port=9098',
+        'skills.config.asyncEventIngestion.enabled=true',
+        'skills.config.asyncEventIngestion.numOfThreads=2',
+        'skills.config.asyncEventIngestion.maxBatchSize=5',
+        ], webEnvironment=SpringBootTest.WebEnvironment.RANDOM_PORT, classes = SpringBootApp)
+class ReportSkillsAsyncSpecs extends DefaultIntSpec {
+
+    TestUtils testUtils = new TestUtils()
+    StompSession stompSession
+
+    def cleanup() {
+        stompSession?.disconnect()
+    }
+
+    def "events reported asynchronously are accepted with a receipt and applied in the background"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        String userId = getRandomUsers(1).first()
+        List<Date> dates = testUtils.getLastNDays(4)
+
+        when:
+        List results = dates.collect { skillsService.addSkillAsync([projectId: proj.projectId, skillId: skill.skillId], userId, it) }
+        WaitFor.wait { userPerformedSkillRepo.findAll().size() == 4 }
+        def summary = skillsService.getSkillSummary(userId, proj.projectId, subj.subjectId)
+
+        then:
+        results.each {
+            assert it.body.receiptId
+            assert !it.body.skillApplied
+            assert it.body.durable == false
+        }
+        results.collect { it.body.receiptId }.unique().size() == 4
+        userPerformedSkillRepo.findAll().size() == 4
+        summary.skills.find { it.skillId == skill.skillId }.points == 40
+    }
+
+    def "events for multiple users are applied independently"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        List<String> users = getRandomUsers(3)
+        List<Date> dates = testUtils.getLastNDays(3)
+
+        when:
+        users.each { String userId ->
+            dates.each { skillsService.addSkillAsync([projectId: proj.projectId, skillId: skill.skillId], userId, it) }
+        }
+        WaitFor.wait { userPerformedSkillRepo.findAll().size() == 9 }
+
+        then:
+        users.each { String userId ->
+            def summary = skillsService.getSkillSummary(userId, proj.projectId, subj.subjectId)
+            assert summary.skills.find { it.skillId == skill.skillId }.points == 30
+        }
+    }
+
+    def "unknown skill reported asynchronously is accepted but never applied"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        String userId = getRandomUsers(1).first()
+
+        when:
+        def res = skillsService.addSkillAsync([projectId: proj.projectId, skillId: 'doesNotExist'], userId)
+        def validRes = skillsService.addSkillAsync([projectId: proj.projectId, skillId: skill.skillId], userId)
+        WaitFor.wait { userPerformedSkillRepo.findAll().size() == 1 }
+
+        then:
+        res.body.receiptId
+        validRes.body.receiptId
+        userPerformedSkillRepo.findAll().size() == 1
+        userPerformedSkillRepo.findAll().first().skillId == skill.skillId
+    }
+
+    @IgnoreIf({env["SPRING_PROFILES_ACTIVE"] == "pki" })
+    def "results of asynchronously applied events are published over websocket with the receipt id"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        String userId = getRandomUsers(1).first()
+        List<SkillEventResult> wsResults = Collections.synchronizedList([])
+        CountDownLatch messagesReceived = connectToWebsocket(proj.projectId, userId, wsResults, 2)
+
+        when:
+        List results = testUtils.getLastNDays(2).collect { skillsService.addSkillAsync([projectId: proj.projectId, skillId: skill.skillId], userId, it) }
+        boolean received = messagesReceived.await(30, TimeUnit.SECONDS)
+
+        then:
+        received
+        wsResults.collect { it.receiptId }.sort() == results.collect { it.body.receiptId }.sort()
+        wsResults.each {
+            assert it.skillApplied
+            assert it.skillId == skill.skillId
+            assert it.pointsEarned == 10
+        }
+    }
+
+    private CountDownLatch connectToWebsocket(String projectId, String userId, List<SkillEventResult> wsResults, int count) {
+        CountDownLatch messagesReceived = new CountDownLatch(count)
+        WebSocketStompClient stompClient = new WebSocketStompClient(new SockJsClient([new WebSocketTransport(new StandardWebSocketClient())]))
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter())
+        StompSessionHandlerAdapter sessionHandler = new StompSessionHandlerAdapter() {
+            @Override
+            Type getPayloadType(StompHeaders headers) {
+                return SkillEventResult
+            }
+
+            @Override
+            void handleFrame(StompHeaders headers, @Nullable Object payload) {
+                wsResults.add((SkillEventResult) payload)
+                messagesReceived.countDown()
+            }
+
+            @Override
+            void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+                session.subscribe("/user/queue/${projectId}-skill-updates", this)
+            }
+        }
+
+        String secret = skillsService.getClientSecret(projectId)
+        skillsService.setProxyCredentials(projectId, secret)
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders()
+        headers.add('Authorization', "Bearer ${skillsService.wsHelper.getTokenForUser(userId)}")
+        stompSession = stompClient.connect("ws://localhost:${localPort}/skills-websocket", headers, sessionHandler).get()
+        return messagesReceived
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests.reportSkills
+
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsClientException
+import skills.intTests.utils.SkillsFactory
+import skills.intTests.utils.TestUtils
+
+class ReportSkillsBatchSpecs extends DefaultIntSpec {
+
+    TestUtils testUtils = new TestUtils()
+
+    def "report multiple events for a single user in one request"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10, 1, 1, 10, 2)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        String userId = getRandomUsers(1).first()
+        List<Date> dates = testUtils.getLastNDays(3)
+
+        when:
+        def res = skillsService.addSkills(proj.projectId, [
+                [skillId: skills[0].skillId, timestamp: dates[0].time],
+                [skillId: skills[0].skillId, timestamp: dates[1].time],
+                [skillId: skills[0].skillId, timestamp: dates[2].time],
+                [skillId: skills[1].skillId, timestamp: dates[2].time],
+        ], userId)
+        def summary = skillsService.getSkillSummary(userId, proj.projectId, subj.subjectId)
+
+        then:
+        res.body.size() == 4
+        res.body.collect { it.skillApplied } == [true, true, false, true]
+        res.body[1].completed.find { it.type == 'Skill' && it.id == skills[0].skillId }
+        res.body[2].explanation == "This skill reached its maximum points"
+        summary.skills.find { it.skillId == skills[0].skillId }.points == 20
+        summary.skills.find { it.skillId == skills[1].skillId }.points == 10
+        userPerformedSkillRepo.findAll().size() == 3
+    }
+
+    def "events are applied in the provided order"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+        skillsService.assignDependency([projectId: proj.projectId, skillId: skills[0].skillId, dependentSkillId: skills[1].skillId])
+
+        String userId = getRandomUsers(1).first()
+        Date date = new Date()
+
+        when:
+        def res = skillsService.addSkills(proj.projectId, [
+                [skillId: skills[0].skillId, timestamp: date.time],
+                [skillId: skills[1].skillId, timestamp: date.time],
+                [skillId: skills[0].skillId, timestamp: date.time],
+        ], userId)
+
+        then:
+        res.body.collect { it.skillApplied } == [false, true, true]
+        res.body[0].explanation.startsWith("Not all dependent skills have been achieved")
+    }
+
+    def "events are rejected as a group when any skill does not exist"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        String userId = getRandomUsers(1).first()
+
+        when:
+        skillsService.addSkills(proj.projectId, [
+                [skillId: skills[0].skillId, timestamp: new Date().time],
+                [skillId: 'doesNotExist', timestamp: new Date().time],
+        ], userId)
+
+        then:
+        SkillsClientException exception = thrown(SkillsClientException)
+        exception.message.contains("Failed to report skill event because skill definition does not exist")
+        userPerformedSkillRepo.findAll().size() == 0
+    }
+
+    def "events may not be in the future"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        when:
+        skillsService.addSkills(proj.projectId, [
+                [skillId: skills[0].skillId, timestamp: new Date().time],
+                [skillId: skills[1].skillId, timestamp: System.currentTimeMillis() + 40000],
+        ], getRandomUsers(1).first())
+
+        then:
+        SkillsClientException exception = thrown(SkillsClientException)
+        exception.message.contains("Skill Events may not be in the future")
+    }
+
+    def "at least one event must be provided"() {
+        def proj = SkillsFactory.createProject()
+        skillsService.createProject(proj)
+
+        when:
+        skillsService.addSkills(proj.projectId, [], getRandomUsers(1).first())
+
+        then:
+        SkillsClientException exception = thrown(SkillsClientException)
+        exception.message.contains("events must contain at least 1 item.")
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.intTests.reportSkills
+
+import org.springframework.beans.factory.annotation.Autowired
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.intTests.utils.TestUtils
+import skills.services.events.SkillDefinitionSnapshotCache
+import skills.storage.model.SkillDef
+
+class ReportSkills_DefinitionSnapshotSpecs extends DefaultIntSpec {
+
+    TestUtils testUtils = new TestUtils()
+
+    @Autowired
+    SkillDefinitionSnapshotCache skillDefinitionSnapshotCache
+
+    def "modified point increment is used for subsequent events"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0, 10)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        String userId = getRandomUsers(1).first()
+        List<Date> dates = testUtils.getLastNDays(2)
+
+        when:
+        def res1 = skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, dates[0])
+        skill.pointIncrement = 20
+        skillsService.createSkill(skill)
+        def res2 = skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, dates[1])
+
+        then:
+        res1.body.skillApplied
+        res1.body.pointsEarned == 10
+        res2.body.skillApplied
+        res2.body.pointsEarned == 20
+    }
+
+    def "skill created after the project's snapshot was loaded can be reported"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(2, 1, 1, 100)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skills[0])
+
+        String userId = getRandomUsers(1).first()
+
+        when:
+        def res1 = skillsService.addSkill([projectId: proj.projectId, skillId: skills[0].skillId], userId)
+        skillsService.createSkill(skills[1])
+        def res2 = skillsService.addSkill([projectId: proj.projectId, skillId: skills[1].skillId], userId)
+
+        then:
+        res1.body.skillApplied
+        res2.body.skillApplied
+    }
+
+    def "dependency added after the project's snapshot was loaded is enforced"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(3, 1, 1, 100)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        String userId = getRandomUsers(1).first()
+
+        when:
+        def res1 = skillsService.addSkill([projectId: proj.projectId, skillId: skills[0].skillId], userId)
+        skillsService.assignDependency([projectId: proj.projectId, skillId: skills[1].skillId, dependentSkillId: skills[2].skillId])
+        def res2 = skillsService.addSkill([projectId: proj.projectId, skillId: skills[1].skillId], userId)
+
+        then:
+        res1.body.skillApplied
+        !res2.body.skillApplied
+        res2.body.explanation.startsWith("Not all dependent skills have been achieved")
+    }
+
+    def "dependency removed after the project's snapshot was loaded is no longer enforced"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(3, 1, 1, 100)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+        skillsService.assignDependency([projectId: proj.projectId, skillId: skills[1].skillId, dependentSkillId: skills[2].skillId])
+
+        String userId = getRandomUsers(1).first()
+
+        when:
+        def res1 = skillsService.addSkill([projectId: proj.projectId, skillId: skills[1].skillId], userId)
+        skillsService.removeDependency([projectId: proj.projectId, skillId: skills[1].skillId, dependentSkillId: skills[2].skillId])
+        def res2 = skillsService.addSkill([projectId: proj.projectId, skillId: skills[1].skillId], userId)
+
+        then:
+        !res1.body.skillApplied
+        res1.body.explanation == "Not all dependent skills have been achieved. Missing achievements for 1 out of 1. Waiting on completion of [TestProject1:skill3]."
+        res2.body.skillApplied
+    }
+
+    def "cross-project dependency on a deleted skill is no longer enforced"() {
+        def proj1 = SkillsFactory.createProject(1)
+        def proj1_subj = SkillsFactory.createSubject(1, 1)
+        def proj1_skills = SkillsFactory.createSkills(2, 1, 1, 100)
+        def proj2 = SkillsFactory.createProject(2)
+        def proj2_subj = SkillsFactory.createSubject(2, 2)
+        def proj2_skills = SkillsFactory.createSkills(2, 2, 2, 100)
+
+        skillsService.createProject(proj1)
+        skillsService.createSubject(proj1_subj)
+        skillsService.createSkills(proj1_skills)
+        skillsService.createProject(proj2)
+        skillsService.createSubject(proj2_subj)
+        skillsService.createSkills(proj2_skills)
+        skillsService.shareSkill(proj1.projectId, proj1_skills[0].skillId, proj2.projectId)
+        skillsService.assignDependency([projectId         : proj2.projectId, skillId: proj2_skills[0].skillId,
+                                        dependentProjectId: proj1.projectId, dependentSkillId: proj1_skills[0].skillId,])
+
+        String userId = getRandomUsers(1).first()
+
+        when:
+        def res1 = skillsService.addSkill([projectId: proj2.projectId, skillId: proj2_skills[0].skillId], userId)
+        skillsService.deleteSkill([projectId: proj1.projectId, subjectId: proj1_subj.subjectId, skillId: proj1_skills[0].skillId])
+        def res2 = skillsService.addSkill([projectId: proj2.projectId, skillId: proj2_skills[0].skillId], userId)
+
+        then:
+        !res1.body.skillApplied
+        res1.body.explanation.startsWith("Not all dependent skills have been achieved")
+        res2.body.skillApplied
+    }
+
+    def "modified levels are used for subsequent events"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0, 10)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        String userId = getRandomUsers(1).first()
+        List<Date> dates = testUtils.getLastNDays(2)
+
+        when:
+        skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, dates[0])
+        def levels = skillsService.getLevels(proj.projectId).sort() { it.level }
+        levels[1].percent = 15
+        skillsService.editLevel(proj.projectId, null, "2", levels[1])
+        skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, dates[1])
+        def summary = skillsService.getSkillSummary(userId, proj.projectId)
+
+        then:
+        summary.points == 20
+        summary.skillsLevel == 2
+    }
+
+    def "snapshot is reloaded after the project is invalidated"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 0, 10)
+
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        when:
+        def snapshot1 = skillDefinitionSnapshotCache.getSnapshot(proj.projectId)
+        def snapshot2 = skillDefinitionSnapshotCache.getSnapshot(proj.projectId)
+        skillDefinitionSnapshotCache.projectDefinitionChanged(proj.projectId)
+        def snapshot3 = skillDefinitionSnapshotCache.getSnapshot(proj.projectId)
+
+        then:
+        snapshot1.is(snapshot2)
+        !snapshot1.is(snapshot3)
+        snapshot3.generation > snapshot1.generation
+        snapshot3.getSkill(skill.skillId, SkillDef.ContainerType.Skill).pointIncrement == 10
+    }
+}
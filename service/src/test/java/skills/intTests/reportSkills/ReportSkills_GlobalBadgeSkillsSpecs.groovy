@@ -16,10 +16,12 @@
 package skills.intTests.reportSkills
 
 import org.joda.time.DateTime
+import org.springframework.beans.factory.annotation.Autowired
 import skills.intTests.utils.DefaultIntSpec
 import skills.intTests.utils.SkillsClientException
 import skills.intTests.utils.SkillsFactory
 import skills.intTests.utils.SkillsService
+import skills.services.events.GlobalBadgeRequirementsIndex
 
 class ReportSkills_GlobalBadgeSkillsSpecs extends DefaultIntSpec {
 
@@ -31,6 +33,9 @@ class ReportSkills_GlobalBadgeSkillsSpecs extends DefaultIntSpec {
     String nonRootUserId = 'foo@bar.com'
     SkillsService nonSupervisorSkillsService
 
+    @Autowired
+    GlobalBadgeRequirementsIndex globalBadgeRequirementsIndex
+
     def setup(){
         skillsService.deleteProjectIfExist(projId)
         rootSkillsService = createService(ultimateRoot, 'aaaaaaaa')
@@ -44,6 +49,7 @@ class ReportSkills_GlobalBadgeSkillsSpecs extends DefaultIntSpec {
 
     def cleanup() {
         rootSkillsService?.removeSupervisorRole(skillsService.wsHelper.username)
+        globalBadgeRequirementsIndex.enabled = true
     }
 
     def "give credit if all dependencies were fulfilled"(){
@@ -345,4 +351,42 @@ class ReportSkills_GlobalBadgeSkillsSpecs extends DefaultIntSpec {
         ex.message.contains('cannot be deleted as it is currently referenced by one or more global badges')
     }
 
+    def "badge with an unmet level requirement does not prevent other global badges from being awarded - with and without the requirements index"() {
+        globalBadgeRequirementsIndex.enabled = indexEnabled
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skills = SkillsFactory.createSkills(10, 1, 1, 100)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkills(skills)
+
+        def badge1 = [badgeId: 'GlobalBadge1', name: 'Test Global Badge 1']
+        skillsService.createGlobalBadge(badge1)
+        skillsService.assignSkillToGlobalBadge([projectId: proj.projectId, badgeId: badge1.badgeId, skillId: skills[0].skillId])
+        skillsService.assignProjectLevelToGlobalBadge(projectId: proj.projectId, badgeId: badge1.badgeId, level: "5")
+        badge1.enabled = 'true'
+        skillsService.updateGlobalBadge(badge1)
+
+        def badge2 = [badgeId: 'GlobalBadge2', name: 'Test Global Badge 2']
+        skillsService.createGlobalBadge(badge2)
+        skillsService.assignSkillToGlobalBadge([projectId: proj.projectId, badgeId: badge2.badgeId, skillId: skills[0].skillId])
+        badge2.enabled = 'true'
+        skillsService.updateGlobalBadge(badge2)
+
+        when:
+        def res = skillsService.addSkill([projectId: proj.projectId, skillId: skills[0].skillId], "user1", new Date()).body
+
+        then:
+        res.skillApplied
+        !res.completed.find { it.id == badge1.badgeId }
+        res.completed.find { it.id == badge2.badgeId }
+
+        cleanup:
+        skillsService.deleteGlobalBadge(badge1.badgeId)
+        skillsService.deleteGlobalBadge(badge2.badgeId)
+
+        where:
+        indexEnabled << [true, false]
+    }
+
 }
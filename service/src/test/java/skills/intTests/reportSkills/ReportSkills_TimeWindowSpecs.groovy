@@ -218,4 +218,30 @@ class ReportSkills_TimeWindowSpecs extends DefaultIntSpec {
         skill1_res20.body.skillApplied
         !skill1_res21.body.skillApplied
     }
+
+    def "time window is re-evaluated after an event within the window is removed"() {
+        def proj = SkillsFactory.createProject()
+        def subj = SkillsFactory.createSubject()
+        def skill = SkillsFactory.createSkill(1, 1, 1, 0, 10, 60, 10)
+        skillsService.createProject(proj)
+        skillsService.createSubject(subj)
+        skillsService.createSkill(skill)
+
+        Date date = new Date()
+
+        when:
+        def res1 = skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, date)
+        def res2 = skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, date)
+        skillsService.deleteSkillEvent([projectId: proj.projectId, skillId: skill.skillId, userId: userId, timestamp: date.time])
+        def res3 = skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, date)
+        def res4 = skillsService.addSkill([projectId: proj.projectId, skillId: skill.skillId], userId, date)
+
+        then:
+        res1.body.skillApplied
+        !res2.body.skillApplied
+        res2.body.explanation == "This skill was already performed within the configured time period (within the last 1 hour)"
+        res3.body.skillApplied
+        !res4.body.skillApplied
+        res4.body.explanation == "This skill was already performed within the configured time period (within the last 1 hour)"
+    }
 }
@@ -175,6 +175,10 @@ class RestTemplateWrapper extends RestTemplate {
         return restTemplate.exchange(url, HttpMethod.GET, getAuthEntity(), response)
     }
 
+    <T> ResponseEntity<T> getForEntity(String url, Class<T> response, HttpHeaders headers) {
+        return restTemplate.exchange(url, HttpMethod.GET, getAuthEntity(response, new LinkedMultiValueMap<>(), headers), response)
+    }
+
     ResponseEntity putForEntity(String url, Object request, Object... uriVariables) {
         return restTemplate.exchange(url, HttpMethod.PUT, getAuthEntity(String.class, request), String.class, uriVariables)
     }
@@ -123,6 +123,14 @@ class SkillsService {
         wsHelper.adminPost("/projects/${fromProjId}/copy".toString(), toProjProps)
     }
 
+    def copyProjectAsync(String fromProjId, Map toProjProps) {
+        return wsHelper.adminPost("/projects/${fromProjId}/copy/async".toString(), toProjProps)?.body
+    }
+
+    def getProjectCopyInfo(String fromProjId, Integer jobId) {
+        return wsHelper.adminGet("/projects/${fromProjId}/copy/${jobId}/info".toString())
+    }
+
     static String PROD_MODE = Settings.PRODUCTION_MODE.settingName
 
     def enableProdMode(proj) {
@@ -553,6 +561,16 @@ class SkillsService {
         }
     }
 
+    def addSkillAsync(Map props, String userId, Date date = new Date()) {
+        userId = getUserId(userId)
+        return wsHelper.apiPost("/projects/${props.projectId}/skills/${props.skillId}", [ userId : userId, timestamp:date.time, async: true])
+    }
+
+    def addSkills(String projectId, List<Map> events, String userId, boolean notifyIfSkillNotApplied = false) {
+        userId = getUserId(userId)
+        return wsHelper.apiPost("/projects/${projectId}/skillEvents", [ userId : userId, events: events, notifyIfSkillNotApplied: notifyIfSkillNotApplied])
+    }
+
     @Profile
     def bulkAddSkill(Map props, List<String> userIds, Date date) {
         userIds = userIds.collect { getUserId(it, false) }
@@ -1050,8 +1068,8 @@ class SkillsService {
         wsHelper.get("/public/config", "", [:])
     }
 
-    def getPublicClientDisplayConfigs() {
-        wsHelper.get("/public/clientDisplay/config", "", [:])
+    def getPublicClientDisplayConfigs(String projectId = null) {
+        wsHelper.get("/public/clientDisplay/config", "", projectId ? [projectId: projectId] : [:])
     }
 
     def getPublicSetting(String setting, String settingGroup){
@@ -263,6 +263,12 @@ class WSHelper {
         return responseEntity
     }
 
+    public ResponseEntity<String> rawGet(String endpoint, def params, HttpHeaders headers) {
+        String url = "${skillsService}/${endpoint}${getUrlFromParams(params)}"
+        ResponseEntity<String> responseEntity = restTemplateWrapper.getForEntity(url, String, headers)
+        return responseEntity
+    }
+
     private def put(String endpoint, String type, def params, HttpStatus expectedStatus = HttpStatus.OK, boolean throwExceptionOnFailure = true) {
         String url = "${skillsService}/${type}${endpoint}"
         log.info("PUT: {}, params={}", url, params)
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.notify
+
+import spock.lang.Specification
+
+class DomainRateLimiterSpec extends Specification {
+
+    def "limits number of emails per domain within a minute"() {
+        DomainRateLimiter limiter = new DomainRateLimiter(2)
+        long now = System.currentTimeMillis()
+
+        expect:
+        limiter.tryAcquire(['a@one.org'], now)
+        limiter.tryAcquire(['b@One.org', 'c@two.org'], now)
+        !limiter.tryAcquire(['d@one.org'], now)
+        limiter.tryAcquire(['d@two.org'], now)
+        // next window
+        limiter.tryAcquire(['d@one.org'], now + 60 * 1000)
+    }
+
+    def "emails are not sent if any of the domains is over the limit"() {
+        DomainRateLimiter limiter = new DomainRateLimiter(1)
+        long now = System.currentTimeMillis()
+
+        expect:
+        limiter.tryAcquire(['a@one.org'], now)
+        !limiter.tryAcquire(['a@two.org', 'b@one.org'], now)
+        // no permits were taken for two.org by the rejected request
+        limiter.tryAcquire(['a@two.org'], now)
+    }
+
+    def "limit less than or equal to 0 disables rate limiting"() {
+        DomainRateLimiter limiter = new DomainRateLimiter(0)
+
+        expect:
+        (1..100).every { limiter.tryAcquire(['a@one.org']) }
+    }
+}
@@ -317,4 +317,48 @@ class EmailNotifierSpecs extends DefaultIntSpec {
         loggerHelper.stop()
     }
 
+    def "all notifications of a batch are sent"() {
+        when:
+        (1..5).each {
+            emailNotifier.sendNotification(new Notifier.NotificationRequest(
+                    userIds: [skillsService.userName],
+                    type: "ForTestNotificationBuilder",
+                    keyValParams: [simpleParam: "param value ${it}".toString()]
+            ))
+        }
+        assert WaitFor.wait { greenMail.getReceivedMessages().size() == 5 }
+        assert WaitFor.wait { notificationsRepo.count() == 0 }
+
+        then:
+        EmailUtils.getEmails(greenMail).collect { it.recipients } == (1..5).collect { [email] }
+        EmailUtils.getEmails(greenMail).collect { it.html.find(/param value \d/) }.sort() == (1..5).collect { "param value ${it}".toString() }
+    }
+
+    def "notification claimed by another dispatcher is not sent until the claim expires"() {
+        emailNotifier.sendNotification(new Notifier.NotificationRequest(
+                userIds: [skillsService.userName],
+                type: "ForTestNotificationBuilder",
+                keyValParams: [simpleParam: 'param value']
+        ))
+        Notification notification = notificationsRepo.findAll().first()
+        notification.claimedBy = 'other-node'
+        notification.claimedUntil = new Date() + 1
+        notificationsRepo.save(notification)
+
+        when:
+        emailNotifier.dispatchNotifications()
+        int numReceivedWhileClaimed = greenMail.getReceivedMessages().size()
+
+        notification = notificationsRepo.findById(notification.id).get()
+        notification.claimedUntil = new Date() - 1
+        notificationsRepo.save(notification)
+        assert WaitFor.wait { greenMail.getReceivedMessages().size() > 0 }
+        assert WaitFor.wait { notificationsRepo.count() == 0 }
+
+        then:
+        numReceivedWhileClaimed == 0
+        greenMail.getReceivedMessages().size() == 1
+        EmailUtils.getEmail(greenMail).recipients == [email]
+    }
+
 }
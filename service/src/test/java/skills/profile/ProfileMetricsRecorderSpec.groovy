@@ -0,0 +1,96 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.profile
+
+import callStack.profiler.ProfileEvent
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class ProfileMetricsRecorderSpec extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    ProfileMetricsRecorder recorder = new ProfileMetricsRecorder(enabled: true, sampleRate: 1, slowThresholdMillis: 1000, maxMethods: 100, maxEndpoints: 3, endpointHistograms: true, meterRegistry: meterRegistry)
+
+    def setup() {
+        recorder.init()
+    }
+
+    def "records a timer for every profiled method tagged by endpoint"() {
+        ProfileEvent root = event('addSkill(projectId=proj)', 300, 1)
+        ProfileEvent report = event('SkillEventsTransactionalService.reportSkillInternal', 250, 1)
+        root.addChild(report)
+        report.addChild(event('TimeWindowHelper.checkTimeWindow', 20, 2))
+
+        when:
+        recorder.record('UserSkillsController.addSkill', root)
+
+        then:
+        Timer endpointTimer = meterRegistry.get(ProfileMetricsRecorder.ENDPOINT_TIMER).tag('endpoint', 'UserSkillsController.addSkill').timer()
+        endpointTimer.count() == 1
+        endpointTimer.totalTime(TimeUnit.MILLISECONDS) == 300
+
+        Timer reportTimer = meterRegistry.get(ProfileMetricsRecorder.METHOD_TIMER).tags('endpoint', 'UserSkillsController.addSkill', 'method', 'SkillEventsTransactionalService.reportSkillInternal').timer()
+        reportTimer.count() == 1
+        reportTimer.totalTime(TimeUnit.MILLISECONDS) == 250
+
+        Timer timeWindowTimer = meterRegistry.get(ProfileMetricsRecorder.METHOD_TIMER).tags('endpoint', 'UserSkillsController.addSkill', 'method', 'TimeWindowHelper.checkTimeWindow').timer()
+        timeWindowTimer.count() == 1
+        timeWindowTimer.totalTime(TimeUnit.MILLISECONDS) == 20
+        meterRegistry.get(ProfileMetricsRecorder.METHOD_INVOCATIONS_COUNTER).tags('endpoint', 'UserSkillsController.addSkill', 'method', 'TimeWindowHelper.checkTimeWindow').counter().count() == 2
+
+        !recorder.exemplars
+        !meterRegistry.find(ProfileMetricsRecorder.SLOW_COUNTER).counter()
+    }
+
+    def "captures the call stack of slow requests"() {
+        ProfileEvent fast = event('getSkillSummary(projectId=proj)', 10, 1)
+        ProfileEvent slow = event('getSkillSummary(projectId=proj)', 1500, 1)
+        slow.addChild(event('SkillsLoader.loadSkillSummary', 1400, 1))
+
+        when:
+        recorder.record('UserSkillsController.getSkillSummary', slow)
+        recorder.record('UserSkillsController.getSkillSummary', fast)
+
+        then:
+        recorder.exemplars.size() == 1
+        recorder.exemplars['UserSkillsController.getSkillSummary'].runtimeInMillis == 1500
+        recorder.exemplars['UserSkillsController.getSkillSummary'].callStack.contains('SkillsLoader.loadSkillSummary')
+        meterRegistry.get(ProfileMetricsRecorder.SLOW_COUNTER).tag('endpoint', 'UserSkillsController.getSkillSummary').counter().count() == 1
+    }
+
+    def "number of endpoints is capped"() {
+        when:
+        (1..5).each { recorder.record("Controller.endpoint${it}".toString(), event("endpoint${it}", 10, 1)) }
+
+        then:
+        meterRegistry.find(ProfileMetricsRecorder.ENDPOINT_TIMER).timers().collect { it.id.getTag('endpoint') }.sort() ==
+                ['Controller.endpoint1', 'Controller.endpoint2', 'Controller.endpoint3']
+    }
+
+    def "sampling"() {
+        expect:
+        new ProfileMetricsRecorder(enabled: true, sampleRate: 1).shouldSample()
+        !new ProfileMetricsRecorder(enabled: true, sampleRate: 0).shouldSample()
+        !new ProfileMetricsRecorder(enabled: false, sampleRate: 1).shouldSample()
+    }
+
+    private static ProfileEvent event(String name, long runtimeInMillis, int numOfInvocations) {
+        return new ProfileEvent(name: name, runtimeInMillis: runtimeInMillis, numOfInvocations: numOfInvocations)
+    }
+}
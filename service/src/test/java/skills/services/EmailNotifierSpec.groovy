@@ -16,7 +16,9 @@
 package skills.services
 
 import groovy.json.JsonOutput
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.springframework.mail.javamail.JavaMailSender
+import org.springframework.transaction.PlatformTransactionManager
 import skills.notify.EmailNotifier
 import skills.notify.builders.NotificationEmailBuilder
 import skills.notify.builders.NotificationEmailBuilderManager
@@ -27,8 +29,8 @@ import skills.storage.repos.NotificationsRepo
 import skills.storage.repos.UserAttrsRepo
 import spock.lang.Specification
 
+import javax.mail.internet.MimeMessage
 import java.util.concurrent.TimeUnit
-import java.util.stream.Stream
 
 class EmailNotifierSpec extends Specification {
 
@@ -38,12 +40,13 @@ class EmailNotifierSpec extends Specification {
         UserAttrsRepo mockAttrRepo = Mock(UserAttrsRepo)
         SettingsService mockSettingsService = Mock(SettingsService)
         NotificationsRepo notificationsRepo = Mock(NotificationsRepo)
-        LockingService lockingServiceMock = Mock(LockingService)
         FeatureService featureService = Mock(FeatureService)
         NotificationEmailBuilderManager notificationEmailBuilderManager = Mock(NotificationEmailBuilderManager)
         EmailSettingsService emailSettingsServiceMock = Mock(EmailSettingsService)
         SystemSettingsService systemSettingsServiceMock = Mock(SystemSettingsService)
         JavaMailSender mailSenderMock = Mock(JavaMailSender)
+        MimeMessage message1 = Mock(MimeMessage)
+        MimeMessage message2 = Mock(MimeMessage)
 
         Notification notification = new Notification(
                 requestedOn: new Date(),
@@ -59,28 +62,32 @@ class EmailNotifierSpec extends Specification {
                 id: 1,
         )
 
-        Stream stream = [notification].stream()
-
-        notificationsRepo.streamNewNotifications() >> stream
+        notificationsRepo.findNewNotificationIdsToClaim(0, _, _) >> [1]
+        notificationsRepo.findNewNotificationIdsToClaim(1, _, _) >> []
+        notificationsRepo.claim([1], _, _, _) >> 1
+        notificationsRepo.findAllByClaimedBy(_) >> [notification]
         mockSettingsService.getGlobalSettingsByGroup(*_) >> []
         emailSettingsServiceMock.getMailSender(*_) >> mailSenderMock
-        lockingServiceMock.lockForNotifying()
         notificationEmailBuilderManager.build(notification, _) >> new NotificationEmailBuilder.Res(subject: "subject", html: "body", plainText: "body")
 
-        mockAttrRepo.findEmailByUserId(*_) >>> ['fake1@fake.fake', 'fake2@fake.fake']
-        2 * mockSendingService.sendEmail(*_) >>> { throw new RuntimeException("sending failed ") } >>> null
+        mockAttrRepo.findEmailsByUserIdIn(["fake1", "fake2"]) >> [userIdAndEmail("fake1", "fake1@fake.fake"), userIdAndEmail("fake2", "fake2@fake.fake")]
+        mockSendingService.createMessage(mailSenderMock, "subject", ["fake1@fake.fake"], *_) >> message1
+        mockSendingService.createMessage(mailSenderMock, "subject", ["fake2@fake.fake"], *_) >> message2
+        1 * mockSendingService.sendEmails(mailSenderMock, [message1, message2]) >> [(message1): new RuntimeException("sending failed ")]
 
         EmailNotifier emailNotifier = new EmailNotifier()
         emailNotifier.retainFailedNotificationsForNumSecs = TimeUnit.MINUTES.toSeconds(30)
         emailNotifier.notificationsRepo = notificationsRepo
         emailNotifier.emailSettingsService = emailSettingsServiceMock
         emailNotifier.featureService = featureService
-        emailNotifier.lockingService = lockingServiceMock
         emailNotifier.notificationEmailBuilderManager = notificationEmailBuilderManager
         emailNotifier.settingsService = mockSettingsService
         emailNotifier.systemSettingsService = systemSettingsServiceMock
         emailNotifier.sendingService = mockSendingService
         emailNotifier.userAttrs = mockAttrRepo
+        emailNotifier.transactionManager = Mock(PlatformTransactionManager)
+        emailNotifier.meterRegistry = new SimpleMeterRegistry()
+        emailNotifier.init()
 
         when:
 
@@ -88,9 +95,19 @@ class EmailNotifierSpec extends Specification {
 
         then:
 
+        0 * notificationsRepo.deleteAllByIdInBatch(_)
         0 * notificationsRepo.deleteById(1)
-        0 * notificationsRepo.flush()
-        1 * notificationsRepo.save({ it.userId == JsonOutput.toJson(["fake1"]) && it.id == 1 && it.failedCount == 1})
+        1 * notificationsRepo.save({ it.userId == JsonOutput.toJson(["fake1"]) && it.id == 1 && it.failedCount == 1 && it.claimedBy == null})
+
+        cleanup:
+        emailNotifier.shutdown()
+    }
+
+    private UserAttrsRepo.UserIdAndEmail userIdAndEmail(String userId, String email) {
+        return new UserAttrsRepo.UserIdAndEmail() {
+            String getUserId() { return userId }
+            String getEmail() { return email }
+        }
     }
 
 }
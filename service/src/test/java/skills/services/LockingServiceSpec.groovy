@@ -16,6 +16,7 @@
 package skills.services
 
 
+import io.micrometer.core.instrument.MeterRegistry
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.transaction.PlatformTransactionManager
 import org.springframework.transaction.TransactionStatus
@@ -38,6 +39,9 @@ class LockingServiceSpec extends DefaultIntSpec {
     @Autowired
     private PlatformTransactionManager transactionManager;
 
+    @Autowired
+    MeterRegistry meterRegistry
+
     @Transactional
     def "lock global settings"() {
         when:
@@ -86,10 +90,46 @@ class LockingServiceSpec extends DefaultIntSpec {
     @Transactional
     def "lock for skill reporting"() {
         when:
-        SkillsDBLock lock = lockingService.lockForSkillReporting("user", "project")
+        lockingService.lockForSkillReporting("user", "project")
 
         then:
-        lock
+        noExceptionThrown()
+    }
+
+    @Transactional
+    def "lock for skill reporting is re-entrant within the same transaction"() {
+        when:
+        lockingService.lockForSkillReporting("user", "project")
+        lockingService.lockForSkillReporting("user", "project")
+
+        then:
+        noExceptionThrown()
+    }
+
+    @Transactional
+    def "lock many users for skill reporting and then one of them within the same transaction"() {
+        when:
+        lockingService.lockForSkillReporting(["user2", "user1", "user3"], "project")
+        lockingService.lockForSkillReporting("user1", "project")
+
+        then:
+        noExceptionThrown()
+    }
+
+    def "lock for skill reporting records wait time per lock type"() {
+        when:
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager)
+        transactionTemplate.execute(new TransactionCallback<Boolean>() {
+            @Override
+            Boolean doInTransaction(TransactionStatus status) {
+                lockingService.lockForSkillReporting("metricsUser", "project")
+                return true
+            }
+        })
+
+        then:
+        meterRegistry.find('skills.locks.wait').tag('type', 'jvm').timer().count() > 0
+        meterRegistry.find('skills.locks.wait').tag('type', lockingService.skillReportingLockStrategy.toString()).timer().count() > 0
     }
 
     def "test concurrent locks for user project"() {
@@ -107,7 +147,7 @@ class LockingServiceSpec extends DefaultIntSpec {
                 transactionTemplate.execute(new TransactionCallback<Boolean>() {
                     @Override
                     Boolean doInTransaction(TransactionStatus status) {
-                        SkillsDBLock lock = lockingService.lockForSkillReporting("aUser", "aProject")
+                        lockingService.lockForSkillReporting("aUser", "aProject")
                         t1Start.set(System.currentTimeMillis())
                         Thread.currentThread().sleep(sleepTime)
                         return true;
@@ -125,7 +165,7 @@ class LockingServiceSpec extends DefaultIntSpec {
                     @Override
                     Boolean doInTransaction(TransactionStatus status) {
                             try {
-                                SkillsDBLock lock = lockingService.lockForSkillReporting("aUser", "aProject")
+                                lockingService.lockForSkillReporting("aUser", "aProject")
                                 t2Start.set(System.currentTimeMillis())
                                 return true
                             } catch (e) {
@@ -145,6 +185,61 @@ class LockingServiceSpec extends DefaultIntSpec {
         service.shutdown()
         service.awaitTermination(sleepTime*4, TimeUnit.MILLISECONDS)
 
+        then:
+        service.isTerminated()
+        t2Start.get() > t1Start.get()+sleepTime
+        meterRegistry.find('skills.locks.contended').tag('type', 'jvm').counter().count() > 0
+    }
+
+    def "single user lock waits for a batch of users that includes that user"() {
+        ExecutorService service = Executors.newFixedThreadPool(2)
+        AtomicLong t1Start = new AtomicLong()
+        AtomicLong t2Start = new AtomicLong()
+
+        long sleepTime = 2500
+
+        Runnable batch = new Runnable() {
+            @Override
+            void run() {
+                TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager)
+                transactionTemplate.setPropagationBehaviorName("PROPAGATION_REQUIRES_NEW")
+                transactionTemplate.execute(new TransactionCallback<Boolean>() {
+                    @Override
+                    Boolean doInTransaction(TransactionStatus status) {
+                        lockingService.lockForSkillReporting(["bUser1", "bUser2", "bUser3"], "aProject")
+                        t1Start.set(System.currentTimeMillis())
+                        Thread.currentThread().sleep(sleepTime)
+                        return true;
+                    }
+                })
+            }
+        }
+
+        Runnable single = new Runnable() {
+            @Override
+            void run() {
+                TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager)
+                transactionTemplate.setPropagationBehaviorName("PROPAGATION_REQUIRES_NEW")
+                boolean result = transactionTemplate.execute(new TransactionCallback<Boolean>() {
+                    @Override
+                    Boolean doInTransaction(TransactionStatus status) {
+                        lockingService.lockForSkillReporting("bUser2", "aProject")
+                        t2Start.set(System.currentTimeMillis())
+                        return true
+                    }
+                })
+                assert result
+            }
+        }
+
+        when:
+
+        service.submit(batch)
+        Thread.currentThread().sleep(50)
+        service.submit(single)
+        service.shutdown()
+        service.awaitTermination(sleepTime*4, TimeUnit.MILLISECONDS)
+
         then:
         service.isTerminated()
         t2Start.get() > t1Start.get()+sleepTime
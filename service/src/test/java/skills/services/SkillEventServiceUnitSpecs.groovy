@@ -16,11 +16,13 @@
 package skills.services
 
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.springframework.messaging.simp.SimpMessagingTemplate
 import org.springframework.messaging.simp.broker.BrokerAvailabilityEvent
 import skills.services.admin.SkillCatalogService
 import skills.services.events.*
 import skills.services.events.pointsAndAchievements.PointsAndAchievementsHandler
+import skills.skillLoading.UserProjectSummaryLoader
 import skills.storage.model.SkillDef
 import skills.storage.model.SkillDefMin
 import skills.storage.model.UserAchievement
@@ -51,12 +53,16 @@ class SkillEventServiceUnitSpecs extends Specification {
         AchievedSkillsGroupHandler mockAchievedSkillsGroupHandler = Mock()
         SkillCatalogService mockCatalogService = Mock()
         SkillDefRepo skillDefRepo = Mock()
+        RecentPerformedOnCache mockRecentPerformedOnCache = Mock()
 
         SkillEventsTransactionalService skillEventsTransactionalService = new SkillEventsTransactionalService(
                 skillEventPublisher: mockSkillEventPublisher,
                 skillEventsSupportRepo: mockSkillEventsSupportRepo,
+                skillDefinitionSnapshotCache: Mock(SkillDefinitionSnapshotCache),
                 performedSkillRepository: mockPerformedSkillRepository,
                 timeWindowHelper: mockTimeWindowHelper,
+                recentPerformedOnCache: mockRecentPerformedOnCache,
+                userProjectSummaryLoader: Mock(UserProjectSummaryLoader),
                 checkDependenciesHelper: mockCheckDependenciesHelper,
                 lockingService: mockLockingService,
                 pointsAndAchievementsHandler: mockPointsAndAchievementsHandler,
@@ -66,7 +72,8 @@ class SkillEventServiceUnitSpecs extends Specification {
                 userEventService: mockUserEventService,
                 achievedSkillsGroupHandler: mockAchievedSkillsGroupHandler,
                 skillCatalogService: mockCatalogService,
-                skillDefRepo: skillDefRepo
+                skillDefRepo: skillDefRepo,
+                importedSkillIdsCache: Mock(ImportedSkillIdsCache)
         )
         SkillEventsService skillEventsService = new SkillEventsService(
                 skillEventPublisher: mockSkillEventPublisher,
@@ -83,7 +90,7 @@ class SkillEventServiceUnitSpecs extends Specification {
         skillDefMin.projectId >> projId
         mockSkillEventsSupportRepo.findByProjectIdAndSkillIdAndType(projId, skillId, SkillDef.ContainerType.Skill) >> skillDefMin
         mockPerformedSkillRepository.countByUserIdAndProjectIdAndSkillId(userId, projId, skillId) >> 1
-        mockTimeWindowHelper.checkTimeWindow(_, _, _) >> new TimeWindowHelper.TimeWindowRes(full: false)
+        mockTimeWindowHelper.checkTimeWindow(_, _, _, _) >> new TimeWindowHelper.TimeWindowRes(full: false)
         mockCheckDependenciesHelper.check(_, _, _) >> new CheckDependenciesHelper.DependencyCheckRes(hasNotAchievedDependents: false)
         mockCatalogService.isAvailableInCatalog(_, _) >> false
 
@@ -111,6 +118,7 @@ class SkillEventServiceUnitSpecs extends Specification {
         SkillEventsTransactionalService skillEventsTransactionalService = new SkillEventsTransactionalService(
                 skillEventPublisher: mockSkillEventPublisher,
                 skillEventsSupportRepo: mockSkillEventsSupportRepo,
+                skillDefinitionSnapshotCache: Mock(SkillDefinitionSnapshotCache),
                 performedSkillRepository: mockPerformedSkillRepository,
                 userEventService: mockUserEventService,
                 skillCatalogService: mockCatalogService
@@ -154,6 +162,7 @@ class SkillEventServiceUnitSpecs extends Specification {
         SkillEventsTransactionalService skillEventsTransactionalService = new SkillEventsTransactionalService(
                 skillEventPublisher: mockSkillEventPublisher,
                 skillEventsSupportRepo: mockSkillEventsSupportRepo,
+                skillDefinitionSnapshotCache: Mock(SkillDefinitionSnapshotCache),
                 performedSkillRepository: mockPerformedSkillRepository,
                 userEventService: mockUserEventService,
                 skillCatalogService: mockCatalogService
@@ -186,13 +195,95 @@ class SkillEventServiceUnitSpecs extends Specification {
         }
     }
 
+    def "reporting multiple events for a user locks the user once and notifies once per skill"() {
+        SkillEventPublisher mockSkillEventPublisher = Mock()
+        SkillEventsSupportRepo mockSkillEventsSupportRepo = Mock()
+        UserPerformedSkillRepo mockPerformedSkillRepository = Mock()
+        TimeWindowHelper mockTimeWindowHelper = Mock()
+        CheckDependenciesHelper mockCheckDependenciesHelper = Mock()
+        LockingService mockLockingService = Mock()
+        PointsAndAchievementsHandler mockPointsAndAchievementsHandler = Mock()
+        UserAchievedLevelRepo mockAchievedLevelRepo = Mock()
+        AchievedBadgeHandler mockAchievedBadgeHandler = Mock()
+        AchievedGlobalBadgeHandler mockAchievedGlobalBadgeHandler = Mock()
+        MetricsLogger mockMetricsLogger = Mock()
+        UserEventService mockUserEventService = Mock()
+        AchievedSkillsGroupHandler mockAchievedSkillsGroupHandler = Mock()
+        SkillCatalogService mockCatalogService = Mock()
+        SkillDefRepo skillDefRepo = Mock()
+        RecentPerformedOnCache mockRecentPerformedOnCache = Mock()
+
+        SkillEventsTransactionalService skillEventsTransactionalService = new SkillEventsTransactionalService(
+                skillEventPublisher: mockSkillEventPublisher,
+                skillEventsSupportRepo: mockSkillEventsSupportRepo,
+                skillDefinitionSnapshotCache: Mock(SkillDefinitionSnapshotCache),
+                performedSkillRepository: mockPerformedSkillRepository,
+                timeWindowHelper: mockTimeWindowHelper,
+                recentPerformedOnCache: mockRecentPerformedOnCache,
+                userProjectSummaryLoader: Mock(UserProjectSummaryLoader),
+                checkDependenciesHelper: mockCheckDependenciesHelper,
+                lockingService: mockLockingService,
+                pointsAndAchievementsHandler: mockPointsAndAchievementsHandler,
+                achievedLevelRepo: mockAchievedLevelRepo,
+                achievedBadgeHandler: mockAchievedBadgeHandler,
+                achievedGlobalBadgeHandler: mockAchievedGlobalBadgeHandler,
+                userEventService: mockUserEventService,
+                achievedSkillsGroupHandler: mockAchievedSkillsGroupHandler,
+                skillCatalogService: mockCatalogService,
+                skillDefRepo: skillDefRepo,
+                importedSkillIdsCache: Mock(ImportedSkillIdsCache)
+        )
+        SkillEventsService skillEventsService = new SkillEventsService(
+                skillEventPublisher: mockSkillEventPublisher,
+                metricsLogger: mockMetricsLogger,
+                skillEventsTransactionalService: skillEventsTransactionalService,
+        )
+
+        SkillDefMin skillDefMin = Mock()
+        skillDefMin.getPointIncrement() >> 10
+        skillDefMin.getTotalPoints() >> 100
+        skillDefMin.skillId >> skillId
+        skillDefMin.name >> 'Skill ID'
+        skillDefMin.projectId >> projId
+        SkillDefMin otherSkillDefMin = Mock()
+        otherSkillDefMin.getPointIncrement() >> 10
+        otherSkillDefMin.getTotalPoints() >> 100
+        otherSkillDefMin.skillId >> 'otherSkillId'
+        otherSkillDefMin.name >> 'Other Skill ID'
+        otherSkillDefMin.projectId >> projId
+        mockSkillEventsSupportRepo.findByProjectIdAndSkillIdAndType(projId, skillId, SkillDef.ContainerType.Skill) >> skillDefMin
+        mockSkillEventsSupportRepo.findByProjectIdAndSkillIdAndType(projId, 'otherSkillId', SkillDef.ContainerType.Skill) >> otherSkillDefMin
+        mockPerformedSkillRepository.countByUserIdAndProjectIdAndSkillId(userId, projId, _) >> 1
+        mockTimeWindowHelper.checkTimeWindow(_, _, _, _) >> new TimeWindowHelper.TimeWindowRes(full: false)
+        mockCheckDependenciesHelper.check(_, _, _) >> new CheckDependenciesHelper.DependencyCheckRes(hasNotAchievedDependents: false)
+        mockCatalogService.isAvailableInCatalog(_, _) >> false
+
+        List<AcceptedSkillEvent> events = [skillId, 'otherSkillId', skillId].collect {
+            new AcceptedSkillEvent(projectId: projId, skillId: it, userId: userId, incomingSkillDate: new Date())
+        }
+        List<SkillEventResult> published = []
+
+        when:
+        List<SkillEventResult> results = skillEventsService.reportSkillsForUser(projId, userId, false, events)
+
+        then:
+        1 * mockLockingService.lockForSkillReporting(userId, projId)
+        2 * mockSkillEventPublisher.publishSkillUpdate(_, userId) >> { arguments -> published.add(arguments[0]) }
+        results.collect { it.skillId } == [skillId, 'otherSkillId', skillId]
+        published.collect { it.skillId } == [skillId, 'otherSkillId']
+        published.collect { it.name } == ['Skill ID', 'Other Skill ID']
+        published.collect { it.explanation } == ['Applied 2 out of 2 skill events', 'Applied 1 out of 1 skill events']
+    }
+
     def "test SkillEventPublisher will not publish messages unless brokerAvailable == true"() {
 
         LoggerHelper loggerHelper = new LoggerHelper(SkillEventPublisher.class)
         SimpMessagingTemplate mockMessagingTemplate = Mock()
         BrokerAvailabilityEvent brokerAvailable = new BrokerAvailabilityEvent(true, this)
         BrokerAvailabilityEvent brokerUnavailable = new BrokerAvailabilityEvent(false, this)
-        SkillEventPublisher skillEventPublisher = new SkillEventPublisher(messagingTemplate: mockMessagingTemplate)
+        SkillEventNotificationDispatcher notificationDispatcher = new SkillEventNotificationDispatcher(enabled: false, messagingTemplate: mockMessagingTemplate, meterRegistry: new SimpleMeterRegistry())
+        notificationDispatcher.init()
+        SkillEventPublisher skillEventPublisher = new SkillEventPublisher(notificationDispatcher: notificationDispatcher)
         SkillEventResult result = new SkillEventResult(projectId: 'project1')
 
         when:
@@ -225,6 +316,7 @@ class SkillEventServiceUnitSpecs extends Specification {
         SkillEventsTransactionalService skillEventsTransactionalService = new SkillEventsTransactionalService(
                 skillEventPublisher: mockSkillEventPublisher,
                 skillEventsSupportRepo: mockSkillEventsSupportRepo,
+                skillDefinitionSnapshotCache: Mock(SkillDefinitionSnapshotCache),
                 performedSkillRepository: mockPerformedSkillRepository,
                 userEventService: mockUserEventService,
                 achievedLevelRepo: userAchievedLevelRepo,
@@ -23,6 +23,7 @@ import skills.storage.model.UserAttrs
 import skills.storage.model.UserTag
 import skills.storage.repos.UserAttrsRepo
 import skills.storage.repos.UserTagRepo
+import skills.utils.WaitFor
 
 class UserAttrsServiceSpec extends DefaultIntSpec {
 
@@ -259,7 +260,11 @@ class UserAttrsServiceSpec extends DefaultIntSpec {
         // remove a userTag and update another
         userInfo.userTags.remove('Organization')
         userInfo.userTags.put('Agency', 'DEF')
-        Date userTagsLastUpdated2 = userAttrsService.saveUserAttrs(userId, userInfo).userTagsLastUpdated
+        userAttrsService.saveUserAttrs(userId, userInfo)
+        // userTags refresh is applied in the background
+        userAttrsService.flushPendingUserTagsRefreshes()
+        WaitFor.wait { userTagRepo.findAllByUserId(userId?.toLowerCase()).size() == 1 }
+        Date userTagsLastUpdated2 = userAttrsService.findByUserId(userId).userTagsLastUpdated
         List<UserTag> foundUserTags2 = userTagRepo.findAllByUserId(userId?.toLowerCase())
 
         then:
@@ -303,7 +308,11 @@ class UserAttrsServiceSpec extends DefaultIntSpec {
         // remove a userTag and update another
         userInfo.userTags.remove('Organization')
         userInfo.userTags.put('Agency', 'DEF')
-        Date userTagsLastUpdated2 = userAttrsService.saveUserAttrs(userId, userInfo).userTagsLastUpdated
+        userAttrsService.saveUserAttrs(userId, userInfo)
+        // userTags refresh is applied in the background
+        userAttrsService.flushPendingUserTagsRefreshes()
+        WaitFor.wait { userTagRepo.findAllByUserId(userId?.toLowerCase()).size() == 1 }
+        Date userTagsLastUpdated2 = userAttrsService.findByUserId(userId).userTagsLastUpdated
         List<UserTag> foundUserTags2 = userTagRepo.findAllByUserId(userId?.toLowerCase())
 
         then:
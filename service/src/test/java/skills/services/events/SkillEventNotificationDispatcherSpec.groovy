@@ -0,0 +1,87 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.events
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.messaging.simp.SimpMessagingTemplate
+import spock.lang.Specification
+
+class SkillEventNotificationDispatcherSpec extends Specification {
+
+    SimpMessagingTemplate messagingTemplate = Mock()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    SkillEventNotificationDispatcher dispatcher
+
+    def setup() {
+        // window is long enough that only the explicit flush() calls send messages
+        dispatcher = new SkillEventNotificationDispatcher(enabled: true, coalesceWindowInMillis: 60000, maxQueueSize: 100,
+                shutdownWaitInSeconds: 1, messagingTemplate: messagingTemplate, meterRegistry: meterRegistry)
+        dispatcher.init()
+    }
+
+    def cleanup() {
+        dispatcher.shutdown()
+    }
+
+    def "results for the same user, destination and skill are merged into a single message"() {
+        List<SkillEventResult> sent = []
+
+        when:
+        dispatcher.dispatch('user1', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill1', pointsEarned: 10,
+                completed: [new CompletionItem(type: CompletionItem.CompletionItemType.Skill, id: 'skill1')]))
+        dispatcher.dispatch('user1', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill1', skillApplied: false,
+                pointsEarned: 0, explanation: 'This skill reached its maximum points'))
+        dispatcher.dispatch('user1', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill2', pointsEarned: 5))
+        dispatcher.dispatch('user2', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill1', pointsEarned: 10))
+        dispatcher.flush()
+
+        then:
+        3 * messagingTemplate.convertAndSendToUser(_, '/queue/proj1-skill-updates', _) >> { String userId, String destination, Object payload ->
+            sent.add((SkillEventResult) payload)
+        }
+        sent.collect { it.skillId } == ['skill1', 'skill2', 'skill1']
+        sent[0].pointsEarned == 10
+        sent[0].skillApplied
+        sent[0].explanation == 'Skill event was applied'
+        sent[0].completed.collect { it.id } == ['skill1']
+        meterRegistry.get('skills.notifications').tag('stage', 'submitted').counter().count() == 4
+        meterRegistry.get('skills.notifications').tag('stage', 'sent').counter().count() == 3
+        meterRegistry.get('skills.notifications.queued').gauge().value() == 0
+    }
+
+    def "results with receipt ids are not merged"() {
+        when:
+        dispatcher.dispatch('user1', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill1', receiptId: 'r1'))
+        dispatcher.dispatch('user1', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill1', receiptId: 'r2'))
+        dispatcher.flush()
+
+        then:
+        1 * messagingTemplate.convertAndSendToUser('user1', '/queue/proj1-skill-updates', { it.receiptId == 'r1' })
+        1 * messagingTemplate.convertAndSendToUser('user1', '/queue/proj1-skill-updates', { it.receiptId == 'r2' })
+    }
+
+    def "results are sent right away once the queue is full"() {
+        dispatcher.maxQueueSize = 1
+
+        when:
+        dispatcher.dispatch('user1', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill1'))
+        dispatcher.dispatch('user1', '/queue/proj1-skill-updates', new SkillEventResult(projectId: 'proj1', skillId: 'skill2'))
+
+        then:
+        1 * messagingTemplate.convertAndSendToUser('user1', '/queue/proj1-skill-updates', { it.skillId == 'skill2' })
+        meterRegistry.get('skills.notifications.queued').gauge().value() == 1
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.ranking
+
+import spock.lang.Specification
+
+class RankIndexSpec extends Specification {
+
+    def "users are ordered by points then by first seen"() {
+        RankIndex index = new RankIndex()
+
+        when:
+        index.upsert('u1', 10, 100)
+        index.upsert('u2', 30, 200)
+        index.upsert('u3', 20, 300)
+        index.upsert('u4', 20, 50)
+
+        then:
+        index.size() == 4
+        index.getRange(0, 10).collect { it.userId } == ['u2', 'u4', 'u3', 'u1']
+        index.countWithMorePoints(20) == 1
+        index.countWithMorePoints(5) == 4
+        index.countAhead(20, 300) == 2
+        index.countAhead(20, 301) == 3
+        index.countAhead(40, 0) == 0
+    }
+
+    def "upsert re-positions existing user and remove drops the user"() {
+        RankIndex index = new RankIndex()
+        index.upsert('u1', 10, 100)
+        index.upsert('u2', 30, 200)
+        index.upsert('u3', 20, 300)
+
+        when:
+        index.upsert('u1', 40, 100)
+        index.remove('u2')
+        index.remove('doesNotExist')
+
+        then:
+        index.size() == 2
+        index.get('u1').points == 40
+        !index.get('u2')
+        index.getRange(0, 10).collect { it.userId } == ['u1', 'u3']
+    }
+
+    def "positional reads"() {
+        RankIndex index = new RankIndex()
+        (1..100).each { index.upsert("u${it}".toString(), it, it) }
+
+        when:
+        List<String> top = []
+        index.eachInRankOrder { RankIndex.Entry entry ->
+            top.add(entry.userId)
+            return top.size() < 3
+        }
+
+        then:
+        top == ['u100', 'u99', 'u98']
+        index.getRange(10, 3).collect { it.points } == [90, 89, 88]
+        index.getRange(98, 5).collect { it.points } == [2, 1]
+        index.getRange(100, 5) == []
+    }
+
+    def "matches sorted list after random updates"() {
+        RankIndex index = new RankIndex()
+        Map<String, RankIndex.Entry> expected = [:]
+        Random random = new Random(42)
+
+        when:
+        5000.times {
+            String userId = "u${random.nextInt(500)}".toString()
+            if (random.nextInt(10) == 0) {
+                index.remove(userId)
+                expected.remove(userId)
+            } else {
+                int points = random.nextInt(50)
+                long firstSeen = expected.get(userId)?.firstSeen ?: random.nextInt(1000)
+                index.upsert(userId, points, firstSeen)
+                expected.put(userId, new RankIndex.Entry(userId, points, firstSeen))
+            }
+        }
+        List<RankIndex.Entry> sorted = expected.values().sort(false) { RankIndex.Entry a, RankIndex.Entry b ->
+            b.points <=> a.points ?: a.firstSeen <=> b.firstSeen ?: a.userId <=> b.userId
+        }
+
+        then:
+        index.size() == expected.size()
+        index.getRange(0, expected.size()).collect { it.userId } == sorted.collect { it.userId }
+        [0, 10, 25, 49].every { int points -> index.countWithMorePoints(points) == sorted.count { it.points > points } }
+    }
+}
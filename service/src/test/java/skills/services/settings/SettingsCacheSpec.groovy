@@ -0,0 +1,103 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.services.settings
+
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import skills.controller.UserInfoController
+import skills.intTests.utils.DefaultIntSpec
+import skills.intTests.utils.SkillsFactory
+import skills.storage.model.Setting
+
+class SettingsCacheSpec extends DefaultIntSpec {
+
+    @Autowired
+    SettingsCache settingsCache
+
+    @Autowired
+    SettingsDataAccessor settingsDataAccessor
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    def "all of the project's settings are prefetched on the first read and replaced once a setting changes"() {
+        def proj = SkillsFactory.createProject()
+        skillsService.createProject(proj)
+        skillsService.addOrUpdateProjectSetting(proj.projectId, 'setting1', 'value1')
+        skillsService.addOrUpdateProjectSetting(proj.projectId, 'setting2', 'value2')
+
+        when:
+        Setting setting1 = settingsDataAccessor.getProjectSetting(proj.projectId, 'setting1')
+        List<Setting> cached = settingsCache.getProjectSettings(proj.projectId)
+        Setting setting2 = settingsDataAccessor.getProjectSetting(proj.projectId, 'setting2')
+        skillsService.addOrUpdateProjectSetting(proj.projectId, 'setting2', 'changed')
+        Setting afterChange = settingsDataAccessor.getProjectSetting(proj.projectId, 'setting2')
+
+        then:
+        setting1.value == 'value1'
+        setting2.value == 'value2'
+        cached.collect { it.setting }.containsAll(['setting1', 'setting2'])
+        settingsCache.getProjectSettings(proj.projectId) != cached
+        afterChange.value == 'changed'
+    }
+
+    def "returned settings are copies that do not affect the cache"() {
+        def proj = SkillsFactory.createProject()
+        skillsService.createProject(proj)
+        skillsService.addOrUpdateProjectSetting(proj.projectId, 'setting1', 'value1')
+
+        when:
+        Setting setting = settingsDataAccessor.getProjectSetting(proj.projectId, 'setting1')
+        setting.value = 'modified'
+
+        then:
+        settingsDataAccessor.getProjectSetting(proj.projectId, 'setting1').value == 'value1'
+    }
+
+    def "user setting value reflects the latest save"() {
+        String userId = getRandomUsers(1)[0]
+        def userService = createService(userId)
+
+        when:
+        String before = settingsDataAccessor.getUserSettingValue(userId.toLowerCase(), UserInfoController.RANK_AND_LEADERBOARD_OPT_OUT_PREF)
+        userService.addOrUpdateUserSetting(UserInfoController.RANK_AND_LEADERBOARD_OPT_OUT_PREF, 'true')
+        String after = settingsDataAccessor.getUserSettingValue(userId.toLowerCase(), UserInfoController.RANK_AND_LEADERBOARD_OPT_OUT_PREF)
+
+        then:
+        !before
+        after == 'true'
+    }
+
+    def "cache hits and misses are published as metrics"() {
+        def proj = SkillsFactory.createProject()
+        skillsService.createProject(proj)
+        settingsCache.invalidateLocally(null)
+        double hitsBefore = cacheGets('hit')
+        double missesBefore = cacheGets('miss')
+
+        when:
+        settingsDataAccessor.getProjectSetting(proj.projectId, 'setting1')
+        settingsDataAccessor.getProjectSetting(proj.projectId, 'setting2')
+
+        then:
+        cacheGets('miss') - missesBefore >= 1
+        cacheGets('hit') - hitsBefore >= 1
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get('cache.gets').tags('cache', SettingsCache.CACHE_NAME, 'result', result).functionCounter().count()
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.utils
+
+import spock.lang.Specification
+
+class DistinctCountSketchSpec extends Specification {
+
+    def "small sets are counted exactly"() {
+        DistinctCountSketch sketch = new DistinctCountSketch()
+
+        when:
+        (1..DistinctCountSketch.MAX_EXACT).each { sketch.add("user${it}") }
+        (1..100).each { sketch.add("user${it}") }
+
+        then:
+        sketch.estimate() == DistinctCountSketch.MAX_EXACT
+        DistinctCountSketch.fromBytes(sketch.toBytes()).estimate() == DistinctCountSketch.MAX_EXACT
+        new DistinctCountSketch().estimate() == 0
+        DistinctCountSketch.fromBytes(null).estimate() == 0
+    }
+
+    def "large sets are estimated within a few percent"() {
+        DistinctCountSketch sketch = new DistinctCountSketch()
+
+        when:
+        (1..numUsers).each { sketch.add("user${it}") }
+        long fromBytes = DistinctCountSketch.fromBytes(sketch.toBytes()).estimate()
+
+        then:
+        Math.abs(sketch.estimate() - numUsers) / numUsers < 0.05
+        fromBytes == sketch.estimate()
+
+        where:
+        numUsers << [600, 5000, 100000]
+    }
+
+    def "merged sketches count the union"() {
+        DistinctCountSketch small1 = new DistinctCountSketch()
+        DistinctCountSketch small2 = new DistinctCountSketch()
+        DistinctCountSketch large1 = new DistinctCountSketch()
+        DistinctCountSketch large2 = new DistinctCountSketch()
+
+        when:
+        (1..100).each { small1.add("user${it}") }
+        (51..150).each { small2.add("user${it}") }
+        (1..20000).each { large1.add("user${it}") }
+        (10001..30000).each { large2.add("user${it}") }
+
+        long smallUnion = new DistinctCountSketch().merge(small1).merge(small2).estimate()
+        long largeUnion = DistinctCountSketch.fromBytes(large1.toBytes()).merge(large2).estimate()
+        long mixedUnion = DistinctCountSketch.fromBytes(small1.toBytes()).merge(large1).estimate()
+        long mixedUnion2 = DistinctCountSketch.fromBytes(large1.toBytes()).merge(small2).estimate()
+
+        then:
+        smallUnion == 150
+        Math.abs(largeUnion - 30000) / 30000 < 0.05
+        Math.abs(mixedUnion - 20000) / 20000 < 0.05
+        Math.abs(mixedUnion2 - 20050) / 20050 < 0.05
+    }
+}
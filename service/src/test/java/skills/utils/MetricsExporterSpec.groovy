@@ -0,0 +1,167 @@
+/**
+ * Copyright 2020 SkillTree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package skills.utils
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import groovy.json.JsonSlurper
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.GZIPInputStream
+
+class MetricsExporterSpec extends Specification {
+
+    HttpServer server
+    ConcurrentLinkedQueue<List> received = new ConcurrentLinkedQueue<>()
+    ConcurrentLinkedQueue<String> contentEncodings = new ConcurrentLinkedQueue<>()
+    ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>()
+    AtomicInteger numFailuresToReturn = new AtomicInteger()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    MetricsExporter exporter
+
+    def setup() {
+        server = HttpServer.create(new InetSocketAddress('localhost', 0), 0)
+        server.createContext('/metrics') { HttpExchange exchange ->
+            assert exchange.requestMethod == 'PUT'
+            byte[] body = exchange.requestBody.bytes
+            if (numFailuresToReturn.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(500, -1)
+            } else {
+                if (exchange.requestHeaders.getFirst('Content-Encoding') != 'gzip') {
+                    bodies.add(new String(body, 'UTF-8'))
+                }
+                InputStream json = exchange.requestHeaders.getFirst('Content-Encoding') == 'gzip' ?
+                        new GZIPInputStream(new ByteArrayInputStream(body)) : new ByteArrayInputStream(body)
+                Object parsed = new JsonSlurper().parse(json)
+                received.add(parsed instanceof List ? (List) parsed : [parsed])
+                contentEncodings.add(exchange.requestHeaders.getFirst('Content-Encoding') ?: 'none')
+                exchange.sendResponseHeaders(200, -1)
+            }
+            exchange.close()
+        }
+        server.start()
+    }
+
+    def cleanup() {
+        exporter?.shutdown()
+        server.stop(0)
+    }
+
+    private MetricsExporter createExporter(Map props = [:]) {
+        MetricsExporter.Config config = new MetricsExporter.Config(endpointUrl: "http://localhost:${server.address.port}/metrics".toString(), retryBackoffInMillis: 10)
+        props.each { String k, v -> config[k] = v }
+        return new MetricsExporter(config, new RestTemplate(), meterRegistry)
+    }
+
+    private static MetricsLogger.MetricsMessage message(int num) {
+        return new MetricsLogger.MetricsMessage([type: 'SkillReported', skillId: "skill${num}".toString()])
+    }
+
+    def "messages are sent one uncompressed json object per request by default"() {
+        exporter = createExporter()
+
+        when:
+        (1..3).each { exporter.add(message(it)) }
+        assert WaitFor.wait(10) { received.size() == 3 }
+
+        then:
+        bodies.every { it.startsWith('{') }
+        contentEncodings.every { it == 'none' }
+        received.collectMany { it }.collect { it.attributes.skillId } == ['skill1', 'skill2', 'skill3']
+        meterRegistry.counter('skills.external.metrics.sent').count() == 3
+    }
+
+    def "messages are sent as gzipped json arrays in batches when enabled"() {
+        exporter = createExporter(batch: true, maxBatchSize: 5, flushIntervalInMillis: 200, gzip: true)
+
+        when:
+        (1..12).each { exporter.add(message(it)) }
+        assert WaitFor.wait(10) { received.sum(0) { it.size() } == 12 }
+
+        then:
+        contentEncodings.every { it == 'gzip' }
+        received.every { it.size() <= 5 }
+        received.collectMany { it }.collect { it.attributes.skillId } == (1..12).collect { "skill${it}".toString() }
+        received.first().first().attributes == [type: 'SkillReported', skillId: 'skill1']
+        meterRegistry.counter('skills.external.metrics.sent').count() == 12
+        meterRegistry.timer('skills.external.metrics.latency').count() == received.size()
+    }
+
+    def "failed requests are retried"() {
+        numFailuresToReturn.set(2)
+        exporter = createExporter(maxRetries: 3)
+
+        when:
+        exporter.add(message(1))
+        assert WaitFor.wait(10) { received.size() == 1 }
+
+        then:
+        received.first().collect { it.attributes.skillId } == ['skill1']
+        meterRegistry.counter('skills.external.metrics.sent').count() == 1
+        meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'failed').count() == 0
+    }
+
+    def "batch is dropped once retries are exhausted"() {
+        numFailuresToReturn.set(2)
+        exporter = createExporter(maxRetries: 1)
+
+        when:
+        exporter.add(message(1))
+        assert WaitFor.wait(10) { meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'failed').count() == 1 }
+        exporter.add(message(2))
+        assert WaitFor.wait(10) { received.size() == 1 }
+
+        then:
+        received.first().collect { it.attributes.skillId } == ['skill2']
+    }
+
+    def "oldest messages are dropped when the buffer is full"() {
+        // a slow endpoint keeps the sender busy while the buffer fills up
+        numFailuresToReturn.set(1)
+        exporter = createExporter(bufferSize: 3, maxRetries: 1, retryBackoffInMillis: 1000, overflowPolicy: MetricsExporter.OverflowPolicy.DropOldest)
+
+        when:
+        exporter.add(message(0))
+        assert WaitFor.wait(10) { meterRegistry.get('skills.external.metrics.buffered').gauge().value() == 0 }
+        (1..5).each { exporter.add(message(it)) }
+        assert WaitFor.wait(10) { received.sum(0) { it.size() } == 4 }
+
+        then:
+        received.collectMany { it }.collect { it.attributes.skillId } == ['skill0', 'skill3', 'skill4', 'skill5']
+        meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'overflow').count() == 2
+    }
+
+    def "only every n-th message is accepted once the buffer is half full when sampling"() {
+        numFailuresToReturn.set(1)
+        exporter = createExporter(bufferSize: 4, maxRetries: 1, retryBackoffInMillis: 1000, sampleRate: 2, overflowPolicy: MetricsExporter.OverflowPolicy.Sample)
+
+        when:
+        exporter.add(message(0))
+        assert WaitFor.wait(10) { meterRegistry.get('skills.external.metrics.buffered').gauge().value() == 0 }
+        (1..7).each { exporter.add(message(it)) }
+        assert WaitFor.wait(10) { received.sum(0) { it.size() } == 5 }
+
+        then:
+        // 1 and 2 fill half of the buffer, then 3 and 5 are sampled, 7 does not fit
+        received.collectMany { it }.collect { it.attributes.skillId } == ['skill0', 'skill1', 'skill2', 'skill3', 'skill5']
+        meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'sampled').count() == 2
+        meterRegistry.counter('skills.external.metrics.dropped', 'reason', 'overflow').count() == 1
+    }
+}